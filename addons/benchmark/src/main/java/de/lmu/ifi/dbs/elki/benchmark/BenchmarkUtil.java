@@ -0,0 +1,113 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+
+/**
+ * Utility functions shared by the benchmarks, to generate reproducible data.
+ * 
+ * @author agent
+ */
+public final class BenchmarkUtil {
+  /**
+   * Fixed random seed, for reproducible benchmarks.
+   */
+  public static final long SEED = 0L;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BenchmarkUtil() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Generate a uniform random data set in the unit cube.
+   * 
+   * @param size Number of objects
+   * @param dim Dimensionality
+   * @return Data array
+   */
+  public static double[][] randomData(int size, int dim) {
+    Random rnd = new Random(SEED);
+    double[][] data = new double[size][dim];
+    for(int i = 0; i < size; i++) {
+      for(int d = 0; d < dim; d++) {
+        data[i][d] = rnd.nextDouble();
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Generate random vectors in the unit cube.
+   * 
+   * @param size Number of objects
+   * @param dim Dimensionality
+   * @return Vectors
+   */
+  public static DoubleVector[] randomVectors(int size, int dim) {
+    double[][] data = randomData(size, dim);
+    DoubleVector[] vecs = new DoubleVector[size];
+    for(int i = 0; i < size; i++) {
+      vecs[i] = new DoubleVector(data[i]);
+    }
+    return vecs;
+  }
+
+  /**
+   * Build a static database, without indexes.
+   * 
+   * @param data Data
+   * @return Initialized database
+   */
+  public static Database makeDatabase(double[][] data) {
+    Collection<IndexFactory<?, ?>> indexes = Collections.emptyList();
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), indexes);
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Get the vector relation of a database.
+   * 
+   * @param db Database
+   * @return Relation
+   */
+  public static Relation<NumberVector> getRelation(Database db) {
+    return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+}
@@ -0,0 +1,184 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.Heap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.TopBoundedHeap;
+
+/**
+ * Benchmark the heap classes: fill with random keys, then empty the heap; and
+ * bounded top-k selection, as used by kNN queries.
+ * 
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HeapBenchmark {
+  /**
+   * Number of elements; reported times are per element.
+   */
+  private static final int SIZE = 100000;
+
+  /**
+   * Maximum size for bounded heaps.
+   */
+  @Param({ "10", "100" })
+  public int k;
+
+  /**
+   * Random keys.
+   */
+  private double[] keys;
+
+  /**
+   * Random keys, as objects.
+   */
+  private Double[] okeys;
+
+  /**
+   * Prepare the data.
+   */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(BenchmarkUtil.SEED);
+    keys = new double[SIZE];
+    okeys = new Double[SIZE];
+    for(int i = 0; i < SIZE; i++) {
+      keys[i] = rnd.nextDouble();
+      okeys[i] = keys[i];
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double doubleMinHeap() {
+    DoubleMinHeap heap = new DoubleMinHeap(SIZE);
+    for(int i = 0; i < SIZE; i++) {
+      heap.add(keys[i]);
+    }
+    double sum = 0.;
+    while(!heap.isEmpty()) {
+      sum += heap.poll();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double doubleIntegerMinHeap() {
+    DoubleIntegerMinHeap heap = new DoubleIntegerMinHeap(SIZE);
+    for(int i = 0; i < SIZE; i++) {
+      heap.add(keys[i], i);
+    }
+    double sum = 0.;
+    while(!heap.isEmpty()) {
+      sum += heap.peekKey();
+      heap.poll();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double comparableMinHeap() {
+    ComparableMinHeap<Double> heap = new ComparableMinHeap<>(SIZE);
+    for(int i = 0; i < SIZE; i++) {
+      heap.add(okeys[i]);
+    }
+    double sum = 0.;
+    while(!heap.isEmpty()) {
+      sum += heap.poll();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double genericHeap() {
+    Heap<Double> heap = new Heap<>(SIZE);
+    for(int i = 0; i < SIZE; i++) {
+      heap.add(okeys[i]);
+    }
+    double sum = 0.;
+    while(!heap.isEmpty()) {
+      sum += heap.poll();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double doubleMaxHeapTopK() {
+    DoubleMaxHeap heap = new DoubleMaxHeap(k + 1);
+    for(int i = 0; i < SIZE; i++) {
+      heap.add(keys[i], k);
+    }
+    return heap.peek();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double doubleIntegerMaxHeapTopK() {
+    DoubleIntegerMaxHeap heap = new DoubleIntegerMaxHeap(k + 1);
+    for(int i = 0; i < SIZE; i++) {
+      heap.add(keys[i], i, k);
+    }
+    return heap.peekKey();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double topBoundedHeap() {
+    TopBoundedHeap<Double> heap = new TopBoundedHeap<>(k);
+    for(int i = 0; i < SIZE; i++) {
+      heap.add(okeys[i]);
+    }
+    return heap.peek();
+  }
+}
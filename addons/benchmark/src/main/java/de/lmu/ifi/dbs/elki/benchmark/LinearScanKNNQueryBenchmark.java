@@ -0,0 +1,142 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanEuclideanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Benchmark the linear scan kNN query implementations, with single and bulk
+ * queries, using Euclidean distance.
+ * 
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LinearScanKNNQueryBenchmark {
+  /**
+   * Query implementation.
+   */
+  @Param({ "distance", "primitive", "euclidean" })
+  public String query;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "10" })
+  public int dim;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  public int k;
+
+  /**
+   * Number of queries.
+   */
+  @Param({ "100" })
+  public int queries;
+
+  /**
+   * Query object.
+   */
+  private KNNQuery<NumberVector> knnq;
+
+  /**
+   * Query points.
+   */
+  private ArrayDBIDs qids;
+
+  /**
+   * Prepare the data.
+   */
+  @Setup
+  public void setup() {
+    Relation<NumberVector> rel = BenchmarkUtil.getRelation(BenchmarkUtil.makeDatabase(BenchmarkUtil.randomData(size, dim)));
+    PrimitiveDistanceQuery<NumberVector> dq = new PrimitiveDistanceQuery<>(rel, EuclideanDistanceFunction.STATIC);
+    switch(query){
+    case "distance":
+      knnq = new LinearScanDistanceKNNQuery<>(dq);
+      break;
+    case "primitive":
+      knnq = new LinearScanPrimitiveDistanceKNNQuery<>(dq);
+      break;
+    case "euclidean":
+      knnq = new LinearScanEuclideanDistanceKNNQuery<>(dq);
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown query: " + query);
+    }
+    qids = DBIDUtil.ensureArray(DBIDUtil.randomSample(rel.getDBIDs(), queries, BenchmarkUtil.SEED));
+  }
+
+  @Benchmark
+  public void single(Blackhole bh) {
+    for(DBIDIter it = qids.iter(); it.valid(); it.advance()) {
+      bh.consume(knnq.getKNNForDBID(it, k));
+    }
+  }
+
+  @Benchmark
+  public List<? extends KNNList> bulk() {
+    return knnq.getKNNForBulkDBIDs(qids, k);
+  }
+}
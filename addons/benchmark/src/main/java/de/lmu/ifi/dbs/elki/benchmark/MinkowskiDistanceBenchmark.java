@@ -0,0 +1,132 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MinimumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Benchmark the Minkowski family of distance functions on dense vectors.
+ * 
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MinkowskiDistanceBenchmark {
+  /**
+   * Number of vectors; each invocation computes this many distances.
+   */
+  private static final int SIZE = 1024;
+
+  /**
+   * Distance function to use.
+   */
+  @Param({ "euclidean", "squaredeuclidean", "manhattan", "maximum", "minimum", "lp3", "lp0.5" })
+  public String distance;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "10", "100" })
+  public int dim;
+
+  /**
+   * Distance function.
+   */
+  private PrimitiveDistanceFunction<? super NumberVector> df;
+
+  /**
+   * Data vectors.
+   */
+  private DoubleVector[] vecs;
+
+  /**
+   * Prepare the data.
+   */
+  @Setup
+  public void setup() {
+    vecs = BenchmarkUtil.randomVectors(SIZE, dim);
+    switch(distance){
+    case "euclidean":
+      df = EuclideanDistanceFunction.STATIC;
+      break;
+    case "squaredeuclidean":
+      df = SquaredEuclideanDistanceFunction.STATIC;
+      break;
+    case "manhattan":
+      df = ManhattanDistanceFunction.STATIC;
+      break;
+    case "maximum":
+      df = MaximumDistanceFunction.STATIC;
+      break;
+    case "minimum":
+      df = MinimumDistanceFunction.STATIC;
+      break;
+    case "lp3":
+      df = new LPNormDistanceFunction(3.);
+      break;
+    case "lp0.5":
+      df = new LPNormDistanceFunction(.5);
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown distance: " + distance);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double distance() {
+    double sum = 0.;
+    for(int i = 0, j = SIZE - 1; i < SIZE; j = i++) {
+      sum += df.distance(vecs[i], vecs[j]);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,175 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.datasource.parser.AbstractParser;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.datasource.parser.ParallelNumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.datasource.parser.Parser;
+
+/**
+ * Benchmark parsing a large synthetic CSV file, with numerical columns and a
+ * class label.
+ * 
+ * The "regex" separator uses a pattern equivalent to the default separator,
+ * which is evaluated with regular expressions rather than the hand-coded
+ * scanner, for comparison.
+ * 
+ * Run with: {@code java -jar target/benchmarks.jar ParserBenchmark}
+ * 
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ParserBenchmark {
+  /**
+   * Size of the generated file in megabytes.
+   */
+  @Param({ "1024" })
+  public int megabytes;
+
+  /**
+   * Number of numerical columns.
+   */
+  @Param({ "10" })
+  public int dim;
+
+  /**
+   * Column separator to use.
+   */
+  @Param({ "default", "regex" })
+  public String separator;
+
+  /**
+   * Temporary data file.
+   */
+  private File file;
+
+  /**
+   * Parser configuration.
+   */
+  private Pattern colsep, comment;
+
+  /**
+   * Generate the synthetic data file.
+   * 
+   * @throws IOException on write errors
+   */
+  @Setup(Level.Trial)
+  public void generate() throws IOException {
+    colsep = Pattern.compile("default".equals(separator) ? AbstractParser.DEFAULT_SEPARATOR : "(?:" + AbstractParser.DEFAULT_SEPARATOR + ")");
+    comment = Pattern.compile(AbstractParser.COMMENT_PATTERN);
+    file = File.createTempFile("elki-parser-benchmark", ".csv");
+    file.deleteOnExit();
+    final long size = megabytes * (1L << 20);
+    Random rnd = new Random(0L);
+    StringBuilder buf = new StringBuilder();
+    Writer out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file), 1 << 16), "UTF-8");
+    try {
+      for(long written = 0; written < size;) {
+        buf.setLength(0);
+        for(int d = 0; d < dim; d++) {
+          buf.append(String.format(Locale.ROOT, "%.6f", rnd.nextGaussian() * 100.)).append(' ');
+        }
+        buf.append("Cluster").append(rnd.nextInt(5)).append('\n');
+        out.append(buf);
+        written += buf.length();
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Remove the data file.
+   */
+  @TearDown(Level.Trial)
+  public void cleanup() {
+    if(file != null) {
+      file.delete();
+    }
+  }
+
+  /**
+   * Parse the data file.
+   * 
+   * @param parser Parser
+   * @return Number of objects parsed
+   * @throws IOException on read errors
+   */
+  private int parse(Parser parser) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    try {
+      return parser.parse(in).dataLength();
+    }
+    finally {
+      in.close();
+      parser.cleanup();
+    }
+  }
+
+  @Benchmark
+  public int serial() throws IOException {
+    return parse(new NumberVectorLabelParser<>(colsep, AbstractParser.QUOTE_CHARS, comment, null, DoubleVector.FACTORY));
+  }
+
+  @Benchmark
+  public int parallel() throws IOException {
+    return parse(new ParallelNumberVectorLabelParser<>(colsep, AbstractParser.QUOTE_CHARS, comment, null, DoubleVector.FACTORY));
+  }
+}
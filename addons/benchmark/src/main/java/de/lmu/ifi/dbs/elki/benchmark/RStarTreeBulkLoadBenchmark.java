@@ -0,0 +1,119 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeIndex;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.BulkSplit;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Benchmark R*-tree construction with each bulk split strategy, and with
+ * incremental insertion ("none") for comparison.
+ * 
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RStarTreeBulkLoadBenchmark {
+  /**
+   * Bulk split strategy, or "none" for incremental insertion.
+   */
+  @Param({ "none", "FileOrder", "OneDimSort", "SpatialSort", "MaxExtension", "SortTileRecursive", "MaxExtensionSortTileRecursive", "AdaptiveSortTileRecursive" })
+  public String bulk;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "100000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "10" })
+  public int dim;
+
+  /**
+   * Page size in bytes.
+   */
+  @Param({ "4096" })
+  public int pagesize;
+
+  /**
+   * Index factory.
+   */
+  private RStarTreeFactory<NumberVector> factory;
+
+  /**
+   * Data relation.
+   */
+  private Relation<NumberVector> rel;
+
+  /**
+   * Prepare the data.
+   * 
+   * @throws ClassNotFoundException for unknown strategies
+   */
+  @Setup
+  public void setup() throws ClassNotFoundException {
+    rel = BenchmarkUtil.getRelation(BenchmarkUtil.makeDatabase(BenchmarkUtil.randomData(size, dim)));
+    ListParameterization config = new ListParameterization();
+    config.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, pagesize);
+    if(!"none".equals(bulk)) {
+      config.addParameter(AbstractRStarTreeFactory.Parameterizer.BULK_SPLIT_ID, Class.forName(BulkSplit.class.getPackage().getName() + "." + bulk + "BulkSplit"));
+    }
+    factory = ClassGenericsUtil.parameterizeOrAbort(RStarTreeFactory.class, config);
+  }
+
+  @Benchmark
+  public RStarTreeIndex<NumberVector> build() {
+    RStarTreeIndex<NumberVector> index = factory.instantiate(rel);
+    index.initialize();
+    return index;
+  }
+}
@@ -35,14 +35,18 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.BlockedEuclideanKNNJoin;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialIndexTree;
@@ -64,7 +68,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 /**
  * Joins in a given spatial database to each object its k-nearest neighbors.
  * This algorithm only supports spatial databases based on a spatial index
- * structure.
+ * structure, except for Euclidean distance on dense vectors, where a
+ * {@link BlockedEuclideanKNNJoin} is used if there is no index.
  * 
  * Since this method compares the MBR of every single leaf with every other
  * leaf, it is essentially quadratic in the number of leaves, which may not be
@@ -76,6 +81,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
  * @param <V> the type of FeatureVector handled by this Algorithm
  * @param <N> the type of node used in the spatial index structure
  * @param <E> the type of entry used in the spatial node
+ * 
+ * @apiviz.uses BlockedEuclideanKNNJoin
  */
 @Title("K-Nearest Neighbor Join")
 @Description("Algorithm to find the k-nearest neighbors of each object in a spatial database")
@@ -114,6 +121,9 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
       throw new IllegalStateException("Distance Function must be an instance of " + SpatialPrimitiveDistanceFunction.class.getName());
     }
     Collection<SpatialIndexTree<N, E>> indexes = ResultUtil.filterResults(database, SpatialIndexTree.class);
+    if(indexes.size() == 0 && EuclideanDistanceFunction.STATIC.equals(getDistanceFunction()) && BlockedEuclideanKNNJoin.isApplicable(relation)) {
+      return runBlocked(relation);
+    }
     if(indexes.size() != 1) {
       throw new AbortException("KNNJoin found " + indexes.size() + " spatial indexes, expected exactly one.");
     }
@@ -215,6 +225,23 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
     return knnLists;
   }
 
+  /**
+   * Compute the kNN join without an index, using a blocked linear scan.
+   * 
+   * @param relation Relation to process
+   * @return result
+   */
+  private WritableDataStore<KNNList> runBlocked(Relation<V> relation) {
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    List<KNNList> lists = new BlockedEuclideanKNNJoin(relation).run(ids, k);
+    WritableDataStore<KNNList> knnLists = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_STATIC, KNNList.class);
+    int i = 0;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+      knnLists.put(iter, lists.get(i));
+    }
+    return knnLists;
+  }
+
   /**
    * Initialize the heaps.
    * 
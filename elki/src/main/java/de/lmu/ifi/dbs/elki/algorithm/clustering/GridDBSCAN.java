@@ -0,0 +1,551 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.ConcurrentUnionFind;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Exact grid-based DBSCAN for low-dimensional data with Euclidean distance.
+ * 
+ * The data is hashed into a grid of cells with side length
+ * {@code epsilon / sqrt(d)}, such that any two points in the same cell are
+ * neighbors. Cells with at least minPts points therefore only contain core
+ * points, without computing any distance. For the remaining points, only the
+ * few neighboring cells need to be scanned, stopping as soon as minPts
+ * neighbors were found. Clusters are formed by connecting neighboring cells
+ * with core points, using a bichromatic check that stops at the first pair of
+ * core points within epsilon.
+ * 
+ * The result is the same as with {@link DBSCAN} using Euclidean distance:
+ * border points are assigned to the cluster that DBSCAN would discover first,
+ * i.e. the cluster containing the earliest core point in database order, and
+ * clusters left with less than minPts members are discarded as noise.
+ * 
+ * The number of neighboring cells grows exponentially with the
+ * dimensionality, so this is intended for 2D and 3D data such as geo
+ * coordinates.
+ * 
+ * Reference:
+ * <p>
+ * A. Gunawan<br />
+ * A faster algorithm for DBSCAN<br />
+ * Master's thesis, Technical University of Eindhoven, 2013
+ * </p>
+ * 
+ * <p>
+ * J. Gan and Y. Tao<br />
+ * DBSCAN Revisited: Mis-Claim, Un-Fixability, and Approximation<br />
+ * In: Proc. ACM SIGMOD International Conference on Management of Data, 2015
+ * </p>
+ * 
+ * @author agent
+ * 
+ * @apiviz.uses ConcurrentUnionFind
+ * 
+ * @param <V> Vector type
+ */
+@Reference(authors = "J. Gan and Y. Tao", //
+title = "DBSCAN Revisited: Mis-Claim, Un-Fixability, and Approximation", //
+booktitle = "Proc. ACM SIGMOD International Conference on Management of Data, 2015", //
+url = "http://dx.doi.org/10.1145/2723372.2737792")
+public class GridDBSCAN<V extends NumberVector> extends AbstractAlgorithm<Clustering<Model>> implements ClusteringAlgorithm<Clustering<Model>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(GridDBSCAN.class);
+
+  /**
+   * Shrink the cells slightly, so that rounding can never put two points
+   * further apart than epsilon into the same cell.
+   */
+  private static final double SHRINK = 1. - 1e-10;
+
+  /**
+   * Cluster number of noise points.
+   */
+  private static final int NOISE = Integer.MAX_VALUE;
+
+  /**
+   * Holds the epsilon radius threshold.
+   */
+  protected double epsilon;
+
+  /**
+   * Holds the minimum cluster size.
+   */
+  protected int minpts;
+
+  /**
+   * Constructor with parameters.
+   * 
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   */
+  public GridDBSCAN(double epsilon, int minpts) {
+    super();
+    this.epsilon = epsilon;
+    this.minpts = minpts;
+  }
+
+  /**
+   * Performs the grid-based DBSCAN algorithm on the given relation.
+   * 
+   * @param relation Data relation
+   * @return Clustering result
+   */
+  public Clustering<Model> run(Relation<V> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final double width = epsilon / Math.sqrt(dim) * SHRINK;
+
+    // Copy the data, and hash every point into its cell.
+    final double[] data = new double[size * dim];
+    final int[] cellof = new int[size];
+    HashMap<CellKey, Integer> cellmap = new HashMap<>();
+    ArrayList<int[]> cellcoords = new ArrayList<>();
+    TIntArrayList cellsizes = new TIntArrayList();
+    {
+      CellKey probe = new CellKey(new int[dim]);
+      DBIDArrayIter it = ids.iter();
+      for(int p = 0, off = 0; p < size; p++, it.advance(), off += dim) {
+        V vec = relation.get(it);
+        for(int d = 0; d < dim; d++) {
+          final double v = vec.doubleValue(d);
+          final double c = Math.floor(v / width);
+          if(!(c >= Integer.MIN_VALUE && c <= Integer.MAX_VALUE)) {
+            throw new AbortException("Grid cell coordinate out of range: epsilon is too small for the data extent, or the data is not finite.");
+          }
+          data[off + d] = v;
+          probe.coords[d] = (int) c;
+        }
+        probe.rehash();
+        Integer cell = cellmap.get(probe);
+        if(cell == null) {
+          cell = cellcoords.size();
+          CellKey key = new CellKey(probe.coords.clone());
+          cellmap.put(key, cell);
+          cellcoords.add(key.coords);
+          cellsizes.add(0);
+        }
+        cellof[p] = cell;
+        cellsizes.set(cell, cellsizes.get(cell) + 1);
+      }
+    }
+    final int numcells = cellcoords.size();
+    // Group the points by cell, ascending in database order within each cell.
+    final int[] start = new int[numcells + 1];
+    for(int c = 0; c < numcells; c++) {
+      start[c + 1] = start[c] + cellsizes.get(c);
+    }
+    final int[] members = new int[size];
+    {
+      int[] fill = Arrays.copyOf(start, numcells);
+      for(int p = 0; p < size; p++) {
+        members[fill[cellof[p]]++] = p;
+      }
+    }
+    final int[][] neighbors = computeNeighborCells(cellmap, cellcoords, dim);
+
+    // Determine the core points.
+    final boolean[] core = new boolean[size];
+    final boolean[] corecell = new boolean[numcells];
+    for(int c = 0; c < numcells; c++) {
+      final int csize = start[c + 1] - start[c];
+      if(csize >= minpts) {
+        // Dense cell: all points are core points.
+        for(int i = start[c]; i < start[c + 1]; i++) {
+          core[members[i]] = true;
+        }
+        corecell[c] = true;
+        continue;
+      }
+      for(int i = start[c]; i < start[c + 1]; i++) {
+        final int p = members[i];
+        int count = csize;
+        search: for(int n : neighbors[c]) {
+          for(int j = start[n]; j < start[n + 1]; j++) {
+            if(isNeighbor(data, dim, p, members[j]) && ++count >= minpts) {
+              break search;
+            }
+          }
+        }
+        if(count >= minpts) {
+          core[p] = true;
+          corecell[c] = true;
+        }
+      }
+    }
+
+    // Connect neighboring cells containing core points.
+    ConcurrentUnionFind uf = new ConcurrentUnionFind(numcells);
+    for(int c = 0; c < numcells; c++) {
+      if(!corecell[c]) {
+        continue;
+      }
+      for(int n : neighbors[c]) {
+        if(n < c || !corecell[n] || uf.isConnected(c, n)) {
+          continue;
+        }
+        search: for(int i = start[c]; i < start[c + 1]; i++) {
+          final int p = members[i];
+          if(!core[p]) {
+            continue;
+          }
+          for(int j = start[n]; j < start[n + 1]; j++) {
+            final int q = members[j];
+            if(!core[q]) {
+              continue;
+            }
+            if(isNeighbor(data, dim, p, q)) {
+              uf.union(c, n);
+              break search;
+            }
+          }
+        }
+      }
+    }
+
+    // Number the clusters by their first core point, as DBSCAN would.
+    final int[] clusterof = new int[numcells];
+    Arrays.fill(clusterof, -1);
+    int numclusters = 0;
+    for(int p = 0; p < size; p++) {
+      if(core[p]) {
+        final int root = uf.find(cellof[p]);
+        if(clusterof[root] < 0) {
+          clusterof[root] = numclusters++;
+        }
+      }
+    }
+    for(int c = 0; c < numcells; c++) {
+      if(corecell[c]) {
+        clusterof[c] = clusterof[uf.find(c)];
+      }
+    }
+
+    // Assign border points to the first cluster, as DBSCAN would.
+    final int[] assign = new int[size];
+    final int[] sizes = new int[numclusters];
+    for(int p = 0; p < size; p++) {
+      assign[p] = core[p] ? clusterof[cellof[p]] : findCluster(data, dim, p, -1, cellof[p], start, members, neighbors, core, corecell, clusterof);
+      if(assign[p] != NOISE) {
+        ++sizes[assign[p]];
+      }
+    }
+    // DBSCAN discards clusters that end up smaller than minPts, because their
+    // border points were claimed earlier. These may then join a later cluster.
+    ArrayList<TIntArrayList> borders = null;
+    for(int k = 0; k < numclusters; k++) {
+      if(sizes[k] >= minpts) {
+        continue;
+      }
+      if(borders == null) {
+        borders = new ArrayList<>(numclusters);
+        for(int i = 0; i < numclusters; i++) {
+          borders.add(new TIntArrayList());
+        }
+        for(int p = 0; p < size; p++) {
+          if(!core[p] && assign[p] != NOISE) {
+            borders.get(assign[p]).add(p);
+          }
+        }
+      }
+      sizes[k] = -1;
+      TIntArrayList kborders = borders.get(k);
+      for(int i = 0; i < kborders.size(); i++) {
+        final int p = kborders.get(i);
+        final int next = findCluster(data, dim, p, k, cellof[p], start, members, neighbors, core, corecell, clusterof);
+        assign[p] = next;
+        if(next != NOISE) {
+          ++sizes[next];
+          borders.get(next).add(p);
+        }
+      }
+    }
+
+    // Build the clusters.
+    ArrayList<ArrayModifiableDBIDs> clusters = new ArrayList<>(numclusters);
+    for(int i = 0; i < numclusters; i++) {
+      clusters.add(sizes[i] > 0 ? DBIDUtil.newArray(sizes[i]) : null);
+    }
+    ArrayModifiableDBIDs noise = DBIDUtil.newArray();
+    DBIDArrayIter it = ids.iter();
+    for(int p = 0; p < size; p++, it.advance()) {
+      final int k = assign[p];
+      (k != NOISE && sizes[k] > 0 ? clusters.get(k) : noise).add(it);
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(GridDBSCAN.class.getName() + ".cells", numcells));
+    }
+
+    Clustering<Model> result = new Clustering<>("Grid DBSCAN Clustering", "grid-dbscan-clustering");
+    for(ArrayModifiableDBIDs cluster : clusters) {
+      if(cluster == null) {
+        continue;
+      }
+      result.addToplevelCluster(new Cluster<Model>(cluster, ClusterModel.CLUSTER));
+    }
+    result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+    return result;
+  }
+
+  /**
+   * Find the first cluster after a given cluster that a border point belongs
+   * to.
+   * 
+   * @param data Data array
+   * @param dim Dimensionality
+   * @param p Border point
+   * @param after Only consider clusters after this cluster
+   * @param c Cell of the border point
+   * @param start Start of the members of each cell
+   * @param members Points, grouped by cell
+   * @param neighbors Neighbor cells
+   * @param core Core point flags
+   * @param corecell Cells with core points
+   * @param clusterof Cluster of each cell with core points
+   * @return Cluster number, or {@link #NOISE}
+   */
+  private int findCluster(double[] data, int dim, int p, int after, int c, int[] start, int[] members, int[][] neighbors, boolean[] core, boolean[] corecell, int[] clusterof) {
+    // Every core point in the same cell is a neighbor.
+    int best = corecell[c] && clusterof[c] > after ? clusterof[c] : NOISE;
+    for(int n : neighbors[c]) {
+      if(!corecell[n] || clusterof[n] <= after || clusterof[n] >= best) {
+        continue;
+      }
+      for(int j = start[n]; j < start[n + 1]; j++) {
+        final int q = members[j];
+        if(core[q] && isNeighbor(data, dim, p, q)) {
+          best = clusterof[n];
+          break;
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Test whether two points are within the epsilon radius.
+   * 
+   * @param data Data array
+   * @param dim Dimensionality
+   * @param p First point
+   * @param q Second point
+   * @return {@code true} when the Euclidean distance is at most epsilon
+   */
+  private boolean isNeighbor(double[] data, int dim, int p, int q) {
+    double sum = 0.;
+    for(int d = 0, po = p * dim, qo = q * dim; d < dim; d++) {
+      final double delta = data[po + d] - data[qo + d];
+      sum += delta * delta;
+    }
+    return Math.sqrt(sum) <= epsilon;
+  }
+
+  /**
+   * Find the non-empty cells that may contain neighbors of each cell.
+   * 
+   * @param cellmap Map from cell coordinates to cell numbers
+   * @param cellcoords Coordinates of each cell
+   * @param dim Dimensionality
+   * @return Neighbor cells of each cell, excluding the cell itself
+   */
+  private static int[][] computeNeighborCells(HashMap<CellKey, Integer> cellmap, ArrayList<int[]> cellcoords, int dim) {
+    // Cells at offset o have a minimum distance of at most epsilon iff
+    // sum_d max(|o_d| - 1, 0)^2 <= d, in units of the cell width.
+    final int reach = (int) Math.floor(Math.sqrt(dim)) + 1;
+    TIntArrayList offsets = new TIntArrayList();
+    int[] o = new int[dim];
+    Arrays.fill(o, -reach);
+    while(true) {
+      int mindist = 0;
+      boolean self = true;
+      for(int d = 0; d < dim; d++) {
+        final int a = Math.abs(o[d]) - 1;
+        mindist += a > 0 ? a * a : 0;
+        self &= o[d] == 0;
+      }
+      if(!self && mindist <= dim) {
+        offsets.add(o);
+      }
+      // Advance to the next offset vector.
+      int d = 0;
+      while(d < dim && o[d] == reach) {
+        o[d++] = -reach;
+      }
+      if(d == dim) {
+        break;
+      }
+      ++o[d];
+    }
+    final int numoff = offsets.size() / dim;
+    final int[][] neighbors = new int[cellcoords.size()][];
+    CellKey probe = new CellKey(new int[dim]);
+    TIntArrayList buf = new TIntArrayList();
+    for(int c = 0; c < neighbors.length; c++) {
+      final int[] cc = cellcoords.get(c);
+      buf.resetQuick();
+      for(int i = 0, off = 0; i < numoff; i++, off += dim) {
+        for(int d = 0; d < dim; d++) {
+          probe.coords[d] = cc[d] + offsets.get(off + d);
+        }
+        probe.rehash();
+        Integer n = cellmap.get(probe);
+        if(n != null) {
+          buf.add(n);
+        }
+      }
+      neighbors[c] = buf.toArray();
+    }
+    return neighbors;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Grid cell coordinates, as hash key.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  private static class CellKey {
+    /**
+     * Integer cell coordinates.
+     */
+    final int[] coords;
+
+    /**
+     * Hash code.
+     */
+    int hash;
+
+    /**
+     * Constructor.
+     * 
+     * @param coords Cell coordinates
+     */
+    CellKey(int[] coords) {
+      this.coords = coords;
+      rehash();
+    }
+
+    /**
+     * Update the hash code after modifying the coordinates.
+     */
+    void rehash() {
+      hash = Arrays.hashCode(coords);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof CellKey && Arrays.equals(coords, ((CellKey) obj).coords);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <V> Vector type
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Holds the epsilon radius threshold.
+     */
+    protected double epsilon;
+
+    /**
+     * Holds the minimum cluster size.
+     */
+    protected int minpts = 0;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      DoubleParameter epsilonP = new DoubleParameter(DBSCAN.Parameterizer.EPSILON_ID);
+      epsilonP.addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      if(config.grab(epsilonP)) {
+        epsilon = epsilonP.getValue();
+      }
+
+      IntParameter minptsP = new IntParameter(DBSCAN.Parameterizer.MINPTS_ID);
+      minptsP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(minptsP)) {
+        minpts = minptsP.getValue();
+      }
+    }
+
+    @Override
+    protected GridDBSCAN<V> makeInstance() {
+      return new GridDBSCAN<>(epsilon, minpts);
+    }
+  }
+}
@@ -26,6 +26,8 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan;
 import gnu.trove.list.array.TIntArrayList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
@@ -41,14 +43,19 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.ConcurrentUnionFind;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
@@ -73,6 +80,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * @apiviz.landmark
  * 
  * @apiviz.has Instance
+ * @apiviz.has ParallelInstance
  * @apiviz.composedOf CorePredicate
  * @apiviz.composedOf NeighborPredicate
  */
@@ -101,6 +109,11 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
    */
   boolean coremodel = false;
 
+  /**
+   * Compute the neighborhoods in parallel, and use union-find to form clusters.
+   */
+  boolean parallel = false;
+
   /**
    * Constructor for parameterized algorithm.
    * 
@@ -109,16 +122,32 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
    * @param coremodel Keep track of core points.
    */
   public GeneralizedDBSCAN(NeighborPredicate npred, CorePredicate corepred, boolean coremodel) {
+    this(npred, corepred, coremodel, false);
+  }
+
+  /**
+   * Constructor for parameterized algorithm.
+   * 
+   * @param npred Neighbor predicate.
+   * @param corepred Core point predicate.
+   * @param coremodel Keep track of core points.
+   * @param parallel Use the parallel union-find variant.
+   */
+  public GeneralizedDBSCAN(NeighborPredicate npred, CorePredicate corepred, boolean coremodel, boolean parallel) {
     super();
     this.npred = npred;
     this.corepred = corepred;
     this.coremodel = coremodel;
+    this.parallel = parallel;
   }
 
   @Override
   public Clustering<Model> run(Database database) {
     for(SimpleTypeInformation<?> t : npred.getOutputType()) {
       if(corepred.acceptsType(t)) {
+        if(parallel) {
+          return new ParallelInstance<>(npred.instantiate(database, t), corepred.instantiate(database, t), coremodel).run();
+        }
         return new Instance<>(npred.instantiate(database, t), corepred.instantiate(database, t), coremodel).run();
       }
     }
@@ -318,6 +347,209 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
     }
   }
 
+  /**
+   * Parallel instance for a particular data set.
+   * 
+   * The neighborhoods are computed in batches, with the queries of each batch
+   * distributed across all available cores. Clusters are then formed by joining
+   * neighboring core points in a lock-free union-find structure, instead of
+   * expanding one cluster at a time. Each neighborhood is computed exactly
+   * once, and only one batch of neighborhoods is kept in memory.
+   * 
+   * As required by the original GDBSCAN definition, the neighbor predicate must
+   * be symmetric. Border points are assigned to the cluster of the first core
+   * point (in data order) that has them as neighbor. Core points are always
+   * clustered identically to the serial {@link Instance}, and the result does
+   * not depend on the number of threads.
+   * 
+   * The neighbor predicate and core predicate instances must allow concurrent
+   * use, as is the case for the range queries of the in-memory indexes and the
+   * linear scan.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.composedOf CorePredicate.Instance
+   * @apiviz.composedOf NeighborPredicate.Instance
+   * @apiviz.uses ConcurrentUnionFind
+   */
+  public static class ParallelInstance<T> {
+    /**
+     * Number of neighborhoods computed per batch.
+     */
+    static final int BATCHSIZE = 1 << 14;
+
+    /**
+     * Minimum number of queries per thread.
+     */
+    static final int MIN_PARTITION = 64;
+
+    /**
+     * Neighborhood not yet computed.
+     */
+    static final byte UNPROCESSED = 0;
+
+    /**
+     * Non-core point.
+     */
+    static final byte NONCORE = 1;
+
+    /**
+     * Core point.
+     */
+    static final byte CORE = 2;
+
+    /**
+     * The neighborhood predicate
+     */
+    final NeighborPredicate.Instance<T> npred;
+
+    /**
+     * The core object property
+     */
+    final CorePredicate.Instance<? super T> corepred;
+
+    /**
+     * Track which objects are "core" objects.
+     */
+    boolean coremodel = false;
+
+    /**
+     * Full Constructor
+     * 
+     * @param npred Neighborhood predicate
+     * @param corepred Core object predicate
+     * @param coremodel Keep track of core points.
+     */
+    public ParallelInstance(NeighborPredicate.Instance<T> npred, CorePredicate.Instance<? super T> corepred, boolean coremodel) {
+      super();
+      this.npred = npred;
+      this.corepred = corepred;
+      this.coremodel = coremodel;
+    }
+
+    /**
+     * Run the parallel GDBSCAN algorithm.
+     * 
+     * @return Clustering result
+     */
+    public Clustering<Model> run() {
+      final ArrayDBIDs ids = DBIDUtil.ensureArray(npred.getIDs());
+      final int size = ids.size();
+      final FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Generalized DBSCAN Clustering", size, LOG) : null;
+      // Map neighbors to their positions.
+      final WritableIntegerDataStore positions = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        positions.putInt(it, it.getOffset());
+      }
+      final byte[] state = new byte[size];
+      // First core point (position) having each point as neighbor.
+      final AtomicIntegerArray border = new AtomicIntegerArray(size);
+      for(int i = 0; i < size; i++) {
+        border.lazySet(i, Integer.MAX_VALUE);
+      }
+      final ConcurrentUnionFind uf = new ConcurrentUnionFind(size);
+      final Object[] neighbors = new Object[Math.min(size, BATCHSIZE)];
+
+      for(int bstart = 0; bstart < size; bstart += BATCHSIZE) {
+        final int bs = bstart, bsize = Math.min(BATCHSIZE, size - bstart);
+        // Phase 1: compute the neighborhoods and core properties.
+        ParallelExecutor.runPartitions(bsize, MIN_PARTITION, new ParallelExecutor.PartitionTask() {
+          @Override
+          public void process(int start, int end) {
+            DBIDArrayIter it = ids.iter();
+            for(int i = start; i < end; i++) {
+              it.seek(bs + i);
+              final T n = npred.getNeighbors(it);
+              neighbors[i] = n;
+              state[bs + i] = corepred.isCorePoint(it, n) ? CORE : NONCORE;
+            }
+          }
+        });
+        // Phase 2: link core points to their neighbors.
+        ParallelExecutor.runPartitions(bsize, MIN_PARTITION, new ParallelExecutor.PartitionTask() {
+          @Override
+          public void process(int start, int end) {
+            ArrayModifiableDBIDs buf = DBIDUtil.newArray();
+            for(int i = start; i < end; i++) {
+              final int p = bs + i;
+              if(state[p] == CORE) {
+                buf.clear();
+                @SuppressWarnings("unchecked")
+                final T n = (T) neighbors[i];
+                npred.addDBIDs(buf, n);
+                for(DBIDIter it = buf.iter(); it.valid(); it.advance()) {
+                  final int q = positions.intValue(it);
+                  if(q < 0 || q == p) {
+                    continue;
+                  }
+                  if(state[q] == CORE) {
+                    // By symmetry, later core points link themselves.
+                    if(q < p) {
+                      uf.union(p, q);
+                    }
+                  }
+                  else {
+                    // Unprocessed points may still become core points.
+                    int prev = border.get(q);
+                    while(p < prev && !border.compareAndSet(q, prev, p)) {
+                      prev = border.get(q);
+                    }
+                  }
+                }
+              }
+              neighbors[i] = null;
+            }
+          }
+        });
+        if(progress != null) {
+          progress.setProcessed(bs + bsize, LOG);
+        }
+      }
+      LOG.ensureCompleted(progress);
+      positions.destroy();
+
+      // Transform the disjoint sets into a clustering result:
+      final int[] clusterof = new int[size];
+      Arrays.fill(clusterof, -1);
+      ArrayModifiableDBIDs noise = DBIDUtil.newArray();
+      ArrayList<ArrayModifiableDBIDs> clusterlists = new ArrayList<>();
+      ArrayList<ArrayModifiableDBIDs> corelists = coremodel ? new ArrayList<ArrayModifiableDBIDs>() : null;
+      DBIDArrayIter it = ids.iter();
+      for(int i = 0; i < size; i++, it.advance()) {
+        final boolean core = state[i] == CORE;
+        final int link = core ? i : border.get(i);
+        if(link == Integer.MAX_VALUE) {
+          noise.add(it);
+          continue;
+        }
+        final int root = uf.find(link);
+        int c = clusterof[root];
+        if(c < 0) {
+          c = clusterof[root] = clusterlists.size();
+          clusterlists.add(DBIDUtil.newArray());
+          if(corelists != null) {
+            corelists.add(DBIDUtil.newArray());
+          }
+        }
+        clusterlists.get(c).add(it);
+        if(corelists != null && core) {
+          corelists.get(c).add(it);
+        }
+      }
+
+      Clustering<Model> result = new Clustering<>("GDBSCAN", "gdbscan-clustering");
+      result.addToplevelCluster(new Cluster<Model>(noise, true, corelists != null ? new CoreObjectsModel(DBIDUtil.newArray(0)) : ClusterModel.CLUSTER));
+      for(int c = 0; c < clusterlists.size(); c++) {
+        Model m = corelists != null ? new CoreObjectsModel(corelists.get(c)) : ClusterModel.CLUSTER;
+        result.addToplevelCluster(new Cluster<>(clusterlists.get(c), false, m));
+      }
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(GeneralizedDBSCAN.class.getName() + ".clusters", clusterlists.size()));
+      }
+      return result;
+    }
+  }
+
   /**
    * Parameterization class
    * 
@@ -341,6 +573,11 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
      */
     boolean coremodel = false;
 
+    /**
+     * Use the parallel variant.
+     */
+    boolean parallel = false;
+
     /**
      * Parameter for neighborhood predicate.
      */
@@ -356,6 +593,15 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
      */
     public static final OptionID COREMODEL_ID = new OptionID("gdbscan.core-model", "Use a model that keeps track of core points. Needs more memory.");
 
+    /**
+     * Flag to compute the neighborhoods in parallel, and form clusters using
+     * union-find.
+     * <p>
+     * Key: {@code -gdbscan.parallel}
+     * </p>
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("gdbscan.parallel", "Compute the neighborhoods in parallel batches, and join core points using union-find. Requires a symmetric neighbor predicate.");
+
     @Override
     protected void makeOptions(Parameterization config) {
       // Neighborhood predicate
@@ -374,11 +620,16 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
       if(config.grab(coremodelOpt)) {
         coremodel = coremodelOpt.isTrue();
       }
+
+      Flag parallelOpt = new Flag(PARALLEL_ID);
+      if(config.grab(parallelOpt)) {
+        parallel = parallelOpt.isTrue();
+      }
     }
 
     @Override
     protected GeneralizedDBSCAN makeInstance() {
-      return new GeneralizedDBSCAN(npred, corepred, coremodel);
+      return new GeneralizedDBSCAN(npred, corepred, coremodel, parallel);
     }
   }
 }
@@ -37,6 +37,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
@@ -44,6 +45,12 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.math.geometry.PrimsMinimumSpanningTree;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KDistanceProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
+import de.lmu.ifi.dbs.elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedDouble;
+import de.lmu.ifi.dbs.elki.parallel.variables.SharedObject;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
@@ -110,6 +117,29 @@ public abstract class AbstractHDBSCAN<O, R extends Result> extends AbstractDista
     return coredists;
   }
 
+  /**
+   * Compute the core distances for all objects, on all available CPUs.
+   * 
+   * @param ids Objects
+   * @param knnQ kNN query
+   * @param minPts Minimum neighborhood size
+   * @return Data store with core distances
+   */
+  protected WritableDoubleDataStore computeCoreDistsParallel(DBIDs ids, KNNQuery<O> knnQ, int minPts) {
+    final WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    KNNProcessor<O> knnm = new KNNProcessor<>(minPts, knnQ);
+    SharedObject<KNNList> knnv = new SharedObject<>();
+    knnm.connectKNNOutput(knnv);
+    KDistanceProcessor kdistm = new KDistanceProcessor(minPts);
+    SharedDouble kdistv = new SharedDouble();
+    kdistm.connectKNNInput(knnv);
+    kdistm.connectOutput(kdistv);
+    WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(coredists);
+    storem.connectInput(kdistv);
+    ParallelExecutor.run(ids, knnm, kdistm, storem);
+    return coredists;
+  }
+
   /**
    * Class for processing the HDBSCAN G_mpts graph.
    * 
@@ -167,6 +197,60 @@ public abstract class AbstractHDBSCAN<O, R extends Result> extends AbstractDista
     }
   };
 
+  /**
+   * Thread-safe variant of {@link HDBSCANAdapter}, for use with
+   * {@link PrimsMinimumSpanningTree#processDenseParallel}.
+   *
+   * @author agent
+   */
+  protected static class ConcurrentHDBSCANAdapter implements PrimsMinimumSpanningTree.Adapter<ArrayDBIDs> {
+    /**
+     * IDs to process.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Core distances, by position.
+     */
+    private double[] coredists;
+
+    /**
+     * Distance query for exact distances.
+     */
+    private DistanceQuery<?> distq;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Ids to process.
+     * @param coredists Core distances
+     * @param distq Distance query
+     */
+    public ConcurrentHDBSCANAdapter(ArrayDBIDs ids, DoubleDataStore coredists, DistanceQuery<?> distq) {
+      this.ids = ids;
+      this.coredists = new double[ids.size()];
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        this.coredists[it.getOffset()] = coredists.doubleValue(it);
+      }
+      this.distq = distq;
+    }
+
+    @Override
+    public double distance(ArrayDBIDs data, int ip, int iq) {
+      // Fresh variables, as the adapter is shared by all threads.
+      DBIDVar p = DBIDUtil.newVar(), q = DBIDUtil.newVar();
+      ids.assignVar(ip, p);
+      ids.assignVar(iq, q);
+      return MathUtil.max(coredists[ip], coredists[iq], distq.distance(p, q));
+    }
+
+    @Override
+    public int size(ArrayDBIDs data) {
+      assert (data == ids);
+      return ids.size();
+    }
+  }
+
   /**
    * Class for collecting the minimum spanning tree edges into a heap.
    * 
@@ -300,7 +384,8 @@ public abstract class AbstractHDBSCAN<O, R extends Result> extends AbstractDista
    */
   public abstract static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O> {
     /**
-     * Option ID for linkage parameter.
+     * Option ID for linkage parameter. With minPts 1, the result is the
+     * single-linkage hierarchy.
      */
     public static final OptionID MIN_PTS_ID = new OptionID("hdbscan.minPts", "Threshold for minimum number of points in the epsilon-neighborhood of a point (including this point).");
 
@@ -314,7 +399,7 @@ public abstract class AbstractHDBSCAN<O, R extends Result> extends AbstractDista
       super.makeOptions(config); // distanceFunction
 
       IntParameter minptsP = new IntParameter(MIN_PTS_ID) //
-      .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
       if(config.grab(minptsP)) {
         minPts = minptsP.getValue();
       }
@@ -0,0 +1,353 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Hierarchical agglomerative clustering with cached row minimums, as proposed
+ * by Anderberg.
+ *
+ * For every row of the distance matrix, the minimum and its position are
+ * cached, so finding the closest pair only takes O(n) instead of O(n^2).
+ * After a merge, a row only needs to be rescanned if its cached minimum
+ * referred to one of the merged clusters and got larger. This usually yields
+ * close to O(n^2) runtime, works with every {@link LinkageMethod} (including
+ * the non-reducible centroid and median linkages) and produces exactly the
+ * same result as {@link NaiveAgglomerativeHierarchicalClustering}. For
+ * reducible linkages, {@link NNChain} guarantees O(n^2) runtime.
+ *
+ * Reference:
+ * <p>
+ * M. R. Anderberg<br />
+ * Hierarchical Clustering Methods<br />
+ * Cluster Analysis for Applications, Academic Press, 1973
+ * </p>
+ *
+ * @author agent
+ *
+ * @apiviz.composedOf LinkageMethod
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "M. R. Anderberg", //
+title = "Hierarchical Clustering Methods", //
+booktitle = "Cluster Analysis for Applications, Academic Press")
+public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(AnderbergHierarchicalClustering.class);
+
+  /**
+   * Current linkage method in use.
+   */
+  LinkageMethod linkage = WardLinkageMethod.STATIC;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   */
+  public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    super(distanceFunction);
+    this.linkage = linkage;
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    if(size > 0x10000) {
+      throw new AbortException("This implementation does not scale to data sets larger than " + 0x10000 + " instances (~17 GB RAM), which results in an integer overflow.");
+    }
+    if(SingleLinkageMethod.class.isInstance(linkage)) {
+      LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
+    }
+
+    double[] scratch = initializeDistanceMatrix(ids, dq, linkage);
+
+    // Initialize space for result:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    for(; ix.valid(); ix.advance()) {
+      pi.put(ix, ix);
+    }
+
+    // Cluster sizes; 0 marks clusters that have been merged already.
+    int[] csize = new int[size];
+    for(int i = 0; i < size; i++) {
+      csize[i] = 1;
+    }
+    // Cached minimum of each row (lower triangle only), and its position.
+    double[] bestd = new double[size];
+    int[] besti = new int[size];
+    for(int x = 0; x < size; x++) {
+      findRowMinimum(scratch, csize, x, bestd, besti);
+    }
+
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+    for(int i = 1; i < size; i++) {
+      // Find the closest pair. Ties are resolved as in the naive algorithm.
+      double mindist = Double.POSITIVE_INFINITY;
+      int x = -1;
+      for(int j = 1; j < size; j++) {
+        if(csize[j] > 0 && bestd[j] <= mindist) {
+          mindist = bestd[j];
+          x = j;
+        }
+      }
+      assert (x >= 0);
+      final int y = besti[x];
+      assert (y >= 0 && y < x && csize[y] > 0);
+      ix.seek(x);
+      iy.seek(y);
+      if(LOG.isDebuggingFine()) {
+        LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy));
+      }
+      // Perform merge in data structure: x -> y
+      lambda.put(ix, mindist);
+      pi.put(ix, iy);
+      updateMatrix(scratch, csize, x, y, mindist, linkage);
+      bestd[x] = Double.POSITIVE_INFINITY;
+      besti[x] = -1;
+      updateCache(scratch, csize, x, y, bestd, besti);
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+
+    return new PointerHierarchyRepresentationResult(ids, pi, lambda);
+  }
+
+  /**
+   * Compute the initial (lower triangular) distance matrix.
+   *
+   * Ward's method uses variances, so unless squared Euclidean distance is used
+   * already, the distances will be squared.
+   *
+   * @param ids Object ids
+   * @param dq Distance query
+   * @param linkage Linkage method
+   * @return Distance matrix
+   */
+  protected static <O> double[] initializeDistanceMatrix(ArrayDBIDs ids, DistanceQuery<O> dq, LinkageMethod linkage) {
+    double[] scratch = new double[triangleSize(ids.size())];
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    // Position counter - must agree with triangleSize!
+    int pos = 0;
+    boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(dq.getDistanceFunction()));
+    for(ix.seek(0); ix.valid(); ix.advance()) {
+      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
+        scratch[pos] = dq.distance(ix, iy);
+        // Ward uses variances -- i.e. squared values
+        if(square) {
+          scratch[pos] *= scratch[pos];
+        }
+        pos++;
+      }
+    }
+    return scratch;
+  }
+
+  /**
+   * Merge cluster x into cluster y (with y &lt; x), and update the distance
+   * matrix and cluster sizes using the Lance-Williams formula.
+   *
+   * @param scratch Distance matrix
+   * @param csize Cluster sizes, 0 for merged clusters
+   * @param x First cluster, will be removed
+   * @param y Second cluster, will be kept
+   * @param mindist Distance of x and y
+   * @param linkage Linkage method
+   */
+  protected static void updateMatrix(double[] scratch, int[] csize, int x, int y, double mindist, LinkageMethod linkage) {
+    final int size = csize.length;
+    final int sizex = csize[x], sizey = csize[y];
+    final int xbase = triangleSize(x), ybase = triangleSize(y);
+    // Write to (y, j), with j < y
+    for(int j = 0; j < y; j++) {
+      if(csize[j] > 0) {
+        scratch[ybase + j] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[ybase + j], csize[j], mindist);
+      }
+    }
+    // Write to (j, y), with y < j < x
+    for(int j = y + 1; j < x; j++) {
+      if(csize[j] > 0) {
+        final int jbase = triangleSize(j);
+        scratch[jbase + y] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jbase + y], csize[j], mindist);
+      }
+    }
+    // Write to (j, y), with y < x < j
+    for(int j = x + 1; j < size; j++) {
+      if(csize[j] > 0) {
+        final int jbase = triangleSize(j);
+        scratch[jbase + y] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jbase + y], csize[j], mindist);
+      }
+    }
+    csize[y] = sizex + sizey;
+    csize[x] = 0;
+  }
+
+  /**
+   * Update the cached row minimums after merging x into y.
+   *
+   * @param scratch Distance matrix
+   * @param csize Cluster sizes, 0 for merged clusters
+   * @param x Removed cluster
+   * @param y Updated cluster
+   * @param bestd Cached row minimums
+   * @param besti Positions of row minimums
+   */
+  private static void updateCache(double[] scratch, int[] csize, int x, int y, double[] bestd, int[] besti) {
+    final int size = csize.length;
+    // The row of y has changed entirely.
+    findRowMinimum(scratch, csize, y, bestd, besti);
+    for(int j = y + 1; j < size; j++) {
+      if(j == x || csize[j] == 0) {
+        continue;
+      }
+      // Only the value in column y has changed, column x was removed.
+      if(besti[j] == x || besti[j] == y) {
+        findRowMinimum(scratch, csize, j, bestd, besti);
+        continue;
+      }
+      final double d = scratch[triangleSize(j) + y];
+      // The naive algorithm prefers the largest column on ties.
+      if(d < bestd[j] || (d == bestd[j] && y > besti[j])) {
+        bestd[j] = d;
+        besti[j] = y;
+      }
+    }
+  }
+
+  /**
+   * Rescan a row of the distance matrix for its minimum.
+   *
+   * @param scratch Distance matrix
+   * @param csize Cluster sizes, 0 for merged clusters
+   * @param x Row
+   * @param bestd Cached row minimums
+   * @param besti Positions of row minimums
+   */
+  private static void findRowMinimum(double[] scratch, int[] csize, int x, double[] bestd, int[] besti) {
+    final int xbase = triangleSize(x);
+    double mindist = Double.POSITIVE_INFINITY;
+    int y = -1;
+    for(int j = 0; j < x; j++) {
+      if(csize[j] > 0 && scratch[xbase + j] <= mindist) {
+        mindist = scratch[xbase + j];
+        y = j;
+      }
+    }
+    bestd[x] = mindist;
+    besti[x] = y;
+  }
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  protected static int triangleSize(int x) {
+    return (x * (x - 1)) >>> 1;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    // The input relation must match our distance function:
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O> {
+    /**
+     * Current linkage in use.
+     */
+    protected LinkageMethod linkage;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      // We don't call super, because we want a different default distance.
+      ObjectParameter<DistanceFunction<O>> distanceFunctionP = makeParameterDistanceFunction(SquaredEuclideanDistanceFunction.class, DistanceFunction.class);
+      if(config.grab(distanceFunctionP)) {
+        distanceFunction = distanceFunctionP.instantiateClass(config);
+      }
+
+      ObjectParameter<LinkageMethod> linkageP = new ObjectParameter<>(NaiveAgglomerativeHierarchicalClustering.Parameterizer.LINKAGE_ID, LinkageMethod.class);
+      linkageP.setDefaultValue(WardLinkageMethod.class);
+      if(config.grab(linkageP)) {
+        linkage = linkageP.instantiateClass(config);
+      }
+    }
+
+    @Override
+    protected AnderbergHierarchicalClustering<O> makeInstance() {
+      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage);
+    }
+  }
+}
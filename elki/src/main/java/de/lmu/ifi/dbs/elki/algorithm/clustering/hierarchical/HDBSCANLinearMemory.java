@@ -43,6 +43,9 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * Linear memory implementation of HDBSCAN clustering.
@@ -59,6 +62,11 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
  * clusterings (the compact pointer representation introduced in {@link #SLINK})
  * we have to perform a postprocessing conversion.
  * 
+ * With the parallel option, the core distances are computed in parallel, and
+ * the candidate edges of Prim's algorithm are updated on all available CPUs
+ * (at the cost of one synchronization per edge). With minPts 1, the result is
+ * the single-linkage hierarchy, computed in linear memory.
+ * 
  * This implementation does <em>not</em> include the cluster extraction
  * discussed as Step 4. This functionality should however already be provided by
  * {@link ExtractFlatClusteringFromHierarchy}. For this reason, we also do
@@ -86,6 +94,11 @@ public class HDBSCANLinearMemory<O> extends AbstractHDBSCAN<O, PointerDensityHie
    */
   private static final Logging LOG = Logging.getLogger(HDBSCANLinearMemory.class);
 
+  /**
+   * Use all available CPUs.
+   */
+  protected boolean parallel = false;
+
   /**
    * Constructor.
    * 
@@ -93,7 +106,19 @@ public class HDBSCANLinearMemory<O> extends AbstractHDBSCAN<O, PointerDensityHie
    * @param minPts Minimum number of points for density
    */
   public HDBSCANLinearMemory(DistanceFunction<? super O> distanceFunction, int minPts) {
+    this(distanceFunction, minPts, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function
+   * @param minPts Minimum number of points for density
+   * @param parallel Use all available CPUs
+   */
+  public HDBSCANLinearMemory(DistanceFunction<? super O> distanceFunction, int minPts, boolean parallel) {
     super(distanceFunction, minPts);
+    this.parallel = parallel;
   }
 
   /**
@@ -111,15 +136,22 @@ public class HDBSCANLinearMemory<O> extends AbstractHDBSCAN<O, PointerDensityHie
 
     // 1. Compute the core distances
     // minPts + 1: ignore query point.
-    final WritableDoubleDataStore coredists = computeCoreDists(ids, knnQ, minPts);
+    final WritableDoubleDataStore coredists = parallel ? computeCoreDistsParallel(ids, knnQ, minPts) : computeCoreDists(ids, knnQ, minPts);
 
     final int numedges = ids.size() - 1;
     DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
     // 2. Build spanning tree.
     FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges).", numedges, LOG) : null;
-    PrimsMinimumSpanningTree.processDense(ids,//
-        new HDBSCANAdapter(ids, coredists, distQ), //
-        new HeapMSTCollector(heap, mprog, LOG));
+    if(parallel) {
+      PrimsMinimumSpanningTree.processDenseParallel(ids,//
+          new ConcurrentHDBSCANAdapter(ids, coredists, distQ), //
+          new HeapMSTCollector(heap, mprog, LOG));
+    }
+    else {
+      PrimsMinimumSpanningTree.processDense(ids,//
+          new HDBSCANAdapter(ids, coredists, distQ), //
+          new HeapMSTCollector(heap, mprog, LOG));
+    }
     LOG.ensureCompleted(mprog);
     // Storage for pointer representation:
     WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
@@ -149,9 +181,31 @@ public class HDBSCANLinearMemory<O> extends AbstractHDBSCAN<O, PointerDensityHie
    * @param <O> Object type
    */
   public static class Parameterizer<O> extends AbstractHDBSCAN.Parameterizer<O> {
+    /**
+     * Flag to use all available CPUs.
+     * <p>
+     * Key: {@code -hdbscan.parallel}
+     * </p>
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("hdbscan.parallel", "Compute the core distances and the minimum spanning tree on all available CPUs.");
+
+    /**
+     * Use all available CPUs.
+     */
+    protected boolean parallel = false;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      Flag parallelF = new Flag(PARALLEL_ID);
+      if(config.grab(parallelF)) {
+        parallel = parallelF.isTrue();
+      }
+    }
+
     @Override
     protected HDBSCANLinearMemory<O> makeInstance() {
-      return new HDBSCANLinearMemory<>(distanceFunction, minPts);
+      return new HDBSCANLinearMemory<>(distanceFunction, minPts, parallel);
     }
   }
 }
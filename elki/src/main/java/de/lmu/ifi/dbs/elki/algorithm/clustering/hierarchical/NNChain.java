@@ -0,0 +1,376 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Hierarchical agglomerative clustering using the nearest-neighbor chain
+ * algorithm.
+ *
+ * Starting from an arbitrary cluster, the chain follows nearest neighbors
+ * until it reaches a pair of reciprocal nearest neighbors, which are merged.
+ * For reducible linkages, merging does not invalidate the remainder of the
+ * chain, which yields O(n^2) runtime and O(n^2) memory for the distance
+ * matrix. The matrix is stored in chunks with long offsets, so the number of
+ * instances is only limited by the available memory (8 bytes per pair of
+ * instances, i.e. about 40 GB for 100000 instances).
+ *
+ * The result is the same as with
+ * {@link NaiveAgglomerativeHierarchicalClustering} (except for the order of
+ * merges at tied distances). Centroid and median linkage are not reducible,
+ * and may produce inversions in the dendrogram here; use
+ * {@link AnderbergHierarchicalClustering} for these.
+ *
+ * Reference:
+ * <p>
+ * F. Murtagh<br />
+ * A survey of recent advances in hierarchical clustering algorithms<br />
+ * The Computer Journal 26.4 (1983): 354-359
+ * </p>
+ *
+ * See also:
+ * <p>
+ * D. Müllner<br />
+ * Modern hierarchical, agglomerative clustering algorithms<br />
+ * arXiv preprint arXiv:1109.2378
+ * </p>
+ *
+ * @author agent
+ *
+ * @apiviz.composedOf LinkageMethod
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "F. Murtagh", //
+title = "A survey of recent advances in hierarchical clustering algorithms", //
+booktitle = "The Computer Journal 26.4", //
+url = "http://dx.doi.org/10.1093/comjnl/26.4.354")
+public class NNChain<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(NNChain.class);
+
+  /**
+   * Number of bits for the position within a chunk of the distance matrix.
+   */
+  private static final int CHUNK_BITS = 26;
+
+  /**
+   * Mask for the position within a chunk.
+   */
+  private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+  /**
+   * Current linkage method in use.
+   */
+  LinkageMethod linkage = WardLinkageMethod.STATIC;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   */
+  public NNChain(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    super(distanceFunction);
+    this.linkage = linkage;
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    if(SingleLinkageMethod.class.isInstance(linkage)) {
+      LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
+    }
+    if(CentroidLinkageMethod.class.isInstance(linkage) || MedianLinkageMethod.class.isInstance(linkage)) {
+      LOG.warning("Centroid and median linkage are not reducible. The nearest-neighbor chain algorithm may produce a different hierarchy than the naive algorithm.");
+    }
+
+    double[][] matrix = initializeDistanceMatrix(ids, dq, linkage);
+
+    // Initialize space for result:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    for(; ix.valid(); ix.advance()) {
+      pi.put(ix, ix);
+    }
+
+    // Cluster sizes; 0 marks clusters that have been merged already.
+    int[] csize = new int[size];
+    for(int i = 0; i < size; i++) {
+      csize[i] = 1;
+    }
+    // The nearest-neighbor chain, as a stack of cluster indexes.
+    int[] chain = new int[size];
+    int chainlen = 0, first = 0;
+
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+    for(int k = 1; k < size; k++) {
+      int a, b;
+      double mindist;
+      while(true) {
+        if(chainlen == 0) {
+          // Start a new chain with any remaining cluster.
+          while(csize[first] == 0) {
+            first++;
+          }
+          chain[chainlen++] = first;
+        }
+        a = chain[chainlen - 1];
+        // Prefer the previous chain element on ties, to avoid cycles.
+        b = chainlen > 1 ? chain[chainlen - 2] : -1;
+        mindist = b >= 0 ? get(matrix, offset(a, b)) : Double.POSITIVE_INFINITY;
+        final long abase = triangleSize(a);
+        for(int j = 0; j < a; j++) {
+          if(csize[j] > 0) {
+            final double d = get(matrix, abase + j);
+            if(d < mindist) {
+              mindist = d;
+              b = j;
+            }
+          }
+        }
+        for(int j = a + 1; j < size; j++) {
+          if(csize[j] > 0) {
+            final double d = get(matrix, triangleSize(j) + a);
+            if(d < mindist) {
+              mindist = d;
+              b = j;
+            }
+          }
+        }
+        assert (b >= 0);
+        if(chainlen > 1 && b == chain[chainlen - 2]) {
+          chainlen -= 2; // Reciprocal nearest neighbors.
+          break;
+        }
+        chain[chainlen++] = b;
+      }
+      // Merge larger index into smaller index, as the naive algorithm does.
+      final int x = a > b ? a : b, y = a > b ? b : a;
+      ix.seek(x);
+      iy.seek(y);
+      if(LOG.isDebuggingFine()) {
+        LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy));
+      }
+      lambda.put(ix, mindist);
+      pi.put(ix, iy);
+      updateMatrix(matrix, csize, x, y, mindist, linkage);
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+
+    return new PointerHierarchyRepresentationResult(ids, pi, lambda);
+  }
+
+  /**
+   * Compute the initial distance matrix, as chunks of a triangular matrix.
+   *
+   * @param ids Object IDs
+   * @param dq Distance query
+   * @param linkage Linkage method
+   * @return Distance matrix chunks
+   */
+  private static <O> double[][] initializeDistanceMatrix(ArrayDBIDs ids, DistanceQuery<O> dq, LinkageMethod linkage) {
+    final long len = triangleSize(ids.size());
+    double[][] matrix = new double[(int) ((len + CHUNK_MASK) >>> CHUNK_BITS)][];
+    for(int i = 0; i < matrix.length; i++) {
+      matrix[i] = new double[(int) Math.min(len - (((long) i) << CHUNK_BITS), 1L << CHUNK_BITS)];
+    }
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    // Position counter - must agree with triangleSize!
+    long pos = 0;
+    boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(dq.getDistanceFunction()));
+    for(ix.seek(0); ix.valid(); ix.advance()) {
+      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
+        final double d = dq.distance(ix, iy);
+        // Ward uses variances -- i.e. squared values
+        set(matrix, pos, square ? d * d : d);
+        pos++;
+      }
+    }
+    return matrix;
+  }
+
+  /**
+   * Merge cluster x into cluster y (with y &lt; x), and update the distance
+   * matrix and cluster sizes using the Lance-Williams formula.
+   *
+   * @param matrix Distance matrix chunks
+   * @param csize Cluster sizes, 0 for merged clusters
+   * @param x First cluster, will be removed
+   * @param y Second cluster, will be kept
+   * @param mindist Distance of x and y
+   * @param linkage Linkage method
+   */
+  private static void updateMatrix(double[][] matrix, int[] csize, int x, int y, double mindist, LinkageMethod linkage) {
+    final int size = csize.length;
+    final int sizex = csize[x], sizey = csize[y];
+    final long xbase = triangleSize(x), ybase = triangleSize(y);
+    // Write to (y, j), with j < y
+    for(int j = 0; j < y; j++) {
+      if(csize[j] > 0) {
+        set(matrix, ybase + j, linkage.combine(sizex, get(matrix, xbase + j), sizey, get(matrix, ybase + j), csize[j], mindist));
+      }
+    }
+    // Write to (j, y), with y < j < x
+    for(int j = y + 1; j < x; j++) {
+      if(csize[j] > 0) {
+        final long jbase = triangleSize(j);
+        set(matrix, jbase + y, linkage.combine(sizex, get(matrix, xbase + j), sizey, get(matrix, jbase + y), csize[j], mindist));
+      }
+    }
+    // Write to (j, y), with y < x < j
+    for(int j = x + 1; j < size; j++) {
+      if(csize[j] > 0) {
+        final long jbase = triangleSize(j);
+        set(matrix, jbase + y, linkage.combine(sizex, get(matrix, jbase + x), sizey, get(matrix, jbase + y), csize[j], mindist));
+      }
+    }
+    csize[y] = sizex + sizey;
+    csize[x] = 0;
+  }
+
+  /**
+   * Get a value from the distance matrix.
+   *
+   * @param matrix Distance matrix chunks
+   * @param off Offset
+   * @return Value
+   */
+  private static double get(double[][] matrix, long off) {
+    return matrix[(int) (off >>> CHUNK_BITS)][(int) (off & CHUNK_MASK)];
+  }
+
+  /**
+   * Set a value in the distance matrix.
+   *
+   * @param matrix Distance matrix chunks
+   * @param off Offset
+   * @param val Value
+   */
+  private static void set(double[][] matrix, long off, double val) {
+    matrix[(int) (off >>> CHUNK_BITS)][(int) (off & CHUNK_MASK)] = val;
+  }
+
+  /**
+   * Offset of the distance of two (different) clusters in the triangular
+   * matrix.
+   *
+   * @param a First cluster
+   * @param b Second cluster
+   * @return Offset
+   */
+  private static long offset(int a, int b) {
+    return a > b ? triangleSize(a) + b : triangleSize(b) + a;
+  }
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  private static long triangleSize(int x) {
+    return (x * (long) (x - 1)) >>> 1;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    // The input relation must match our distance function:
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O> {
+    /**
+     * Current linkage in use.
+     */
+    protected LinkageMethod linkage;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      // We don't call super, because we want a different default distance.
+      ObjectParameter<DistanceFunction<O>> distanceFunctionP = makeParameterDistanceFunction(SquaredEuclideanDistanceFunction.class, DistanceFunction.class);
+      if(config.grab(distanceFunctionP)) {
+        distanceFunction = distanceFunctionP.instantiateClass(config);
+      }
+
+      ObjectParameter<LinkageMethod> linkageP = new ObjectParameter<>(NaiveAgglomerativeHierarchicalClustering.Parameterizer.LINKAGE_ID, LinkageMethod.class);
+      linkageP.setDefaultValue(WardLinkageMethod.class);
+      if(config.grab(linkageP)) {
+        linkage = linkageP.instantiateClass(config);
+      }
+    }
+
+    @Override
+    protected NNChain<O> makeInstance() {
+      return new NNChain<>(distanceFunction, linkage);
+    }
+  }
+}
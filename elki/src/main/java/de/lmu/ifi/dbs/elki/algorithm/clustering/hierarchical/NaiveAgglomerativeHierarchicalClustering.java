@@ -55,7 +55,9 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * cluster.
  * 
  * This is the naive O(n^3) algorithm. See {@link SLINK} for a much faster
- * algorithm (however, only for single-linkage).
+ * algorithm (however, only for single-linkage), and {@link NNChain} and
+ * {@link AnderbergHierarchicalClustering} for faster algorithms producing the
+ * same result.
  * 
  * Reference for the unified concept:
  * <p>
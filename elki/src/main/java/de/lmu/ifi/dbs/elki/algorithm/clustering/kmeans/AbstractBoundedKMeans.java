@@ -0,0 +1,385 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Abstract base class for k-means variants that avoid distance computations
+ * using bounds and the triangle inequality.
+ * 
+ * This class contains the iteration logic, the incremental update of the
+ * cluster sums when objects are reassigned, the computation of the center
+ * movement and the counting of distance computations. Subclasses only need to
+ * implement the (initial) assignment step in an {@link Instance}.
+ * 
+ * All bounds are maintained on the metric distance, i.e. when squared
+ * Euclidean distance is used, the square root is taken.
+ * 
+ * @author agent
+ * 
+ * @apiviz.has KMeansModel
+ * @apiviz.has Instance
+ * 
+ * @param <V> vector datatype
+ */
+public abstract class AbstractBoundedKMeans<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   */
+  public AbstractBoundedKMeans(PrimitiveDistanceFunction<? super NumberVector> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    final Logging log = getLogger();
+    // Choose initial means
+    List<Vector> means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction(), Vector.FACTORY);
+    Instance instance = instantiate(relation, means);
+
+    IndefiniteProgress prog = log.isVerbose() ? new IndefiniteProgress("K-Means iteration", log) : null;
+    LongStatistic varstat = log.isStatistics() ? new LongStatistic(this.getClass().getName() + ".reassignments") : null;
+    for(int iteration = 0; maxiter <= 0 || iteration < maxiter; iteration++) {
+      log.incrementProcessed(prog);
+      int changed = (iteration == 0) ? instance.initialAssignment() : instance.reassignment();
+      if(varstat != null) {
+        varstat.setLong(changed);
+        log.statistics(varstat);
+      }
+      // Stop if no cluster assignment changed.
+      if(changed == 0) {
+        break;
+      }
+      instance.updateMeans();
+    }
+    log.setCompleted(prog);
+    if(log.isStatistics()) {
+      log.statistics(new LongStatistic(this.getClass().getName() + ".distance-computations", instance.diststat));
+    }
+    return instance.buildResult();
+  }
+
+  /**
+   * Create the per-run state of the algorithm.
+   * 
+   * @param relation Data relation
+   * @param means Initial means
+   * @return Instance
+   */
+  protected abstract Instance instantiate(Relation<V> relation, List<Vector> means);
+
+  /**
+   * State of a single k-means run.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  protected abstract class Instance {
+    /**
+     * Data relation.
+     */
+    protected final Relation<V> relation;
+
+    /**
+     * Current cluster means.
+     */
+    protected final List<Vector> means;
+
+    /**
+     * Sum of the vectors assigned to each cluster.
+     */
+    protected final List<Vector> sums;
+
+    /**
+     * Cluster members.
+     */
+    protected final List<ModifiableDBIDs> clusters;
+
+    /**
+     * Cluster assignment.
+     */
+    protected final WritableIntegerDataStore assignment;
+
+    /**
+     * Distance each mean moved in the last update.
+     */
+    protected final double[] move;
+
+    /**
+     * Largest and second largest movement, and the cluster that moved most.
+     */
+    protected double maxmove, secondmove;
+
+    /**
+     * Cluster that moved most.
+     */
+    protected int maxmoveidx = -1;
+
+    /**
+     * Distance function.
+     */
+    protected final PrimitiveDistanceFunction<? super NumberVector> df;
+
+    /**
+     * Take the square root of distances.
+     */
+    protected final boolean issquared;
+
+    /**
+     * Number of distance computations.
+     */
+    protected long diststat = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param means Initial means
+     */
+    public Instance(Relation<V> relation, List<Vector> means) {
+      this.relation = relation;
+      this.means = means;
+      this.df = getDistanceFunction();
+      this.issquared = (df instanceof SquaredEuclideanDistanceFunction);
+      final int dim = means.get(0).getDimensionality();
+      this.sums = new ArrayList<>(k);
+      this.clusters = new ArrayList<>(k);
+      for(int i = 0; i < k; i++) {
+        sums.add(new Vector(dim));
+        clusters.add(DBIDUtil.newHashSet((int) (relation.size() * 2. / k)));
+      }
+      this.assignment = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+      this.move = new double[k];
+    }
+
+    /**
+     * Perform the initial assignment of all objects.
+     * 
+     * @return Number of objects assigned
+     */
+    protected abstract int initialAssignment();
+
+    /**
+     * Reassign objects where the bounds indicate that this may be necessary.
+     * The movement of the means since the last iteration is available in
+     * {@link #move}.
+     * 
+     * @return Number of objects reassigned
+     */
+    protected abstract int reassignment();
+
+    /**
+     * Compute the (metric) distance, and count distance computations.
+     * 
+     * @param a First vector
+     * @param b Second vector
+     * @return Distance
+     */
+    protected double distance(NumberVector a, NumberVector b) {
+      ++diststat;
+      final double d = df.distance(a, b);
+      return issquared ? Math.sqrt(d) : d;
+    }
+
+    /**
+     * Assign an object to a cluster for the first time.
+     * 
+     * @param it Object reference
+     * @param fv Object vector
+     * @param c Cluster number
+     */
+    protected void assign(DBIDRef it, V fv, int c) {
+      clusters.get(c).add(it);
+      assignment.putInt(it, c);
+      double[] sum = sums.get(c).getArrayRef();
+      for(int d = 0; d < sum.length; d++) {
+        sum[d] += fv.doubleValue(d);
+      }
+    }
+
+    /**
+     * Move an object to a different cluster, and update the cluster sums
+     * incrementally.
+     * 
+     * @param it Object reference
+     * @param fv Object vector
+     * @param from Previous cluster
+     * @param to New cluster
+     */
+    protected void reassign(DBIDRef it, V fv, int from, int to) {
+      assignment.putInt(it, to);
+      clusters.get(to).add(it);
+      clusters.get(from).remove(it);
+      double[] newsum = sums.get(to).getArrayRef();
+      double[] oldsum = sums.get(from).getArrayRef();
+      for(int d = 0; d < newsum.length; d++) {
+        final double v = fv.doubleValue(d);
+        newsum[d] += v;
+        oldsum[d] -= v;
+      }
+    }
+
+    /**
+     * Recompute the means from the cluster sums, and record their movement.
+     */
+    protected void updateMeans() {
+      maxmove = 0.;
+      secondmove = 0.;
+      maxmoveidx = -1;
+      for(int i = 0; i < k; i++) {
+        final int s = clusters.get(i).size();
+        if(s == 0) {
+          move[i] = 0.;
+          continue;
+        }
+        Vector newmean = sums.get(i).times(1. / s);
+        final double d = distance(means.get(i), newmean);
+        means.get(i).set(newmean);
+        move[i] = d;
+        if(d > maxmove) {
+          secondmove = maxmove;
+          maxmove = d;
+          maxmoveidx = i;
+        }
+        else if(d > secondmove) {
+          secondmove = d;
+        }
+      }
+    }
+
+    /**
+     * Maximum movement of all means except one.
+     * 
+     * @param c Cluster to ignore
+     * @return Maximum movement of the other means
+     */
+    protected double maxMoveExcept(int c) {
+      return (c == maxmoveidx) ? secondmove : maxmove;
+    }
+
+    /**
+     * Compute the pairwise distances of all means, and half the distance of
+     * each mean to its nearest other mean.
+     * 
+     * @param cdist Output distance matrix
+     * @param sep Output separation
+     */
+    protected void computeCenterDistances(double[][] cdist, double[] sep) {
+      Arrays.fill(sep, Double.POSITIVE_INFINITY);
+      for(int i = 1; i < k; i++) {
+        Vector m1 = means.get(i);
+        for(int j = 0; j < i; j++) {
+          final double d = distance(m1, means.get(j));
+          cdist[i][j] = cdist[j][i] = d;
+          sep[i] = (d < sep[i]) ? d : sep[i];
+          sep[j] = (d < sep[j]) ? d : sep[j];
+        }
+      }
+      for(int i = 0; i < k; i++) {
+        sep[i] *= .5;
+      }
+    }
+
+    /**
+     * Build the final clustering result.
+     * 
+     * @return Clustering
+     */
+    protected Clustering<KMeansModel> buildResult() {
+      Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+      for(int i = 0; i < clusters.size(); i++) {
+        DBIDs ids = clusters.get(i);
+        if(ids.size() == 0) {
+          continue;
+        }
+        double varsum = 0;
+        Vector mean = means.get(i);
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+          varsum += df.distance(mean, relation.get(it));
+        }
+        KMeansModel model = new KMeansModel(mean, varsum);
+        result.addToplevelCluster(new Cluster<>(ids, model));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public abstract static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    @Override
+    protected void getParameterDistanceFunction(Parameterization config) {
+      super.getParameterDistanceFunction(config);
+      if(distanceFunction instanceof SquaredEuclideanDistanceFunction) {
+        return; // Proper choice.
+      }
+      if(distanceFunction != null && !distanceFunction.isMetric()) {
+        getLogger().warning("This k-means variant requires a metric distance, and k-means should only be used with squared Euclidean distance!");
+      }
+    }
+
+    @Override
+    abstract protected AbstractBoundedKMeans<V> makeInstance();
+  }
+}
@@ -0,0 +1,488 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+
+/**
+ * CLARANS: a method for clustering objects for spatial data mining, a
+ * randomized search for k-medoids.
+ *
+ * Starting from random medoids, random swaps of a medoid with a non-medoid are
+ * tried, and performed whenever they improve the result. If no improvement is
+ * found in {@code maxneighbor} attempts, the search is restarted, and the best
+ * of {@code numlocal} local optima is returned.
+ *
+ * Each attempted swap costs O(n) distance computations, using the distances to
+ * the nearest and second nearest medoid that are maintained incrementally. No
+ * vector operations are used, so this can be used with arbitrary distance
+ * functions, and with a precomputed distance matrix.
+ *
+ * Reference:
+ * <p>
+ * R. T. Ng, J. Han<br />
+ * CLARANS: a method for clustering objects for spatial data mining<br />
+ * IEEE Transactions on Knowledge and Data Engineering 14(5)
+ * </p>
+ *
+ * @author agent
+ *
+ * @param <V> Object type
+ */
+@Reference(authors = "R. T. Ng, J. Han", //
+title = "CLARANS: a method for clustering objects for spatial data mining", //
+booktitle = "IEEE Transactions on Knowledge and Data Engineering 14(5)", //
+url = "http://dx.doi.org/10.1109/TKDE.2002.1033770")
+public class CLARANS<V> extends AbstractDistanceBasedAlgorithm<V, Clustering<MedoidModel>> implements ClusteringAlgorithm<Clustering<MedoidModel>> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(CLARANS.class);
+
+  /**
+   * Number of clusters to find.
+   */
+  int k;
+
+  /**
+   * Number of local searches (restarts).
+   */
+  int numlocal;
+
+  /**
+   * Maximum number of neighbors to explore. If less than 1, it is relative to
+   * the number of possible swaps.
+   */
+  double maxneighbor;
+
+  /**
+   * Random factory for initialization.
+   */
+  RandomFactory random;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param k Number of clusters to find
+   * @param numlocal Number of local searches
+   * @param maxneighbor Maximum number of neighbors to explore
+   * @param random Random generator
+   */
+  public CLARANS(DistanceFunction<? super V> distanceFunction, int k, int numlocal, double maxneighbor, RandomFactory random) {
+    super(distanceFunction);
+    this.k = k;
+    this.numlocal = numlocal;
+    this.maxneighbor = maxneighbor;
+    this.random = random;
+  }
+
+  /**
+   * Run CLARANS clustering.
+   *
+   * @param database Database
+   * @param relation relation to use
+   * @return result
+   */
+  public Clustering<MedoidModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("CLARANS Clustering", "clarans-clustering");
+    }
+    if(relation.size() < k) {
+      throw new AbortException("k must be less than the number of objects.");
+    }
+    DistanceQuery<V> distQ = database.getDistanceQuery(relation, getDistanceFunction());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int n = ids.size();
+    // Number of swaps to try before considering a solution a local optimum.
+    final int maxneigh = (maxneighbor < 1) ? (int) Math.ceil(maxneighbor * k * (n - k)) : (int) maxneighbor;
+    Random rnd = random.getSingleThreadedRandom();
+
+    Assignment<V> best = null, current = new Assignment<>(distQ, ids, k);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("CLARANS local searches", numlocal, LOG) : null;
+    for(int i = 0; i < numlocal; i++) {
+      current.initialize(rnd);
+      for(int j = 0; j < maxneigh;) {
+        final int m = rnd.nextInt(k), c = rnd.nextInt(n);
+        if(current.isMedoid(c)) {
+          j++;
+          continue;
+        }
+        if(current.computeChange(m, c) < 0.) {
+          current.performSwap(m, c);
+          j = 0;
+        }
+        else {
+          j++;
+        }
+      }
+      if(LOG.isDebugging()) {
+        LOG.debug("Local search " + i + " cost: " + current.cost);
+      }
+      if(best == null || current.cost < best.cost) {
+        Assignment<V> tmp = best != null ? best : new Assignment<>(distQ, ids, k);
+        best = current;
+        current = tmp;
+      }
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    LOG.statistics(new DoubleStatistic(CLARANS.class.getName() + ".cost", best.cost));
+
+    // Wrap result
+    ModifiableDBIDs[] clusters = new ModifiableDBIDs[k];
+    for(int i = 0; i < k; i++) {
+      clusters[i] = DBIDUtil.newArray(n / k);
+    }
+    DBIDArrayIter it = ids.iter();
+    for(; it.valid(); it.advance()) {
+      clusters[best.assignment[it.getOffset()]].add(it);
+    }
+    Clustering<MedoidModel> result = new Clustering<>("CLARANS Clustering", "clarans-clustering");
+    for(int i = 0; i < k; i++) {
+      MedoidModel model = new MedoidModel(DBIDUtil.deref(it.seek(best.medoids[i])));
+      result.addToplevelCluster(new Cluster<>(clusters[i], model));
+    }
+    return result;
+  }
+
+  /**
+   * Current medoids and assignment of objects, with the distances to the
+   * nearest and second nearest medoid.
+   *
+   * @author agent
+   *
+   * @param <V> Object type
+   */
+  private static class Assignment<V> {
+    /**
+     * Distance query.
+     */
+    final DistanceQuery<V> distQ;
+
+    /**
+     * Object ids.
+     */
+    final ArrayDBIDs ids;
+
+    /**
+     * Iterators for distance computations.
+     */
+    final DBIDArrayIter iter, miter;
+
+    /**
+     * Positions of the medoids.
+     */
+    final int[] medoids;
+
+    /**
+     * Nearest and second nearest medoid of each object.
+     */
+    final int[] assignment, secondid;
+
+    /**
+     * Distance to the nearest and second nearest medoid.
+     */
+    final double[] nearest, second;
+
+    /**
+     * Distances to the last swap candidate.
+     */
+    final double[] dcand;
+
+    /**
+     * Total deviation.
+     */
+    double cost;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids Object ids
+     * @param k Number of medoids
+     */
+    Assignment(DistanceQuery<V> distQ, ArrayDBIDs ids, int k) {
+      this.distQ = distQ;
+      this.ids = ids;
+      this.iter = ids.iter();
+      this.miter = ids.iter();
+      final int n = ids.size();
+      this.medoids = new int[k];
+      this.assignment = new int[n];
+      this.secondid = new int[n];
+      this.nearest = new double[n];
+      this.second = new double[n];
+      this.dcand = new double[n];
+    }
+
+    /**
+     * Choose random medoids, and assign all objects.
+     *
+     * @param rnd Random generator
+     */
+    void initialize(Random rnd) {
+      final int n = ids.size();
+      // Partial Fisher-Yates shuffle, to draw k distinct positions.
+      int[] perm = new int[n];
+      for(int i = 0; i < n; i++) {
+        perm[i] = i;
+      }
+      for(int i = 0; i < medoids.length; i++) {
+        int j = i + rnd.nextInt(n - i);
+        medoids[i] = perm[j];
+        perm[j] = perm[i];
+      }
+      cost = 0.;
+      for(iter.seek(0); iter.valid(); iter.advance()) {
+        cost += rescan(iter.getOffset());
+      }
+    }
+
+    /**
+     * Test if an object is currently a medoid.
+     *
+     * @param c Object position
+     * @return {@code true} if a medoid
+     */
+    boolean isMedoid(int c) {
+      return nearest[c] == 0. && medoids[assignment[c]] == c;
+    }
+
+    /**
+     * Compute the change in cost when replacing medoid m with candidate c.
+     *
+     * The distances to the candidate are kept for {@link #performSwap}.
+     *
+     * @param m Medoid index
+     * @param c Candidate position
+     * @return Change in cost
+     */
+    double computeChange(int m, int c) {
+      miter.seek(c);
+      double change = 0.;
+      for(iter.seek(0); iter.valid(); iter.advance()) {
+        final int o = iter.getOffset();
+        final double d = dcand[o] = (o == c) ? 0. : distQ.distance(iter, miter);
+        if(assignment[o] == m) {
+          // The second nearest is never the removed medoid.
+          change += Math.min(d, second[o]) - nearest[o];
+        }
+        else if(d < nearest[o]) {
+          change += d - nearest[o];
+        }
+      }
+      return change;
+    }
+
+    /**
+     * Replace medoid m with candidate c, using the distances computed by
+     * {@link #computeChange}.
+     *
+     * @param m Medoid index
+     * @param c Candidate position
+     */
+    void performSwap(int m, int c) {
+      medoids[m] = c;
+      cost = 0.;
+      for(int o = 0; o < dcand.length; o++) {
+        final double d = dcand[o];
+        if(assignment[o] == m) {
+          if(d <= second[o]) {
+            nearest[o] = d;
+          }
+          else {
+            rescan(o);
+          }
+        }
+        else if(secondid[o] == m) {
+          if(d < nearest[o]) {
+            second[o] = nearest[o];
+            secondid[o] = assignment[o];
+            nearest[o] = d;
+            assignment[o] = m;
+          }
+          else {
+            rescan(o);
+          }
+        }
+        else if(d < nearest[o]) {
+          second[o] = nearest[o];
+          secondid[o] = assignment[o];
+          nearest[o] = d;
+          assignment[o] = m;
+        }
+        else if(d < second[o]) {
+          second[o] = d;
+          secondid[o] = m;
+        }
+        cost += nearest[o];
+      }
+    }
+
+    /**
+     * Find the nearest and second nearest medoid of an object.
+     *
+     * @param o Object position
+     * @return Distance to the nearest medoid
+     */
+    double rescan(int o) {
+      iter.seek(o);
+      double mindist = Double.POSITIVE_INFINITY, mindist2 = Double.POSITIVE_INFINITY;
+      int minIndex = 0, minIndex2 = -1;
+      for(int i = 0; i < medoids.length; i++) {
+        final double dist = (medoids[i] == o) ? 0. : distQ.distance(iter, miter.seek(medoids[i]));
+        if(dist < mindist) {
+          minIndex2 = minIndex;
+          mindist2 = mindist;
+          minIndex = i;
+          mindist = dist;
+        }
+        else if(dist < mindist2) {
+          minIndex2 = i;
+          mindist2 = dist;
+        }
+      }
+      assignment[o] = minIndex;
+      secondid[o] = minIndex2;
+      nearest[o] = mindist;
+      second[o] = mindist2;
+      return mindist;
+    }
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V> extends AbstractDistanceBasedAlgorithm.Parameterizer<V> {
+    /**
+     * The number of restarts to run.
+     */
+    public static final OptionID NUMLOCAL_ID = new OptionID("clarans.numlocal", "Number of samples (restarts) to run.");
+
+    /**
+     * The number of neighbors to explore.
+     */
+    public static final OptionID NEIGHBORS_ID = new OptionID("clarans.maxneighbor", "Number of neighbors to check, relative to the number of possible swaps if less than 1.");
+
+    /**
+     * Random generator.
+     */
+    public static final OptionID RANDOM_ID = new OptionID("clarans.random", "Random generator seed.");
+
+    /**
+     * Number of clusters to find.
+     */
+    int k;
+
+    /**
+     * Number of local searches (restarts).
+     */
+    int numlocal;
+
+    /**
+     * Maximum number of neighbors to explore.
+     */
+    double maxneighbor;
+
+    /**
+     * Random factory for initialization.
+     */
+    RandomFactory random;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter kP = new IntParameter(KMeans.K_ID) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(kP)) {
+        k = kP.intValue();
+      }
+
+      IntParameter numlocalP = new IntParameter(NUMLOCAL_ID, 2) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(numlocalP)) {
+        numlocal = numlocalP.intValue();
+      }
+
+      DoubleParameter maxneighborP = new DoubleParameter(NEIGHBORS_ID, 0.0125) //
+      .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      if(config.grab(maxneighborP)) {
+        maxneighbor = maxneighborP.doubleValue();
+      }
+
+      RandomParameter randomP = new RandomParameter(RANDOM_ID);
+      if(config.grab(randomP)) {
+        random = randomP.getValue();
+      }
+    }
+
+    @Override
+    protected CLARANS<V> makeInstance() {
+      return new CLARANS<>(distanceFunction, k, numlocal, maxneighbor, random);
+    }
+  }
+}
@@ -0,0 +1,324 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMedoidsInitialization;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.SetDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * PAM with an accelerated swap phase (FastPAM1).
+ *
+ * Instead of computing the change in loss for every pair of a medoid and a
+ * non-medoid separately, all k possible medoid replacements of a candidate are
+ * evaluated in a single pass over the data, using the cached distances to the
+ * nearest and second nearest medoid. This removes a factor of k from the swap
+ * phase, and the candidates are evaluated on all available CPUs. In every
+ * iteration, the best of all swaps is performed, as in the original PAM.
+ *
+ * Since only distance queries are used, this works with arbitrary distance
+ * functions, and benefits from a precomputed distance matrix.
+ *
+ * Reference:
+ * <p>
+ * E. Schubert, P. J. Rousseeuw<br />
+ * Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS
+ * Algorithms<br />
+ * Similarity Search and Applications, SISAP 2019
+ * </p>
+ *
+ * @author agent
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "E. Schubert, P. J. Rousseeuw", //
+title = "Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS Algorithms", //
+booktitle = "Similarity Search and Applications, SISAP 2019", //
+url = "http://dx.doi.org/10.1007/978-3-030-32047-8_16")
+public class FastPAM<V> extends KMedoidsPAM<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(FastPAM.class);
+
+  /**
+   * Minimum number of candidates per thread.
+   */
+  private static final int MIN_PARTITION = 64;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   */
+  public FastPAM(DistanceFunction<? super V> distanceFunction, int k, int maxiter, KMedoidsInitialization<V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  protected void runPAMOptimization(DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, List<ModifiableDBIDs> clusters) {
+    final ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size();
+    // Nearest medoid, and distances to nearest and second nearest medoid.
+    final int[] assignment = new int[size];
+    final double[] nearest = new double[size], second = new double[size];
+    double cost = assignToNearest(distQ, aids, medoids, assignment, nearest, second);
+
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("FastPAM iteration", LOG) : null;
+    DBIDArrayIter it = aids.iter();
+    int iteration = 0;
+    while(maxiter <= 0 || iteration < maxiter) {
+      iteration++;
+      LOG.incrementProcessed(prog);
+      SwapSearch<V> search = new SwapSearch<>(distQ, aids, DBIDUtil.newHashSet(medoids), assignment, nearest, second, k);
+      ParallelExecutor.runPartitions(size, MIN_PARTITION, search);
+      if(LOG.isDebugging()) {
+        LOG.debug("Best cost change: " + search.bestchange);
+      }
+      if(!(search.bestchange < 0.)) {
+        break;
+      }
+      final int m = search.bestmedoid;
+      ArrayModifiableDBIDs prev = DBIDUtil.newArray(medoids);
+      medoids.set(m, it.seek(search.bestcandidate));
+      double ncost = assignToNearest(distQ, aids, medoids, assignment, nearest, second);
+      // Guard against rounding errors in the accumulated change.
+      if(!(ncost < cost)) {
+        medoids.set(m, prev.iter().seek(m));
+        cost = assignToNearest(distQ, aids, medoids, assignment, nearest, second);
+        break;
+      }
+      cost = ncost;
+    }
+    LOG.setCompleted(prog);
+    LOG.statistics(new LongStatistic(FastPAM.class.getName() + ".iterations", iteration));
+    LOG.statistics(new DoubleStatistic(FastPAM.class.getName() + ".cost", cost));
+
+    for(it.seek(0); it.valid(); it.advance()) {
+      clusters.get(assignment[it.getOffset()]).add(it);
+    }
+  }
+
+  /**
+   * Assign each object to the nearest medoid, and remember the distances to
+   * the nearest and second nearest medoid.
+   *
+   * @param distQ Distance query
+   * @param ids Object ids
+   * @param medoids Current medoids
+   * @param assignment Output: nearest medoid
+   * @param nearest Output: distance to the nearest medoid
+   * @param second Output: distance to the second nearest medoid
+   * @return Total deviation
+   */
+  protected static <V> double assignToNearest(final DistanceQuery<V> distQ, final ArrayDBIDs ids, final ArrayDBIDs medoids, final int[] assignment, final double[] nearest, final double[] second) {
+    ParallelExecutor.runPartitions(ids.size(), MIN_PARTITION, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        DBIDArrayIter iter = ids.iter(), miter = medoids.iter();
+        for(int j = start; j < end; j++) {
+          iter.seek(j);
+          double mindist = Double.POSITIVE_INFINITY, mindist2 = Double.POSITIVE_INFINITY;
+          int minIndex = 0;
+          for(miter.seek(0); miter.valid(); miter.advance()) {
+            final double dist = distQ.distance(iter, miter);
+            if(dist < mindist) {
+              minIndex = miter.getOffset();
+              mindist2 = mindist;
+              mindist = dist;
+            }
+            else if(dist < mindist2) {
+              mindist2 = dist;
+            }
+          }
+          assignment[j] = minIndex;
+          nearest[j] = mindist;
+          second[j] = mindist2;
+        }
+      }
+    });
+    double cost = 0.;
+    for(int j = 0; j < nearest.length; j++) {
+      cost += nearest[j];
+    }
+    return cost;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Find the best swap, for a partition of the candidates.
+   *
+   * @author agent
+   *
+   * @param <V> Object type
+   */
+  private static class SwapSearch<V> implements ParallelExecutor.PartitionTask {
+    /**
+     * Distance query.
+     */
+    private final DistanceQuery<V> distQ;
+
+    /**
+     * Object ids.
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Current medoids.
+     */
+    private final SetDBIDs medoids;
+
+    /**
+     * Nearest medoid of each object.
+     */
+    private final int[] assignment;
+
+    /**
+     * Distances to the nearest and second nearest medoids.
+     */
+    private final double[] nearest, second;
+
+    /**
+     * Number of medoids.
+     */
+    private final int k;
+
+    /**
+     * Best change in cost found.
+     */
+    double bestchange = Double.POSITIVE_INFINITY;
+
+    /**
+     * Medoid to replace, and position of the replacement.
+     */
+    int bestmedoid = -1, bestcandidate = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids Object ids
+     * @param medoids Current medoids
+     * @param assignment Nearest medoid of each object
+     * @param nearest Distance to the nearest medoid
+     * @param second Distance to the second nearest medoid
+     * @param k Number of medoids
+     */
+    SwapSearch(DistanceQuery<V> distQ, ArrayDBIDs ids, SetDBIDs medoids, int[] assignment, double[] nearest, double[] second, int k) {
+      this.distQ = distQ;
+      this.ids = ids;
+      this.medoids = medoids;
+      this.assignment = assignment;
+      this.nearest = nearest;
+      this.second = second;
+      this.k = k;
+    }
+
+    @Override
+    public void process(int start, int end) {
+      DBIDArrayIter cand = ids.iter(), iter = ids.iter();
+      // Change in cost when removing each medoid (excluding acc).
+      final double[] delta = new double[k];
+      double lbest = Double.POSITIVE_INFINITY;
+      int lmedoid = -1, lcandidate = -1;
+      for(int c = start; c < end; c++) {
+        cand.seek(c);
+        if(medoids.contains(cand)) {
+          continue;
+        }
+        Arrays.fill(delta, 0.);
+        // Change in cost shared by all medoids.
+        double acc = 0.;
+        for(iter.seek(0); iter.valid(); iter.advance()) {
+          final int o = iter.getOffset();
+          final double dn = nearest[o];
+          final double d = (o == c) ? 0. : distQ.distance(iter, cand);
+          if(d < dn) {
+            // Moves to the candidate, no matter which medoid is removed.
+            acc += d - dn;
+          }
+          else {
+            // Only affected if its nearest medoid is removed.
+            delta[assignment[o]] += Math.min(d, second[o]) - dn;
+          }
+        }
+        for(int i = 0; i < k; i++) {
+          final double change = delta[i] + acc;
+          if(change < lbest) {
+            lbest = change;
+            lmedoid = i;
+            lcandidate = c;
+          }
+        }
+      }
+      if(lcandidate >= 0) {
+        synchronized(this) {
+          // On ties, prefer the first candidate, for deterministic results.
+          if(lbest < bestchange || (lbest == bestchange && lcandidate < bestcandidate)) {
+            bestchange = lbest;
+            bestmedoid = lmedoid;
+            bestcandidate = lcandidate;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author agent
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V> extends KMedoidsPAM.Parameterizer<V> {
+    @Override
+    protected FastPAM<V> makeInstance() {
+      return new FastPAM<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+}
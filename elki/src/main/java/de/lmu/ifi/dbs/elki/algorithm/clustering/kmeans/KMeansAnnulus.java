@@ -0,0 +1,306 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Drake's Annulus k-means algorithm.
+ * 
+ * Uses Hamerly's bounds, but when these fail, only the means within an
+ * annulus around the origin are searched: by the triangle inequality, a mean
+ * can only be closer than r if its distance to the origin differs from the
+ * distance of the object to the origin by at most r. For this, the means are
+ * sorted by their distance to the origin in every iteration, and the second
+ * nearest mean of each object is remembered.
+ * 
+ * <p>
+ * Reference:<br />
+ * J. Drake<br />
+ * Faster k-means clustering<br />
+ * Master's thesis, Baylor University, 2013
+ * </p>
+ * 
+ * @author agent
+ * 
+ * @param <V> vector datatype
+ */
+@Reference(authors = "J. Drake", //
+title = "Faster k-means clustering", //
+booktitle = "Master's thesis, Baylor University, 2013")
+public class KMeansAnnulus<V extends NumberVector> extends AbstractBoundedKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansAnnulus.class);
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   */
+  public KMeansAnnulus(PrimitiveDistanceFunction<NumberVector> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  protected Instance instantiate(Relation<V> relation, List<Vector> means) {
+    return new AnnulusInstance(relation, means);
+  }
+
+  /**
+   * Annulus state of a single run.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  protected class AnnulusInstance extends Instance {
+    /**
+     * Upper bound of the distance to the assigned mean, lower bound of the
+     * distance to the second nearest mean, and distance to the origin.
+     */
+    WritableDoubleDataStore upper, lower, norm;
+
+    /**
+     * Second nearest mean.
+     */
+    WritableIntegerDataStore second;
+
+    /**
+     * Distances between means.
+     */
+    double[][] cdist;
+
+    /**
+     * Half the distance to the nearest other mean.
+     */
+    double[] sep;
+
+    /**
+     * Distances of the means to the origin, sorted.
+     */
+    double[] cnorm;
+
+    /**
+     * Mean numbers, corresponding to {@link #cnorm}.
+     */
+    int[] corder;
+
+    /**
+     * Origin.
+     */
+    Vector origin;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param means Initial means
+     */
+    public AnnulusInstance(Relation<V> relation, List<Vector> means) {
+      super(relation, means);
+      upper = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+      lower = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, 0.);
+      norm = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, 0.);
+      second = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+      cdist = new double[k][k];
+      sep = new double[k];
+      cnorm = new double[k];
+      corder = new int[k];
+      origin = new Vector(means.get(0).getDimensionality());
+    }
+
+    @Override
+    protected int initialAssignment() {
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        V fv = relation.get(it);
+        norm.putDouble(it, distance(fv, origin));
+        // Find closest center, and distance to two closest centers
+        double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+        int minIndex = -1, minIndex2 = -1;
+        for(int i = 0; i < k; i++) {
+          final double dist = distance(fv, means.get(i));
+          if(dist < min1) {
+            minIndex2 = minIndex;
+            minIndex = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            minIndex2 = i;
+            min2 = dist;
+          }
+        }
+        assign(it, fv, minIndex);
+        upper.putDouble(it, min1);
+        lower.putDouble(it, min2);
+        second.putInt(it, minIndex2);
+      }
+      return relation.size();
+    }
+
+    /**
+     * Sort the means by their distance to the origin.
+     */
+    protected void sortCenters() {
+      for(int i = 0; i < k; i++) {
+        cnorm[i] = distance(means.get(i), origin);
+        corder[i] = i;
+      }
+      DoubleIntegerArrayQuickSort.sort(cnorm, corder, k);
+    }
+
+    /**
+     * Find the first position with a norm of at least the given value.
+     * 
+     * @param val Norm
+     * @return Position
+     */
+    protected int findFirst(double val) {
+      int l = 0, r = k;
+      while(l < r) {
+        final int mid = (l + r) >>> 1;
+        if(cnorm[mid] < val) {
+          l = mid + 1;
+        }
+        else {
+          r = mid;
+        }
+      }
+      return l;
+    }
+
+    @Override
+    protected int reassignment() {
+      computeCenterDistances(cdist, sep);
+      sortCenters();
+      int changed = 0;
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        final int cur = assignment.intValue(it);
+        // Update the bounds lazily, using the movement of the means.
+        double u = upper.doubleValue(it) + move[cur];
+        final double l = lower.doubleValue(it) - maxMoveExcept(cur);
+        final double z = l > sep[cur] ? l : sep[cur];
+        if(u <= z) {
+          upper.putDouble(it, u);
+          lower.putDouble(it, l);
+          continue;
+        }
+        // Tighten the upper bound
+        V fv = relation.get(it);
+        u = distance(fv, means.get(cur));
+        if(u <= z) {
+          upper.putDouble(it, u);
+          lower.putDouble(it, l);
+          continue;
+        }
+        // The two nearest means are within radius r of the object.
+        final int sec = second.intValue(it);
+        final double secd = (sec >= 0 && sec != cur) ? distance(fv, means.get(sec)) : Double.POSITIVE_INFINITY;
+        final double r = u > secd ? u : secd;
+        final double xnorm = norm.doubleValue(it);
+        // Start with the known distances, in case rounding excludes them.
+        double min1 = u, min2 = Double.POSITIVE_INFINITY;
+        int minIndex = cur, minIndex2 = -1;
+        if(secd < min1) {
+          minIndex2 = cur;
+          minIndex = sec;
+          min2 = u;
+          min1 = secd;
+        }
+        else if(secd < Double.POSITIVE_INFINITY) {
+          minIndex2 = sec;
+          min2 = secd;
+        }
+        for(int p = findFirst(xnorm - r); p < k && cnorm[p] <= xnorm + r; p++) {
+          final int i = corder[p];
+          if(i == cur || i == sec) {
+            continue;
+          }
+          final double dist = distance(fv, means.get(i));
+          if(dist < min1) {
+            minIndex2 = minIndex;
+            minIndex = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            minIndex2 = i;
+            min2 = dist;
+          }
+        }
+        if(minIndex != cur) {
+          reassign(it, fv, cur, minIndex);
+          ++changed;
+        }
+        upper.putDouble(it, min1);
+        lower.putDouble(it, min2);
+        second.putInt(it, minIndex2);
+      }
+      return changed;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractBoundedKMeans.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansAnnulus<V> makeInstance() {
+      return new KMeansAnnulus<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Newling and Fleuret's Exponion k-means algorithm.
+ * 
+ * Uses Hamerly's bounds, but when these fail, only the means within a ball
+ * around the current mean are searched. All candidates for the two nearest
+ * means are within a radius of 2u+s around the current mean, where u is the
+ * upper bound and s the distance to the nearest other mean. For this, the
+ * means are sorted by their distance to each other in every iteration. This
+ * needs O(k^2) memory, but no additional memory per object.
+ * 
+ * <p>
+ * Reference:<br />
+ * J. Newling, F. Fleuret<br />
+ * Fast k-means with accurate bounds<br />
+ * Proc. 33rd Int. Conf. on Machine Learning (ICML 2016)
+ * </p>
+ * 
+ * @author agent
+ * 
+ * @param <V> vector datatype
+ */
+@Reference(authors = "J. Newling, F. Fleuret", //
+title = "Fast k-means with accurate bounds", //
+booktitle = "Proc. 33rd Int. Conf. on Machine Learning (ICML 2016)")
+public class KMeansExponion<V extends NumberVector> extends AbstractBoundedKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansExponion.class);
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   */
+  public KMeansExponion(PrimitiveDistanceFunction<NumberVector> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  protected Instance instantiate(Relation<V> relation, List<Vector> means) {
+    return new ExponionInstance(relation, means);
+  }
+
+  /**
+   * Exponion state of a single run.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  protected class ExponionInstance extends Instance {
+    /**
+     * Upper bound of the distance to the assigned mean, lower bound of the
+     * distance to the second nearest mean.
+     */
+    WritableDoubleDataStore upper, lower;
+
+    /**
+     * Distances between means.
+     */
+    double[][] cdist;
+
+    /**
+     * Half the distance to the nearest other mean.
+     */
+    double[] sep;
+
+    /**
+     * For each mean, the other means sorted by distance, and their distances.
+     */
+    int[][] cnum;
+
+    /**
+     * Sorted distances, corresponding to {@link #cnum}.
+     */
+    double[][] cdsorted;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param means Initial means
+     */
+    public ExponionInstance(Relation<V> relation, List<Vector> means) {
+      super(relation, means);
+      upper = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+      lower = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, 0.);
+      cdist = new double[k][k];
+      sep = new double[k];
+      cnum = new int[k][k - 1];
+      cdsorted = new double[k][k - 1];
+    }
+
+    @Override
+    protected int initialAssignment() {
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        V fv = relation.get(it);
+        // Find closest center, and distance to two closest centers
+        double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+        int minIndex = -1;
+        for(int i = 0; i < k; i++) {
+          final double dist = distance(fv, means.get(i));
+          if(dist < min1) {
+            minIndex = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+        assign(it, fv, minIndex);
+        upper.putDouble(it, min1);
+        lower.putDouble(it, min2);
+      }
+      return relation.size();
+    }
+
+    /**
+     * Sort the means by their distance to each other mean.
+     */
+    protected void sortCenters() {
+      for(int i = 0; i < k; i++) {
+        final int[] num = cnum[i];
+        final double[] dsorted = cdsorted[i];
+        final double[] row = cdist[i];
+        for(int j = 0, p = 0; j < k; j++) {
+          if(j != i) {
+            num[p] = j;
+            dsorted[p] = row[j];
+            ++p;
+          }
+        }
+        DoubleIntegerArrayQuickSort.sort(dsorted, num, k - 1);
+      }
+    }
+
+    @Override
+    protected int reassignment() {
+      computeCenterDistances(cdist, sep);
+      sortCenters();
+      int changed = 0;
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        final int cur = assignment.intValue(it);
+        // Update the bounds lazily, using the movement of the means.
+        double u = upper.doubleValue(it) + move[cur];
+        final double l = lower.doubleValue(it) - maxMoveExcept(cur);
+        final double z = l > sep[cur] ? l : sep[cur];
+        if(u <= z) {
+          upper.putDouble(it, u);
+          lower.putDouble(it, l);
+          continue;
+        }
+        // Tighten the upper bound
+        V fv = relation.get(it);
+        u = distance(fv, means.get(cur));
+        if(u <= z) {
+          upper.putDouble(it, u);
+          lower.putDouble(it, l);
+          continue;
+        }
+        // Search the ball of radius 2u + s around the current mean.
+        final double r = 2 * u + 2 * sep[cur];
+        double min1 = u, min2 = Double.POSITIVE_INFINITY;
+        int minIndex = cur;
+        final int[] num = cnum[cur];
+        final double[] dsorted = cdsorted[cur];
+        for(int p = 0; p < num.length && dsorted[p] <= r; p++) {
+          final int i = num[p];
+          final double dist = distance(fv, means.get(i));
+          if(dist < min1) {
+            minIndex = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+        if(minIndex != cur) {
+          reassign(it, fv, cur, minIndex);
+          ++changed;
+        }
+        upper.putDouble(it, min1);
+        lower.putDouble(it, min2);
+      }
+      return changed;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractBoundedKMeans.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansExponion<V> makeInstance() {
+      return new KMeansExponion<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+}
@@ -0,0 +1,466 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.MultipleObjectsBundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+
+/**
+ * Mini-batch k-means, which updates the means using small random batches of
+ * the data, with a per-center learning rate that decreases with the number of
+ * objects assigned so far.
+ * 
+ * In addition to sampling batches from a relation, this class can also process
+ * a {@link BundleStreamSource} (such as a streaming parser) in a single pass,
+ * without materializing the data set: see {@link #run(BundleStreamSource)}.
+ * This allows clustering data sets that do not fit into main memory.
+ * 
+ * The maximum number of iterations is the number of batches to process, and
+ * must be at least 1: because the means keep moving a little with every batch,
+ * this algorithm may not converge otherwise. The algorithm also stops early
+ * when no mean moved more than the given tolerance while processing a batch.
+ * The tolerance is measured with the distance function used, i.e. in squared
+ * units for the squared Euclidean distance. Afterwards, an optional full pass assigns every object to
+ * its nearest mean; without it, only the objects sampled in a batch are
+ * included in the result.
+ * 
+ * <p>
+ * Reference:<br />
+ * D. Sculley<br />
+ * Web-scale k-means clustering<br />
+ * Proc. 19th International Conference on World Wide Web (WWW 2010)
+ * </p>
+ * 
+ * @author agent
+ * 
+ * @apiviz.has KMeansModel
+ * 
+ * @param <V> vector type to use
+ */
+@Reference(authors = "D. Sculley", //
+title = "Web-scale k-means clustering", //
+booktitle = "Proc. 19th International Conference on World Wide Web (WWW 2010)", //
+url = "http://dx.doi.org/10.1145/1772690.1772862")
+public class KMeansMiniBatch<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansMiniBatch.class);
+
+  /**
+   * Size of each batch.
+   */
+  protected int batchsize;
+
+  /**
+   * Convergence tolerance, in units of the distance function.
+   */
+  protected double tolerance;
+
+  /**
+   * Perform a final assignment pass.
+   */
+  protected boolean assign;
+
+  /**
+   * Random generator for sampling.
+   */
+  protected RandomFactory rnd;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maximum number of batches, at least 1
+   * @param initializer Initialization method
+   * @param batchsize Batch size
+   * @param tolerance Convergence tolerance, in units of the distance function
+   * @param assign Perform a final assignment pass
+   * @param rnd Random generator for sampling
+   */
+  public KMeansMiniBatch(PrimitiveDistanceFunction<? super NumberVector> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, int batchsize, double tolerance, boolean assign, RandomFactory rnd) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.batchsize = batchsize;
+    this.tolerance = tolerance;
+    this.assign = assign;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    // Choose initial means
+    List<Vector> means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction(), Vector.FACTORY);
+    long[] counts = new long[k];
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int bsize = Math.min(batchsize, ids.size());
+    Random random = rnd.getSingleThreadedRandom();
+    List<V> batch = new ArrayList<>(bsize);
+    int[] batchassign = new int[bsize];
+    // Last assignment of sampled objects, if we do not do a final pass.
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    List<ModifiableDBIDs> clusters = new ArrayList<>();
+    for(int i = 0; i < k; i++) {
+      clusters.add(DBIDUtil.newHashSet());
+    }
+
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means batches", LOG) : null;
+    int iteration = 0;
+    while(iteration < maxiter) {
+      ++iteration;
+      LOG.incrementProcessed(prog);
+      DBIDs sample = DBIDUtil.randomSample(ids, bsize, random);
+      batch.clear();
+      for(DBIDIter it = sample.iter(); it.valid(); it.advance()) {
+        batch.add(relation.get(it));
+      }
+      final double moved = miniBatchUpdate(batch, means, counts, batchassign);
+      if(!assign) {
+        int i = 0;
+        for(DBIDIter it = sample.iter(); it.valid(); it.advance(), i++) {
+          updateAssignment(it, clusters, assignment, batchassign[i]);
+        }
+      }
+      if(moved <= tolerance) {
+        break;
+      }
+    }
+    LOG.setCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".batches", iteration));
+    }
+
+    double[] varsum = new double[k];
+    if(assign) {
+      assignToNearestCluster(relation, means, clusters, assignment, varsum);
+    }
+    else {
+      for(int i = 0; i < k; i++) {
+        for(DBIDIter it = clusters.get(i).iter(); it.valid(); it.advance()) {
+          varsum[i] += distanceFunction.distance(means.get(i), relation.get(it));
+        }
+      }
+    }
+    logVarstat(LOG.isStatistics() ? new DoubleStatistic(this.getClass().getName() + ".variance-sum") : null, varsum);
+
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < k; i++) {
+      DBIDs cids = clusters.get(i);
+      if(cids.size() == 0) {
+        continue;
+      }
+      result.addToplevelCluster(new Cluster<>(cids, new KMeansModel(means.get(i), varsum[i])));
+    }
+    return result;
+  }
+
+  /**
+   * Compute the means in a single pass over a stream, without materializing
+   * the data. The first batch is used for initialization.
+   * 
+   * @param source Data source, containing a number vector column
+   * @return Cluster means
+   */
+  public List<Vector> run(BundleStreamSource source) {
+    List<V> batch = new ArrayList<>(batchsize);
+    int[] batchassign = new int[batchsize];
+    List<Vector> means = null;
+    long[] counts = new long[k];
+    int col = -1, iteration = 0;
+    SimpleTypeInformation<?> type = null;
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means batches", LOG) : null;
+    boolean stop = false;
+    while(!stop) {
+      BundleStreamSource.Event ev = source.nextEvent();
+      switch(ev){
+      case END_OF_STREAM:
+        stop = true;
+        if(batch.size() == 0) {
+          break;
+        }
+        // Process the final, incomplete batch.
+        if(means == null) {
+          means = initialMeans(type, batch);
+        }
+        miniBatchUpdate(batch, means, counts, batchassign);
+        ++iteration;
+        break;
+      case META_CHANGED:
+        if(col < 0) {
+          BundleMeta meta = source.getMeta();
+          for(int i = 0; i < meta.size(); i++) {
+            if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(i))) {
+              col = i;
+              type = meta.get(i);
+              break;
+            }
+          }
+        }
+        break;
+      case NEXT_OBJECT:
+        if(col < 0) {
+          throw new AbortException("No number vector column found in the data stream.");
+        }
+        @SuppressWarnings("unchecked")
+        final V vec = (V) source.data(col);
+        batch.add(vec);
+        if(batch.size() < batchsize) {
+          break;
+        }
+        if(means == null) {
+          means = initialMeans(type, batch);
+        }
+        LOG.incrementProcessed(prog);
+        final double moved = miniBatchUpdate(batch, means, counts, batchassign);
+        batch.clear();
+        ++iteration;
+        stop = (moved <= tolerance) || (iteration >= maxiter);
+        break;
+      default:
+        LOG.warning("Unknown event: " + ev);
+      }
+    }
+    LOG.setCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".batches", iteration));
+    }
+    return means != null ? means : new ArrayList<Vector>();
+  }
+
+  /**
+   * Choose the initial means from the first batch of a stream.
+   * 
+   * @param type Vector type
+   * @param batch First batch
+   * @return Initial means
+   */
+  @SuppressWarnings("unchecked")
+  private List<Vector> initialMeans(SimpleTypeInformation<?> type, List<V> batch) {
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple((SimpleTypeInformation<? super V>) type, batch);
+    Database db = new StaticArrayDatabase(new MultipleObjectsBundleDatabaseConnection(bundle), null);
+    db.initialize();
+    Relation<V> rel = db.getRelation(type);
+    return initializer.chooseInitialMeans(db, rel, k, getDistanceFunction(), Vector.FACTORY);
+  }
+
+  /**
+   * Process a single mini batch: first assign all objects to the current
+   * means, then move the means towards the assigned objects with a per-center
+   * learning rate of 1/count.
+   * 
+   * @param batch Batch of objects
+   * @param means Means, will be updated
+   * @param counts Number of objects assigned to each mean so far
+   * @param batchassign Output array for the assignment of the batch
+   * @return Maximum distance any mean moved
+   */
+  protected double miniBatchUpdate(List<? extends NumberVector> batch, List<Vector> means, long[] counts, int[] batchassign) {
+    final int size = batch.size();
+    for(int i = 0; i < size; i++) {
+      final NumberVector fv = batch.get(i);
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for(int j = 0; j < k; j++) {
+        final double dist = distanceFunction.distance(fv, means.get(j));
+        if(dist < mindist) {
+          minIndex = j;
+          mindist = dist;
+        }
+      }
+      batchassign[i] = minIndex;
+    }
+    final List<Vector> old = new ArrayList<>(k);
+    for(int j = 0; j < k; j++) {
+      old.add(means.get(j).copy());
+    }
+    for(int i = 0; i < size; i++) {
+      final int c = batchassign[i];
+      final NumberVector fv = batch.get(i);
+      final double eta = 1. / ++counts[c];
+      final double[] mean = means.get(c).getArrayRef();
+      for(int d = 0; d < mean.length; d++) {
+        mean[d] += eta * (fv.doubleValue(d) - mean[d]);
+      }
+    }
+    double maxmove = 0.;
+    for(int j = 0; j < k; j++) {
+      final double d = distanceFunction.distance(old.get(j), means.get(j));
+      maxmove = d > maxmove ? d : maxmove;
+    }
+    return maxmove;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    /**
+     * Size of the mini batches.
+     * <p>
+     * Key: {@code -kmeans.batchsize}
+     * </p>
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("kmeans.batchsize", "Number of objects in each mini batch.");
+
+    /**
+     * Convergence tolerance.
+     * <p>
+     * Key: {@code -kmeans.tolerance}
+     * </p>
+     */
+    public static final OptionID TOLERANCE_ID = new OptionID("kmeans.tolerance", "Stop when no mean moves more than this distance while processing a batch. "
+        + "Measured with the distance function, i.e. squared for squared Euclidean distance.");
+
+    /**
+     * Skip the final assignment pass.
+     * <p>
+     * Key: {@code -kmeans.noassign}
+     * </p>
+     */
+    public static final OptionID NOASSIGN_ID = new OptionID("kmeans.noassign", "Skip the final pass assigning all objects, only return the objects sampled in batches.");
+
+    /**
+     * Random generator for sampling.
+     * <p>
+     * Key: {@code -kmeans.batchseed}
+     * </p>
+     */
+    public static final OptionID RANDOM_ID = new OptionID("kmeans.batchseed", "Random generator seed for sampling batches.");
+
+    /**
+     * Size of each batch.
+     */
+    protected int batchsize;
+
+    /**
+     * Convergence tolerance.
+     */
+    protected double tolerance;
+
+    /**
+     * Perform a final assignment pass.
+     */
+    protected boolean assign;
+
+    /**
+     * Random generator for sampling.
+     */
+    protected RandomFactory rnd;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter batchsizeP = new IntParameter(BATCHSIZE_ID, 1000) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchsizeP)) {
+        batchsize = batchsizeP.intValue();
+      }
+      DoubleParameter toleranceP = new DoubleParameter(TOLERANCE_ID, 0.) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+      if(config.grab(toleranceP)) {
+        tolerance = toleranceP.doubleValue();
+      }
+      Flag noassignF = new Flag(NOASSIGN_ID);
+      if(config.grab(noassignF)) {
+        assign = !noassignF.isTrue();
+      }
+      RandomParameter randomP = new RandomParameter(RANDOM_ID);
+      if(config.grab(randomP)) {
+        rnd = randomP.getValue();
+      }
+    }
+
+    @Override
+    protected void getParameterMaxIter(Parameterization config) {
+      IntParameter maxiterP = new IntParameter(MAXITER_ID, 100);
+      // Mini batches do not converge reliably, so we require a limit.
+      maxiterP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(maxiterP)) {
+        maxiter = maxiterP.getValue();
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansMiniBatch<V> makeInstance() {
+      return new KMeansMiniBatch<>(distanceFunction, k, maxiter, initializer, batchsize, tolerance, assign, rnd);
+    }
+  }
+}
@@ -0,0 +1,414 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Yinyang k-means, using one lower bound per group of means.
+ * 
+ * The initial means are grouped into t groups using k-means, and for each
+ * object an upper bound of the distance to the assigned mean and one lower
+ * bound per group is maintained. A global filter compares the upper bound to
+ * the minimum of all group bounds, a group filter skips groups whose bound
+ * exceeds the upper bound, and a local filter skips individual means based on
+ * their movement. This needs O(n t) memory for the bounds, compared to O(n k)
+ * for Elkan's algorithm.
+ * 
+ * <p>
+ * Reference:<br />
+ * Y. Ding, Y. Zhao, X. Shen, M. Musuvathi, T. Mytkowicz<br />
+ * Yinyang K-Means: A Drop-In Replacement of the Classic K-Means with
+ * Consistent Speedup<br />
+ * Proc. 32nd Int. Conf. on Machine Learning (ICML 2015)
+ * </p>
+ * 
+ * @author agent
+ * 
+ * @param <V> vector datatype
+ */
+@Reference(authors = "Y. Ding, Y. Zhao, X. Shen, M. Musuvathi, T. Mytkowicz", //
+title = "Yinyang K-Means: A Drop-In Replacement of the Classic K-Means with Consistent Speedup", //
+booktitle = "Proc. 32nd Int. Conf. on Machine Learning (ICML 2015)", //
+url = "http://jmlr.org/proceedings/papers/v37/ding15.html")
+public class KMeansYinyang<V extends NumberVector> extends AbstractBoundedKMeans<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansYinyang.class);
+
+  /**
+   * Number of iterations used to group the means.
+   */
+  private static final int GROUPING_ITERATIONS = 5;
+
+  /**
+   * Number of groups, 0 for k/10.
+   */
+  protected int t;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param t Number of groups, 0 for k/10
+   */
+  public KMeansYinyang(PrimitiveDistanceFunction<NumberVector> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, int t) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.t = t;
+  }
+
+  @Override
+  protected Instance instantiate(Relation<V> relation, List<Vector> means) {
+    return new YinyangInstance(relation, means);
+  }
+
+  /**
+   * Yinyang state of a single run.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  protected class YinyangInstance extends Instance {
+    /**
+     * Upper bound of the distance to the assigned mean.
+     */
+    WritableDoubleDataStore upper;
+
+    /**
+     * Lower bounds for each group, excluding the assigned mean.
+     */
+    WritableDataStore<double[]> lower;
+
+    /**
+     * Members of each group.
+     */
+    int[][] groups;
+
+    /**
+     * Group of each mean.
+     */
+    int[] groupOf;
+
+    /**
+     * Maximum movement within each group.
+     */
+    double[] gmove;
+
+    /**
+     * Scratch space: previous bounds, nearest and second nearest distance in
+     * each group, nearest mean in each group, and smallest bound of skipped
+     * means.
+     */
+    double[] oldlb, gmin1, gmin2, gskip;
+
+    /**
+     * Scratch space: nearest mean in each group, -2 for groups not scanned.
+     */
+    int[] gidx;
+
+    /**
+     * Scratch space for the initial assignment.
+     */
+    double[] dists;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param means Initial means
+     */
+    public YinyangInstance(Relation<V> relation, List<Vector> means) {
+      super(relation, means);
+      upper = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+      lower = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, double[].class);
+      groupMeans(t > 0 ? Math.min(t, k) : Math.max(1, k / 10));
+      final int numg = groups.length;
+      gmove = new double[numg];
+      oldlb = new double[numg];
+      gmin1 = new double[numg];
+      gmin2 = new double[numg];
+      gskip = new double[numg];
+      gidx = new int[numg];
+      dists = new double[k];
+    }
+
+    /**
+     * Group the initial means by running k-means on them.
+     * 
+     * @param numg Number of groups
+     */
+    protected void groupMeans(int numg) {
+      groupOf = new int[k];
+      if(numg > 1) {
+        List<Vector> gmeans = new ArrayList<>(numg);
+        for(int g = 0; g < numg; g++) {
+          gmeans.add(means.get(g).copy());
+        }
+        int[] sizes = new int[numg];
+        for(int iter = 0; iter < GROUPING_ITERATIONS; iter++) {
+          for(int i = 0; i < k; i++) {
+            double best = Double.POSITIVE_INFINITY;
+            for(int g = 0; g < numg; g++) {
+              final double d = distance(means.get(i), gmeans.get(g));
+              if(d < best) {
+                best = d;
+                groupOf[i] = g;
+              }
+            }
+          }
+          Arrays.fill(sizes, 0);
+          for(int g = 0; g < numg; g++) {
+            gmeans.get(g).setZero();
+          }
+          for(int i = 0; i < k; i++) {
+            gmeans.get(groupOf[i]).plusEquals(means.get(i));
+            sizes[groupOf[i]]++;
+          }
+          for(int g = 0; g < numg; g++) {
+            gmeans.get(g).timesEquals(sizes[g] > 0 ? 1. / sizes[g] : 1.);
+          }
+        }
+        // Remove empty groups.
+        int[] remap = new int[numg];
+        int ng = 0;
+        for(int g = 0; g < numg; g++) {
+          remap[g] = sizes[g] > 0 ? ng++ : -1;
+        }
+        groups = new int[ng][];
+        for(int g = 0; g < numg; g++) {
+          if(sizes[g] > 0) {
+            groups[remap[g]] = new int[sizes[g]];
+          }
+        }
+        int[] fill = new int[ng];
+        for(int i = 0; i < k; i++) {
+          final int g = remap[groupOf[i]];
+          groupOf[i] = g;
+          groups[g][fill[g]++] = i;
+        }
+      }
+      else {
+        groups = new int[1][k];
+        for(int i = 0; i < k; i++) {
+          groups[0][i] = i;
+        }
+      }
+      if(getLogger().isVerbose()) {
+        getLogger().verbose("Yinyang k-means uses " + groups.length + " groups of means.");
+      }
+    }
+
+    @Override
+    protected int initialAssignment() {
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        V fv = relation.get(it);
+        double best = Double.POSITIVE_INFINITY;
+        int cur = -1;
+        for(int j = 0; j < k; j++) {
+          final double dist = distance(fv, means.get(j));
+          dists[j] = dist;
+          if(dist < best) {
+            cur = j;
+            best = dist;
+          }
+        }
+        double[] lb = new double[groups.length];
+        for(int g = 0; g < groups.length; g++) {
+          double min = Double.POSITIVE_INFINITY;
+          for(int j : groups[g]) {
+            min = (j != cur && dists[j] < min) ? dists[j] : min;
+          }
+          lb[g] = min;
+        }
+        assign(it, fv, cur);
+        upper.putDouble(it, best);
+        lower.put(it, lb);
+      }
+      return relation.size();
+    }
+
+    @Override
+    protected int reassignment() {
+      final int numg = groups.length;
+      for(int g = 0; g < numg; g++) {
+        double m = 0.;
+        for(int j : groups[g]) {
+          m = move[j] > m ? move[j] : m;
+        }
+        gmove[g] = m;
+      }
+      int changed = 0;
+      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+        final int cur = assignment.intValue(it);
+        double u = upper.doubleValue(it) + move[cur];
+        final double[] lb = lower.get(it);
+        // Global filter
+        double globallb = Double.POSITIVE_INFINITY;
+        for(int g = 0; g < numg; g++) {
+          oldlb[g] = lb[g];
+          lb[g] -= gmove[g];
+          globallb = lb[g] < globallb ? lb[g] : globallb;
+        }
+        if(u <= globallb) {
+          upper.putDouble(it, u);
+          continue;
+        }
+        // Tighten the upper bound
+        V fv = relation.get(it);
+        u = distance(fv, means.get(cur));
+        if(u <= globallb) {
+          upper.putDouble(it, u);
+          continue;
+        }
+        int best = cur;
+        double bestd = u;
+        for(int g = 0; g < numg; g++) {
+          // Group filter
+          if(lb[g] >= bestd) {
+            gidx[g] = -2;
+            continue;
+          }
+          double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY, skip = Double.POSITIVE_INFINITY;
+          int minIndex = -1;
+          for(int j : groups[g]) {
+            if(j == cur) {
+              continue;
+            }
+            // Local filter
+            final double bound = oldlb[g] - move[j];
+            if(bound >= bestd) {
+              skip = bound < skip ? bound : skip;
+              continue;
+            }
+            final double dist = distance(fv, means.get(j));
+            if(dist < min1) {
+              minIndex = j;
+              min2 = min1;
+              min1 = dist;
+            }
+            else if(dist < min2) {
+              min2 = dist;
+            }
+            if(dist < bestd) {
+              best = j;
+              bestd = dist;
+            }
+          }
+          gmin1[g] = min1;
+          gmin2[g] = min2;
+          gskip[g] = skip;
+          gidx[g] = minIndex;
+        }
+        // Update the bounds of all scanned groups, excluding the new mean.
+        for(int g = 0; g < numg; g++) {
+          if(gidx[g] == -2) {
+            continue;
+          }
+          final double m = (gidx[g] == best) ? gmin2[g] : gmin1[g];
+          lb[g] = m < gskip[g] ? m : gskip[g];
+        }
+        if(best != cur) {
+          reassign(it, fv, cur, best);
+          ++changed;
+          // The previous mean is now covered by the group bound.
+          final int g = groupOf[cur];
+          lb[g] = u < lb[g] ? u : lb[g];
+        }
+        upper.putDouble(it, bestd);
+      }
+      return changed;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractBoundedKMeans.Parameterizer<V> {
+    /**
+     * Number of groups of means.
+     * <p>
+     * Key: {@code -kmeans.yinyang.groups}
+     * </p>
+     */
+    public static final OptionID GROUPS_ID = new OptionID("kmeans.yinyang.groups", "Number of groups of means for Yinyang k-means, 0 for k/10.");
+
+    /**
+     * Number of groups.
+     */
+    protected int t;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter groupsP = new IntParameter(GROUPS_ID, 0) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(groupsP)) {
+        t = groupsP.intValue();
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansYinyang<V> makeInstance() {
+      return new KMeansYinyang<>(distanceFunction, k, maxiter, initializer, t);
+    }
+  }
+}
@@ -0,0 +1,463 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.random.FastNonThreadsafeRandom;
+import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Scalable k-means++ initialization, also known as k-means||.
+ * 
+ * Instead of choosing one mean per pass over the data, as k-means++ does, each
+ * round samples about {@code l = oversampling * k} candidates independently
+ * with probability proportional to their squared distance to the nearest
+ * candidate. After a few rounds, every candidate is weighted by the number of
+ * objects closest to it, and the candidates are reclustered into k means using
+ * weighted k-means++. Sampling and distance updates run on all available
+ * cores. The data is cut into blocks of fixed size, each with its own random
+ * generator, so the result does not depend on the number of threads.
+ * 
+ * Reference:
+ * <p>
+ * B. Bahmani, B. Moseley, A. Vattani, R. Kumar, S. Vassilvitskii<br />
+ * Scalable k-means++<br />
+ * Proc. VLDB Endowment 5(7)
+ * </p>
+ * 
+ * @author agent
+ * 
+ * @param <V> Vector type
+ */
+@Reference(authors = "B. Bahmani, B. Moseley, A. Vattani, R. Kumar, S. Vassilvitskii", //
+title = "Scalable k-means++", //
+booktitle = "Proc. VLDB Endowment 5(7)", //
+url = "http://dx.doi.org/10.14778/2180912.2180915")
+public class KMeansParallelInitialMeans<V extends NumberVector> extends AbstractKMeansInitialization<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansParallelInitialMeans.class);
+
+  /**
+   * Number of objects in each block.
+   */
+  private static final int BLOCKSIZE = ParallelKMeansPlusPlusInitialMeans.BLOCKSIZE;
+
+  /**
+   * Number of new candidates processed at once, for pruning.
+   */
+  private static final int CHUNK = 64;
+
+  /**
+   * Oversampling factor, relative to k.
+   */
+  protected double oversampling;
+
+  /**
+   * Number of sampling rounds.
+   */
+  protected int rounds;
+
+  /**
+   * Constructor.
+   * 
+   * @param rnd Random generator.
+   * @param oversampling Oversampling factor, relative to k
+   * @param rounds Number of sampling rounds
+   */
+  public KMeansParallelInitialMeans(RandomFactory rnd, double oversampling, int rounds) {
+    super(rnd);
+    this.oversampling = oversampling;
+    this.rounds = rounds;
+  }
+
+  @Override
+  public <T extends V, O extends NumberVector> List<O> chooseInitialMeans(Database database, final Relation<T> relation, int k, final PrimitiveDistanceFunction<? super T> distanceFunction, NumberVector.Factory<O> factory) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    if(ids.size() <= k) {
+      throw new AbortException("Don't use k-means with k >= data set size.");
+    }
+    final int size = ids.size();
+    // Squared distance to the nearest candidate, and index of that candidate.
+    final double[] weights = new double[size];
+    final int[] nearest = new int[size];
+    final double[] blocksums = new double[(size + BLOCKSIZE - 1) / BLOCKSIZE];
+    final List<T> cands = new ArrayList<>();
+
+    // Choose the first candidate uniformly
+    Random random = rnd.getSingleThreadedRandom();
+    DBIDArrayIter it = ids.iter();
+    final int first = random.nextInt(size);
+    cands.add(relation.get(it.seek(first)));
+    Arrays.fill(weights, Double.POSITIVE_INFINITY);
+    double cost = updateWeights(relation, ids, cands, 0, distanceFunction, weights, nearest, blocksums);
+
+    final double l = oversampling * k;
+    for(int round = 0; round < rounds || cands.size() < k; round++) {
+      if(!(cost > 0.) || cands.size() >= size) {
+        break; // All objects coincide with a candidate.
+      }
+      final int prev = cands.size();
+      for(int pos : sample(ids.size(), weights, blocksums.length, l / cost, random)) {
+        cands.add(relation.get(it.seek(pos)));
+      }
+      cost = updateWeights(relation, ids, cands, prev, distanceFunction, weights, nearest, blocksums);
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".candidates", cands.size()));
+    }
+    if(cands.size() < k) {
+      throw new AbortException("Not enough distinct objects for k-means initialization.");
+    }
+
+    // Weight the candidates by the number of objects closest to them
+    double[] cweights = new double[cands.size()];
+    for(int i = 0; i < size; i++) {
+      cweights[nearest[i]] += 1.;
+    }
+    List<O> means = new ArrayList<>(k);
+    for(int c : recluster(cands, cweights, k, distanceFunction, random)) {
+      means.add(factory.newNumberVector(cands.get(c)));
+    }
+    return means;
+  }
+
+  /**
+   * Sample candidates in parallel. Each object is chosen independently, with a
+   * probability proportional to its weight.
+   * 
+   * @param size Number of objects
+   * @param weights Object weights
+   * @param numblocks Number of blocks
+   * @param scale Scaling factor for the weights
+   * @param random Random generator, to seed the block generators
+   * @return Positions of the chosen objects, in data order
+   */
+  private static int[] sample(final int size, final double[] weights, int numblocks, final double scale, Random random) {
+    final long[] seeds = new long[numblocks];
+    for(int b = 0; b < numblocks; b++) {
+      seeds[b] = random.nextLong();
+    }
+    final int[][] chosen = new int[numblocks][];
+    ParallelExecutor.runPartitions(numblocks, 1, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        TIntArrayList buf = new TIntArrayList();
+        for(int b = start; b < end; b++) {
+          Random r = new FastNonThreadsafeRandom(seeds[b]);
+          buf.resetQuick();
+          for(int i = b * BLOCKSIZE, e = Math.min(i + BLOCKSIZE, size); i < e; i++) {
+            if(r.nextDouble() < weights[i] * scale) {
+              buf.add(i);
+            }
+          }
+          chosen[b] = buf.toArray();
+        }
+      }
+    });
+    TIntArrayList all = new TIntArrayList();
+    for(int[] c : chosen) {
+      all.add(c);
+    }
+    return all.toArray();
+  }
+
+  /**
+   * Update the weights and nearest candidates for new candidates, in parallel.
+   * 
+   * For metric distances, the new candidates are processed in small chunks, so
+   * that candidates of earlier chunks already help pruning, see
+   * {@link #updateChunk}.
+   * 
+   * @param relation Data relation
+   * @param ids Object IDs
+   * @param cands Candidates
+   * @param from First new candidate
+   * @param distanceFunction Distance function
+   * @param weights Object weights
+   * @param nearest Nearest candidate
+   * @param blocksums Weight sums of each block (output)
+   * @return Weight sum
+   */
+  private static <T> double updateWeights(final Relation<? extends T> relation, final ArrayDBIDs ids, final List<T> cands, final int from, final PrimitiveDistanceFunction<? super T> distanceFunction, final double[] weights, final int[] nearest, final double[] blocksums) {
+    final int to = cands.size();
+    final boolean issquared = (distanceFunction instanceof SquaredEuclideanDistanceFunction);
+    if(from == 0 || !(issquared || distanceFunction.isMetric())) {
+      ParallelExecutor.runPartitions(blocksums.length, 1, new ParallelExecutor.PartitionTask() {
+        @Override
+        public void process(int start, int end) {
+          DBIDArrayIter it = ids.iter();
+          for(int i = start * BLOCKSIZE, e = Math.min(end * BLOCKSIZE, weights.length); i < e; i++) {
+            final T obj = relation.get(it.seek(i));
+            for(int c = from; c < to; c++) {
+              // Distance will usually already be squared
+              final double d = distanceFunction.distance(cands.get(c), obj);
+              if(d < weights[i]) {
+                weights[i] = d;
+                nearest[i] = c;
+              }
+            }
+          }
+        }
+      });
+    }
+    else {
+      for(int lo = from; lo < to; lo += CHUNK) {
+        updateChunk(relation, ids, cands, lo, Math.min(lo + CHUNK, to), distanceFunction, issquared, weights, nearest);
+      }
+    }
+    return blockSums(weights, blocksums);
+  }
+
+  /**
+   * Update the weights and nearest candidates for a chunk of new candidates, in
+   * parallel, for metric distances.
+   * 
+   * A new candidate {@code c} is skipped for an object {@code x} with nearest
+   * candidate {@code a} if {@code d(a,c) >= 2 d(x,a)}, because then
+   * {@code d(x,c) >= d(x,a)} by the triangle inequality. The distances of all
+   * candidates to the new candidates are computed first, so objects far from
+   * all new candidates are skipped without any distance computation.
+   * 
+   * @param relation Data relation
+   * @param ids Object IDs
+   * @param cands Candidates
+   * @param from First new candidate
+   * @param to End of new candidates (exclusive)
+   * @param distanceFunction Distance function
+   * @param issquared Distance function is squared Euclidean
+   * @param weights Object weights
+   * @param nearest Nearest candidate
+   */
+  private static <T> void updateChunk(final Relation<? extends T> relation, final ArrayDBIDs ids, final List<T> cands, final int from, final int to, final PrimitiveDistanceFunction<? super T> distanceFunction, final boolean issquared, final double[] weights, final int[] nearest) {
+    final int width = to - from;
+    // Distances from old to new candidates, and their minimum.
+    final double[] cdist = new double[from * width];
+    final double[] cmin = new double[from];
+    ParallelExecutor.runPartitions(from, 1, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        for(int a = start, off = start * width; a < end; a++) {
+          final T ca = cands.get(a);
+          double min = Double.POSITIVE_INFINITY;
+          for(int c = from; c < to; c++, off++) {
+            double d = distanceFunction.distance(ca, cands.get(c));
+            d = issquared ? Math.sqrt(d) : d;
+            cdist[off] = d;
+            min = d < min ? d : min;
+          }
+          cmin[a] = min;
+        }
+      }
+    });
+    ParallelExecutor.runPartitions((weights.length + BLOCKSIZE - 1) / BLOCKSIZE, 1, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        DBIDArrayIter it = ids.iter();
+        for(int i = start * BLOCKSIZE, e = Math.min(end * BLOCKSIZE, weights.length); i < e; i++) {
+          final int a = nearest[i];
+          final double r2 = 2 * (issquared ? Math.sqrt(weights[i]) : weights[i]);
+          if(cmin[a] >= r2) {
+            continue; // All new candidates are too far away.
+          }
+          final T obj = relation.get(it.seek(i));
+          for(int c = from, off = a * width; c < to; c++, off++) {
+            if(cdist[off] >= r2) {
+              continue; // Cannot be closer than a.
+            }
+            final double d = distanceFunction.distance(cands.get(c), obj);
+            if(d < weights[i]) {
+              weights[i] = d;
+              nearest[i] = c;
+            }
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Compute the weight sums of each block, in parallel.
+   * 
+   * @param weights Object weights
+   * @param blocksums Weight sums of each block (output)
+   * @return Weight sum
+   */
+  private static double blockSums(final double[] weights, final double[] blocksums) {
+    ParallelExecutor.runPartitions(blocksums.length, 1, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        for(int b = start; b < end; b++) {
+          double sum = 0.;
+          for(int i = b * BLOCKSIZE, e = Math.min(i + BLOCKSIZE, weights.length); i < e; i++) {
+            sum += weights[i];
+          }
+          blocksums[b] = sum;
+        }
+      }
+    });
+    return ParallelKMeansPlusPlusInitialMeans.sum(blocksums);
+  }
+
+  /**
+   * Recluster the weighted candidates into k means, using weighted k-means++.
+   * 
+   * @param cands Candidates
+   * @param cweights Candidate weights
+   * @param k Number of means
+   * @param distanceFunction Distance function
+   * @param random Random generator
+   * @return Indexes of the chosen candidates
+   */
+  private static <T> int[] recluster(List<T> cands, double[] cweights, int k, PrimitiveDistanceFunction<? super T> distanceFunction, Random random) {
+    final int size = cands.size();
+    double[] mindist = new double[size];
+    Arrays.fill(mindist, Double.POSITIVE_INFINITY);
+    int[] chosen = new int[k];
+    // Choose the first mean proportionally to the weights only.
+    double r = 0.;
+    for(int i = 0; i < size; i++) {
+      r += cweights[i];
+    }
+    r *= random.nextDouble();
+    int cur = 0;
+    for(; cur < size - 1; cur++) {
+      r -= cweights[cur];
+      if(r < 0.) {
+        break;
+      }
+    }
+    for(int j = 0; j < k; j++) {
+      chosen[j] = cur;
+      if(j == k - 1) {
+        break;
+      }
+      final T latest = cands.get(cur);
+      double sum = 0.;
+      for(int i = 0; i < size; i++) {
+        final double d = distanceFunction.distance(latest, cands.get(i));
+        mindist[i] = d < mindist[i] ? d : mindist[i];
+        sum += cweights[i] * mindist[i];
+      }
+      if(!(sum > 0.)) {
+        throw new AbortException("Not enough distinct objects for k-means initialization.");
+      }
+      // Choose the next mean, with probability proportional to weighted D^2
+      r = random.nextDouble() * sum;
+      cur = -1;
+      for(int i = 0; i < size; i++) {
+        final double w = cweights[i] * mindist[i];
+        if(w > 0.) {
+          cur = i;
+          r -= w;
+          if(r < 0.) {
+            break;
+          }
+        }
+      }
+    }
+    return chosen;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <V> Vector type
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeansInitialization.Parameterizer {
+    /**
+     * Oversampling factor, relative to k.
+     * <p>
+     * Key: {@code -kmeans.oversampling}
+     * </p>
+     */
+    public static final OptionID OVERSAMPLING_ID = new OptionID("kmeans.oversampling", "Oversampling factor l/k: the expected number of candidates sampled in each round, relative to k.");
+
+    /**
+     * Number of sampling rounds.
+     * <p>
+     * Key: {@code -kmeans.rounds}
+     * </p>
+     */
+    public static final OptionID ROUNDS_ID = new OptionID("kmeans.rounds", "Number of sampling rounds.");
+
+    /**
+     * Oversampling factor, relative to k.
+     */
+    protected double oversampling;
+
+    /**
+     * Number of sampling rounds.
+     */
+    protected int rounds;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      DoubleParameter oversamplingP = new DoubleParameter(OVERSAMPLING_ID, 2.) //
+      .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      if(config.grab(oversamplingP)) {
+        oversampling = oversamplingP.doubleValue();
+      }
+      IntParameter roundsP = new IntParameter(ROUNDS_ID, 5) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(roundsP)) {
+        rounds = roundsP.intValue();
+      }
+    }
+
+    @Override
+    protected KMeansParallelInitialMeans<V> makeInstance() {
+      return new KMeansParallelInitialMeans<>(rnd, oversampling, rounds);
+    }
+  }
+}
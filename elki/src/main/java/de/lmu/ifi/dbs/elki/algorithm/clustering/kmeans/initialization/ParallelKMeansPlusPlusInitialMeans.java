@@ -0,0 +1,250 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.LoggingUtil;
+import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Parallel K-Means++ initialization for k-means.
+ * 
+ * The weights are updated on all available cores. The data is cut into blocks
+ * of fixed size, and the weight sum of every block is kept. This makes the
+ * result independent of the number of threads, and allows choosing the next
+ * mean by scanning the block sums first, and then only a single block.
+ * 
+ * Reference:
+ * <p>
+ * D. Arthur, S. Vassilvitskii<br />
+ * k-means++: the advantages of careful seeding<br />
+ * In: Proc. of the Eighteenth Annual ACM-SIAM Symposium on Discrete Algorithms,
+ * SODA 2007
+ * </p>
+ * 
+ * @author agent
+ * 
+ * @param <V> Vector type
+ */
+@Reference(authors = "D. Arthur, S. Vassilvitskii", title = "k-means++: the advantages of careful seeding", booktitle = "Proc. of the Eighteenth Annual ACM-SIAM Symposium on Discrete Algorithms, SODA 2007", url = "http://dx.doi.org/10.1145/1283383.1283494")
+public class ParallelKMeansPlusPlusInitialMeans<V extends NumberVector> extends AbstractKMeansInitialization<V> {
+  /**
+   * Number of objects in each block.
+   */
+  static final int BLOCKSIZE = 1024;
+
+  /**
+   * Constructor.
+   * 
+   * @param rnd Random generator.
+   */
+  public ParallelKMeansPlusPlusInitialMeans(RandomFactory rnd) {
+    super(rnd);
+  }
+
+  @Override
+  public <T extends V, O extends NumberVector> List<O> chooseInitialMeans(Database database, final Relation<T> relation, int k, final PrimitiveDistanceFunction<? super T> distanceFunction, NumberVector.Factory<O> factory) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    if(ids.size() <= k) {
+      throw new AbortException("Don't use k-means with k >= data set size.");
+    }
+    final int size = ids.size();
+    final double[] weights = new double[size];
+    final double[] blocksums = new double[(size + BLOCKSIZE - 1) / BLOCKSIZE];
+    List<O> means = new ArrayList<>(k);
+
+    // Chose first mean
+    Random random = rnd.getSingleThreadedRandom();
+    DBIDArrayIter it = ids.iter();
+    it.seek(random.nextInt(size));
+    means.add(factory.newNumberVector(relation.get(it)));
+
+    // Initialize weights
+    double weightsum = updateWeights(relation, ids, relation.get(it), distanceFunction, weights, blocksums, true);
+    while(means.size() < k) {
+      if(weightsum > Double.MAX_VALUE) {
+        LoggingUtil.warning("Could not choose a reasonable mean for k-means++ - too many data points, too large squared distances?");
+      }
+      final int pos;
+      if(!(weightsum > 0.)) {
+        // All remaining objects coincide with a mean: choose uniformly.
+        LoggingUtil.warning("Could not choose a reasonable mean for k-means++ - to few distinct data points?");
+        pos = chooseUnweighted(weights, random.nextInt(size - means.size()));
+      }
+      else {
+        final int p = choose(weights, blocksums, random.nextDouble() * weightsum);
+        // Rare case, but happens due to floating math: use the last candidate.
+        pos = p >= 0 ? p : chooseLast(weights);
+      }
+      // Add new mean:
+      it.seek(pos);
+      final T newmean = relation.get(it);
+      means.add(factory.newNumberVector(newmean));
+      weights[pos] = Double.NaN;
+      weightsum = updateWeights(relation, ids, newmean, distanceFunction, weights, blocksums, false);
+    }
+    return means;
+  }
+
+  /**
+   * Choose the position of the next mean.
+   * 
+   * @param weights Object weights
+   * @param blocksums Weight sums of each block
+   * @param r Random value, between 0 and the weight sum
+   * @return Position, or -1 if r exceeds the weight sum due to rounding.
+   */
+  static int choose(double[] weights, double[] blocksums, double r) {
+    int b = 0;
+    for(; b < blocksums.length; b++) {
+      if(r < blocksums[b]) {
+        break;
+      }
+      r -= blocksums[b];
+    }
+    for(int i = b * BLOCKSIZE, end = Math.min(i + BLOCKSIZE, weights.length); i < end; i++) {
+      final double w = weights[i];
+      if(w != w) {
+        continue; // NaN: already chosen.
+      }
+      r -= w;
+      if(r < 0.) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Choose an object that was not chosen yet, ignoring the weights.
+   * 
+   * @param weights Object weights, NaN for chosen objects
+   * @param r Random value, between 0 and the number of unchosen objects
+   * @return Position
+   */
+  static int chooseUnweighted(double[] weights, int r) {
+    for(int i = 0; i < weights.length; i++) {
+      final double w = weights[i];
+      if(w == w && --r < 0) {
+        return i;
+      }
+    }
+    throw new AbortException("No unchosen object left for k-means++.");
+  }
+
+  /**
+   * Choose the last object with a positive weight, when the random value
+   * exceeded the weight sum due to rounding.
+   * 
+   * @param weights Object weights, NaN for chosen objects
+   * @return Position
+   */
+  static int chooseLast(double[] weights) {
+    for(int i = weights.length - 1; i >= 0; i--) {
+      if(weights[i] > 0.) {
+        return i;
+      }
+    }
+    return chooseUnweighted(weights, 0);
+  }
+
+  /**
+   * Update the weights on all cores.
+   * 
+   * @param relation Data relation
+   * @param ids Object IDs
+   * @param latest Latest mean
+   * @param distanceFunction Distance function
+   * @param weights Object weights
+   * @param blocksums Weight sums of each block (output)
+   * @param initial Initialize the weights
+   * @return Weight sum
+   */
+  private static <T> double updateWeights(final Relation<? extends T> relation, final ArrayDBIDs ids, final T latest, final PrimitiveDistanceFunction<? super T> distanceFunction, final double[] weights, final double[] blocksums, final boolean initial) {
+    ParallelExecutor.runPartitions(blocksums.length, 1, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        DBIDArrayIter it = ids.iter();
+        for(int b = start; b < end; b++) {
+          double sum = 0.;
+          for(int i = b * BLOCKSIZE, e = Math.min(i + BLOCKSIZE, weights.length); i < e; i++) {
+            double weight = weights[i];
+            if(weight != weight) {
+              continue; // NaN: already chosen!
+            }
+            // Distance will usually already be squared
+            double newweight = distanceFunction.distance(latest, relation.get(it.seek(i)));
+            if(initial || newweight < weight) {
+              weights[i] = weight = newweight;
+            }
+            sum += weight;
+          }
+          blocksums[b] = sum;
+        }
+      }
+    });
+    return sum(blocksums);
+  }
+
+  /**
+   * Sum of the block sums.
+   * 
+   * @param blocksums Block sums
+   * @return Total weight
+   */
+  static double sum(double[] blocksums) {
+    double sum = 0.;
+    for(double s : blocksums) {
+      sum += s;
+    }
+    return sum;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeansInitialization.Parameterizer {
+    @Override
+    protected ParallelKMeansPlusPlusInitialMeans<V> makeInstance() {
+      return new ParallelKMeansPlusPlusInitialMeans<>(rnd);
+    }
+  }
+}
@@ -0,0 +1,481 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.AbstractKMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Abstract base class for parallel k-means variants that maintain bounds for
+ * each object, such as Elkan's and Hamerly's algorithms.
+ * 
+ * The data is processed in contiguous partitions on all available cores. Each
+ * partition checks and updates the bounds of its own objects, and records the
+ * objects that change their cluster. The cluster sums are then updated by
+ * replaying these changes in the original order of the relation, so the result
+ * is bit-identical to the serial algorithm, independent of the number of
+ * threads: a per-thread reduction of the sums would change the floating point
+ * rounding, and may thus change the result.
+ * 
+ * For this reason, this class does not use the {@link ParallelExecutor#run}
+ * processor framework used by {@link ParallelLloydKMeans}: processors only
+ * see object references, not their positions, and the partial results are
+ * merged in the order the threads finish, so the changes could not be replayed
+ * in a deterministic order. Contiguous partitions via
+ * {@link ParallelExecutor#runPartitions} provide the position of every
+ * partition, at the cost of one batch of tasks per step instead of one
+ * per iteration.
+ * 
+ * @author agent
+ * 
+ * @apiviz.has Instance
+ * 
+ * @param <V> Vector type
+ */
+public abstract class AbstractParallelBoundedKMeans<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * Minimum number of objects per partition.
+   */
+  private static final int MIN_PARTITION = 1024;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function
+   * @param k K parameter
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization method
+   */
+  public AbstractParallelBoundedKMeans(PrimitiveDistanceFunction<? super NumberVector> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    // Choose initial means
+    List<Vector> means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction(), Vector.FACTORY);
+    // Setup cluster assignment store
+    List<ModifiableDBIDs> clusters = new ArrayList<>();
+    for(int i = 0; i < k; i++) {
+      clusters.add(DBIDUtil.newHashSet((int) (relation.size() * 2. / k)));
+    }
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    // Storage for updated means:
+    final int dim = means.get(0).getDimensionality();
+    List<Vector> sums = new ArrayList<>(k);
+    for(int i = 0; i < k; i++) {
+      sums.add(new Vector(dim));
+    }
+    // Distance moved by each mean.
+    double[] move = new double[k];
+
+    Instance inst = instantiate(relation, means, assignment, move);
+    // Fill all keys, so the parallel writes never modify the structure of
+    // hash-based storage.
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      assignment.putInt(it, -1);
+      inst.initializeBounds(it);
+    }
+
+    IndefiniteProgress prog = getLogger().isVerbose() ? new IndefiniteProgress("K-Means iteration", getLogger()) : null;
+    LongStatistic varstat = getLogger().isStatistics() ? new LongStatistic(this.getClass().getName() + ".reassignments") : null;
+    for(int iteration = 0; maxiter <= 0 || iteration < maxiter; iteration++) {
+      getLogger().incrementProcessed(prog);
+      if(iteration > 0) {
+        inst.prepareReassignment();
+      }
+      final int changed = applyChanges(relation, assign(ids, inst, iteration == 0), assignment, clusters, sums);
+      if(varstat != null) {
+        varstat.setLong(changed);
+        getLogger().statistics(varstat);
+      }
+      // Stop if no cluster assignment changed.
+      if(changed == 0) {
+        break;
+      }
+      // Recompute means.
+      for(int i = 0; i < k; i++) {
+        final int s = clusters.get(i).size();
+        sums.get(i).timesEquals(s > 0 ? 1. / s : 1.);
+      }
+      final double delta = maxMoved(means, sums, move);
+      updateBounds(ids, inst, delta);
+      for(int i = 0; i < k; i++) {
+        final int s = clusters.get(i).size();
+        means.get(i).set(sums.get(i));
+        // Restore to sum for next iteration
+        sums.get(i).timesEquals(s > 0 ? s : 1.);
+      }
+    }
+    getLogger().setCompleted(prog);
+    inst.destroy();
+
+    // Wrap result
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < clusters.size(); i++) {
+      DBIDs cids = clusters.get(i);
+      if(cids.size() == 0) {
+        continue;
+      }
+      double varsum = 0;
+      Vector mean = means.get(i);
+      for(DBIDIter it = cids.iter(); it.valid(); it.advance()) {
+        varsum += distanceFunction.distance(mean, relation.get(it));
+      }
+      KMeansModel model = new KMeansModel(mean, varsum);
+      result.addToplevelCluster(new Cluster<>(cids, model));
+    }
+    return result;
+  }
+
+  /**
+   * Run the (initial) assignment step on all cores.
+   * 
+   * @param ids Object IDs
+   * @param inst Algorithm instance
+   * @param initial Initial assignment
+   * @return Changes, one for each partition, in arbitrary order.
+   */
+  private List<Changes> assign(final ArrayDBIDs ids, final Instance inst, final boolean initial) {
+    final List<Changes> parts = new ArrayList<>();
+    ParallelExecutor.runPartitions(ids.size(), MIN_PARTITION, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        Changes changes = new Changes(start);
+        DBIDArrayIter it = ids.iter();
+        it.seek(start);
+        for(int i = start; i < end; i++, it.advance()) {
+          if(initial) {
+            inst.initialAssignment(it, changes);
+          }
+          else {
+            inst.reassignment(it, changes);
+          }
+        }
+        synchronized(parts) {
+          parts.add(changes);
+        }
+      }
+    });
+    return parts;
+  }
+
+  /**
+   * Update the clusters and sums, in the original order of the data.
+   * 
+   * @param relation Data relation
+   * @param parts Changes of each partition
+   * @param assignment New cluster assignment
+   * @param clusters Clusters
+   * @param sums Cluster sums
+   * @return Number of changes
+   */
+  private int applyChanges(Relation<V> relation, List<Changes> parts, WritableIntegerDataStore assignment, List<ModifiableDBIDs> clusters, List<Vector> sums) {
+    Collections.sort(parts, Changes.BY_START);
+    int changed = 0;
+    for(Changes part : parts) {
+      int i = 0;
+      for(DBIDIter it = part.ids.iter(); it.valid(); it.advance(), i++) {
+        final V fv = relation.get(it);
+        final int cur = assignment.intValue(it), orig = part.orig.get(i);
+        clusters.get(cur).add(it);
+        double[] newmean = sums.get(cur).getArrayRef();
+        if(orig < 0) {
+          for(int d = 0; d < fv.getDimensionality(); d++) {
+            newmean[d] += fv.doubleValue(d);
+          }
+          continue;
+        }
+        clusters.get(orig).remove(it);
+        double[] oldmean = sums.get(orig).getArrayRef();
+        for(int d = 0; d < fv.getDimensionality(); d++) {
+          final double v = fv.doubleValue(d);
+          newmean[d] += v;
+          oldmean[d] -= v;
+        }
+      }
+      changed += i;
+    }
+    return changed;
+  }
+
+  /**
+   * Update the bounds on all cores.
+   * 
+   * @param ids Object IDs
+   * @param inst Algorithm instance
+   * @param delta Maximum distance moved by any mean
+   */
+  private void updateBounds(final ArrayDBIDs ids, final Instance inst, final double delta) {
+    ParallelExecutor.runPartitions(ids.size(), MIN_PARTITION, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        DBIDArrayIter it = ids.iter();
+        it.seek(start);
+        for(int i = start; i < end; i++, it.advance()) {
+          inst.updateBounds(it, delta);
+        }
+      }
+    });
+  }
+
+  /**
+   * Maximum distance moved.
+   * 
+   * @param means Old means
+   * @param newmeans New means
+   * @param dists Distances moved
+   * @return Maximum distance moved
+   */
+  private double maxMoved(List<Vector> means, List<Vector> newmeans, double[] dists) {
+    boolean issquared = (distanceFunction instanceof SquaredEuclideanDistanceFunction);
+    double max = 0.;
+    for(int i = 0; i < k; i++) {
+      double d = distanceFunction.distance(means.get(i), newmeans.get(i));
+      d = issquared ? Math.sqrt(d) : d;
+      dists[i] = d;
+      max = (d > max) ? d : max;
+    }
+    return max;
+  }
+
+  /**
+   * Create the algorithm specific instance for a single run.
+   * 
+   * @param relation Data relation
+   * @param means Current means, updated in place
+   * @param assignment Cluster assignment
+   * @param move Distance moved by each mean in the last iteration
+   * @return Instance
+   */
+  protected abstract Instance instantiate(Relation<V> relation, List<Vector> means, WritableIntegerDataStore assignment, double[] move);
+
+  /**
+   * Changes of the cluster assignment within a single partition.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  protected static class Changes {
+    /**
+     * Sort partitions by their starting position.
+     */
+    static final Comparator<Changes> BY_START = new Comparator<Changes>() {
+      @Override
+      public int compare(Changes o1, Changes o2) {
+        return Integer.compare(o1.start, o2.start);
+      }
+    };
+
+    /**
+     * Starting position of the partition.
+     */
+    final int start;
+
+    /**
+     * Objects that changed their cluster, in the order of the data.
+     */
+    final ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+
+    /**
+     * Previous cluster of each object, -1 for the initial assignment.
+     */
+    final TIntArrayList orig = new TIntArrayList();
+
+    /**
+     * Constructor.
+     * 
+     * @param start Starting position of the partition
+     */
+    Changes(int start) {
+      this.start = start;
+    }
+
+    /**
+     * Record a cluster change.
+     * 
+     * @param id Object
+     * @param orig Previous cluster, -1 if not assigned yet
+     */
+    public void add(DBIDArrayIter id, int orig) {
+      ids.add(id);
+      this.orig.add(orig);
+    }
+  }
+
+  /**
+   * Algorithm specific state of a single run. The per-object methods are
+   * called concurrently for different objects, and must only modify the bounds
+   * and assignment of the given object.
+   * 
+   * @author agent
+   */
+  protected abstract class Instance {
+    /**
+     * Data relation.
+     */
+    protected final Relation<V> relation;
+
+    /**
+     * Current means.
+     */
+    protected final List<Vector> means;
+
+    /**
+     * Cluster assignment.
+     */
+    protected final WritableIntegerDataStore assignment;
+
+    /**
+     * Distance moved by each mean in the last iteration.
+     */
+    protected final double[] move;
+
+    /**
+     * Distance function.
+     */
+    protected final PrimitiveDistanceFunction<? super NumberVector> df;
+
+    /**
+     * Whether the distance function is squared Euclidean, and distances need
+     * to be square rooted to obtain a metric.
+     */
+    protected final boolean issquared;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param means Current means
+     * @param assignment Cluster assignment
+     * @param move Distance moved by each mean
+     */
+    public Instance(Relation<V> relation, List<Vector> means, WritableIntegerDataStore assignment, double[] move) {
+      super();
+      this.relation = relation;
+      this.means = means;
+      this.assignment = assignment;
+      this.move = move;
+      this.df = getDistanceFunction();
+      this.issquared = (df instanceof SquaredEuclideanDistanceFunction);
+    }
+
+    /**
+     * Initialize the bounds of an object (single-threaded).
+     * 
+     * @param id Object
+     */
+    protected abstract void initializeBounds(DBIDIter id);
+
+    /**
+     * Assign an object to its nearest mean, and initialize its bounds.
+     * 
+     * @param id Object
+     * @param changes Output of changes
+     */
+    protected abstract void initialAssignment(DBIDArrayIter id, Changes changes);
+
+    /**
+     * Prepare for the next reassignment pass (single-threaded).
+     */
+    protected abstract void prepareReassignment();
+
+    /**
+     * Reassign an object, if its bounds indicate this is necessary.
+     * 
+     * @param id Object
+     * @param changes Output of changes
+     */
+    protected abstract void reassignment(DBIDArrayIter id, Changes changes);
+
+    /**
+     * Update the bounds of an object after the means moved.
+     * 
+     * @param id Object
+     * @param delta Maximum distance moved
+     */
+    protected abstract void updateBounds(DBIDArrayIter id, double delta);
+
+    /**
+     * Release the bound storage.
+     */
+    protected abstract void destroy();
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <V> Vector type
+   */
+  public abstract static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    @Override
+    protected void getParameterDistanceFunction(Parameterization config) {
+      super.getParameterDistanceFunction(config);
+      if(distanceFunction instanceof SquaredEuclideanDistanceFunction) {
+        return; // Proper choice.
+      }
+      if(distanceFunction != null && !distanceFunction.isMetric()) {
+        getLogger().warning("Bounded k-means variants require a metric distance, and k-means should only be used with squared Euclidean distance!");
+      }
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Parallel version of Elkan's fast k-means, see {@link KMeansElkan}. The
+ * result is identical to the serial version.
+ * 
+ * <p>
+ * Reference:<br />
+ * C. Elkan<br/>
+ * Using the triangle inequality to accelerate k-means<br/>
+ * Proc. 20th International Conference on Machine Learning, ICML 2003
+ * </p>
+ * 
+ * @author agent
+ * 
+ * @param <V> Vector type
+ */
+@Reference(authors = "C. Elkan", //
+title = "Using the triangle inequality to accelerate k-means", //
+booktitle = "Proc. 20th International Conference on Machine Learning, ICML 2003", //
+url = "http://www.aaai.org/Library/ICML/2003/icml03-022.php")
+public class ParallelElkanKMeans<V extends NumberVector> extends AbstractParallelBoundedKMeans<V> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelElkanKMeans.class);
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function
+   * @param k K parameter
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization method
+   */
+  public ParallelElkanKMeans(PrimitiveDistanceFunction<? super NumberVector> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  protected Instance instantiate(Relation<V> relation, List<Vector> means, WritableIntegerDataStore assignment, double[] move) {
+    return new ElkanInstance(relation, means, assignment, move);
+  }
+
+  /**
+   * Instance for a single run, with Elkan's bounds.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  protected class ElkanInstance extends Instance {
+    /**
+     * Upper bound on the distance to the assigned mean.
+     */
+    WritableDoubleDataStore upper;
+
+    /**
+     * Lower bounds on the distances to each mean.
+     */
+    WritableDataStore<double[]> lower;
+
+    /**
+     * Half the distance of each mean to its nearest other mean.
+     */
+    double[] sep;
+
+    /**
+     * Half the center-to-center distances.
+     */
+    double[][] cdist;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param means Current means
+     * @param assignment Cluster assignment
+     * @param move Distance moved by each mean
+     */
+    public ElkanInstance(Relation<V> relation, List<Vector> means, WritableIntegerDataStore assignment, double[] move) {
+      super(relation, means, assignment, move);
+      upper = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+      lower = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, double[].class);
+      sep = new double[k];
+      cdist = new double[k][k];
+    }
+
+    @Override
+    protected void initializeBounds(DBIDIter id) {
+      upper.putDouble(id, Double.POSITIVE_INFINITY);
+      lower.put(id, new double[k]); // Filled with 0.
+    }
+
+    @Override
+    protected void initialAssignment(DBIDArrayIter it, Changes changes) {
+      V fv = relation.get(it);
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      double best = Double.POSITIVE_INFINITY;
+      int cur = -1;
+      for(int j = 0; j < k; j++) {
+        double dist = df.distance(fv, means.get(j));
+        dist = issquared ? Math.sqrt(dist) : dist;
+        l[j] = dist;
+        if(dist < best) {
+          cur = j;
+          best = dist;
+        }
+      }
+      // Assign to nearest cluster.
+      assignment.putInt(it, cur);
+      changes.add(it, -1);
+      upper.putDouble(it, best);
+    }
+
+    @Override
+    protected void prepareReassignment() {
+      Arrays.fill(sep, Double.POSITIVE_INFINITY);
+      for(int i = 1; i < k; i++) {
+        Vector mi = means.get(i);
+        for(int j = 0; j < i; j++) {
+          double d = df.distance(mi, means.get(j));
+          d = issquared ? Math.sqrt(d) : d;
+          d *= .5;
+          cdist[i][j] = d;
+          cdist[j][i] = d;
+          sep[i] = (d < sep[i]) ? d : sep[i];
+          sep[j] = (d < sep[j]) ? d : sep[j];
+        }
+      }
+    }
+
+    @Override
+    protected void reassignment(DBIDArrayIter it, Changes changes) {
+      final int orig = assignment.intValue(it);
+      double u = upper.doubleValue(it);
+      // Upper bound check (#2):
+      if(u <= sep[orig]) {
+        return;
+      }
+      boolean recompute_u = true; // Elkan's r(x)
+      V fv = relation.get(it);
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+          continue; // Condition #3 i-iii not satisfied
+        }
+        if(recompute_u) { // Need to update bound? #3a
+          u = df.distance(fv, means.get(cur));
+          u = issquared ? Math.sqrt(u) : u;
+          upper.putDouble(it, u);
+          recompute_u = false; // Once only
+          if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+            continue;
+          }
+        }
+        double dist = df.distance(fv, means.get(j));
+        dist = issquared ? Math.sqrt(dist) : dist;
+        l[j] = dist;
+        if(dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      // Object is to be reassigned.
+      if(cur != orig) {
+        upper.putDouble(it, u); // Remember bound.
+        assignment.putInt(it, cur);
+        changes.add(it, orig);
+      }
+    }
+
+    @Override
+    protected void updateBounds(DBIDArrayIter it, double delta) {
+      upper.increment(it, move[assignment.intValue(it)]);
+      double[] l = lower.get(it);
+      for(int i = 0; i < k; i++) {
+        l[i] -= move[i];
+      }
+    }
+
+    @Override
+    protected void destroy() {
+      upper.destroy();
+      lower.destroy();
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <V> Vector type
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParallelBoundedKMeans.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected ParallelElkanKMeans<V> makeInstance() {
+      return new ParallelElkanKMeans<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHamerly;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Parallel version of Hamerly's fast k-means, see {@link KMeansHamerly}. The
+ * result is identical to the serial version.
+ * 
+ * <p>
+ * Reference:<br />
+ * G. Hamerly<br/>
+ * Making k-means even faster<br/>
+ * Proc. 2010 SIAM International Conference on Data Mining
+ * </p>
+ * 
+ * @author agent
+ * 
+ * @param <V> Vector type
+ */
+@Reference(authors = "G. Hamerly", //
+title = "Making k-means even faster", //
+booktitle = "Proc. 2010 SIAM International Conference on Data Mining", //
+url = "http://dx.doi.org/10.1137/1.9781611972801.12")
+public class ParallelHamerlyKMeans<V extends NumberVector> extends AbstractParallelBoundedKMeans<V> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelHamerlyKMeans.class);
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function
+   * @param k K parameter
+   * @param maxiter Maximum number of iterations
+   * @param initializer Initialization method
+   */
+  public ParallelHamerlyKMeans(PrimitiveDistanceFunction<? super NumberVector> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  protected Instance instantiate(Relation<V> relation, List<Vector> means, WritableIntegerDataStore assignment, double[] move) {
+    return new HamerlyInstance(relation, means, assignment, move);
+  }
+
+  /**
+   * Instance for a single run, with Hamerly's bounds.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  protected class HamerlyInstance extends Instance {
+    /**
+     * Upper bound on the distance to the assigned mean.
+     */
+    WritableDoubleDataStore upper;
+
+    /**
+     * Lower bound on the distance to the second nearest mean.
+     */
+    WritableDoubleDataStore lower;
+
+    /**
+     * Half the distance of each mean to its nearest other mean.
+     */
+    double[] sep;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param means Current means
+     * @param assignment Cluster assignment
+     * @param move Distance moved by each mean
+     */
+    public HamerlyInstance(Relation<V> relation, List<Vector> means, WritableIntegerDataStore assignment, double[] move) {
+      super(relation, means, assignment, move);
+      upper = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+      lower = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, 0.);
+      sep = new double[k];
+    }
+
+    @Override
+    protected void initializeBounds(DBIDIter id) {
+      upper.putDouble(id, Double.POSITIVE_INFINITY);
+      lower.putDouble(id, 0.);
+    }
+
+    @Override
+    protected void initialAssignment(DBIDArrayIter it, Changes changes) {
+      V fv = relation.get(it);
+      // Find closest center, and distance to two closest centers
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int i = 0; i < k; i++) {
+        double dist = df.distance(fv, means.get(i));
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      // make squared Euclidean a metric:
+      if(issquared) {
+        min1 = Math.sqrt(min1);
+        min2 = Math.sqrt(min2);
+      }
+      assignment.putInt(it, minIndex);
+      changes.add(it, -1);
+      upper.putDouble(it, min1);
+      lower.putDouble(it, min2);
+    }
+
+    @Override
+    protected void prepareReassignment() {
+      Arrays.fill(sep, Double.POSITIVE_INFINITY);
+      for(int i = 1; i < k; i++) {
+        Vector m1 = means.get(i);
+        for(int j = 0; j < i; j++) {
+          double d = df.distance(m1, means.get(j));
+          sep[i] = (d < sep[i]) ? d : sep[i];
+          sep[j] = (d < sep[j]) ? d : sep[j];
+        }
+      }
+      // We need half the Euclidean distance
+      for(int i = 0; i < k; i++) {
+        sep[i] = issquared ? Math.sqrt(sep[i]) : sep[i];
+        sep[i] *= .5;
+      }
+    }
+
+    @Override
+    protected void reassignment(DBIDArrayIter it, Changes changes) {
+      final int cur = assignment.intValue(it);
+      // Compute the current bound:
+      final double z = lower.doubleValue(it);
+      final double sa = sep[cur];
+      double u = upper.doubleValue(it);
+      if(u <= z || u <= sa) {
+        return;
+      }
+      // Update the upper bound
+      V fv = relation.get(it);
+      u = df.distance(fv, means.get(cur));
+      u = issquared ? Math.sqrt(u) : u;
+      upper.putDouble(it, u);
+      if(u <= z || u <= sa) {
+        return;
+      }
+      // Find closest center, and distance to two closest centers
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int i = 0; i < k; i++) {
+        double dist = df.distance(fv, means.get(i));
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      // make squared Euclidean a metric:
+      if(issquared) {
+        min1 = Math.sqrt(min1);
+        min2 = Math.sqrt(min2);
+      }
+      if(minIndex != cur) {
+        assignment.putInt(it, minIndex);
+        changes.add(it, cur);
+        upper.putDouble(it, min1);
+      }
+      lower.putDouble(it, min2);
+    }
+
+    @Override
+    protected void updateBounds(DBIDArrayIter it, double delta) {
+      upper.increment(it, move[assignment.intValue(it)]);
+      lower.increment(it, -delta);
+    }
+
+    @Override
+    protected void destroy() {
+      upper.destroy();
+      lower.destroy();
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <V> Vector type
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParallelBoundedKMeans.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected ParallelHamerlyKMeans<V> makeInstance() {
+      return new ParallelHamerlyKMeans<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+}
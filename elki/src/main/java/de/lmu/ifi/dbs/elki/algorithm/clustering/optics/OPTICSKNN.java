@@ -0,0 +1,366 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.UpdatableHeap;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Approximate OPTICS, using a kNN graph instead of epsilon range queries.
+ * 
+ * Instead of a range query, every expansion uses the k nearest neighbors of
+ * the object, which will be answered by a precomputed kNN graph such as the
+ * {@link de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor}
+ * or any other kNN index, if available. The core distance is the minPts
+ * nearest neighbor distance as in OPTICS, but only the k nearest neighbors
+ * receive reachability updates. The result is exact if the k nearest neighbors
+ * always include the epsilon neighborhood, and approximate otherwise.
+ * 
+ * In addition, the size of the candidate heap can be bounded: when the heap
+ * grows beyond twice the limit, only the candidates with the smallest
+ * reachability are kept. Dropped objects are found again from later
+ * expansions, or start a new part of the cluster order.
+ * 
+ * The cluster order can be observed while it is being built, using
+ * {@link #run(Database, Relation, Listener, int)}. The listener may stop the
+ * algorithm early, and will then receive a partial cluster order.
+ * 
+ * @author agent
+ * 
+ * @apiviz.has Listener
+ * 
+ * @param <O> the type of DatabaseObjects handled by the algorithm
+ */
+public class OPTICSKNN<O> extends AbstractOPTICS<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(OPTICSKNN.class);
+
+  /**
+   * Number of neighbors to use for reachability updates.
+   */
+  protected int k;
+
+  /**
+   * Maximum size of the candidate heap.
+   */
+  protected int heapsize;
+
+  /**
+   * Constructor.
+   * 
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   * @param k Number of neighbors, at least minPts
+   * @param heapsize Heap size limit, {@code Integer.MAX_VALUE} for unbounded
+   */
+  public OPTICSKNN(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts, int k, int heapsize) {
+    super(distanceFunction, epsilon, minpts);
+    this.k = Math.max(k, minpts);
+    this.heapsize = heapsize;
+  }
+
+  @Override
+  public ClusterOrder run(Database db, Relation<O> relation) {
+    return run(db, relation, null, 0);
+  }
+
+  /**
+   * Run OPTICS, and report the cluster order while it is being built.
+   * 
+   * @param db Database
+   * @param relation Relation
+   * @param listener Listener to report to, may be {@code null}
+   * @param interval Report every {@code interval} objects, and whenever a new
+   *        part of the cluster order is started.
+   * @return Cluster order, partial if the listener stopped the algorithm
+   */
+  public ClusterOrder run(Database db, Relation<O> relation, Listener listener, int interval) {
+    return new Instance(db, relation, listener, interval).run();
+  }
+
+  /**
+   * Listener to observe the cluster order while it is being built.
+   * 
+   * @author agent
+   */
+  public static interface Listener {
+    /**
+     * Called when the cluster order has been extended.
+     * 
+     * @param order Current (partial) cluster order
+     * @return {@code false} to stop the algorithm
+     */
+    boolean clusterOrderExtended(ClusterOrder order);
+  }
+
+  /**
+   * Instance for processing a single data set.
+   * 
+   * @author agent
+   */
+  private class Instance {
+    /**
+     * Holds a set of processed ids.
+     */
+    private ModifiableDBIDs processedIDs;
+
+    /**
+     * Heap of candidates.
+     */
+    UpdatableHeap<OPTICSHeapEntry> heap;
+
+    /**
+     * Output cluster order.
+     */
+    ClusterOrder clusterOrder;
+
+    /**
+     * IDs to process.
+     */
+    private DBIDs ids;
+
+    /**
+     * Progress for logging.
+     */
+    FiniteProgress progress;
+
+    /**
+     * kNN query.
+     */
+    KNNQuery<O> knnQuery;
+
+    /**
+     * Listener, may be {@code null}.
+     */
+    Listener listener;
+
+    /**
+     * Reporting interval.
+     */
+    int interval;
+
+    /**
+     * Heap size that triggers trimming.
+     */
+    int trimsize;
+
+    /**
+     * Number of heap entries dropped.
+     */
+    long dropped = 0;
+
+    /**
+     * Constructor for a single data set.
+     *
+     * @param db Database
+     * @param relation Data relation
+     * @param listener Listener, may be {@code null}
+     * @param interval Reporting interval
+     */
+    public Instance(Database db, Relation<O> relation, Listener listener, int interval) {
+      ids = relation.getDBIDs();
+      processedIDs = DBIDUtil.newHashSet(ids.size());
+      clusterOrder = new ClusterOrder(ids, "OPTICS Clusterorder", "optics-clusterorder");
+      progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
+      DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+      knnQuery = db.getKNNQuery(dq, k);
+      if(knnQuery instanceof LinearScanQuery) {
+        LOG.warning("No kNN index available; every expansion will perform a linear scan.");
+      }
+      heap = new UpdatableHeap<>();
+      this.listener = listener;
+      this.interval = interval > 0 ? interval : Integer.MAX_VALUE;
+      this.trimsize = heapsize < (Integer.MAX_VALUE >> 1) ? heapsize << 1 : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Process the data set.
+     * 
+     * @return Cluster order result.
+     */
+    public ClusterOrder run() {
+      for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+        if(!processedIDs.contains(iditer)) {
+          assert (heap.isEmpty());
+          if(!expandClusterOrder(iditer)) {
+            break;
+          }
+        }
+      }
+      if(clusterOrder.size() == ids.size()) {
+        LOG.ensureCompleted(progress);
+      }
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(OPTICSKNN.class.getName() + ".heap-dropped", dropped));
+      }
+      return clusterOrder;
+    }
+
+    /**
+     * OPTICS-function expandClusterOrder.
+     * 
+     * @param objectID the currently processed object
+     * @return {@code false} if the listener stopped the algorithm
+     */
+    protected boolean expandClusterOrder(DBIDRef objectID) {
+      heap.add(new OPTICSHeapEntry(DBIDUtil.deref(objectID), null, Double.POSITIVE_INFINITY));
+      if(listener != null && !listener.clusterOrderExtended(clusterOrder)) {
+        heap.clear();
+        return false;
+      }
+
+      while(!heap.isEmpty()) {
+        final OPTICSHeapEntry current = heap.poll();
+        clusterOrder.add(current.objectID, current.reachability, current.predecessorID);
+        processedIDs.add(current.objectID);
+
+        KNNList neighbors = knnQuery.getKNNForDBID(current.objectID, k);
+        DoubleDBIDListIter neighbor = neighbors.iter();
+        final double coreDistance = neighbors.size() >= minpts ? neighbor.seek(minpts - 1).doubleValue() : Double.POSITIVE_INFINITY;
+        if(coreDistance <= epsilon) {
+          for(neighbor.seek(0); neighbor.valid() && neighbor.doubleValue() <= epsilon; neighbor.advance()) {
+            if(processedIDs.contains(neighbor)) {
+              continue;
+            }
+            double reachability = MathUtil.max(neighbor.doubleValue(), coreDistance);
+            heap.add(new OPTICSHeapEntry(DBIDUtil.deref(neighbor), current.objectID, reachability));
+          }
+          if(heap.size() > trimsize) {
+            trimHeap();
+          }
+        }
+        LOG.incrementProcessed(progress);
+        if(listener != null && clusterOrder.size() % interval == 0 && !listener.clusterOrderExtended(clusterOrder)) {
+          heap.clear();
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Reduce the heap to the candidates with the smallest reachability.
+     */
+    private void trimHeap() {
+      OPTICSHeapEntry[] entries = new OPTICSHeapEntry[heap.size()];
+      int i = 0;
+      for(UpdatableHeap<OPTICSHeapEntry>.UnorderedIter it = heap.unorderedIter(); it.valid(); it.advance()) {
+        entries[i++] = it.get();
+      }
+      Arrays.sort(entries);
+      heap.clear();
+      for(i = 0; i < heapsize; i++) {
+        heap.add(entries[i]);
+      }
+      dropped += entries.length - heapsize;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractOPTICS.Parameterizer<O> {
+    /**
+     * Number of neighbors to use, defaults to minPts.
+     * <p>
+     * Key: {@code -optics.knn}
+     * </p>
+     */
+    public static final OptionID K_ID = new OptionID("optics.knn", "Number of nearest neighbors to update the reachability of, at least minPts. Use a kNN index or preprocessor with at least this k.");
+
+    /**
+     * Maximum size of the candidate heap.
+     * <p>
+     * Key: {@code -optics.heapsize}
+     * </p>
+     */
+    public static final OptionID HEAPSIZE_ID = new OptionID("optics.heapsize", "Bound on the candidate heap size, dropping the candidates with the largest reachability.");
+
+    /**
+     * Number of neighbors.
+     */
+    protected int k;
+
+    /**
+     * Heap size limit.
+     */
+    protected int heapsize = Integer.MAX_VALUE;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter kP = new IntParameter(K_ID) //
+      .setOptional(true) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(kP)) {
+        k = kP.intValue();
+      }
+      IntParameter heapsizeP = new IntParameter(HEAPSIZE_ID) //
+      .setOptional(true) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(heapsizeP)) {
+        heapsize = heapsizeP.intValue();
+      }
+    }
+
+    @Override
+    protected OPTICSKNN<O> makeInstance() {
+      return new OPTICSKNN<>(distanceFunction, epsilon, minpts, k, heapsize);
+    }
+  }
+}
@@ -44,8 +44,13 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+import de.lmu.ifi.dbs.elki.utilities.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * Eclat is a depth-first discovery algorithm for mining frequent itemsets.
@@ -55,16 +60,15 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * prefix lattice, stopping traversal when the minimum support is no longer
  * satisfied.
  *
- * This implementation is the basic algorithm only, and does not use diffsets.
- * Columns are represented using a sparse representation, which theoretically is
- * beneficial when the density is less than 1/31. This corresponds roughly to a
- * minimum support of 3% for 1-itemsets. When searching for itemsets with a
- * larger minimum support, it may be desirable to use a dense bitset
- * representation instead and/or implement an automatic switching technique!
+ * By default, columns are represented using a sparse representation, which
+ * theoretically is beneficial when the density is less than 1/31. This
+ * corresponds roughly to a minimum support of 3% for 1-itemsets. When searching
+ * for itemsets with a larger minimum support, the dense variant can be used
+ * instead: it stores the transaction lists as bitsets, and below the first
+ * level only stores the difference to the prefix (diffsets, as in dEclat),
+ * which usually shrink quickly in dense data.
  *
- * Performance of this implementation is probably surpassed with a low-level C
- * implementation based on SIMD bitset operations as long as support of an
- * itemset is high, which are not easily accessible in Java.
+ * The branches of the first level are processed on all available CPUs.
  *
  * Reference:
  * <p>
@@ -72,6 +76,13 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * M.J. Zaki, S. Parthasarathy, M. Ogihara, and W. Li<br />
  * Proc. 3rd ACM SIGKDD '97 Int. Conf. on Knowledge Discovery and Data Mining
  * </p>
+ *
+ * Diffsets:
+ * <p>
+ * M. J. Zaki, K. Gouda<br />
+ * Fast vertical mining using diffsets<br />
+ * Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining
+ * </p>
  * 
  * @author Erich Schubert
  */
@@ -90,6 +101,11 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
    */
   private static final String STAT = Eclat.class.getName() + ".";
 
+  /**
+   * Use dense bitsets with diffsets.
+   */
+  private boolean diffsets;
+
   /**
    * Constructor.
    *
@@ -98,7 +114,20 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
    * @param maxlength Maximum length
    */
   public Eclat(double minsupp, int minlength, int maxlength) {
+    this(minsupp, minlength, maxlength, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param minsupp Minimum support
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   * @param diffsets Use dense bitsets with diffsets
+   */
+  public Eclat(double minsupp, int minlength, int maxlength, boolean diffsets) {
     super(minsupp, minlength, maxlength);
+    this.diffsets = diffsets;
   }
 
   /**
@@ -117,16 +146,38 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
 
     LOG.verbose("Build 1-dimensional transaction lists.");
     Duration ctime = LOG.newDuration(STAT + "eclat.transposition.time").begin();
-    DBIDs[] idx = buildIndex(relation, dim, minsupp);
+    final DBIDs[] idx = diffsets ? null : buildIndex(relation, dim, minsupp);
+    final long[][] bits = diffsets ? buildBitsets(relation, dim, minsupp) : null;
     LOG.statistics(ctime.end());
 
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", idx.length, LOG) : null;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", dim, LOG) : null;
     Duration etime = LOG.newDuration(STAT + "eclat.extraction.time").begin();
     final List<Itemset> solution = new ArrayList<>();
-    for(int i = 0; i < idx.length; i++) {
-      LOG.incrementProcessed(prog);
-      extractItemsets(idx, i, minsupp, solution);
-    }
+    // Items are scheduled dynamically, because the first items have the
+    // largest branches.
+    ParallelExecutor.runQueue(dim, new ParallelExecutor.QueueTask() {
+      @Override
+      public void process(ParallelExecutor.WorkQueue queue) {
+        List<Itemset> local = new ArrayList<>();
+        if(diffsets) {
+          DiffsetExtractor ex = new DiffsetExtractor(bits, minsupp, local);
+          for(int i = queue.next(); i >= 0; i = queue.next()) {
+            ex.extractItemsets(i);
+            LOG.incrementProcessed(prog);
+          }
+        }
+        else {
+          int[] buf = new int[dim];
+          for(int i = queue.next(); i >= 0; i = queue.next()) {
+            extractItemsets(idx, i, buf, minsupp, local);
+            LOG.incrementProcessed(prog);
+          }
+        }
+        synchronized(solution) {
+          solution.addAll(local);
+        }
+      }
+    });
     LOG.ensureCompleted(prog);
     Collections.sort(solution);
     LOG.statistics(etime.end());
@@ -135,9 +186,7 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     return new FrequentItemsetsResult("Eclat", "eclat", solution, meta);
   }
 
-  // TODO: implement diffsets.
-  private void extractItemsets(DBIDs[] idx, int start, int minsupp, List<Itemset> solution) {
-    int[] buf = new int[idx.length];
+  private void extractItemsets(DBIDs[] idx, int start, int[] buf, int minsupp, List<Itemset> solution) {
     DBIDs iset = idx[start];
     if(iset == null || iset.size() < minsupp) {
       return;
@@ -162,11 +211,11 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
         continue;
       }
       buf[depth] = i;
-      int[] items = Arrays.copyOf(buf, depth + 1);
-      if(depth >= minlength) {
+      if(depth + 1 >= minlength) {
+        int[] items = Arrays.copyOf(buf, depth + 1);
         solution.add(new SparseItemset(items, ids.size()));
       }
-      if(depth < maxlength) {
+      if(depth + 1 < maxlength) {
         extractItemsets(ids, idx, buf, depth + 1, i + 1, minsupp, solution);
       }
     }
@@ -219,6 +268,205 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     return idx;
   }
 
+  /**
+   * Build the transaction lists as dense bitsets, indexed by the position of
+   * the transaction.
+   *
+   * @param relation Data
+   * @param dim Dimensionality
+   * @param minsupp Minimum support
+   * @return Bitsets of the frequent 1-items, null for infrequent items
+   */
+  private long[][] buildBitsets(Relation<BitVector> relation, int dim, int minsupp) {
+    // Count the support first, to only allocate bitsets for frequent items.
+    int[] counts = new int[dim];
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      SparseFeatureVector<?> bv = relation.get(iter);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        counts[bv.iterDim(it)]++;
+      }
+    }
+    final int size = relation.size();
+    long[][] idx = new long[dim][];
+    for(int i = 0; i < dim; i++) {
+      if(counts[i] >= minsupp) {
+        idx[i] = BitsUtil.zero(size);
+      }
+    }
+    int pos = 0;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance(), pos++) {
+      SparseFeatureVector<?> bv = relation.get(iter);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        final long[] bits = idx[bv.iterDim(it)];
+        if(bits != null) {
+          BitsUtil.setI(bits, pos);
+        }
+      }
+    }
+    return idx;
+  }
+
+  /**
+   * Depth-first extraction using dense diffsets, with the scratch buffers of a
+   * single thread.
+   *
+   * @author agent
+   */
+  private class DiffsetExtractor {
+    /**
+     * Bitsets of the 1-items.
+     */
+    private final long[][] bits;
+
+    /**
+     * Minimum support.
+     */
+    private final int minsupp;
+
+    /**
+     * Output list.
+     */
+    private final List<Itemset> solution;
+
+    /**
+     * Current prefix.
+     */
+    private final int[] buf;
+
+    /**
+     * Equivalence classes of each depth: items, supports, and diffsets. The
+     * diffset buffers are reused.
+     */
+    private final List<int[]> items = new ArrayList<>(), supports = new ArrayList<>();
+
+    /**
+     * Diffset buffers of each depth.
+     */
+    private final List<long[][]> sets = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param bits Bitsets of the 1-items
+     * @param minsupp Minimum support
+     * @param solution Output list
+     */
+    DiffsetExtractor(long[][] bits, int minsupp, List<Itemset> solution) {
+      this.bits = bits;
+      this.minsupp = minsupp;
+      this.solution = solution;
+      this.buf = new int[bits.length];
+    }
+
+    /**
+     * Extract all itemsets starting with the given item.
+     *
+     * @param start Item
+     */
+    void extractItemsets(int start) {
+      final long[] tids = bits[start];
+      if(tids == null) {
+        return;
+      }
+      final int support = BitsUtil.cardinality(tids);
+      if(minlength <= 1) {
+        solution.add(new OneItemset(start, support));
+      }
+      if(maxlength <= 1) {
+        return;
+      }
+      buf[0] = start;
+      // Build the class of start: diffsets t(start) \ t(j)
+      int[] citems = getItems(0);
+      int[] csupp = supports.get(0);
+      long[][] csets = sets.get(0);
+      int n = 0;
+      for(int j = start + 1; j < bits.length; j++) {
+        if(bits[j] == null) {
+          continue;
+        }
+        long[] d = csets[n] != null ? csets[n] : (csets[n] = new long[tids.length]);
+        final int s = support - andNotCardinality(tids, bits[j], d);
+        if(s >= minsupp) {
+          citems[n] = j;
+          csupp[n++] = s;
+        }
+      }
+      if(n > 0 && 1 + n >= minlength) {
+        extractClass(1, n);
+      }
+    }
+
+    /**
+     * Extract the itemsets of an equivalence class.
+     *
+     * @param depth Prefix length
+     * @param n Number of class members
+     */
+    private void extractClass(int depth, int n) {
+      final int[] pitems = items.get(depth - 1), psupp = supports.get(depth - 1);
+      final long[][] psets = sets.get(depth - 1);
+      for(int a = 0; a < n; a++) {
+        buf[depth] = pitems[a];
+        if(depth + 1 >= minlength) {
+          solution.add(new SparseItemset(Arrays.copyOf(buf, depth + 1), psupp[a]));
+        }
+        if(depth + 1 >= maxlength || a + 1 >= n) {
+          continue;
+        }
+        // Child class: d(PXY) = d(PY) \ d(PX)
+        int[] citems = getItems(depth);
+        int[] csupp = supports.get(depth);
+        long[][] csets = sets.get(depth);
+        int m = 0;
+        for(int b = a + 1; b < n; b++) {
+          long[] d = csets[m] != null ? csets[m] : (csets[m] = new long[psets[a].length]);
+          final int s = psupp[a] - andNotCardinality(psets[b], psets[a], d);
+          if(s >= minsupp) {
+            citems[m] = pitems[b];
+            csupp[m++] = s;
+          }
+        }
+        if(m > 0 && depth + 1 + m >= minlength) {
+          extractClass(depth + 1, m);
+        }
+      }
+    }
+
+    /**
+     * Get the buffers for the given depth.
+     *
+     * @param depth Depth
+     * @return Item buffer
+     */
+    private int[] getItems(int depth) {
+      while(items.size() <= depth) {
+        items.add(new int[bits.length]);
+        supports.add(new int[bits.length]);
+        sets.add(new long[bits.length][]);
+      }
+      return items.get(depth);
+    }
+  }
+
+  /**
+   * Compute {@code out = v & ~o}, and return the cardinality of the result.
+   *
+   * @param v First bitset
+   * @param o Second bitset
+   * @param out Output bitset
+   * @return Cardinality of the output
+   */
+  private static int andNotCardinality(long[] v, long[] o, long[] out) {
+    int card = 0;
+    for(int i = 0; i < v.length; i++) {
+      final long x = v[i] & ~o[i];
+      out[i] = x;
+      card += Long.bitCount(x);
+    }
+    return card;
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(TypeUtil.BIT_VECTOR_FIELD);
@@ -237,9 +485,28 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractFrequentItemsetAlgorithm.Parameterizer {
+    /**
+     * Flag to use dense bitsets with diffsets.
+     */
+    public static final OptionID DIFFSETS_ID = new OptionID("eclat.diffsets", "Use dense bitsets with diffsets instead of sparse transaction lists.");
+
+    /**
+     * Use dense bitsets with diffsets.
+     */
+    protected boolean diffsets = false;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      Flag diffsetsF = new Flag(DIFFSETS_ID);
+      if(config.grab(diffsetsF)) {
+        diffsets = diffsetsF.isTrue();
+      }
+    }
+
     @Override
     protected Eclat makeInstance() {
-      return new Eclat(minsupp, minlength, maxlength);
+      return new Eclat(minsupp, minlength, maxlength, diffsets);
     }
   }
 }
@@ -42,6 +42,7 @@ import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
@@ -58,8 +59,10 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * using a not too high support threshold, as it only prunes single items, not
  * item combinations.
  * 
- * This implementation is in-memory only, and has not yet been carefully
- * optimized.
+ * This implementation is in-memory only. The tree is stored in parallel
+ * integer arrays rather than node objects, the conditional trees are built in
+ * reusable buffers, and the conditional trees of the top-level items are mined
+ * on all available CPUs.
  * 
  * The worst case memory use probably is O(min(n*l,i^l)) where i is the number
  * of items, l the average itemset length, and n the number of items. The worst
@@ -93,7 +96,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
 
   /**
    * Constructor.
-   *
+   * 
    * @param minsupp Minimum support (relative or absolute)
    * @param minlength Minimum length
    * @param maxlength Maximum length
@@ -134,14 +137,10 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     if(LOG.isStatistics()) {
       tree.logStatistics();
     }
-    // Reduce memory usage:
-    tree.reduceMemory();
-    LOG.statistics(ctime.end());
-
     if(LOG.isDebuggingFinest()) {
       StringBuilder buf = new StringBuilder();
       buf.append("FP-tree:\n");
-      tree.appendTo(buf, new FPNode.Translator() {
+      tree.appendTo(buf, new FPTree.Translator() {
         @Override
         public void appendTo(StringBuilder buf, int i) {
           String l = meta.getLabel(idx[i]);
@@ -150,28 +149,36 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       });
       LOG.debugFinest(buf.toString());
     }
+    // Reduce memory usage:
+    tree.reduceMemory();
+    LOG.statistics(ctime.end());
 
     LOG.verbose("Extracting frequent patterns.");
     Duration etime = LOG.newDuration(STAT + "fp-growth.extraction.time").begin();
     final IndefiniteProgress itemp = LOG.isVerbose() ? new IndefiniteProgress("Frequent itemsets", LOG) : null;
     final List<Itemset> solution = new ArrayList<>();
     // Start extraction with the least frequent items
-    tree.extract(minsupp, minlength, maxlength, true, new FPTree.Collector() {
+    tree.extract(minsupp, minlength, maxlength, new FPTree.Collector() {
       @Override
       public void collect(int support, int[] data, int start, int plen) {
         // Always translate the indexes back to the original values via 'idx'!
+        final Itemset itemset;
         if(plen - start == 1) {
-          solution.add(new OneItemset(idx[data[start]], support));
-          LOG.incrementProcessed(itemp);
-          return;
+          itemset = new OneItemset(idx[data[start]], support);
         }
-        // Copy from buffer to a permanent storage
-        int[] indices = new int[plen - start];
-        for(int i = start, j = 0; i < plen; i++) {
-          indices[j++] = idx[data[i]]; // Translate to original items
+        else {
+          // Copy from buffer to a permanent storage
+          int[] indices = new int[plen - start];
+          for(int i = start, j = 0; i < plen; i++) {
+            indices[j++] = idx[data[i]]; // Translate to original items
+          }
+          Arrays.sort(indices);
+          itemset = new SparseItemset(indices, support);
+        }
+        // Called concurrently by the extraction threads.
+        synchronized(solution) {
+          solution.add(itemset);
         }
-        Arrays.sort(indices);
-        solution.add(new SparseItemset(indices, support));
         LOG.incrementProcessed(itemp);
       }
     });
@@ -276,205 +283,224 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
   }
 
   /**
-   * FP-Tree data structure
+   * FP-Tree data structure, stored in parallel arrays.
+   * 
+   * Node 0 is the root. Every node stores its parent, item and count, and a
+   * link to the next node of the same item (starting at the header table). The
+   * child lists are only needed for insertion, and can be released with
+   * {@link #reduceMemory()} once the tree is built.
    * 
    * @author Erich Schubert
-   *
-   * @apiviz.composedOf FPNode
    */
-  public static class FPTree extends FPNode {
+  public static class FPTree {
+    /**
+     * Initial number of nodes to allocate.
+     */
+    private static final int INITIAL_SIZE = 1024;
+
+    /**
+     * Parent node, item, and count of each node.
+     */
+    int[] parent, item, count;
+
+    /**
+     * Next node with the same item, or -1.
+     */
+    int[] sibling;
+
+    /**
+     * First child, and next child of the same parent (for insertion only).
+     */
+    int[] firstchild, nextchild;
+
+    /**
+     * Header table: first node of each item, or -1.
+     */
+    int[] header;
+
+    /**
+     * Children of the root, by item (for insertion only).
+     */
+    int[] rootchild;
+
+    /**
+     * Number of items in the header table.
+     */
+    int items;
+
     /**
-     * Header table
+     * Number of nodes in the tree, including the root.
      */
-    FPNode[] header;
+    int size;
 
     /**
-     * Number of nodes in the tree (statistics only).
+     * Flag, if the tree is (still) a single path.
      */
-    int nodes = 1;
+    boolean singlepath;
 
     /**
      * Constructor.
-     *
+     * 
      * @param items Number of items in header table
      */
     public FPTree(int items) {
-      super(null, -1);
-      header = new FPNode[items];
+      parent = new int[INITIAL_SIZE];
+      item = new int[INITIAL_SIZE];
+      count = new int[INITIAL_SIZE];
+      sibling = new int[INITIAL_SIZE];
+      reset(items);
+    }
+
+    /**
+     * Remove all nodes, to reuse the allocated memory for a new tree.
+     * 
+     * @param items Number of items in header table
+     */
+    public void reset(int items) {
+      this.items = items;
+      if(header == null || header.length < items) {
+        header = new int[items];
+      }
+      if(rootchild == null || rootchild.length < items) {
+        rootchild = new int[items];
+      }
+      if(firstchild == null) {
+        firstchild = new int[parent.length];
+        nextchild = new int[parent.length];
+      }
+      Arrays.fill(header, 0, items, -1);
+      Arrays.fill(rootchild, 0, items, -1);
+      parent[0] = -1;
+      item[0] = -1;
+      count[0] = 0;
+      sibling[0] = -1;
+      firstchild[0] = -1;
+      nextchild[0] = -1;
+      size = 1;
+      singlepath = true;
     }
 
     /**
      * Insert an itemset into the tree.
      * 
-     * @param buf Buffer
+     * @param buf Buffer, sorted ascending
      * @param i Start position in buffer
      * @param l End position in buffer
      * @param weight Weight
      */
     public void insert(int[] buf, int i, int l, int weight) {
-      insert(this, buf, i, l, weight);
+      int cur = 0;
+      count[0] += weight;
+      for(; i < l; i++) {
+        final int label = buf[i];
+        int c = (cur == 0) ? rootchild[label] : findChild(cur, label);
+        if(c < 0) {
+          c = newNode(cur, label);
+        }
+        count[c] += weight;
+        cur = c;
+      }
+    }
+
+    /**
+     * Find the child with the given label.
+     * 
+     * @param node Parent node
+     * @param label Item label
+     * @return Child node, or -1
+     */
+    private int findChild(int node, int label) {
+      for(int c = firstchild[node]; c >= 0; c = nextchild[c]) {
+        if(item[c] == label) {
+          return c;
+        }
+      }
+      return -1;
     }
 
     /**
      * Create a new node of the FP-tree, linking it into the header table.
      * 
-     * @param parent Parent node
+     * @param p Parent node
      * @param label Node label
      * @return New node
      */
-    public FPNode newNode(FPNode parent, int label) {
-      FPNode node = new FPNode(parent, label);
+    private int newNode(int p, int label) {
+      if(size == parent.length) {
+        final int newsize = parent.length << 1;
+        parent = Arrays.copyOf(parent, newsize);
+        item = Arrays.copyOf(item, newsize);
+        count = Arrays.copyOf(count, newsize);
+        sibling = Arrays.copyOf(sibling, newsize);
+        firstchild = Arrays.copyOf(firstchild, newsize);
+        nextchild = Arrays.copyOf(nextchild, newsize);
+      }
+      final int node = size++;
+      parent[node] = p;
+      item[node] = label;
+      count[node] = 0;
+      firstchild[node] = -1;
+      if(firstchild[p] >= 0) {
+        singlepath = false;
+      }
+      nextchild[node] = firstchild[p];
+      firstchild[p] = node;
+      if(p == 0) {
+        rootchild[label] = node;
+      }
       // Prepend to linked list - there is no benefit in keeping a particular
       // order, as far as I can tell.
-      node.sibling = header[label];
+      sibling[node] = header[label];
       header[label] = node;
-      ++nodes; // Statistics tracking only
       return node;
     }
 
     /**
-     * Extract itemsets ending in the given item.
-     * 
-     * @param minsupp Minimum support
-     * @param minlength Minimum length
-     * @param maxlength Maximum length
-     * @param destruct Remove nodes
-     * @param col Itemset collector
+     * Release the memory occupied for the parent-to-child navigation, which is
+     * no longer needed after building the tree (only child-to-parent is needed
+     * in extracting itemsets).
      */
-    public void extract(int minsupp, int minlength, int maxlength, boolean destruct, Collector col) {
-      int[] buf = new int[header.length], buf2 = new int[header.length], buf3 = new int[header.length];
-      int stop = (minlength > 1) ? minlength - 1 : 0;
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", header.length - stop, LOG) : null;
-      for(int j = header.length - 1; j >= stop; --j) {
-        extract(minsupp, minlength, maxlength, j, buf, 0, buf2, buf3, destruct, col);
-        LOG.incrementProcessed(prog);
+    public void reduceMemory() {
+      firstchild = nextchild = rootchild = null;
+      if(size < parent.length) {
+        parent = Arrays.copyOf(parent, size);
+        item = Arrays.copyOf(item, size);
+        count = Arrays.copyOf(count, size);
+        sibling = Arrays.copyOf(sibling, size);
       }
-      LOG.ensureCompleted(prog);
     }
 
     /**
-     * Extract itemsets ending in the given item.
+     * Extract all frequent itemsets.
+     * 
+     * The conditional trees of the items are mined in parallel, so the
+     * collector must be thread-safe.
      * 
      * @param minsupp Minimum support
      * @param minlength Minimum length
      * @param maxlength Maximum length
-     * @param item Current item
-     * @param postfix Items to append
-     * @param plen Postfix length
-     * @param buf2 Scratch buffer
-     * @param buf3 Scratch buffer
-     * @param destruct Remove nodes
      * @param col Itemset collector
      */
-    private void extract(int minsupp, int minlength, int maxlength, int item, int[] postfix, int plen, int[] buf2, int[] buf3, boolean destruct, Collector col) {
-      // Skip items that have disappeared from the tree
-      if(header[item] == null) {
-        return;
-      }
-      // No siblings: single path only.
-      if(header[item].sibling == null) {
-        if(header[item].count < minsupp) {
-          return;
-        }
-        extractLinear(header[item].count, minsupp, minlength, maxlength, item, postfix, plen, buf2, col);
-        if(destruct) {
-          Arrays.fill(header, null);
-        }
-        return;
-      }
-      // Count total support.
-      int support = 0;
-      for(FPNode cur = header[item]; cur != null; cur = cur.sibling) {
-        support += cur.count;
-      }
-      if(support < minsupp) {
+    public void extract(final int minsupp, final int minlength, final int maxlength, final Collector col) {
+      final int stop = (minlength > 1) ? minlength - 1 : 0;
+      if(singlepath) {
+        new Extractor(items, minsupp, minlength, maxlength, col).extractPath(this, 0);
         return;
       }
-      // Check which parent items to keep in the projection.
-      Arrays.fill(buf3, 0);
-      for(FPNode cur = header[item]; cur != null; cur = cur.sibling) {
-        for(FPNode parent = cur.parent; parent.key >= 0; parent = parent.parent) {
-          buf3[parent.key] += cur.count;
-        }
-      }
-      // For testing minimum length:
-      final int mminlength = minlength - (plen + 1);
-      if(mminlength > 0) {
-        int fparents = 0;
-        for(int i = 0; i < item; i++) {
-          if(buf3[i] >= minsupp) {
-            fparents += 1;
-          }
-        }
-        if(fparents < mminlength) {
-          return; // Not enough parents that are still frequent.
-        }
-      }
-      // Build projected tree:
-      final int last = item - 1;
-      FPTree proj = new FPTree(item);
-      for(FPNode cur = header[item]; cur != null; cur = cur.sibling) {
-        int j = buf2.length;
-        for(FPNode parent = cur.parent; parent.key >= 0; parent = parent.parent) {
-          if(buf3[parent.key] >= minsupp) {
-            buf2[--j] = parent.key;
+      final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", Math.max(0, items - stop), LOG) : null;
+      // Items are scheduled dynamically, because the cost of the conditional
+      // trees is very skewed.
+      ParallelExecutor.runQueue(Math.max(0, items - stop), new ParallelExecutor.QueueTask() {
+        @Override
+        public void process(ParallelExecutor.WorkQueue queue) {
+          Extractor ex = new Extractor(items, minsupp, minlength, maxlength, col);
+          for(int i = queue.next(); i >= 0; i = queue.next()) {
+            ex.extract(FPTree.this, items - 1 - i, 0);
+            LOG.incrementProcessed(prog);
           }
         }
-        if(buf2.length - j >= mminlength) {
-          proj.insert(proj, buf2, j, buf2.length, cur.count);
-        }
-      }
-      // Release memory:
-      proj.reduceMemory();
-      // TODO: other pruning techniques we should have employed here?
-      postfix[plen++] = item;
-      if(plen >= minlength && plen <= maxlength) {
-        col.collect(support, postfix, 0, plen);
-      }
-      for(int j = last; j >= 0; j--) {
-        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, destruct, col);
-      }
-      if(destruct) {
-        header[item] = null;
-      }
-    }
-
-    /**
-     * Extract itemsets from a linear tree.
-     * 
-     * @param supp Current support
-     * @param minsupp Minimum support
-     * @param minlength Minimum length
-     * @param maxlength Maximum length
-     * @param item Current item
-     * @param postfix Postfix for extracted itemsets
-     * @param plen Postfix length
-     * @param buf2 Scratch buffer
-     * @param col Output collector
-     */
-    private void extractLinear(int supp, int minsupp, int minlength, int maxlength, int item, int[] postfix, int plen, int[] buf2, Collector col) {
-      // For testing minimum length:
-      final int mminlength = minlength - plen;
-      // Without current item:
-      if(item > 0 && item >= mminlength && plen < maxlength) {
-        extractLinear(supp, minsupp, minlength, maxlength, item - 1, postfix, plen, buf2, col);
-      }
-      // With current item:
-      if(header[item] == null || item + 1 < mminlength) {
-        return;
-      }
-      int csupp = header[item].count;
-      if(csupp < minsupp) {
-        return;
-      }
-      postfix[plen++] = item;
-      int support = csupp < supp ? csupp : supp;
-      if(plen >= minlength && plen <= maxlength) {
-        col.collect(support, postfix, 0, plen);
-      }
-      if(item > 0 && plen < maxlength) {
-        extractLinear(support, minsupp, minlength, maxlength, item - 1, postfix, plen, buf2, col);
-      }
+      });
+      LOG.ensureCompleted(prog);
     }
 
     /**
@@ -500,164 +526,253 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      * Output some statistics to logging.
      */
     public void logStatistics() {
-      LOG.statistics(new LongStatistic(STAT + "items", header.length));
-      LOG.statistics(new LongStatistic(STAT + "nodes", nodes));
-      LOG.statistics(new LongStatistic(STAT + "transactions", count));
+      LOG.statistics(new LongStatistic(STAT + "items", items));
+      LOG.statistics(new LongStatistic(STAT + "nodes", size));
+      LOG.statistics(new LongStatistic(STAT + "transactions", count[0]));
+    }
+
+    /**
+     * Debugging function: build a text representation of the tree.
+     * 
+     * Must be called before {@link #reduceMemory()}.
+     * 
+     * @param buf Output buffer
+     * @param t Translator to user-understandable items
+     */
+    public void appendTo(StringBuilder buf, Translator t) {
+      appendTo(buf, t, 0, 0);
+    }
+
+    /**
+     * Buffer for indentation.
+     */
+    private static final char[] SPACES = "                ".toCharArray();
+
+    /**
+     * Debugging function: build a text representation of the tree.
+     * 
+     * @param buf Output buffer
+     * @param t Translator to user-understandable items
+     * @param node Current node
+     * @param depth Current depth
+     */
+    private void appendTo(StringBuilder buf, Translator t, int node, int depth) {
+      if(item[node] >= 0) {
+        t.appendTo(buf, item[node]);
+        buf.append(": ");
+      }
+      buf.append(count[node]).append("\n");
+      for(int c = firstchild[node]; c >= 0; c = nextchild[c]) {
+        for(int j = depth; j > 0; j -= SPACES.length) {
+          buf.append(SPACES, 0, Math.min(j, SPACES.length));
+        }
+        appendTo(buf, t, c, depth + 1);
+      }
+    }
+
+    /**
+     * Translator class for tree printing.
+     * 
+     * @author Erich Schubert
+     * 
+     * @apiviz.exclude
+     */
+    public static interface Translator {
+      /**
+       * Append a single item to a buffer.
+       * 
+       * @param buf Buffer to append to
+       * @param i Item number
+       */
+      public void appendTo(StringBuilder buf, int i);
     }
   }
 
   /**
-   * A single node of the FP tree.
+   * Extraction of frequent itemsets from an FP-tree, with the scratch buffers
+   * of a single thread.
    * 
-   * @author Erich Schubert
+   * @author agent
    */
-  // FIXME: keep children sorted, and use binary search for faster construction?
-  // Or even use a hashset?
-  public static class FPNode {
+  private static class Extractor {
     /**
-     * Parent node and next in sequence.
+     * Minimum support, minimum and maximum length.
      */
-    FPNode parent, sibling;
+    private final int minsupp, minlength, maxlength;
 
     /**
-     * Key, weight, and number of children.
+     * Output collector.
      */
-    int key, count = 0, numchildren = 0;
+    private final FPTree.Collector col;
 
     /**
-     * Children.
+     * Current postfix itemset.
      */
-    FPNode[] children = EMPTY_CHILDREN;
+    private final int[] postfix;
 
     /**
-     * Constant for leaf nodes.
+     * Scratch buffers for paths and the support of parent items.
      */
-    final static FPNode[] EMPTY_CHILDREN = new FPNode[0];
+    private final int[] buf, counts;
 
     /**
-     * Initial size, after sizes 0 and 1.
+     * Conditional trees, reused for each recursion depth.
      */
-    final int INITIAL_SIZE = 7;
+    private final List<FPTree> trees = new ArrayList<>();
 
     /**
      * Constructor.
-     *
-     * @param parent Parent node
-     * @param key Key
-     */
-    public FPNode(FPNode parent, int key) {
-      super();
-      this.parent = parent;
-      this.key = key;
+     * 
+     * @param items Number of items
+     * @param minsupp Minimum support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param col Output collector
+     */
+    Extractor(int items, int minsupp, int minlength, int maxlength, FPTree.Collector col) {
+      this.minsupp = minsupp;
+      this.minlength = minlength;
+      this.maxlength = maxlength;
+      this.col = col;
+      this.postfix = new int[items];
+      this.buf = new int[items];
+      this.counts = new int[items];
     }
 
     /**
-     * Insert an itemset into the tree.
+     * Extract itemsets ending in the given item.
      * 
-     * @param buf Itemset buffer
-     * @param i Current index
-     * @param l Length
-     * @param weight Weight
+     * @param tree Tree to mine
+     * @param item Current item
+     * @param plen Postfix length
      */
-    public void insert(FPTree tree, int[] buf, int i, int l, int weight) {
-      count += weight;
-      if(i == l) {
+    void extract(FPTree tree, int item, int plen) {
+      final int[] parent = tree.parent, label = tree.item, count = tree.count;
+      // Count total support.
+      int support = 0;
+      for(int n = tree.header[item]; n >= 0; n = tree.sibling[n]) {
+        support += count[n];
+      }
+      if(support < minsupp) {
+        return;
+      }
+      postfix[plen++] = item;
+      if(plen >= minlength && plen <= maxlength) {
+        col.collect(support, postfix, 0, plen);
+      }
+      if(item == 0 || plen >= maxlength) {
         return;
       }
-      final int label = buf[i];
-      for(int j = 0; j < numchildren; j++) {
-        FPNode child = children[j];
-        if(child.key == label) {
-          child.insert(tree, buf, i + 1, l, weight);
-          return;
+      // Check which parent items to keep in the projection.
+      Arrays.fill(counts, 0, item, 0);
+      for(int n = tree.header[item]; n >= 0; n = tree.sibling[n]) {
+        for(int p = parent[n]; p > 0; p = parent[p]) {
+          counts[label[p]] += count[n];
         }
       }
-      // Make sure we have enough room to insert.
-      if(numchildren == children.length) {
-        ensureSize();
+      // For testing minimum length:
+      final int mminlength = minlength - plen;
+      int fparents = 0;
+      for(int i = 0; i < item; i++) {
+        if(counts[i] >= minsupp) {
+          fparents += 1;
+        }
       }
-      FPNode sub = children[numchildren++] = tree.newNode(this, label);
-      sub.insert(tree, buf, i + 1, l, weight);
-    }
-
-    /**
-     * Ensure we have enough storage.
-     */
-    private void ensureSize() {
-      if(children == EMPTY_CHILDREN) {
-        children = new FPNode[1];
+      if(fparents == 0 || fparents < mminlength) {
+        return; // Not enough parents that are still frequent.
+      }
+      // Build projected tree, reusing the buffers of this depth:
+      FPTree proj = getTree(plen, item);
+      for(int n = tree.header[item]; n >= 0; n = tree.sibling[n]) {
+        int j = buf.length;
+        for(int p = parent[n]; p > 0; p = parent[p]) {
+          if(counts[label[p]] >= minsupp) {
+            buf[--j] = label[p];
+          }
+        }
+        if(j < buf.length && buf.length - j >= mminlength) {
+          proj.insert(buf, j, buf.length, count[n]);
+        }
+      }
+      if(proj.singlepath) {
+        extractPath(proj, plen);
         return;
       }
-      int newsize = children.length == 1 ? INITIAL_SIZE : (children.length << 1);
-      children = Arrays.copyOf(children, newsize);
+      final int stop = (mminlength > 1) ? mminlength - 1 : 0;
+      for(int j = item - 1; j >= stop; j--) {
+        extract(proj, j, plen);
+      }
     }
 
     /**
-     * Debugging function: build a text representation of the tree.
+     * Extract itemsets from a tree that consists of a single path.
      * 
-     * @param buf Output buffer
-     * @param t Translator to user-understandable items
-     */
-    public void appendTo(StringBuilder buf, Translator t) {
-      appendTo(buf, t, 0);
-    }
-
-    /**
-     * Buffer for indentation.
-     */
-    private static final char[] SPACES = "                ".toCharArray();
-
-    /**
-     * Debugging function: build a text representation of the tree.
+     * Every subset of the path is frequent, with the support of its deepest
+     * node.
      * 
-     * @param buf Output buffer
-     * @param t Translator to user-understandable items
-     * @param depth Current depth
+     * @param tree Tree to mine
+     * @param plen Postfix length
      */
-    private void appendTo(StringBuilder buf, Translator t, int depth) {
-      if(key > 0) {
-        t.appendTo(buf, key);
-        buf.append(": ");
-      }
-      buf.append(count).append("\n");
-      for(int i = 0; i < numchildren; i++) {
-        for(int j = depth; j > 0; j -= SPACES.length) {
-          buf.append(SPACES, 0, Math.min(j, SPACES.length));
+    void extractPath(FPTree tree, int plen) {
+      // Collect the frequent prefix of the path, in ascending item order.
+      int l = 0;
+      for(int i = 0; i < tree.items; i++) {
+        final int n = tree.header[i];
+        if(n < 0) {
+          continue;
+        }
+        if(tree.count[n] < minsupp) {
+          break;
         }
-        children[i].appendTo(buf, t, depth + 1);
+        buf[l] = i;
+        counts[l++] = tree.count[n];
+      }
+      for(int d = 0; d < l; d++) {
+        postfix[plen] = buf[d];
+        extractSubsets(d, counts[d], plen + 1);
       }
     }
 
     /**
-     * Release the memory occupied for the parent-to-child navigation, which is
-     * no longer needed after building the tree (only child-to-parent is needed
-     * in extracting itemsets).
+     * Extract all combinations of the current postfix with the first path
+     * items.
+     * 
+     * @param end Number of path items to combine with
+     * @param support Support of the itemset
+     * @param plen Postfix length
      */
-    public void reduceMemory() {
-      if(children == null) {
+    private void extractSubsets(int end, int support, int plen) {
+      if(plen >= minlength && plen <= maxlength) {
+        col.collect(support, postfix, 0, plen);
+      }
+      if(plen >= maxlength || plen + end < minlength) {
         return;
       }
-      for(int i = 0; i < numchildren; ++i) {
-        children[i].reduceMemory();
+      for(int i = end - 1; i >= 0; i--) {
+        postfix[plen] = buf[i];
+        extractSubsets(i, support, plen + 1);
       }
-      children = null;
     }
 
     /**
-     * Translator class for tree printing.
-     * 
-     * @author Erich Schubert
+     * Get a (cleared) tree for the given recursion depth.
      * 
-     * @apiviz.exclude
+     * @param depth Recursion depth
+     * @param items Number of items
+     * @return Tree
      */
-    public static interface Translator {
-      /**
-       * Append a single item to a buffer.
-       * 
-       * @param buf Buffer to append to
-       * @param i Item number
-       */
-      public void appendTo(StringBuilder buf, int i);
+    private FPTree getTree(int depth, int items) {
+      while(trees.size() <= depth) {
+        trees.add(null);
+      }
+      FPTree tree = trees.get(depth);
+      if(tree == null) {
+        trees.set(depth, tree = new FPTree(items));
+      }
+      else {
+        tree.reset(items);
+      }
+      return tree;
     }
   }
 
@@ -0,0 +1,130 @@
+package de.lmu.ifi.dbs.elki.application;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleReader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.persistent.MappedVectorFile;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.UnableToComplyException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Convert a bundle file (see {@link ConvertToBundleApplication}) to a
+ * {@link MappedVectorFile}, which can be opened by memory mapping.
+ * 
+ * The bundle is streamed, so the data set does not need to fit into memory.
+ * Only the first number vector column of a fixed dimensionality is kept.
+ * 
+ * @author agent
+ */
+public class ConvertToMappedVectorsApplication extends AbstractApplication {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ConvertToMappedVectorsApplication.class);
+
+  /**
+   * Input bundle filename.
+   */
+  private File infile;
+
+  /**
+   * Output filename.
+   */
+  private File outfile;
+
+  /**
+   * Constructor.
+   * 
+   * @param infile Input bundle file
+   * @param outfile Output filename
+   */
+  public ConvertToMappedVectorsApplication(File infile, File outfile) {
+    super();
+    this.infile = infile;
+    this.outfile = outfile;
+  }
+
+  @Override
+  public void run() throws UnableToComplyException {
+    if(LOG.isVerbose()) {
+      LOG.verbose("Converting " + infile.toString() + " to " + outfile.toString());
+    }
+    try {
+      FileInputStream fis = new FileInputStream(infile);
+      FileChannel channel = fis.getChannel();
+      MappedVectorFile.write(new BundleReader(channel), outfile);
+      channel.close();
+      fis.close();
+    }
+    catch(IOException e) {
+      LOG.exception("IO Error", e);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractApplication.Parameterizer {
+    /**
+     * Input bundle filename.
+     */
+    private File infile;
+
+    /**
+     * Output filename.
+     */
+    private File outfile;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      infile = super.getParameterInputFile(config, "Bundle file to convert.");
+      outfile = super.getParameterOutputFile(config, "File name to write the mapped vectors to.");
+    }
+
+    @Override
+    protected ConvertToMappedVectorsApplication makeInstance() {
+      return new ConvertToMappedVectorsApplication(infile, outfile);
+    }
+  }
+
+  /**
+   * Run command line application.
+   * 
+   * @param args Command line parameters
+   */
+  public static void main(String[] args) {
+    runCLIApplication(ConvertToMappedVectorsApplication.class, args);
+  }
+}
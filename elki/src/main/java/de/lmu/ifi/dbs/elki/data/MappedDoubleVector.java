@@ -0,0 +1,228 @@
+package de.lmu.ifi.dbs.elki.data;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Double vector, that is a view on a region of a (usually memory-mapped)
+ * {@link ByteBuffer}, see
+ * {@link de.lmu.ifi.dbs.elki.persistent.MappedVectorFile}.
+ * 
+ * Only absolute reads are used on the buffer, so views sharing a buffer can be
+ * used concurrently. Vectors created via the factory use a heap buffer.
+ * 
+ * @author agent
+ */
+public class MappedDoubleVector extends AbstractNumberVector {
+  /**
+   * Static factory instance.
+   */
+  public static final MappedDoubleVector.Factory FACTORY = new MappedDoubleVector.Factory();
+
+  /**
+   * Serializer using varint encoding.
+   */
+  public static final ByteBufferSerializer<MappedDoubleVector> VARIABLE_SERIALIZER = new VariableSerializer();
+
+  /**
+   * Data buffer.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * Byte offset of the first value.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Constructor.
+   * 
+   * @param buffer Data buffer, will not be copied
+   * @param offset Byte offset of the first value
+   * @param dim Dimensionality
+   */
+  public MappedDoubleVector(ByteBuffer buffer, int offset, int dim) {
+    super();
+    this.buffer = buffer;
+    this.offset = offset;
+    this.dim = dim;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  @Deprecated
+  public Double getValue(int dimension) {
+    return doubleValue(dimension);
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    assert (dimension >= 0 && dimension < dim);
+    return buffer.getDouble(offset + dimension * ByteArrayUtil.SIZE_DOUBLE);
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    return (long) doubleValue(dimension);
+  }
+
+  /**
+   * Get a copy of the values.
+   * 
+   * @return Values of this vector.
+   */
+  public double[] getValues() {
+    double[] values = new double[dim];
+    for(int i = 0, off = offset; i < dim; i++, off += ByteArrayUtil.SIZE_DOUBLE) {
+      values[i] = buffer.getDouble(off);
+    }
+    return values;
+  }
+
+  @Override
+  public Vector getColumnVector() {
+    return new Vector(getValues());
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dim; i++) {
+      if(i > 0) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+      featureLine.append(doubleValue(i));
+    }
+    return featureLine.toString();
+  }
+
+  /**
+   * Factory for mapped double vectors. New vectors are backed by a heap
+   * buffer.
+   * 
+   * @author agent
+   * 
+   * @apiviz.has MappedDoubleVector
+   */
+  public static class Factory extends AbstractNumberVector.Factory<MappedDoubleVector> {
+    @Override
+    public <A> MappedDoubleVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      final int dim = adapter.size(array);
+      ByteBuffer buffer = ByteBuffer.allocate(dim * ByteArrayUtil.SIZE_DOUBLE);
+      for(int i = 0; i < dim; i++) {
+        buffer.putDouble(adapter.get(array, i).doubleValue());
+      }
+      return new MappedDoubleVector(buffer, 0, dim);
+    }
+
+    @Override
+    public <A> MappedDoubleVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      final int dim = adapter.size(array);
+      ByteBuffer buffer = ByteBuffer.allocate(dim * ByteArrayUtil.SIZE_DOUBLE);
+      for(int i = 0; i < dim; i++) {
+        buffer.putDouble(adapter.getDouble(array, i));
+      }
+      return new MappedDoubleVector(buffer, 0, dim);
+    }
+
+    @Override
+    public ByteBufferSerializer<MappedDoubleVector> getDefaultSerializer() {
+      return VARIABLE_SERIALIZER;
+    }
+
+    @Override
+    public Class<? super MappedDoubleVector> getRestrictionClass() {
+      return MappedDoubleVector.class;
+    }
+
+    /**
+     * Parameterization class.
+     * 
+     * @author agent
+     * 
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected MappedDoubleVector.Factory makeInstance() {
+        return FACTORY;
+      }
+    }
+  }
+
+  /**
+   * Serialization class using VarInt encoding, compatible with
+   * {@link DoubleVector.VariableSerializer}. Deserialized vectors use a heap
+   * buffer.
+   * 
+   * @author agent
+   * 
+   * @apiviz.uses MappedDoubleVector - - «serializes»
+   */
+  public static class VariableSerializer implements ByteBufferSerializer<MappedDoubleVector> {
+    @Override
+    public MappedDoubleVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      final int dimensionality = ByteArrayUtil.readUnsignedVarint(buffer);
+      final int bytes = ByteArrayUtil.SIZE_DOUBLE * dimensionality;
+      assert (buffer.remaining() >= bytes) : "Not enough data remaining in buffer to read " + dimensionality + " doubles";
+      ByteBuffer data = ByteBuffer.allocate(bytes);
+      for(int i = 0; i < dimensionality; i++) {
+        data.putDouble(buffer.getDouble());
+      }
+      return new MappedDoubleVector(data, 0, dimensionality);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, MappedDoubleVector vec) throws IOException {
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.dim) : "Not enough space remaining in buffer to write " + vec.dim + " doubles";
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.dim);
+      for(int i = 0; i < vec.dim; i++) {
+        buffer.putDouble(vec.doubleValue(i));
+      }
+    }
+
+    @Override
+    public int getByteSize(MappedDoubleVector vec) {
+      return ByteArrayUtil.getUnsignedVarintSize(vec.dim) + ByteArrayUtil.SIZE_DOUBLE * vec.dim;
+    }
+  }
+}
@@ -0,0 +1,285 @@
+package de.lmu.ifi.dbs.elki.data;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Lightweight double vector, that is a view on a row of a large packed
+ * {@code double[]} array shared by many vectors.
+ * 
+ * Instances are usually obtained from a
+ * {@link de.lmu.ifi.dbs.elki.database.relation.PackedDoubleVectorRelation},
+ * which stores all vectors of a relation in a single array. This avoids the
+ * per-object overhead and improves memory locality for linear scans. Vectors
+ * created via the factory use a private array.
+ * 
+ * Note: views are not copies. If the relation is modified, the values of a view
+ * will change, too.
+ * 
+ * @author agent
+ */
+public class PackedDoubleVector extends AbstractNumberVector {
+  /**
+   * Static factory instance.
+   */
+  public static final PackedDoubleVector.Factory FACTORY = new PackedDoubleVector.Factory();
+
+  /**
+   * Serializer using varint encoding.
+   */
+  public static final ByteBufferSerializer<PackedDoubleVector> VARIABLE_SERIALIZER = new VariableSerializer();
+
+  /**
+   * Packed data array.
+   */
+  private final double[] data;
+
+  /**
+   * Offset of the first value in the data array.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Constructor for a view on a packed array.
+   * 
+   * @param data Data array, will not be copied
+   * @param offset Offset of the first value
+   * @param dim Dimensionality
+   */
+  public PackedDoubleVector(double[] data, int offset, int dim) {
+    super();
+    assert (offset >= 0 && offset + dim <= data.length);
+    this.data = data;
+    this.offset = offset;
+    this.dim = dim;
+  }
+
+  /**
+   * Constructor for a standalone vector.
+   * 
+   * @param values Values, will be copied
+   */
+  public PackedDoubleVector(double[] values) {
+    this(values.clone(), 0, values.length);
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  @Deprecated
+  public Double getValue(int dimension) {
+    return data[offset + dimension];
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    return data[offset + dimension];
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    return (long) data[offset + dimension];
+  }
+
+  /**
+   * Get a copy of the values.
+   * 
+   * @return Copy of the values of this vector.
+   */
+  public double[] getValues() {
+    double[] values = new double[dim];
+    System.arraycopy(data, offset, values, 0, dim);
+    return values;
+  }
+
+  /**
+   * Get the backing array, for optimized code that is aware of the packed
+   * layout. Do not modify!
+   * 
+   * @return Backing array, shared with other vectors.
+   */
+  public double[] getPackedArray() {
+    return data;
+  }
+
+  /**
+   * Get the offset of this vector in the backing array.
+   * 
+   * @return Offset of the first value
+   */
+  public int getPackedOffset() {
+    return offset;
+  }
+
+  /**
+   * Sum of squared differences of two packed vectors of the same
+   * dimensionality, i.e. the squared Euclidean distance.
+   * 
+   * This reads the backing arrays directly, which avoids the virtual
+   * {@link #doubleValue} call per dimension, and is used by the Euclidean
+   * distance functions when both vectors are packed.
+   * 
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Sum of squared differences
+   */
+  public static double squaredDifference(PackedDoubleVector v1, PackedDoubleVector v2) {
+    assert (v1.dim == v2.dim) : "Dimensionalities do not agree.";
+    final double[] a1 = v1.data, a2 = v2.data;
+    final int o1 = v1.offset, o2 = v2.offset, dim = v1.dim;
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double delta = a1[o1 + d] - a2[o2 + d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  @Override
+  public Vector getColumnVector() {
+    return new Vector(getValues());
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dim; i++) {
+      if(i > 0) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+      featureLine.append(data[offset + i]);
+    }
+    return featureLine.toString();
+  }
+
+  /**
+   * Factory for packed double vectors.
+   * 
+   * @author agent
+   * 
+   * @apiviz.has PackedDoubleVector
+   */
+  public static class Factory extends AbstractNumberVector.Factory<PackedDoubleVector> {
+    @Override
+    public PackedDoubleVector newNumberVector(double[] values) {
+      return new PackedDoubleVector(values);
+    }
+
+    @Override
+    public <A> PackedDoubleVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      final int dim = adapter.size(array);
+      double[] values = new double[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.get(array, i).doubleValue();
+      }
+      return new PackedDoubleVector(values, 0, dim);
+    }
+
+    @Override
+    public <A> PackedDoubleVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      final int dim = adapter.size(array);
+      double[] values = new double[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.getDouble(array, i);
+      }
+      return new PackedDoubleVector(values, 0, dim);
+    }
+
+    @Override
+    public ByteBufferSerializer<PackedDoubleVector> getDefaultSerializer() {
+      return VARIABLE_SERIALIZER;
+    }
+
+    @Override
+    public Class<? super PackedDoubleVector> getRestrictionClass() {
+      return PackedDoubleVector.class;
+    }
+
+    /**
+     * Parameterization class.
+     * 
+     * @author agent
+     * 
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected PackedDoubleVector.Factory makeInstance() {
+        return FACTORY;
+      }
+    }
+  }
+
+  /**
+   * Serialization class using VarInt encoding, compatible with
+   * {@link DoubleVector.VariableSerializer}.
+   * 
+   * @author agent
+   * 
+   * @apiviz.uses PackedDoubleVector - - «serializes»
+   */
+  public static class VariableSerializer implements ByteBufferSerializer<PackedDoubleVector> {
+    @Override
+    public PackedDoubleVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      final int dimensionality = ByteArrayUtil.readUnsignedVarint(buffer);
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * dimensionality) : "Not enough data remaining in buffer to read " + dimensionality + " doubles";
+      final double[] values = new double[dimensionality];
+      for(int i = 0; i < dimensionality; i++) {
+        values[i] = buffer.getDouble();
+      }
+      return new PackedDoubleVector(values, 0, dimensionality);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, PackedDoubleVector vec) throws IOException {
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.dim) : "Not enough space remaining in buffer to write " + vec.dim + " doubles";
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.dim);
+      for(int i = 0; i < vec.dim; i++) {
+        buffer.putDouble(vec.data[vec.offset + i]);
+      }
+    }
+
+    @Override
+    public int getByteSize(PackedDoubleVector vec) {
+      return ByteArrayUtil.getUnsignedVarintSize(vec.dim) + ByteArrayUtil.SIZE_DOUBLE * vec.dim;
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package de.lmu.ifi.dbs.elki.data;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Lightweight float vector, that is a view on a row of a large packed
+ * {@code float[]} array shared by many vectors.
+ * 
+ * Instances are usually obtained from a
+ * {@link de.lmu.ifi.dbs.elki.database.relation.PackedFloatVectorRelation},
+ * which stores all vectors of a relation in a single array. This avoids the
+ * per-object overhead and improves memory locality for linear scans. Vectors
+ * created via the factory use a private array.
+ * 
+ * Note: views are not copies. If the relation is modified, the values of a view
+ * will change, too.
+ * 
+ * @author agent
+ */
+public class PackedFloatVector extends AbstractNumberVector {
+  /**
+   * Static factory instance.
+   */
+  public static final PackedFloatVector.Factory FACTORY = new PackedFloatVector.Factory();
+
+  /**
+   * Serializer using varint encoding.
+   */
+  public static final ByteBufferSerializer<PackedFloatVector> VARIABLE_SERIALIZER = new VariableSerializer();
+
+  /**
+   * Packed data array.
+   */
+  private final float[] data;
+
+  /**
+   * Offset of the first value in the data array.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Constructor for a view on a packed array.
+   * 
+   * @param data Data array, will not be copied
+   * @param offset Offset of the first value
+   * @param dim Dimensionality
+   */
+  public PackedFloatVector(float[] data, int offset, int dim) {
+    super();
+    assert (offset >= 0 && offset + dim <= data.length);
+    this.data = data;
+    this.offset = offset;
+    this.dim = dim;
+  }
+
+  /**
+   * Constructor for a standalone vector.
+   * 
+   * @param values Values, will be copied
+   */
+  public PackedFloatVector(float[] values) {
+    this(values.clone(), 0, values.length);
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  @Deprecated
+  public Float getValue(int dimension) {
+    return data[offset + dimension];
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    return data[offset + dimension];
+  }
+
+  @Override
+  public float floatValue(int dimension) {
+    return data[offset + dimension];
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    return (long) data[offset + dimension];
+  }
+
+  /**
+   * Get a copy of the values.
+   * 
+   * @return Copy of the values of this vector.
+   */
+  public float[] getValues() {
+    float[] values = new float[dim];
+    System.arraycopy(data, offset, values, 0, dim);
+    return values;
+  }
+
+  /**
+   * Get the backing array, for optimized code that is aware of the packed
+   * layout. Do not modify!
+   * 
+   * @return Backing array, shared with other vectors.
+   */
+  public float[] getPackedArray() {
+    return data;
+  }
+
+  /**
+   * Get the offset of this vector in the backing array.
+   * 
+   * @return Offset of the first value
+   */
+  public int getPackedOffset() {
+    return offset;
+  }
+
+  @Override
+  public Vector getColumnVector() {
+    double[] values = new double[dim];
+    for(int i = 0; i < dim; i++) {
+      values[i] = data[offset + i];
+    }
+    return new Vector(values);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dim; i++) {
+      if(i > 0) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+      featureLine.append(data[offset + i]);
+    }
+    return featureLine.toString();
+  }
+
+  /**
+   * Factory for packed float vectors.
+   * 
+   * @author agent
+   * 
+   * @apiviz.has PackedFloatVector
+   */
+  public static class Factory extends AbstractNumberVector.Factory<PackedFloatVector> {
+    @Override
+    public PackedFloatVector newNumberVector(double[] values) {
+      final int dim = values.length;
+      float[] fvalues = new float[dim];
+      for(int i = 0; i < dim; i++) {
+        fvalues[i] = (float) values[i];
+      }
+      return new PackedFloatVector(fvalues, 0, dim);
+    }
+
+    @Override
+    public <A> PackedFloatVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      final int dim = adapter.size(array);
+      float[] values = new float[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.get(array, i).floatValue();
+      }
+      return new PackedFloatVector(values, 0, dim);
+    }
+
+    @Override
+    public <A> PackedFloatVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      final int dim = adapter.size(array);
+      float[] values = new float[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.getFloat(array, i);
+      }
+      return new PackedFloatVector(values, 0, dim);
+    }
+
+    @Override
+    public ByteBufferSerializer<PackedFloatVector> getDefaultSerializer() {
+      return VARIABLE_SERIALIZER;
+    }
+
+    @Override
+    public Class<? super PackedFloatVector> getRestrictionClass() {
+      return PackedFloatVector.class;
+    }
+
+    /**
+     * Parameterization class.
+     * 
+     * @author agent
+     * 
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected PackedFloatVector.Factory makeInstance() {
+        return FACTORY;
+      }
+    }
+  }
+
+  /**
+   * Serialization class using VarInt encoding, compatible with
+   * {@link FloatVector.VariableSerializer}.
+   * 
+   * @author agent
+   * 
+   * @apiviz.uses PackedFloatVector - - «serializes»
+   */
+  public static class VariableSerializer implements ByteBufferSerializer<PackedFloatVector> {
+    @Override
+    public PackedFloatVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      final int dimensionality = ByteArrayUtil.readUnsignedVarint(buffer);
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_FLOAT * dimensionality) : "Not enough data remaining in buffer to read " + dimensionality + " floats";
+      final float[] values = new float[dimensionality];
+      for(int i = 0; i < dimensionality; i++) {
+        values[i] = buffer.getFloat();
+      }
+      return new PackedFloatVector(values, 0, dimensionality);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, PackedFloatVector vec) throws IOException {
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_FLOAT * vec.dim) : "Not enough space remaining in buffer to write " + vec.dim + " floats";
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.dim);
+      for(int i = 0; i < vec.dim; i++) {
+        buffer.putFloat(vec.data[vec.offset + i]);
+      }
+    }
+
+    @Override
+    public int getByteSize(PackedFloatVector vec) {
+      return ByteArrayUtil.getUnsignedVarintSize(vec.dim) + ByteArrayUtil.SIZE_FLOAT * vec.dim;
+    }
+  }
+}
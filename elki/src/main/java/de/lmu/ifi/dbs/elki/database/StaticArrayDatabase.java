@@ -25,14 +25,24 @@ package de.lmu.ifi.dbs.elki.database;
 
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.List;
 
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedFloatVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
+import de.lmu.ifi.dbs.elki.database.relation.MappedVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.PackedDoubleVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.PackedFloatVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
@@ -42,8 +52,11 @@ import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.persistent.MappedVectorFile;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -52,6 +65,11 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * dynamic insert, delete and update operations. However, array access is
  * expected to be faster and use less memory.
  * 
+ * Optionally, dense number vectors of a fixed dimensionality can be stored in
+ * a single packed array (see {@link PackedDoubleVectorRelation}), which
+ * further reduces memory and improves locality of linear scans. Vectors loaded
+ * from a {@link MappedVectorFile} are not copied onto the heap at all.
+ * 
  * @author Arthur Zimek
  * @author Erich Schubert
  * 
@@ -81,6 +99,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Store fixed-dimensional number vectors in packed arrays.
+   */
+  protected boolean packed = false;
+
   /**
    * Constructor.
    * 
@@ -88,10 +111,22 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories) {
+    this(databaseConnection, indexFactories, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param packed Store fixed-dimensional number vectors in packed arrays
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, boolean packed) {
     super();
     this.databaseConnection = databaseConnection;
     this.ids = null;
     this.idrep = null;
+    this.packed = packed;
 
     // Add indexes.
     if(indexFactories != null) {
@@ -147,6 +182,10 @@ public class StaticArrayDatabase extends AbstractDatabase {
       for(int j = 0; j < numObjects; j++, newid.advance()) {
         // insert object
         for(int i = 0; i < targets.length; i++) {
+          // Mapped relations are backed by the input file already.
+          if(targets[i] instanceof MappedVectorRelation) {
+            continue;
+          }
           @SuppressWarnings("unchecked")
           final Relation<Object> relation = (Relation<Object>) targets[i];
           relation.set(newid, objpackages.data(j, i));
@@ -212,7 +251,8 @@ public class StaticArrayDatabase extends AbstractDatabase {
         }
       }
       if(targets[i] == null) {
-        targets[i] = addNewRelation(meta);
+        List<?> column = (pack instanceof MultipleObjectsBundle) ? ((MultipleObjectsBundle) pack).getColumn(i) : null;
+        targets[i] = addNewRelation(meta, column);
         used.set(relations.size() - 1);
       }
     }
@@ -223,17 +263,64 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * Add a new representation for the given meta.
    * 
    * @param meta meta data
+   * @param column column data, may be {@code null}
    * @return new representation
    */
-  private Relation<?> addNewRelation(SimpleTypeInformation<?> meta) {
+  private Relation<?> addNewRelation(SimpleTypeInformation<?> meta, List<?> column) {
     @SuppressWarnings("unchecked")
     SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-    Relation<?> relation = new MaterializedRelation<>(this, ometa, ids);
+    Relation<?> relation = null;
+    if(column instanceof MappedVectorFile.VectorList && ids instanceof DBIDRange) {
+      // Use the memory-mapped file directly, without copying.
+      relation = new MappedVectorRelation(this, (DBIDRange) ids, ((MappedVectorFile.VectorList) column).getFile());
+    }
+    else if(packed) {
+      relation = makePackedRelation(meta);
+    }
+    if(relation == null) {
+      relation = new MaterializedRelation<>(this, ometa, ids);
+    }
     relations.add(relation);
     getHierarchy().add(this, relation);
     return relation;
   }
 
+  /**
+   * Try to create a packed relation for dense vectors of fixed dimensionality.
+   * 
+   * @param meta meta data
+   * @return new representation, or {@code null} if not applicable.
+   */
+  private Relation<?> makePackedRelation(SimpleTypeInformation<?> meta) {
+    if(!(ids instanceof DBIDRange) || !(meta instanceof VectorFieldTypeInformation)) {
+      return null;
+    }
+    VectorFieldTypeInformation<?> vmeta = (VectorFieldTypeInformation<?>) meta;
+    if(vmeta.mindim() != vmeta.maxdim() || vmeta.mindim() <= 0) {
+      return null;
+    }
+    final Class<?> cls = vmeta.getRestrictionClass();
+    if(!NumberVector.class.isAssignableFrom(cls) || vmeta.getFactory() instanceof SparseNumberVector.Factory) {
+      return null;
+    }
+    final int dim = vmeta.mindim();
+    String[] labels = null;
+    for(int i = 0; i < dim; i++) {
+      final String label = vmeta.getLabel(i);
+      if(label != null) {
+        if(labels == null) {
+          labels = new String[dim];
+        }
+        labels[i] = label;
+      }
+    }
+    // Keep the precision of single-precision input data.
+    if(FloatVector.class.isAssignableFrom(cls) || PackedFloatVector.class.isAssignableFrom(cls)) {
+      return new PackedFloatVectorRelation(this, (DBIDRange) ids, dim, labels);
+    }
+    return new PackedDoubleVectorRelation(this, (DBIDRange) ids, dim, labels);
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -257,6 +344,20 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<IndexFactory<?, ?>> indexFactories;
 
+    /**
+     * Store fixed-dimensional number vectors in packed arrays.
+     */
+    protected boolean packed = false;
+
+    /**
+     * Flag to store dense number vectors of fixed dimensionality in a single
+     * packed array.
+     * <p>
+     * Key: {@code -db.packed}
+     * </p>
+     */
+    public static final OptionID PACKED_ID = new OptionID("db.packed", "Store dense number vectors of fixed dimensionality in a single packed array. Reduces memory, but the relation will contain packed vector types.");
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -270,11 +371,15 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      final Flag packedF = new Flag(PACKED_ID);
+      if(config.grab(packedF)) {
+        packed = packedF.isTrue();
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, packed);
     }
   }
 }
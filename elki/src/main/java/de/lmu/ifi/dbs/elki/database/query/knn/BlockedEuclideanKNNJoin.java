@@ -0,0 +1,247 @@
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedDoubleVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+
+/**
+ * Blocked ("tiled") linear scan kNN join for Euclidean distance.
+ * 
+ * Blocks of queries are compared against blocks of data objects. Both blocks
+ * are copied into contiguous {@code double[]} arrays small enough to stay in
+ * the CPU caches, instead of accessing a separate vector object for every
+ * single distance computation.
+ * 
+ * Candidates are filtered using the decomposition
+ * {@code ||a-b||² = ||a||² + ||b||² - 2 a·b} with precomputed norms. Because
+ * this decomposition is numerically less precise, candidates passing the
+ * filter (with a small tolerance) have their distance recomputed exactly, so
+ * the result is the same as with a plain linear scan.
+ * 
+ * Blocks of queries are processed in parallel on all available cores.
+ * 
+ * @author agent
+ * 
+ * @apiviz.uses KNNHeap
+ */
+public class BlockedEuclideanKNNJoin {
+  /**
+   * Number of queries per block.
+   */
+  private static final int QUERY_BLOCK = 64;
+
+  /**
+   * Number of values in a data block (128 KB of doubles, targeting the L2
+   * cache).
+   */
+  private static final int DATA_BLOCK_VALUES = 16384;
+
+  /**
+   * Relative tolerance of the filter step.
+   */
+  private static final double TOLERANCE = 1e-10;
+
+  /**
+   * Data relation.
+   */
+  private final Relation<? extends NumberVector> relation;
+
+  /**
+   * Data IDs, in scan order.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Number of data objects per data block.
+   */
+  private final int dblock;
+
+  /**
+   * Constructor.
+   * 
+   * @param relation Data relation, must have a fixed dimensionality
+   */
+  public BlockedEuclideanKNNJoin(Relation<? extends NumberVector> relation) {
+    super();
+    this.relation = relation;
+    this.ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    this.dim = ((VectorFieldTypeInformation<?>) relation.getDataTypeInformation()).getDimensionality();
+    this.dblock = Math.max(1, DATA_BLOCK_VALUES / Math.max(1, dim));
+  }
+
+  /**
+   * Test whether the blocked join can be used for a relation: it requires
+   * dense vectors of a fixed dimensionality.
+   * 
+   * @param relation Relation
+   * @return {@code true} when applicable
+   */
+  public static boolean isApplicable(Relation<?> relation) {
+    SimpleTypeInformation<?> type = relation.getDataTypeInformation();
+    if(!(type instanceof VectorFieldTypeInformation)) {
+      return false;
+    }
+    VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+    if(vtype.mindim() != vtype.maxdim() || vtype.mindim() <= 0) {
+      return false;
+    }
+    return NumberVector.class.isAssignableFrom(vtype.getRestrictionClass()) //
+        && !(vtype.getFactory() instanceof SparseNumberVector.Factory);
+  }
+
+  /**
+   * Compute the k nearest neighbors of all query objects.
+   * 
+   * @param queries Query objects, which must be in the relation
+   * @param k Number of neighbors
+   * @return kNN lists (with Euclidean distances), in the order of the queries
+   */
+  public List<KNNList> run(final ArrayDBIDs queries, final int k) {
+    final int size = queries.size();
+    final KNNHeap[] heaps = new KNNHeap[size];
+    final int numblocks = (size + QUERY_BLOCK - 1) / QUERY_BLOCK;
+    ParallelExecutor.runPartitions(numblocks, 1, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        // Buffers are reused for all blocks of this thread.
+        double[] qbuf = new double[QUERY_BLOCK * dim], qnorm = new double[QUERY_BLOCK];
+        double[] dbuf = new double[dblock * dim], dnorm = new double[dblock];
+        DBIDArrayIter qiter = queries.iter(), diter = ids.iter();
+        for(int b = start; b < end; b++) {
+          final int qstart = b * QUERY_BLOCK;
+          final int qsize = Math.min(QUERY_BLOCK, size - qstart);
+          qiter.seek(qstart);
+          load(qiter, qsize, qbuf, qnorm);
+          for(int i = 0; i < qsize; i++) {
+            heaps[qstart + i] = DBIDUtil.newHeap(k);
+          }
+          scan(heaps, qstart, qsize, qbuf, qnorm, diter, dbuf, dnorm);
+        }
+      }
+    });
+    List<KNNList> result = new ArrayList<>(size);
+    for(KNNHeap heap : heaps) {
+      result.add(QueryUtil.applySqrt(heap.toKNNList()));
+    }
+    return result;
+  }
+
+  /**
+   * Scan all data blocks for one block of queries.
+   * 
+   * @param heaps Output heaps
+   * @param qstart Offset of the first query
+   * @param qsize Number of queries in the block
+   * @param qbuf Query block
+   * @param qnorm Query norms
+   * @param diter Data iterator
+   * @param dbuf Data block buffer
+   * @param dnorm Data norms buffer
+   */
+  private void scan(KNNHeap[] heaps, int qstart, int qsize, double[] qbuf, double[] qnorm, DBIDArrayIter diter, double[] dbuf, double[] dnorm) {
+    final int n = ids.size();
+    for(int dstart = 0; dstart < n; dstart += dblock) {
+      final int dsize = Math.min(dblock, n - dstart);
+      diter.seek(dstart);
+      load(diter, dsize, dbuf, dnorm);
+      for(int i = 0; i < qsize; i++) {
+        final KNNHeap heap = heaps[qstart + i];
+        final int qoff = i * dim;
+        final double qn = qnorm[i];
+        double max = heap.getKNNDistance();
+        for(int j = 0, doff = 0; j < dsize; j++, doff += dim) {
+          double dot = 0.;
+          for(int d = 0; d < dim; d++) {
+            dot += qbuf[qoff + d] * dbuf[doff + d];
+          }
+          final double sum = qn + dnorm[j];
+          final double approx = sum - 2. * dot;
+          if(approx - sum * TOLERANCE > max) {
+            continue;
+          }
+          // Exact distance, computed the same way as the distance function.
+          double agg = 0.;
+          for(int d = 0; d < dim; d++) {
+            final double delta = qbuf[qoff + d] - dbuf[doff + d];
+            agg += delta * delta;
+          }
+          if(agg <= max) {
+            max = heap.insert(agg, diter.seek(dstart + j));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Copy a block of vectors into a contiguous array, and compute their norms.
+   * 
+   * @param iter Iterator, positioned at the first object
+   * @param num Number of objects
+   * @param buf Output buffer
+   * @param norms Output norms
+   */
+  private void load(DBIDArrayIter iter, int num, double[] buf, double[] norms) {
+    for(int i = 0, off = 0; i < num; i++, iter.advance()) {
+      final NumberVector vec = relation.get(iter);
+      double norm = 0.;
+      if(vec instanceof PackedDoubleVector) {
+        // Packed storage: copy the row directly.
+        final PackedDoubleVector pvec = (PackedDoubleVector) vec;
+        System.arraycopy(pvec.getPackedArray(), pvec.getPackedOffset(), buf, off, dim);
+        for(int end = off + dim; off < end; off++) {
+          norm += buf[off] * buf[off];
+        }
+        norms[i] = norm;
+        continue;
+      }
+      for(int d = 0; d < dim; d++, off++) {
+        final double v = vec.doubleValue(d);
+        buf[off] = v;
+        norm += v * v;
+      }
+      norms[i] = norm;
+    }
+  }
+}
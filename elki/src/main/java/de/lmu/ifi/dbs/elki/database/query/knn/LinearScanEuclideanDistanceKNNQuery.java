@@ -46,8 +46,11 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
  * This is a subtle optimization: for primitive queries, it is clearly faster to
  * retrieve the query object from the relation only once!
  * 
+ * Bulk queries on dense vector fields use a {@link BlockedEuclideanKNNJoin}.
+ * 
  * @author Erich Schubert
  * 
+ * @apiviz.uses BlockedEuclideanKNNJoin
  * @apiviz.uses PrimitiveDistanceQuery
  * @apiviz.uses EuclideanDistanceFunction
  * @apiviz.uses SquaredEuclideanDistanceFunction
@@ -101,6 +104,9 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
 
   @Override
   public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    if(BlockedEuclideanKNNJoin.isApplicable(relation)) {
+      return new BlockedEuclideanKNNJoin(relation).run(ids, k);
+    }
     final int size = ids.size();
     final List<KNNHeap> heaps = new ArrayList<>(size);
     List<O> objs = new ArrayList<>(size);
@@ -108,7 +114,7 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
       heaps.add(DBIDUtil.newHeap(k));
       objs.add(relation.get(iter));
     }
-    linearScanBatchKNN(objs, heaps);
+    parallelBatchKNN(objs, heaps);
 
     List<KNNList> result = new ArrayList<>(heaps.size());
     for(KNNHeap heap : heaps) {
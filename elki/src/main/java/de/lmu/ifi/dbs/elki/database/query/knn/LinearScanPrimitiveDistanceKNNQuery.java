@@ -36,6 +36,7 @@ import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 
 /**
  * Instance of this query for a particular database.
@@ -43,12 +44,19 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
  * This is a subtle optimization: for primitive queries, it is clearly faster to
  * retrieve the query object from the relation only once!
  * 
+ * Large bulk queries are partitioned across all available cores.
+ * 
  * @author Erich Schubert
  * 
  * @apiviz.uses PrimitiveDistanceQuery
  * @apiviz.uses PrimitiveDistanceFunction
  */
 public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> implements LinearScanQuery {
+  /**
+   * Minimum number of queries per thread in bulk mode.
+   */
+  protected static final int MIN_BATCH = 64;
+
   /**
    * Unboxed distance function.
    */
@@ -104,7 +112,7 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
       heaps.add(DBIDUtil.newHeap(k));
       objs.add(relation.get(iter));
     }
-    linearScanBatchKNN(objs, heaps);
+    parallelBatchKNN(objs, heaps);
 
     List<KNNList> result = new ArrayList<>(heaps.size());
     for(KNNHeap heap : heaps) {
@@ -113,6 +121,23 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
     return result;
   }
 
+  /**
+   * Perform a linear scan batch kNN, with the queries partitioned across all
+   * available cores. Every thread scans the relation with its own iterator, and
+   * only updates the heaps of its own queries.
+   * 
+   * @param objs Objects list
+   * @param heaps Heaps array
+   */
+  protected void parallelBatchKNN(final List<O> objs, final List<KNNHeap> heaps) {
+    ParallelExecutor.runPartitions(objs.size(), MIN_BATCH, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        linearScanBatchKNN(objs.subList(start, end), heaps.subList(start, end));
+      }
+    });
+  }
+
   /**
    * Perform a linear scan batch kNN for primitive distance functions.
    * 
@@ -0,0 +1,180 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.result.AbstractHierarchicalResult;
+
+/**
+ * Abstract base class for relations that store all vectors packed in row-major
+ * order, e.g. in a single primitive array. Rows are addressed by the offset of
+ * the object in a {@link DBIDRange}, so this is only usable for static
+ * databases.
+ * 
+ * Objects cannot be deleted from such a relation.
+ * 
+ * @author agent
+ * 
+ * @param <V> Vector type
+ */
+public abstract class AbstractPackedVectorRelation<V extends NumberVector> extends AbstractHierarchicalResult implements Relation<V> {
+  /**
+   * Our database
+   */
+  private final Database database;
+
+  /**
+   * The DBIDs this is defined for.
+   */
+  protected final DBIDRange ids;
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<V> type;
+
+  /**
+   * Dimensionality of each row.
+   */
+  protected final int dim;
+
+  /**
+   * Constructor.
+   * 
+   * @param database Database
+   * @param type Type information, must have a fixed dimensionality
+   * @param ids IDs
+   */
+  public AbstractPackedVectorRelation(Database database, VectorFieldTypeInformation<V> type, DBIDRange ids) {
+    super();
+    this.database = database;
+    this.type = type;
+    this.ids = ids;
+    this.dim = type.getDimensionality();
+  }
+
+  /**
+   * Compute the size of a packed array.
+   * 
+   * @param ids IDs
+   * @param dim Dimensionality
+   * @return Array size
+   */
+  protected static int packedSize(DBIDRange ids, int dim) {
+    if((long) ids.size() * dim > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Data set too large for a packed relation: " + ids.size() + " x " + dim);
+    }
+    return ids.size() * dim;
+  }
+
+  /**
+   * Get the offset of the first value of an object in the packed array.
+   * 
+   * @param id Object
+   * @return Array offset
+   */
+  protected int offset(DBIDRef id) {
+    return ids.getOffset(id) * dim;
+  }
+
+  /**
+   * Store the values of a vector in the packed array.
+   * 
+   * @param off Array offset
+   * @param val Vector to copy
+   */
+  protected abstract void store(int off, NumberVector val);
+
+  /**
+   * Get the dimensionality of the vectors.
+   * 
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public Database getDatabase() {
+    return database;
+  }
+
+  /**
+   * Copy the values of a vector into the relation.
+   * 
+   * Note: since the values are copied, any dense {@link NumberVector} of the
+   * correct dimensionality is accepted, e.g. when loading a database.
+   * 
+   * @param id Object
+   * @param val Vector
+   */
+  @Override
+  public void set(DBIDRef id, V val) {
+    if(val.getDimensionality() != dim) {
+      throw new IllegalArgumentException("Vector dimensionality " + val.getDimensionality() + " does not match relation dimensionality " + dim);
+    }
+    store(offset(id), val);
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    throw new UnsupportedOperationException("Packed relations do not support deletions.");
+  }
+
+  @Override
+  public StaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public VectorFieldTypeInformation<V> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public String getLongName() {
+    return type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "relation";
+  }
+}
@@ -0,0 +1,88 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.MappedDoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.persistent.MappedVectorFile;
+
+/**
+ * Read-only relation of vectors stored in a memory-mapped file.
+ * 
+ * The vectors are not loaded onto the Java heap; {@link #get} returns views on
+ * the mapped file, and the operating system decides which pages are resident.
+ * 
+ * @author agent
+ * 
+ * @apiviz.composedOf MappedVectorFile
+ */
+public class MappedVectorRelation extends AbstractPackedVectorRelation<MappedDoubleVector> {
+  /**
+   * Mapped file.
+   */
+  private final MappedVectorFile file;
+
+  /**
+   * Constructor.
+   * 
+   * @param database Database
+   * @param ids IDs, must have the same size as the file
+   * @param file Mapped vector file
+   */
+  public MappedVectorRelation(Database database, DBIDRange ids, MappedVectorFile file) {
+    super(database, new VectorFieldTypeInformation<>(MappedDoubleVector.FACTORY, file.getDimensionality()), ids);
+    if(ids.size() != file.size()) {
+      throw new IllegalArgumentException("Number of DBIDs does not match the number of vectors in the file.");
+    }
+    this.file = file;
+  }
+
+  @Override
+  public MappedDoubleVector get(DBIDRef id) {
+    return file.get(ids.getOffset(id));
+  }
+
+  @Override
+  protected void store(int off, NumberVector val) {
+    throw new UnsupportedOperationException("Memory-mapped relations are read-only.");
+  }
+
+  /**
+   * Get the mapped file.
+   * 
+   * @return File
+   */
+  public MappedVectorFile getFile() {
+    return file;
+  }
+
+  @Override
+  public String getLongName() {
+    return file.getFilename().getName();
+  }
+}
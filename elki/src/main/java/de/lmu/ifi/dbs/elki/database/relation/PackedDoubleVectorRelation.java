@@ -0,0 +1,82 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedDoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+
+/**
+ * Relation storing all vectors in a single row-major {@code double[]} array.
+ * 
+ * {@link #get} returns lightweight {@link PackedDoubleVector} views on this
+ * array; {@link #set} copies the values into the array.
+ * 
+ * @author agent
+ * 
+ * @apiviz.has PackedDoubleVector
+ */
+public class PackedDoubleVectorRelation extends AbstractPackedVectorRelation<PackedDoubleVector> {
+  /**
+   * Packed data.
+   */
+  private final double[] data;
+
+  /**
+   * Constructor.
+   * 
+   * @param database Database
+   * @param ids IDs
+   * @param dim Dimensionality
+   * @param labels Column labels, may be {@code null}
+   */
+  public PackedDoubleVectorRelation(Database database, DBIDRange ids, int dim, String[] labels) {
+    super(database, new VectorFieldTypeInformation<>(PackedDoubleVector.FACTORY, dim, labels), ids);
+    this.data = new double[packedSize(ids, dim)];
+  }
+
+  @Override
+  public PackedDoubleVector get(DBIDRef id) {
+    return new PackedDoubleVector(data, offset(id), dim);
+  }
+
+  @Override
+  protected void store(int off, NumberVector val) {
+    for(int d = 0; d < dim; d++) {
+      data[off + d] = val.doubleValue(d);
+    }
+  }
+
+  /**
+   * Get the packed array. Do not modify!
+   * 
+   * @return Packed array, in row-major order.
+   */
+  public double[] getPackedArray() {
+    return data;
+  }
+}
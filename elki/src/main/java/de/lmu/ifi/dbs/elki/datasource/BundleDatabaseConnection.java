@@ -25,10 +25,12 @@ package de.lmu.ifi.dbs.elki.datasource;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedBundle;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -36,6 +38,7 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * Class to load a database from a bundle file.
@@ -54,11 +57,21 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
    */
   private static final Logging LOG = Logging.getLogger(BundleDatabaseConnection.class);
 
+  /**
+   * File name suffix of the offset index of mapped bundles.
+   */
+  public static final String INDEX_SUFFIX = ".idx";
+
   /**
    * File to load.
    */
   private File infile;
 
+  /**
+   * Use random access to the mapped file, and deserialize objects lazily.
+   */
+  private boolean mapped;
+
   /**
    * Constructor.
    * 
@@ -66,8 +79,20 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
    * @param infile Input file
    */
   public BundleDatabaseConnection(List<ObjectFilter> filters, File infile) {
+    this(filters, infile, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param filters Filters
+   * @param infile Input file
+   * @param mapped Deserialize objects lazily from the mapped file
+   */
+  public BundleDatabaseConnection(List<ObjectFilter> filters, File infile, boolean mapped) {
     super(filters);
     this.infile = infile;
+    this.mapped = mapped;
   }
 
   @Override
@@ -75,7 +100,14 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
     try {
       FileInputStream fis = new FileInputStream(infile);
       FileChannel channel = fis.getChannel();
-      MultipleObjectsBundle bundle = invokeStreamFilters(new BundleReader(channel)).asMultipleObjectsBundle();
+      MultipleObjectsBundle bundle;
+      if(mapped) {
+        // The mapping stays valid after closing the channel.
+        bundle = invokeBundleFilters(openMapped(channel).asMultipleObjectsBundle());
+      }
+      else {
+        bundle = invokeStreamFilters(new BundleReader(channel)).asMultipleObjectsBundle();
+      }
       channel.close();
       fis.close();
       return bundle;
@@ -85,6 +117,37 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
     }
   }
 
+  /**
+   * Open the mapped bundle, using the offset index stored next to the bundle
+   * file. The index is created if it does not exist or is outdated.
+   * 
+   * @param channel Bundle channel
+   * @return Mapped bundle
+   * @throws IOException on IO errors
+   */
+  private MappedBundle openMapped(FileChannel channel) throws IOException {
+    File indexfile = new File(infile.getPath() + INDEX_SUFFIX);
+    RandomAccessFile index;
+    try {
+      index = new RandomAccessFile(indexfile, "rw");
+    }
+    catch(IOException e) {
+      LOG.warning("Cannot store the bundle index in " + indexfile + ", the bundle will be scanned.");
+      return new MappedBundle(channel);
+    }
+    try {
+      FileChannel ichannel = index.getChannel();
+      if(indexfile.lastModified() < infile.lastModified()) {
+        ichannel.truncate(0);
+      }
+      // The mapping of the index also stays valid after closing.
+      return new MappedBundle(channel, ichannel);
+    }
+    finally {
+      index.close();
+    }
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -101,13 +164,24 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
     /**
      * Option ID for the bundle parameter.
      */
-    private static final OptionID BUNDLE_ID = new OptionID("bundle.input", "Bundle file to load the data from.");
+    public static final OptionID BUNDLE_ID = new OptionID("bundle.input", "Bundle file to load the data from.");
+
+    /**
+     * Flag to use random access to the mapped bundle file.
+     */
+    public static final OptionID MAPPED_ID = new OptionID("bundle.mapped", "Index the memory-mapped bundle file, and deserialize objects only on access. Double vectors are not copied. " //
+        + "The offset index is stored in a file with the suffix " + INDEX_SUFFIX + " next to the bundle.");
 
     /**
      * File to load.
      */
     private File infile;
 
+    /**
+     * Use random access to the mapped file.
+     */
+    private boolean mapped;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -116,11 +190,15 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
       if(config.grab(infileP)) {
         infile = infileP.getValue();
       }
+      Flag mappedF = new Flag(MAPPED_ID);
+      if(config.grab(mappedF)) {
+        mapped = mappedF.isTrue();
+      }
     }
 
     @Override
     protected BundleDatabaseConnection makeInstance() {
-      return new BundleDatabaseConnection(filters, infile);
+      return new BundleDatabaseConnection(filters, infile, mapped);
     }
   }
 }
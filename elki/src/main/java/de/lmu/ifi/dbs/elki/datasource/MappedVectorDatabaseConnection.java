@@ -0,0 +1,129 @@
+package de.lmu.ifi.dbs.elki.datasource;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.MappedDoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.persistent.MappedVectorFile;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+
+/**
+ * Class to open a database from a memory-mapped vector file, as written by
+ * {@link de.lmu.ifi.dbs.elki.application.ConvertToMappedVectorsApplication}.
+ * 
+ * The data is not parsed and not copied onto the Java heap, so even very large
+ * files open quickly. Note that filters will usually materialize the data.
+ * 
+ * @author agent
+ * 
+ * @apiviz.composedOf MappedVectorFile
+ */
+public class MappedVectorDatabaseConnection extends AbstractDatabaseConnection {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedVectorDatabaseConnection.class);
+
+  /**
+   * File to load.
+   */
+  private File infile;
+
+  /**
+   * Constructor.
+   * 
+   * @param filters Filters
+   * @param infile Input file
+   */
+  public MappedVectorDatabaseConnection(List<ObjectFilter> filters, File infile) {
+    super(filters);
+    this.infile = infile;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    try {
+      MappedVectorFile file = new MappedVectorFile(infile);
+      // The mapping stays valid after closing the file.
+      file.close();
+      if(LOG.isVerbose()) {
+        LOG.verbose("Mapped " + file.size() + " vectors of dimensionality " + file.getDimensionality() + ".");
+      }
+      VectorFieldTypeInformation<MappedDoubleVector> type = new VectorFieldTypeInformation<>(MappedDoubleVector.FACTORY, file.getDimensionality());
+      return invokeBundleFilters(MultipleObjectsBundle.makeSimple(type, file.asList()));
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error mapping vector file", e);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractDatabaseConnection.Parameterizer {
+    /**
+     * Option ID for the input file.
+     */
+    public static final OptionID INPUT_ID = new OptionID("mapped.input", "Memory-mapped vector file to open.");
+
+    /**
+     * File to load.
+     */
+    private File infile;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      configFilters(config);
+      FileParameter infileP = new FileParameter(INPUT_ID, FileParameter.FileType.INPUT_FILE);
+      if(config.grab(infileP)) {
+        infile = infileP.getValue();
+      }
+    }
+
+    @Override
+    protected MappedVectorDatabaseConnection makeInstance() {
+      return new MappedVectorDatabaseConnection(filters, infile);
+    }
+  }
+}
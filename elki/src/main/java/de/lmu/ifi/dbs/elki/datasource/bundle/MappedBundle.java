@@ -0,0 +1,584 @@
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.MappedDoubleVector;
+import de.lmu.ifi.dbs.elki.data.PackedDoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.logging.LoggingUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.io.FixedSizeByteBufferSerializer;
+
+/**
+ * Random access to an ELKI bundle file, using memory mapping.
+ * 
+ * In contrast to the {@link BundleReader}, the file is scanned only once to
+ * index the offsets of all records. Records of known formats (such as labels
+ * and fixed-size objects) are skipped by their size; other records need to be
+ * deserialized once. The offset index can be stored in a separate file, and
+ * is memory mapped instead of scanning the bundle when it is opened again.
+ * Objects are then deserialized lazily on access. Double vectors are not deserialized at all: they are returned as
+ * {@link MappedDoubleVector} views on the mapped file. All accessors are
+ * thread-safe, so disjoint ranges can be read in parallel.
+ * 
+ * Files larger than 2 GB are mapped in overlapping segments; a single record
+ * must not exceed {@link #MAX_RECORD_SIZE} bytes then.
+ * 
+ * @author agent
+ * 
+ * @apiviz.uses MappedByteBuffer - - «reads»
+ * @apiviz.has MappedDoubleVector
+ */
+public class MappedBundle implements ObjectBundle {
+  /**
+   * Size of a mapped segment, for large files.
+   */
+  private static final int SEGMENT_SIZE = 1 << 30;
+
+  /**
+   * Maximum record size for large files.
+   */
+  public static final int MAX_RECORD_SIZE = 1 << 26;
+
+  /**
+   * Magic number of the offset index file.
+   */
+  public static final int INDEX_MAGIC = 0xa8123b1d;
+
+  /**
+   * Size of the fixed part of the index header: magic, bundle size, columns,
+   * records and segments.
+   */
+  private static final int INDEX_HEADER_SIZE = 4 + 8 + 4 + 4 + 4;
+
+  /**
+   * Size of an index entry for a segment: file position and first record.
+   */
+  private static final int INDEX_SEGMENT_SIZE = 8 + 4;
+
+  /**
+   * Bundle metadata, without DBIDs.
+   */
+  private BundleMeta meta;
+
+  /**
+   * Serializers, including DBIDs.
+   */
+  private ByteBufferSerializer<?>[] sers;
+
+  /**
+   * Header size of zero-copy double vectors per column, or 0 to deserialize.
+   */
+  private int[] vecheader;
+
+  /**
+   * Whether or not the first column contains DBIDs.
+   */
+  private boolean hasids = false;
+
+  /**
+   * Mapped segments.
+   */
+  private List<MappedByteBuffer> segments = new ArrayList<>();
+
+  /**
+   * File position of each segment.
+   */
+  private TLongArrayList segpos = new TLongArrayList();
+
+  /**
+   * First record of each segment.
+   */
+  private TIntArrayList segstart = new TIntArrayList();
+
+  /**
+   * Offsets of each column of each record, relative to the segment. Either in
+   * memory, or mapped from the index file.
+   */
+  private IntBuffer offsets;
+
+  /**
+   * Number of records.
+   */
+  private int size;
+
+  /**
+   * Constructor. This will map the file, and index all records.
+   * 
+   * @param input Input channel
+   * @throws IOException on IO errors
+   */
+  public MappedBundle(FileChannel input) throws IOException {
+    this(input, null);
+  }
+
+  /**
+   * Constructor, with a persistent offset index. If the index file is empty or
+   * does not match the bundle, the bundle is scanned and the index is written
+   * to the index file. Otherwise, the index is memory mapped.
+   * 
+   * The index file is only checked for matching size and layout; an outdated
+   * index of a different bundle of the same size must be removed by the
+   * caller (e.g. by truncating the index channel).
+   * 
+   * @param input Input channel
+   * @param index Index channel, opened for reading and writing, may be
+   *        {@code null}
+   * @throws IOException on IO errors
+   */
+  public MappedBundle(FileChannel input, FileChannel index) throws IOException {
+    super();
+    final long filesize = input.size();
+    MappedByteBuffer buffer = map(input, 0, filesize);
+    readMeta(buffer);
+    if(index != null && readIndex(input, index, filesize)) {
+      return;
+    }
+    final int ncols = sers.length;
+    TIntArrayList offs = new TIntArrayList();
+    long pos = 0;
+    while(true) {
+      if(buffer.position() >= SEGMENT_SIZE && pos + buffer.limit() < filesize) {
+        // Continue with the next segment, starting at the current record.
+        pos += buffer.position();
+        buffer = map(input, pos, filesize);
+      }
+      if(buffer.remaining() == 0) {
+        break;
+      }
+      if(segments.isEmpty() || segments.get(segments.size() - 1) != buffer) {
+        segments.add(buffer);
+        segpos.add(pos);
+        segstart.add(size);
+      }
+      for(int i = 0; i < ncols; i++) {
+        offs.add(buffer.position());
+        skipObject(buffer, i);
+      }
+      ++size;
+    }
+    assert (offs.size() == size * ncols);
+    if(index != null) {
+      writeIndex(index, filesize, offs);
+    }
+    else {
+      offsets = IntBuffer.wrap(offs.toArray());
+    }
+  }
+
+  /**
+   * Map the offset index, if it matches the bundle file.
+   * 
+   * @param input Input channel
+   * @param index Index channel
+   * @param filesize Size of the bundle
+   * @return {@code true} when the index was loaded
+   * @throws IOException on IO errors
+   */
+  private boolean readIndex(FileChannel input, FileChannel index, long filesize) throws IOException {
+    final long indexsize = index.size();
+    if(indexsize < INDEX_HEADER_SIZE || indexsize > Integer.MAX_VALUE) {
+      return false;
+    }
+    MappedByteBuffer buffer = index.map(MapMode.READ_ONLY, 0, indexsize);
+    if(buffer.getInt() != INDEX_MAGIC || buffer.getLong() != filesize || buffer.getInt() != sers.length) {
+      return false;
+    }
+    final int nrec = buffer.getInt(), nseg = buffer.getInt();
+    final long expected = INDEX_HEADER_SIZE + nseg * (long) INDEX_SEGMENT_SIZE + nrec * (long) sers.length * ByteArrayUtil.SIZE_INT;
+    if(nrec < 0 || nseg < 0 || indexsize != expected) {
+      return false;
+    }
+    for(int i = 0; i < nseg; i++) {
+      final long pos = buffer.getLong();
+      segments.add(map(input, pos, filesize));
+      segpos.add(pos);
+      segstart.add(buffer.getInt());
+    }
+    size = nrec;
+    offsets = buffer.slice().asIntBuffer();
+    return true;
+  }
+
+  /**
+   * Write the offset index, and map it.
+   * 
+   * @param index Index channel
+   * @param filesize Size of the bundle
+   * @param offs Offsets
+   * @throws IOException on IO errors
+   */
+  private void writeIndex(FileChannel index, long filesize, TIntArrayList offs) throws IOException {
+    final int nseg = segments.size();
+    final long indexsize = INDEX_HEADER_SIZE + nseg * (long) INDEX_SEGMENT_SIZE + offs.size() * (long) ByteArrayUtil.SIZE_INT;
+    if(indexsize > Integer.MAX_VALUE) {
+      LoggingUtil.warning("Bundle has too many records to store the offset index.");
+      offsets = IntBuffer.wrap(offs.toArray());
+      return;
+    }
+    index.truncate(0);
+    MappedByteBuffer buffer = index.map(MapMode.READ_WRITE, 0, indexsize);
+    buffer.putInt(INDEX_MAGIC);
+    buffer.putLong(filesize);
+    buffer.putInt(sers.length);
+    buffer.putInt(size);
+    buffer.putInt(nseg);
+    for(int i = 0; i < nseg; i++) {
+      buffer.putLong(segpos.get(i));
+      buffer.putInt(segstart.get(i));
+    }
+    offsets = buffer.slice().asIntBuffer();
+    for(int i = 0; i < offs.size(); i++) {
+      offsets.put(i, offs.get(i));
+    }
+    buffer.force();
+  }
+
+  /**
+   * Map a segment of the file.
+   * 
+   * @param input Input channel
+   * @param pos Start position
+   * @param filesize File size
+   * @return Mapped buffer
+   * @throws IOException on IO errors
+   */
+  private static MappedByteBuffer map(FileChannel input, long pos, long filesize) throws IOException {
+    final long remaining = filesize - pos;
+    final long len = (remaining <= Integer.MAX_VALUE) ? remaining : SEGMENT_SIZE + MAX_RECORD_SIZE;
+    return input.map(MapMode.READ_ONLY, pos, len);
+  }
+
+  /**
+   * Read the metadata.
+   * 
+   * @param buffer Buffer
+   */
+  private void readMeta(ByteBuffer buffer) {
+    final int check = buffer.getInt();
+    if(check != BundleWriter.MAGIC) {
+      throw new AbortException("File does not start with expected magic.");
+    }
+    final int nummeta = buffer.getInt();
+    assert (nummeta > 0) : "Empty bundle?";
+    meta = new BundleMeta(nummeta);
+    sers = new ByteBufferSerializer<?>[nummeta];
+    vecheader = new int[nummeta];
+    for(int i = 0; i < nummeta; i++) {
+      try {
+        SimpleTypeInformation<?> type = (SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(buffer);
+        sers[i] = type.getSerializer();
+        if(i == 0 && TypeUtil.DBID.isAssignableFromType(type)) {
+          hasids = true;
+          continue;
+        }
+        vecheader[i] = vectorHeaderSize(sers[i]);
+        if(vecheader[i] != 0 && type instanceof VectorFieldTypeInformation) {
+          type = mappedType((VectorFieldTypeInformation<?>) type);
+        }
+        else {
+          vecheader[i] = 0;
+        }
+        meta.add(type);
+      }
+      catch(UnsupportedOperationException e) {
+        throw new AbortException("Deserialization failed: " + e.getMessage(), e);
+      }
+      catch(IOException e) {
+        throw new AbortException("IO error", e);
+      }
+    }
+  }
+
+  /**
+   * Get the header size of a serialized double vector.
+   * 
+   * @param ser Serializer
+   * @return Header size: 1 for bytes, 2 for shorts, -1 for varint, 0 when not
+   *         supported.
+   */
+  private static int vectorHeaderSize(ByteBufferSerializer<?> ser) {
+    if(ser instanceof DoubleVector.SmallSerializer) {
+      return 1;
+    }
+    if(ser instanceof DoubleVector.ShortSerializer) {
+      return 2;
+    }
+    if(ser instanceof DoubleVector.VariableSerializer //
+        || ser instanceof PackedDoubleVector.VariableSerializer //
+        || ser instanceof MappedDoubleVector.VariableSerializer) {
+      return -1;
+    }
+    return 0;
+  }
+
+  /**
+   * Build the type information for mapped vectors.
+   * 
+   * @param type Stored type
+   * @return Type of mapped vectors
+   */
+  private static VectorFieldTypeInformation<MappedDoubleVector> mappedType(VectorFieldTypeInformation<?> type) {
+    if(type.mindim() != type.maxdim()) {
+      return new VectorFieldTypeInformation<>(MappedDoubleVector.FACTORY, type.mindim(), type.maxdim(), MappedDoubleVector.VARIABLE_SERIALIZER);
+    }
+    final int dim = type.mindim();
+    String[] labels = null;
+    for(int i = 0; i < dim; i++) {
+      final String label = type.getLabel(i);
+      if(label != null) {
+        if(labels == null) {
+          labels = new String[dim];
+        }
+        labels[i] = label;
+      }
+    }
+    return new VectorFieldTypeInformation<>(MappedDoubleVector.FACTORY, dim, labels, MappedDoubleVector.VARIABLE_SERIALIZER);
+  }
+
+  /**
+   * Skip an object in the buffer. Objects are skipped by their size where
+   * possible, and only deserialized for unknown formats.
+   * 
+   * @param buffer Buffer
+   * @param col Column
+   */
+  private void skipObject(ByteBuffer buffer, int col) {
+    final ByteBufferSerializer<?> ser = sers[col];
+    if(vecheader[col] != 0) {
+      final int dim = readDimensionality(buffer, vecheader[col]);
+      buffer.position(buffer.position() + dim * ByteArrayUtil.SIZE_DOUBLE);
+    }
+    else if(ser instanceof FixedSizeByteBufferSerializer) {
+      buffer.position(buffer.position() + ((FixedSizeByteBufferSerializer<?>) ser).getFixedByteSize());
+    }
+    else if(ser == ByteArrayUtil.STRING_SERIALIZER) {
+      skipString(buffer);
+    }
+    else if(ser instanceof LabelList.Serializer) {
+      for(int cnt = ByteArrayUtil.readUnsignedVarint(buffer); cnt > 0; cnt--) {
+        skipString(buffer);
+      }
+    }
+    else {
+      deserialize(buffer, col);
+    }
+  }
+
+  /**
+   * Skip a serialized string.
+   * 
+   * @param buffer Buffer
+   */
+  private static void skipString(ByteBuffer buffer) {
+    final int len = ByteArrayUtil.readUnsignedVarint(buffer);
+    buffer.position(buffer.position() + len);
+  }
+
+  /**
+   * Read the dimensionality of a double vector.
+   * 
+   * @param buffer Buffer
+   * @param header Header type
+   * @return Dimensionality
+   */
+  private static int readDimensionality(ByteBuffer buffer, int header) {
+    switch(header){
+    case 1:
+      return buffer.get();
+    case 2:
+      return buffer.getShort();
+    default:
+      return ByteArrayUtil.readUnsignedVarint(buffer);
+    }
+  }
+
+  /**
+   * Deserialize an object at the current buffer position.
+   * 
+   * @param buffer Buffer
+   * @param col Column
+   * @return Object
+   */
+  private Object deserialize(ByteBuffer buffer, int col) {
+    try {
+      return sers[col].fromByteBuffer(buffer);
+    }
+    catch(UnsupportedOperationException e) {
+      throw new AbortException("Deserialization failed.", e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error", e);
+    }
+  }
+
+  /**
+   * Get the object in a column, using the internal column numbering which
+   * includes DBIDs.
+   * 
+   * @param onum Object number
+   * @param col Internal column number
+   * @return Object
+   */
+  private Object get(int onum, int col) {
+    if(onum < 0 || onum >= size) {
+      throw new ArrayIndexOutOfBoundsException(onum);
+    }
+    int seg = segstart.binarySearch(onum);
+    seg = (seg >= 0) ? seg : (-seg - 2);
+    ByteBuffer buffer = segments.get(seg).duplicate();
+    buffer.position(offsets.get(onum * sers.length + col));
+    if(vecheader[col] != 0) {
+      final int dim = readDimensionality(buffer, vecheader[col]);
+      return new MappedDoubleVector(segments.get(seg), buffer.position(), dim);
+    }
+    return deserialize(buffer, col);
+  }
+
+  @Override
+  public BundleMeta meta() {
+    return meta;
+  }
+
+  @Override
+  public SimpleTypeInformation<?> meta(int i) {
+    return meta.get(i);
+  }
+
+  @Override
+  public int metaLength() {
+    return meta.size();
+  }
+
+  @Override
+  public int dataLength() {
+    return size;
+  }
+
+  @Override
+  public Object data(int onum, int rnum) {
+    return get(onum, hasids ? rnum + 1 : rnum);
+  }
+
+  @Override
+  public boolean assignDBID(int onum, DBIDVar var) {
+    if(!hasids) {
+      var.unset();
+      return false;
+    }
+    var.set((DBID) get(onum, 0));
+    return true;
+  }
+
+  /**
+   * Get a lazy list view of a column.
+   * 
+   * @param rnum Column number
+   * @return List view
+   */
+  public List<?> getColumn(final int rnum) {
+    final int col = hasids ? rnum + 1 : rnum;
+    return new ColumnView(col);
+  }
+
+  /**
+   * Convert to a bundle with lazy columns. Objects are only deserialized when
+   * accessed.
+   * 
+   * @return Bundle
+   */
+  public MultipleObjectsBundle asMultipleObjectsBundle() {
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    for(int i = 0; i < meta.size(); i++) {
+      bundle.appendColumn(meta.get(i), getColumn(i));
+    }
+    if(hasids) {
+      ArrayModifiableDBIDs ids = DBIDUtil.newArray(size);
+      for(int i = 0; i < size; i++) {
+        ids.add((DBID) get(i, 0));
+      }
+      bundle.setDBIDs(ids);
+    }
+    return bundle;
+  }
+
+  /**
+   * Lazy view of a single column.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  private class ColumnView extends AbstractList<Object> implements RandomAccess {
+    /**
+     * Internal column number.
+     */
+    private final int col;
+
+    /**
+     * Constructor.
+     * 
+     * @param col Internal column number
+     */
+    ColumnView(int col) {
+      super();
+      this.col = col;
+    }
+
+    @Override
+    public Object get(int index) {
+      return MappedBundle.this.get(index, col);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
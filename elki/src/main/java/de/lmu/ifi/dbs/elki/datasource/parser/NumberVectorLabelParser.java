@@ -43,7 +43,7 @@ import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayLikeUtil;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
-import de.lmu.ifi.dbs.elki.utilities.datastructures.hash.Unique;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.hash.StringInterner;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
@@ -126,7 +126,7 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
   /**
    * For String unification.
    */
-  Unique<String> unique = new Unique<>();
+  StringInterner unique = new StringInterner();
 
   /**
    * Event to report next.
@@ -267,10 +267,9 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
         }
       }
       // Else: labels.
-      String lbl = tokenizer.getStrippedSubstring();
+      String lbl = tokenizer.getStrippedSubstring(unique);
       if(lbl.length() > 0) {
         haslabels = true;
-        lbl = unique.addOrGet(lbl);
         labels.add(lbl);
       }
     }
@@ -0,0 +1,420 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Pattern;
+
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource.Event;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+
+/**
+ * Parallel version of the {@link NumberVectorLabelParser}.
+ * 
+ * The input is read in large blocks, which are cut at line boundaries and
+ * parsed concurrently. The results are merged in input order, so the objects
+ * (and thus their DBIDs) are in the same order as with the serial parser. When
+ * the input is gzip compressed, decompression in the reading thread overlaps
+ * with parsing in the worker threads.
+ * 
+ * This requires the input to use an ASCII compatible encoding, e.g. UTF-8.
+ * 
+ * @author agent
+ * 
+ * @apiviz.uses NumberVectorLabelParser
+ * 
+ * @param <V> the type of NumberVector used
+ */
+public class ParallelNumberVectorLabelParser<V extends NumberVector> extends AbstractParser implements Parser {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNumberVectorLabelParser.class);
+
+  /**
+   * Size of the blocks to parse.
+   */
+  public static final int BLOCK_SIZE = 1 << 22;
+
+  /**
+   * Column separator.
+   */
+  private Pattern colSep;
+
+  /**
+   * Quote characters.
+   */
+  private String quoteChars;
+
+  /**
+   * Comment pattern.
+   */
+  private Pattern comment;
+
+  /**
+   * Keeps the indices of the attributes to be treated as a string label.
+   */
+  private BitSet labelIndices;
+
+  /**
+   * Vector factory class.
+   */
+  private NumberVector.Factory<V> factory;
+
+  /**
+   * Size of the blocks to parse.
+   */
+  private int blocksize;
+
+  /**
+   * Constructor.
+   * 
+   * @param colSep Column separator
+   * @param quoteChars Quote character
+   * @param comment Comment pattern
+   * @param labelIndices Column indexes that are numeric.
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorLabelParser(Pattern colSep, String quoteChars, Pattern comment, BitSet labelIndices, NumberVector.Factory<V> factory) {
+    this(colSep, quoteChars, comment, labelIndices, factory, BLOCK_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param colSep Column separator
+   * @param quoteChars Quote character
+   * @param comment Comment pattern
+   * @param labelIndices Column indexes that are numeric.
+   * @param factory Vector factory
+   * @param blocksize Block size in bytes
+   */
+  ParallelNumberVectorLabelParser(Pattern colSep, String quoteChars, Pattern comment, BitSet labelIndices, NumberVector.Factory<V> factory, int blocksize) {
+    super(colSep, quoteChars, comment);
+    this.colSep = colSep;
+    this.quoteChars = quoteChars;
+    this.comment = comment;
+    this.labelIndices = labelIndices;
+    this.factory = factory;
+    this.blocksize = blocksize;
+  }
+
+  @Override
+  public MultipleObjectsBundle parse(InputStream in) {
+    final ParallelCore core = ParallelCore.getCore();
+    final boolean parallel = ParallelCore.ALL_PROCESSORS > 1;
+    ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+    List<Block> blocks = new ArrayList<>();
+    try {
+      if(parallel) {
+        core.connect();
+      }
+      // Limit the number of blocks in memory.
+      final int maxpending = parallel ? core.getParallelism() << 1 : 1;
+      byte[] buf = new byte[blocksize];
+      int len = 0, firstline = 0;
+      boolean eof = false;
+      while(!eof) {
+        // Fill the buffer.
+        while(len < buf.length) {
+          int r = in.read(buf, len, buf.length - len);
+          if(r < 0) {
+            eof = true;
+            break;
+          }
+          len += r;
+        }
+        // Cut at the last line break.
+        int cut = len;
+        if(!eof) {
+          while(cut > 0 && buf[cut - 1] != '\n') {
+            --cut;
+          }
+          if(cut == 0) {
+            // Line longer than the buffer.
+            byte[] nbuf = new byte[buf.length << 1];
+            System.arraycopy(buf, 0, nbuf, 0, len);
+            buf = nbuf;
+            continue;
+          }
+        }
+        if(cut > 0) {
+          byte[] data = new byte[cut];
+          System.arraycopy(buf, 0, data, 0, cut);
+          BlockTask task = new BlockTask(data, firstline);
+          if(parallel) {
+            pending.add(core.submit(task));
+          }
+          else {
+            FutureTask<Block> f = new FutureTask<>(task);
+            f.run();
+            pending.add(f);
+          }
+          firstline += countLines(data);
+          System.arraycopy(buf, cut, buf, 0, len - cut);
+          len -= cut;
+        }
+        while(pending.size() >= maxpending || (eof && !pending.isEmpty())) {
+          blocks.add(pending.remove().get());
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Error while reading input.", e);
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Parsing failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parsing interrupted.", e);
+    }
+    finally {
+      for(Future<Block> f : pending) {
+        f.cancel(true);
+      }
+      if(parallel) {
+        core.disconnect();
+      }
+    }
+    return merge(blocks);
+  }
+
+  /**
+   * Count the number of lines in a block.
+   * 
+   * @param data Block
+   * @return Number of line breaks
+   */
+  private static int countLines(byte[] data) {
+    int c = 0;
+    for(int i = 0; i < data.length; i++) {
+      if(data[i] == '\n') {
+        ++c;
+      }
+    }
+    return c;
+  }
+
+  /**
+   * Merge the parsed blocks, in order.
+   * 
+   * @param blocks Parsed blocks
+   * @return Bundle
+   */
+  private MultipleObjectsBundle merge(List<Block> blocks) {
+    int size = 0, mindim = Integer.MAX_VALUE, maxdim = 0;
+    boolean haslabels = false;
+    for(Block b : blocks) {
+      size += b.vecs.size();
+      mindim = Math.min(mindim, b.parser.mindim);
+      maxdim = Math.max(maxdim, b.parser.maxdim);
+      haslabels |= b.parser.haslabels;
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    if(size == 0) {
+      return bundle;
+    }
+    List<V> vecs = new ArrayList<>(size);
+    List<LabelList> lbls = haslabels ? new ArrayList<LabelList>(size) : null;
+    for(Block b : blocks) {
+      vecs.addAll(b.vecs);
+      if(lbls != null) {
+        lbls.addAll(b.lbls);
+      }
+    }
+    // The first block has the column names, if any.
+    bundle.appendColumn(blocks.get(0).parser.getTypeInformation(mindim, maxdim), vecs);
+    if(lbls != null) {
+      bundle.appendColumn(TypeUtil.LABELLIST, lbls);
+    }
+    return bundle;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parsed block of data.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  private class Block {
+    /**
+     * Parser used for this block.
+     */
+    NumberVectorLabelParser<V> parser;
+
+    /**
+     * Vectors.
+     */
+    List<V> vecs = new ArrayList<>();
+
+    /**
+     * Labels.
+     */
+    List<LabelList> lbls = new ArrayList<>();
+  }
+
+  /**
+   * Task to parse a single block.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  private class BlockTask implements Callable<Block> {
+    /**
+     * Block data.
+     */
+    private byte[] data;
+
+    /**
+     * Number of lines before this block.
+     */
+    private int firstline;
+
+    /**
+     * Constructor.
+     * 
+     * @param data Block data
+     * @param firstline Number of lines before this block
+     */
+    BlockTask(byte[] data, int firstline) {
+      this.data = data;
+      this.firstline = firstline;
+    }
+
+    @Override
+    public Block call() {
+      Block block = new Block();
+      block.parser = new BlockParser<>(colSep, quoteChars, comment, labelIndices, factory, firstline);
+      block.parser.initStream(new ByteArrayInputStream(data));
+      data = null; // Allow garbage collection.
+      for(Event ev = block.parser.nextEvent(); ev != Event.END_OF_STREAM; ev = block.parser.nextEvent()) {
+        if(ev == Event.NEXT_OBJECT) {
+          block.vecs.add(block.parser.curvec);
+          block.lbls.add(block.parser.curlbl);
+        }
+      }
+      block.parser.cleanup();
+      return block;
+    }
+  }
+
+  /**
+   * Parser for a block of data, which may start in the middle of the file.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <V> Vector type
+   */
+  private static class BlockParser<V extends NumberVector> extends NumberVectorLabelParser<V> {
+    /**
+     * Number of lines before this block.
+     */
+    private int firstline;
+
+    /**
+     * Constructor.
+     * 
+     * @param colSep Column separator
+     * @param quoteChars Quote character
+     * @param comment Comment pattern
+     * @param labelIndices Column indexes that are numeric.
+     * @param factory Vector factory
+     * @param firstline Number of lines before this block
+     */
+    BlockParser(Pattern colSep, String quoteChars, Pattern comment, BitSet labelIndices, NumberVector.Factory<V> factory, int firstline) {
+      super(colSep, quoteChars, comment, labelIndices, factory);
+      this.firstline = firstline;
+    }
+
+    @Override
+    protected int getLineNumber() {
+      // Line numbers are used to detect the header, and for error messages.
+      return firstline + super.getLineNumber();
+    }
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParser.Parameterizer {
+    /**
+     * Keeps the indices of the attributes to be treated as a string label.
+     */
+    protected BitSet labelIndices = null;
+
+    /**
+     * Factory object.
+     */
+    protected NumberVector.Factory<V> factory;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      // Same options as the serial parser.
+      NumberVectorLabelParser.Parameterizer<V> par = new NumberVectorLabelParser.Parameterizer<>();
+      par.getLabelIndices(config);
+      par.getFactory(config);
+      labelIndices = par.labelIndices;
+      factory = par.factory;
+    }
+
+    @Override
+    protected ParallelNumberVectorLabelParser<V> makeInstance() {
+      return new ParallelNumberVectorLabelParser<>(colSep, quoteChars, comment, labelIndices, factory);
+    }
+  }
+}
@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
  */
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedDoubleVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
@@ -110,6 +111,10 @@ public class EuclideanDistanceFunction extends LPIntegerNormDistanceFunction {
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    if(dim1 == dim2 && v1 instanceof PackedDoubleVector && v2 instanceof PackedDoubleVector) {
+      // Fast path: read the packed arrays directly.
+      return Math.sqrt(PackedDoubleVector.squaredDifference((PackedDoubleVector) v1, (PackedDoubleVector) v2));
+    }
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim, 0.);
     if(dim1 > mindim) {
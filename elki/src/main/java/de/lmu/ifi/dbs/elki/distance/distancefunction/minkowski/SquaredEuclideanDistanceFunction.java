@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
  */
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedDoubleVector;
 import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
@@ -116,6 +117,10 @@ public class SquaredEuclideanDistanceFunction extends AbstractSpatialNorm {
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    if(dim1 == dim2 && v1 instanceof PackedDoubleVector && v2 instanceof PackedDoubleVector) {
+      // Fast path: read the packed arrays directly.
+      return PackedDoubleVector.squaredDifference((PackedDoubleVector) v1, (PackedDoubleVector) v2);
+    }
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim, 0.);
     if(dim1 > mindim) {
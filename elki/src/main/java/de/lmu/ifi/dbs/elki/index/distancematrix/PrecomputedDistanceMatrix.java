@@ -23,6 +23,13 @@ package de.lmu.ifi.dbs.elki.index.distancematrix;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
@@ -37,21 +44,30 @@ import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
  * Distance matrix, for precomputing similarity for a small data set.
  * 
  * This class uses a linear memory layout (not a ragged array), and assumes
- * symmetry as well as strictness. This way, it only stores the upper triangle
- * matrix with double precision. It has to store (n-1) * (n-2) distance values
- * in memory, requiring 8 * (n-1) * (n-2) bytes. Since Java has a size limit of
- * arrays of 31 bits (signed integer), we can store at most 2^16 objects
- * (precisely, 65536 objects) in a single array, which needs about 16 GB of RAM.
+ * symmetry as well as strictness. This way, it only stores the lower triangle
+ * matrix, (n-1) * n / 2 distance values. With double precision, this requires
+ * 8 * (n-1) * n / 2 bytes, i.e. about 16 GB of RAM for 65536 objects; with
+ * single (float) precision only half of this. The values are stored in chunks,
+ * so the matrix is not limited by the maximum Java array size.
+ * 
+ * Optionally, the matrix can be stored in a memory-mapped file instead of the
+ * Java heap, leaving it to the operating system to page it in and out. This
+ * file is not deleted afterwards.
+ * 
+ * The matrix is filled in square tiles, on all available CPUs.
  * 
  * @author Erich Schubert
  * 
@@ -65,6 +81,21 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    */
   private static final Logging LOG = Logging.getLogger(PrecomputedDistanceMatrix.class);
 
+  /**
+   * Number of rows and columns in a tile.
+   */
+  private static final int BLOCKSIZE = 64;
+
+  /**
+   * Bits of the offset within a chunk.
+   */
+  private static final int CHUNK_BITS = 26;
+
+  /**
+   * Mask for the offset within a chunk.
+   */
+  private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
   /**
    * Nested distance function.
    */
@@ -75,10 +106,20 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    */
   protected DistanceQuery<O> distanceQuery;
 
+  /**
+   * Store distances with single precision only.
+   */
+  protected boolean useFloat;
+
+  /**
+   * File to memory-map the matrix to, may be {@code null}.
+   */
+  protected File file;
+
   /**
    * Distance matrix.
    */
-  private double[] matrix = null;
+  private Storage matrix = null;
 
   /**
    * DBID range.
@@ -89,7 +130,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * Size of DBID range.
    */
   private int size;
-  
+
   /**
    * Constructor.
    * 
@@ -97,8 +138,22 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param distanceFunction Distance function
    */
   public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction) {
+    this(relation, distanceFunction, false, null);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param useFloat Store distances with single precision only
+   * @param file File to memory-map the matrix to, may be {@code null}
+   */
+  public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction, boolean useFloat, File file) {
     super(relation);
     this.distanceFunction = distanceFunction;
+    this.useFloat = useFloat;
+    this.file = file;
 
     if(!distanceFunction.isSymmetric()) {
       throw new AbortException("Distance matrixes currently only support symmetric distance functions (Patches welcome).");
@@ -113,37 +168,68 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     }
     ids = (DBIDRange) rids;
     size = ids.size();
-    if(size > 65536) {
-      throw new AbortException("Distance matrixes currently have a limit of 65536 objects (~16 GB). After this, the array size exceeds the Java integer range, and a different data structure needs to be used.");
-    }
 
     distanceQuery = distanceFunction.instantiate(relation);
 
-    int msize = triangleSize(size);
-    matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos] = distanceQuery.distance(ix, iy);
-        pos++;
-        LOG.incrementProcessed(prog);
-      }
+    final long msize = triangleSize(size);
+    try {
+      matrix = (file != null) ? new MappedStorage(file, msize, useFloat) : useFloat ? new FloatStorage(msize) : new DoubleStorage(msize);
     }
+    catch(IOException e) {
+      throw new AbortException("Could not map the distance matrix file.", e);
+    }
+
+    // Pair the tiles of the short and long rows, to balance the workload.
+    final int nblocks = (size + BLOCKSIZE - 1) / BLOCKSIZE;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", nblocks, LOG) : null;
+    ParallelExecutor.runPartitions((nblocks + 1) >>> 1, 1, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+        for(int b = start; b < end; b++) {
+          fillRows(b * BLOCKSIZE, ix, iy);
+          LOG.incrementProcessed(prog);
+          final int b2 = nblocks - 1 - b;
+          if(b2 != b) {
+            fillRows(b2 * BLOCKSIZE, ix, iy);
+            LOG.incrementProcessed(prog);
+          }
+        }
+      }
+    });
     LOG.ensureCompleted(prog);
   }
 
+  /**
+   * Fill the rows of a block, tile by tile.
+   * 
+   * @param rstart First row
+   * @param ix Iterator for rows
+   * @param iy Iterator for columns
+   */
+  private void fillRows(int rstart, DBIDArrayIter ix, DBIDArrayIter iy) {
+    final int rend = Math.min(rstart + BLOCKSIZE, size);
+    for(int cstart = 0; cstart < rend; cstart += BLOCKSIZE) {
+      for(int x = rstart; x < rend; x++) {
+        ix.seek(x);
+        final long base = triangleSize(x);
+        // y < x -- must match {@link #getOffset}!
+        final int cend = Math.min(cstart + BLOCKSIZE, x);
+        for(int y = cstart; y < cend; y++) {
+          matrix.set(base + y, distanceQuery.distance(ix, iy.seek(y)));
+        }
+      }
+    }
+  }
+
   /**
    * Compute the size of a complete x by x triangle (minus diagonal)
    * 
    * @param x Offset
    * @return Size of complete triangle
    */
-  protected static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  protected static long triangleSize(int x) {
+    return (x * (long) (x - 1)) >>> 1;
   }
 
   /**
@@ -153,14 +239,14 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param y Y parameter
    * @return Array offset
    */
-  private int getOffset(int x, int y) {
+  private static long getOffset(int x, int y) {
     return (y < x) ? (triangleSize(x) + y) : (triangleSize(y) + x);
   }
 
   @Override
   public void logStatistics() {
     if(matrix != null) {
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", triangleSize(size)));
     }
   }
 
@@ -191,7 +277,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     @Override
     public double distance(DBIDRef id1, DBIDRef id2) {
       final int x = ids.getOffset(id1), y = ids.getOffset(id2);
-      return (x != y) ? matrix[getOffset(x, y)] : 0.;
+      return (x != y) ? matrix.get(getOffset(x, y)) : 0.;
     }
 
     @Override
@@ -220,6 +306,169 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     }
   }
 
+  /**
+   * Storage of the linearized triangle matrix. Concurrent writes to different
+   * offsets must be safe.
+   * 
+   * @author agent
+   */
+  private static interface Storage {
+    /**
+     * Get a value.
+     * 
+     * @param off Offset
+     * @return Value
+     */
+    double get(long off);
+
+    /**
+     * Set a value.
+     * 
+     * @param off Offset
+     * @param val Value
+     */
+    void set(long off, double val);
+  }
+
+  /**
+   * Chunked on-heap storage with double precision.
+   * 
+   * @author agent
+   */
+  private static class DoubleStorage implements Storage {
+    /**
+     * Data chunks.
+     */
+    private final double[][] chunks;
+
+    /**
+     * Constructor.
+     * 
+     * @param len Number of values
+     */
+    DoubleStorage(long len) {
+      chunks = new double[(int) ((len + CHUNK_MASK) >>> CHUNK_BITS)][];
+      for(int i = 0; i < chunks.length; i++) {
+        chunks[i] = new double[(int) Math.min(len - (((long) i) << CHUNK_BITS), 1L << CHUNK_BITS)];
+      }
+    }
+
+    @Override
+    public double get(long off) {
+      return chunks[(int) (off >>> CHUNK_BITS)][(int) (off & CHUNK_MASK)];
+    }
+
+    @Override
+    public void set(long off, double val) {
+      chunks[(int) (off >>> CHUNK_BITS)][(int) (off & CHUNK_MASK)] = val;
+    }
+  }
+
+  /**
+   * Chunked on-heap storage with single precision.
+   * 
+   * @author agent
+   */
+  private static class FloatStorage implements Storage {
+    /**
+     * Data chunks.
+     */
+    private final float[][] chunks;
+
+    /**
+     * Constructor.
+     * 
+     * @param len Number of values
+     */
+    FloatStorage(long len) {
+      chunks = new float[(int) ((len + CHUNK_MASK) >>> CHUNK_BITS)][];
+      for(int i = 0; i < chunks.length; i++) {
+        chunks[i] = new float[(int) Math.min(len - (((long) i) << CHUNK_BITS), 1L << CHUNK_BITS)];
+      }
+    }
+
+    @Override
+    public double get(long off) {
+      return chunks[(int) (off >>> CHUNK_BITS)][(int) (off & CHUNK_MASK)];
+    }
+
+    @Override
+    public void set(long off, double val) {
+      chunks[(int) (off >>> CHUNK_BITS)][(int) (off & CHUNK_MASK)] = (float) val;
+    }
+  }
+
+  /**
+   * Storage in a memory-mapped file, with single or double precision.
+   * 
+   * Since a single mapping is limited to 2 GB, the file is mapped in chunks.
+   * The file uses the native byte order, and is overwritten when the index is
+   * built. It outlives the index: the file is neither unmapped nor deleted when
+   * the index is no longer used. The mapping is only released by the garbage
+   * collector, and the file must be removed by the user.
+   * 
+   * @author agent
+   */
+  private static class MappedStorage implements Storage {
+    /**
+     * Mapped chunks.
+     */
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * Use single precision.
+     */
+    private final boolean useFloat;
+
+    /**
+     * Bits of the record size.
+     */
+    private final int shift;
+
+    /**
+     * Constructor.
+     * 
+     * @param file File name
+     * @param len Number of values
+     * @param useFloat Use single precision
+     * @throws IOException on mapping errors
+     */
+    MappedStorage(File file, long len, boolean useFloat) throws IOException {
+      this.useFloat = useFloat;
+      this.shift = useFloat ? 2 : 3;
+      chunks = new MappedByteBuffer[(int) ((len + CHUNK_MASK) >>> CHUNK_BITS)];
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(len << shift);
+        FileChannel channel = raf.getChannel();
+        for(int i = 0; i < chunks.length; i++) {
+          final long start = ((long) i) << CHUNK_BITS;
+          final long clen = Math.min(len - start, 1L << CHUNK_BITS);
+          chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start << shift, clen << shift);
+          chunks[i].order(ByteOrder.nativeOrder());
+        }
+      }
+    }
+
+    @Override
+    public double get(long off) {
+      final MappedByteBuffer chunk = chunks[(int) (off >>> CHUNK_BITS)];
+      final int pos = ((int) (off & CHUNK_MASK)) << shift;
+      return useFloat ? chunk.getFloat(pos) : chunk.getDouble(pos);
+    }
+
+    @Override
+    public void set(long off, double val) {
+      final MappedByteBuffer chunk = chunks[(int) (off >>> CHUNK_BITS)];
+      final int pos = ((int) (off & CHUNK_MASK)) << shift;
+      if(useFloat) {
+        chunk.putFloat(pos, (float) val);
+      }
+      else {
+        chunk.putDouble(pos, val);
+      }
+    }
+  }
+
   /**
    * Factory for the index.
    * 
@@ -235,19 +484,42 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
      */
     final protected DistanceFunction<? super O> distanceFunction;
 
+    /**
+     * Store distances with single precision only.
+     */
+    final protected boolean useFloat;
+
+    /**
+     * File to memory-map the matrix to, may be {@code null}.
+     */
+    final protected File file;
+
     /**
      * Constructor.
      * 
      * @param distanceFunction Distance function
      */
     public Factory(DistanceFunction<? super O> distanceFunction) {
+      this(distanceFunction, false, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param distanceFunction Distance function
+     * @param useFloat Store distances with single precision only
+     * @param file File to memory-map the matrix to, may be {@code null}
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, boolean useFloat, File file) {
       super();
       this.distanceFunction = distanceFunction;
+      this.useFloat = useFloat;
+      this.file = file;
     }
 
     @Override
     public PrecomputedDistanceMatrix<O> instantiate(Relation<O> relation) {
-      return new PrecomputedDistanceMatrix<>(relation, distanceFunction);
+      return new PrecomputedDistanceMatrix<>(relation, distanceFunction, useFloat, file);
     }
 
     @Override
@@ -270,11 +542,31 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
        */
       public static final OptionID DISTANCE_ID = new OptionID("matrix.distance", "Distance function for the precomputed distance matrix.");
 
+      /**
+       * Flag to store the distances with single precision only.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("matrix.float", "Store the distances with single (float) precision, to halve the memory usage.");
+
+      /**
+       * Option parameter for a file to memory-map the matrix to.
+       */
+      public static final OptionID FILE_ID = new OptionID("matrix.file", "File to memory-map the distance matrix to, instead of keeping it on the Java heap. The file will be overwritten, and is not deleted afterwards.");
+
       /**
        * Nested distance function.
        */
       protected DistanceFunction<? super O> distanceFunction;
 
+      /**
+       * Store distances with single precision only.
+       */
+      protected boolean useFloat = false;
+
+      /**
+       * File to memory-map the matrix to, may be {@code null}.
+       */
+      protected File file = null;
+
       @Override
       protected void makeOptions(Parameterization config) {
         super.makeOptions(config);
@@ -282,11 +574,20 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
         if(config.grab(distanceP)) {
           distanceFunction = distanceP.instantiateClass(config);
         }
+        Flag floatF = new Flag(FLOAT_ID);
+        if(config.grab(floatF)) {
+          useFloat = floatF.isTrue();
+        }
+        FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE) //
+        .setOptional(true);
+        if(config.grab(fileP)) {
+          file = fileP.getValue();
+        }
       }
 
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(distanceFunction);
+        return new Factory<>(distanceFunction, useFloat, file);
       }
     }
   }
@@ -26,11 +26,13 @@ package de.lmu.ifi.dbs.elki.index.preprocessed.fastoptics;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import gnu.trove.iterator.TIntIterator;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.optics.FastOPTICS;
@@ -41,23 +43,21 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.DoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
-import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
-import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.math.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -81,6 +81,13 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
  * This is based on the original code provided by Johannes Schneider, with
  * ELKIfications and optimizations by Erich Schubert.
  * 
+ * All steps run in parallel: the projections are computed as a blocked matrix
+ * product over a columnar copy of the data, and every split of the point set
+ * uses its own random generator, seeded from the main random generator. The
+ * result therefore does not depend on the number of threads. Points are
+ * internally referenced by their position, and neighbors are merged using
+ * primitive integer sets.
+ * 
  * TODO: implement one of the Index APIs?
  *
  * @author Johannes Schneider
@@ -110,6 +117,16 @@ public class RandomProjectedNeighborssAndDensities<V extends NumberVector> {
    */
   private static final float sizeTolerance = 2f / 3;
 
+  /**
+   * Number of points projected at once, sized to stay in the L1 cache.
+   */
+  private static final int BLOCKSIZE = 256;
+
+  /**
+   * Minimum number of points per thread.
+   */
+  private static final int MIN_PARTITION = 4096;
+
   /**
    * minimum size for which a point set is further partitioned (roughly
    * corresponds to minPts in OPTICS)
@@ -122,24 +139,44 @@ public class RandomProjectedNeighborssAndDensities<V extends NumberVector> {
   Relation<V> points;
 
   /**
-   * sets that resulted from recursive split of entire point set
+   * Point IDs, in the order of their positions.
    */
-  ArrayList<ArrayDBIDs> splitsets;
+  ArrayDBIDs ids;
 
   /**
-   * all projected points
+   * Columnar copy of the data, {@code [dim][position]}.
    */
-  DoubleDataStore[] projectedPoints;
+  double[][] columns;
 
   /**
-   * Random factory.
+   * sets that resulted from recursive split of entire point set, as positions
    */
-  RandomFactory rnd;
+  ArrayList<int[]> splitsets;
+
+  /**
+   * Offsets into the set memberships of each point, of length size + 1.
+   */
+  int[] memberOffsets;
+
+  /**
+   * Set index of each membership, grouped by point.
+   */
+  int[] memberSets;
+
+  /**
+   * Position of the point within the set, for each membership.
+   */
+  int[] memberPos;
+
+  /**
+   * all projected points, {@code [projection][position]}
+   */
+  double[][] projectedPoints;
 
   /**
-   * random number generator
+   * Random factory.
    */
-  Random rand;
+  RandomFactory rnd;
 
   /**
    * Constructor.
@@ -161,27 +198,36 @@ public class RandomProjectedNeighborssAndDensities<V extends NumberVector> {
    */
   public void computeSetsBounds(Relation<V> points, int minSplitSize, DBIDs ptList) {
     this.minSplitSize = minSplitSize;
-    final int size = points.size();
-    final int dim = RelationUtil.dimensionality(points);
     this.points = points;
+    this.ids = DBIDUtil.ensureArray(ptList);
+    final int size = ids.size();
+    final int dim = RelationUtil.dimensionality(points);
 
     // perform O(log N+log dim) splits of the entire point sets projections
-    int nPointSetSplits = (int) (logOProjectionConst * MathUtil.log2(size * dim + 1));
+    final int nPointSetSplits = (int) (logOProjectionConst * MathUtil.log2(size * (double) dim + 1));
     // perform O(log N+log dim) projections of the point set onto a random line
-    int nProject1d = (int) (logOProjectionConst * MathUtil.log2(size * dim + 1));
+    final int nProject1d = (int) (logOProjectionConst * MathUtil.log2(size * (double) dim + 1));
 
     LOG.statistics(new LongStatistic(RandomProjectedNeighborssAndDensities.class.getName() + ".partition-size", nPointSetSplits));
     LOG.statistics(new LongStatistic(RandomProjectedNeighborssAndDensities.class.getName() + ".num-projections", nProject1d));
-    splitsets = new ArrayList<>();
 
-    // perform projections of points
-    projectedPoints = new DoubleDataStore[nProject1d];
-    DoubleDataStore[] tmpPro = new DoubleDataStore[nProject1d];
+    // Columnar copy of the data.
+    columns = new double[dim][size];
+    {
+      DBIDArrayIter it = ids.iter();
+      for(int p = 0; p < size; p++, it.advance()) {
+        NumberVector vecPt = points.get(it);
+        for(int d = 0; d < dim; d++) {
+          columns[d][p] = vecPt.doubleValue(d);
+        }
+      }
+    }
 
-    rand = rnd.getSingleThreadedRandom();
-    FiniteProgress projp = LOG.isVerbose() ? new FiniteProgress("Random projections", nProject1d, LOG) : null;
+    // Generate the random projection vectors.
+    final Random rand = rnd.getSingleThreadedRandom();
+    final double[][] rps = new double[nProject1d][dim];
     for(int j = 0; j < nProject1d; j++) {
-      double[] currRp = new double[dim];
+      double[] currRp = rps[j];
       double sum = 0;
       for(int i = 0; i < dim; i++) {
         double fl = rand.nextDouble() - 0.5;
@@ -192,67 +238,97 @@ public class RandomProjectedNeighborssAndDensities<V extends NumberVector> {
       for(int i = 0; i < dim; i++) {
         currRp[i] /= sum;
       }
-      WritableDoubleDataStore currPro = DataStoreUtil.makeDoubleStorage(ptList, DataStoreFactory.HINT_HOT);
+    }
 
-      for(DBIDIter it = ptList.iter(); it.valid(); it.advance()) {
-        NumberVector vecPt = points.get(it);
-        // Dot product:
-        double sum2 = 0;
-        for(int i = 0; i < dim; i++) {
-          sum2 += currRp[i] * vecPt.doubleValue(i);
+    // Project the points, as a blocked matrix product.
+    projectedPoints = new double[nProject1d][size];
+    ParallelExecutor.runPartitions(size, MIN_PARTITION, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        for(int bstart = start; bstart < end; bstart += BLOCKSIZE) {
+          final int bend = Math.min(bstart + BLOCKSIZE, end);
+          for(int j = 0; j < nProject1d; j++) {
+            final double[] currRp = rps[j], currPro = projectedPoints[j];
+            for(int d = 0; d < dim; d++) {
+              final double r = currRp[d];
+              final double[] col = columns[d];
+              for(int p = bstart; p < bend; p++) {
+                currPro[p] += r * col[p];
+              }
+            }
+          }
         }
-        currPro.put(it, sum2);
       }
-      projectedPoints[j] = currPro;
-      LOG.incrementProcessed(projp);
-    }
-    LOG.ensureCompleted(projp);
+    });
 
-    // split entire point set, reuse projections by shuffling them
-    TIntArrayList proind = new TIntArrayList(nProject1d);
-    for(int j = 0; j < nProject1d; j++) {
-      proind.add(j);
+    // Split the entire point set, each time with a different projection order.
+    final long[] seeds = new long[nPointSetSplits];
+    for(int i = 0; i < nPointSetSplits; i++) {
+      seeds[i] = rand.nextLong();
     }
-    FiniteProgress splitp = LOG.isVerbose() ? new FiniteProgress("Splitting data", nPointSetSplits, LOG) : null;
-    for(int avgP = 0; avgP < nPointSetSplits; avgP++) {
-      // shuffle projections
-      for(int i = 0; i < nProject1d; i++) {
-        tmpPro[i] = projectedPoints[i];
-      }
-      proind.shuffle(rand);
-      TIntIterator it = proind.iterator();
-      int i = 0;
-      while(it.hasNext()) {
-        int cind = it.next();
-        projectedPoints[cind] = tmpPro[i];
-        i++;
+    // Filled by position, so the result does not depend on thread scheduling.
+    final List<ArrayList<int[]>> sets = new ArrayList<>(Collections.<ArrayList<int[]>> nCopies(nPointSetSplits, null));
+    final FiniteProgress splitp = LOG.isVerbose() ? new FiniteProgress("Splitting data", nPointSetSplits, LOG) : null;
+    ParallelExecutor.runPartitions(nPointSetSplits, 1, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        final int[] ind = new int[size];
+        final TIntArrayList proind = new TIntArrayList(nProject1d);
+        for(int avgP = start; avgP < end; avgP++) {
+          final Random rand = new Random(seeds[avgP]);
+          // shuffle projections
+          proind.resetQuick();
+          for(int j = 0; j < nProject1d; j++) {
+            proind.add(j);
+          }
+          proind.shuffle(rand);
+          for(int i = 0; i < size; i++) {
+            ind[i] = i;
+          }
+          // split point set
+          final ArrayList<int[]> set = new ArrayList<>();
+          splitupNoSort(ind, 0, size, 0, proind, rand, set);
+          sets.set(avgP, set);
+          LOG.incrementProcessed(splitp);
+        }
       }
-
-      // split point set
-      splitupNoSort(DBIDUtil.newArray(ptList), 0, size, 0);
-      LOG.incrementProcessed(splitp);
-    }
+    });
     LOG.ensureCompleted(splitp);
+    splitsets = new ArrayList<>();
+    for(ArrayList<int[]> s : sets) {
+      splitsets.addAll(s);
+    }
+    projectedPoints = null; // No longer needed.
   }
 
   /**
    * Recursively splits entire point set until the set is below a threshold
    * 
-   * @param indexes of points in point set that are in the current set
-   * @param depth of projection (how many times point set has been split
+   * @param ind positions of points in point set that are in the current set
+   * @param begin Interval begin
+   * @param end Interval end
+   * @param dim depth of projection (how many times point set has been split
    *        already)
+   * @param proind Projection order
+   * @param rand Random generator
+   * @param out Output list of sets
    */
-  public void splitupNoSort(ArrayModifiableDBIDs ind, int begin, int end, int dim) {
+  public void splitupNoSort(int[] ind, int begin, int end, int dim, TIntArrayList proind, Random rand, ArrayList<int[]> out) {
     final int nele = end - begin;
     dim = dim % projectedPoints.length;// choose a projection of points
-    DoubleDataStore tpro = projectedPoints[dim];
+    final double[] tpro = projectedPoints[proind.get(dim)];
 
     // save set such that used for density or neighborhood computation
     // sets should be roughly minSplitSize
     if(nele > minSplitSize * (1 - sizeTolerance) && nele < minSplitSize * (1 + sizeTolerance)) {
       // sort set, since need median element later
-      ind.sort(begin, end, new DataStoreUtil.AscendingByDoubleDataStore(tpro));
-      splitsets.add(DBIDUtil.newArray(ind.slice(begin, end)));
+      IntegerArrayQuickSort.sort(ind, begin, end, new IntegerComparator() {
+        @Override
+        public int compare(int x, int y) {
+          return Double.compare(tpro[x], tpro[y]);
+        }
+      });
+      out.add(Arrays.copyOfRange(ind, begin, end));
     }
 
     // compute splitting element
@@ -262,45 +338,45 @@ public class RandomProjectedNeighborssAndDensities<V extends NumberVector> {
       // picking a point randomly(picking index of point)
       // outcome is similar
 
-      // int minInd splitByDistance(ind, nele, tpro);
-      int minInd = splitRandomly(ind, begin, end, tpro);
+      // int minInd splitByDistance(ind, begin, end, tpro, rand);
+      int minInd = splitRandomly(ind, begin, end, tpro, rand);
 
       // split set recursively
       // position used for splitting the projected points into two
       // sets used for recursive splitting
       int splitpos = minInd + 1;
-      splitupNoSort(ind, begin, splitpos, dim + 1);
-      splitupNoSort(ind, splitpos, end, dim + 1);
+      splitupNoSort(ind, begin, splitpos, dim + 1, proind, rand, out);
+      splitupNoSort(ind, splitpos, end, dim + 1, proind, rand, out);
     }
   }
 
   /**
    * Split the data set randomly.
    * 
-   * @param ind Object index
+   * @param ind Object positions
    * @param begin Interval begin
    * @param end Interval end
    * @param tpro Projection
+   * @param rand Random generator
    * @return Splitting point
    */
-  public int splitRandomly(ArrayModifiableDBIDs ind, int begin, int end, DoubleDataStore tpro) {
+  public int splitRandomly(int[] ind, int begin, int end, double[] tpro, Random rand) {
     final int nele = end - begin;
-    DBIDArrayIter it = ind.iter();
     // pick random splitting element based on position
-    double rs = tpro.doubleValue(it.seek(begin + rand.nextInt(nele)));
+    double rs = tpro[ind[begin + rand.nextInt(nele)]];
     int minInd = begin, maxInd = end - 1;
     // permute elements such that all points smaller than the splitting
     // element are on the right and the others on the left in the array
     while(minInd < maxInd) {
-      double currEle = tpro.doubleValue(it.seek(minInd));
+      double currEle = tpro[ind[minInd]];
       if(currEle > rs) {
-        while(minInd < maxInd && tpro.doubleValue(it.seek(maxInd)) > rs) {
+        while(minInd < maxInd && tpro[ind[maxInd]] > rs) {
           maxInd--;
         }
         if(minInd == maxInd) {
           break;
         }
-        ind.swap(minInd, maxInd);
+        swap(ind, minInd, maxInd);
         maxInd--;
       }
       minInd++;
@@ -315,19 +391,19 @@ public class RandomProjectedNeighborssAndDensities<V extends NumberVector> {
   /**
    * Split the data set by distances.
    * 
-   * @param ind Object index
+   * @param ind Object positions
    * @param begin Interval begin
    * @param end Interval end
    * @param tpro Projection
+   * @param rand Random generator
    * @return Splitting point
    */
-  public int splitByDistance(ArrayModifiableDBIDs ind, int begin, int end, DoubleDataStore tpro) {
-    DBIDArrayIter it = ind.iter();
+  public int splitByDistance(int[] ind, int begin, int end, double[] tpro, Random rand) {
     // pick random splitting point based on distance
     double rmin = Double.MAX_VALUE * .5, rmax = -Double.MAX_VALUE * .5;
     int minInd = begin, maxInd = end - 1;
-    for(it.seek(begin); it.getOffset() < end; it.advance()) {
-      double currEle = tpro.doubleValue(it);
+    for(int i = begin; i < end; i++) {
+      double currEle = tpro[ind[i]];
       rmin = Math.min(currEle, rmin);
       rmax = Math.max(currEle, rmax);
     }
@@ -338,15 +414,15 @@ public class RandomProjectedNeighborssAndDensities<V extends NumberVector> {
       // permute elements such that all points smaller than the splitting
       // element are on the right and the others on the left in the array
       while(minInd < maxInd) {
-        double currEle = tpro.doubleValue(it.seek(minInd));
+        double currEle = tpro[ind[minInd]];
         if(currEle > rs) {
-          while(minInd < maxInd && tpro.doubleValue(it.seek(maxInd)) > rs) {
+          while(minInd < maxInd && tpro[ind[maxInd]] > rs) {
             maxInd--;
           }
           if(minInd == maxInd) {
             break;
           }
-          ind.swap(minInd, maxInd);
+          swap(ind, minInd, maxInd);
           maxInd--;
         }
         minInd++;
@@ -359,6 +435,51 @@ public class RandomProjectedNeighborssAndDensities<V extends NumberVector> {
     return minInd;
   }
 
+  /**
+   * Swap two entries of an array.
+   * 
+   * @param ind Array
+   * @param a First position
+   * @param b Second position
+   */
+  private static void swap(int[] ind, int a, int b) {
+    final int tmp = ind[a];
+    ind[a] = ind[b];
+    ind[b] = tmp;
+  }
+
+  /**
+   * Invert the set memberships, so that each point knows the sets it occurs
+   * in. This allows processing the points independently of each other.
+   */
+  private void computeMemberships() {
+    if(memberOffsets != null) {
+      return;
+    }
+    final int size = ids.size();
+    final int[] offsets = new int[size + 1];
+    for(int[] pinSet : splitsets) {
+      for(int p : pinSet) {
+        ++offsets[p + 1];
+      }
+    }
+    for(int p = 0; p < size; p++) {
+      offsets[p + 1] += offsets[p];
+    }
+    final int[] fill = Arrays.copyOf(offsets, size);
+    memberSets = new int[offsets[size]];
+    memberPos = new int[offsets[size]];
+    for(int s = 0; s < splitsets.size(); s++) {
+      final int[] pinSet = splitsets.get(s);
+      for(int j = 0; j < pinSet.length; j++) {
+        final int k = fill[pinSet[j]]++;
+        memberSets[k] = s;
+        memberPos[k] = j;
+      }
+    }
+    memberOffsets = offsets;
+  }
+
   /**
    * Compute list of neighbors for each point from sets resulting from
    * projection
@@ -366,31 +487,48 @@ public class RandomProjectedNeighborssAndDensities<V extends NumberVector> {
    * @return list of neighbors for each point
    */
   public DataStore<? extends DBIDs> getNeighs() {
-    final DBIDs ids = points.getDBIDs();
-    // init lists
-    WritableDataStore<ModifiableDBIDs> neighs = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT, ModifiableDBIDs.class);
-    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
-      neighs.put(it, DBIDUtil.newHashSet());
-    }
-
-    FiniteProgress splitp = LOG.isVerbose() ? new FiniteProgress("Processing splits for neighborhoods", splitsets.size(), LOG) : null;
-    // go through all sets
-    Iterator<ArrayDBIDs> it1 = splitsets.iterator();
-    while(it1.hasNext()) {
-      ArrayDBIDs pinSet = it1.next();
-
-      final int indoff = pinSet.size() >> 1; // middle point of projection
-      DBIDRef oldind = pinSet.iter().seek(indoff);
-      // add all points as neighbors to middle point
-      neighs.get(oldind).addDBIDs(pinSet);
-
-      // and the the middle point to all other points in set
-      for(DBIDIter it = pinSet.iter(); it.valid(); it.advance()) {
-        neighs.get(it).add(oldind);
+    computeMemberships();
+    final int size = ids.size();
+    final ArrayDBIDs[] neighbors = new ArrayDBIDs[size];
+    final FiniteProgress neighp = LOG.isVerbose() ? new FiniteProgress("Merging neighborhoods", size, LOG) : null;
+    // Each thread merges the neighbors of a range of points.
+    ParallelExecutor.runPartitions(size, MIN_PARTITION, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        final TIntHashSet neighs = new TIntHashSet();
+        DBIDArrayIter it = ids.iter();
+        for(int p = start; p < end; p++) {
+          neighs.clear();
+          // go through all sets containing this point
+          for(int k = memberOffsets[p]; k < memberOffsets[p + 1]; k++) {
+            final int[] pinSet = splitsets.get(memberSets[k]);
+            final int oldind = pinSet[pinSet.length >> 1]; // middle point
+            if(oldind == p) {
+              // all points are neighbors of the middle point
+              neighs.addAll(pinSet);
+            }
+            else {
+              // and the middle point is a neighbor of all other points
+              neighs.add(oldind);
+            }
+          }
+          final int[] n = neighs.toArray();
+          Arrays.sort(n);
+          ArrayModifiableDBIDs dbids = DBIDUtil.newArray(n.length);
+          for(int q : n) {
+            dbids.add(it.seek(q));
+          }
+          neighbors[p] = dbids;
+          LOG.incrementProcessed(neighp);
+        }
       }
-      LOG.incrementProcessed(splitp);
+    });
+    LOG.ensureCompleted(neighp);
+    WritableDataStore<ArrayDBIDs> neighs = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT, ArrayDBIDs.class);
+    DBIDArrayIter it = ids.iter();
+    for(int p = 0; p < size; p++, it.advance()) {
+      neighs.put(it, neighbors[p]);
     }
-    LOG.ensureCompleted(splitp);
     return neighs;
   }
 
@@ -401,38 +539,80 @@ public class RandomProjectedNeighborssAndDensities<V extends NumberVector> {
    * @return for each point average distance to point in a set
    */
   public DoubleDataStore computeAverageDistInSet() {
-    WritableDoubleDataStore davg = DataStoreUtil.makeDoubleStorage(points.getDBIDs(), DataStoreFactory.HINT_HOT);
-    WritableIntegerDataStore nDists = DataStoreUtil.makeIntegerStorage(points.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
-    FiniteProgress splitp = LOG.isVerbose() ? new FiniteProgress("Processing splits for density estimation", splitsets.size(), LOG) : null;
-    for(Iterator<ArrayDBIDs> it1 = splitsets.iterator(); it1.hasNext();) {
-      ArrayDBIDs pinSet = it1.next();
-      final int len = pinSet.size();
-      final int indoff = len >> 1;
-      DBIDRef oldind = pinSet.iter().seek(indoff);
-      V midpoint = points.get(oldind);
-      for(DBIDArrayIter it = pinSet.iter(); it.getOffset() < len; it.advance()) {
-        if(DBIDUtil.equal(it, oldind)) {
-          continue;
+    computeMemberships();
+    final int size = ids.size(), nsets = splitsets.size();
+    // Distances to the middle point, computed once per set member.
+    final double[][] setdists = new double[nsets][];
+    final double[] setsums = new double[nsets];
+    ParallelExecutor.runPartitions(nsets, 1, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        for(int s = start; s < end; s++) {
+          final int[] pinSet = splitsets.get(s);
+          final int oldind = pinSet[pinSet.length >> 1];
+          final double[] dists = new double[pinSet.length];
+          double sum = 0.;
+          for(int j = 0; j < pinSet.length; j++) {
+            sum += dists[j] = (pinSet[j] == oldind) ? 0. : distance(pinSet[j], oldind);
+          }
+          setdists[s] = dists;
+          setsums[s] = sum;
         }
-        double dist = EuclideanDistanceFunction.STATIC.distance(points.get(it), midpoint);
-        davg.increment(oldind, dist);
-        nDists.increment(oldind, 1);
-        davg.increment(it, dist);
-        nDists.increment(it, 1);
       }
-      LOG.incrementProcessed(splitp);
-    }
+    });
+    final double[] davg = new double[size];
+    final FiniteProgress splitp = LOG.isVerbose() ? new FiniteProgress("Density estimation", size, LOG) : null;
+    // Each thread aggregates the distances of a range of points, in set order.
+    ParallelExecutor.runPartitions(size, MIN_PARTITION, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        for(int p = start; p < end; p++) {
+          double sum = 0.;
+          int count = 0;
+          for(int k = memberOffsets[p]; k < memberOffsets[p + 1]; k++) {
+            final int s = memberSets[k];
+            final int[] pinSet = splitsets.get(s);
+            if(pinSet[pinSet.length >> 1] == p) {
+              // middle point: distances to all other points
+              sum += setsums[s];
+              count += pinSet.length - 1;
+            }
+            else {
+              sum += setdists[s][memberPos[k]];
+              count++;
+            }
+          }
+          // it might be that a point does not occur for a certain size of a
+          // projection (likely if do few projections, in this case there is no
+          // avg distance)
+          davg[p] = (count == 0) ? FastOPTICS.UNDEFINED_DISTANCE : (sum / count);
+          LOG.incrementProcessed(splitp);
+        }
+      }
+    });
     LOG.ensureCompleted(splitp);
-    for(DBIDIter it = points.getDBIDs().iter(); it.valid(); it.advance()) {
-      // it might be that a point does not occur for a certain size of a
-      // projection (likely if do few projections, in this case there is no avg
-      // distance)
-      int count = nDists.intValue(it);
-      double val = (count == 0) ? FastOPTICS.UNDEFINED_DISTANCE : (davg.doubleValue(it) / count);
-      davg.put(it, val);
+    WritableDoubleDataStore avg = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT);
+    DBIDArrayIter it = ids.iter();
+    for(int p = 0; p < size; p++, it.advance()) {
+      avg.putDouble(it, davg[p]);
+    }
+    return avg;
+  }
+
+  /**
+   * Euclidean distance of two points, from the columnar copy.
+   * 
+   * @param p First position
+   * @param q Second position
+   * @return Distance
+   */
+  private double distance(int p, int q) {
+    double sum = 0.;
+    for(double[] col : columns) {
+      final double delta = col[p] - col[q];
+      sum += delta * delta;
     }
-    nDists.destroy(); // No longer needed after normalization
-    return davg;
+    return Math.sqrt(sum);
   }
 
   /**
@@ -29,6 +29,7 @@ import javax.swing.event.EventListenerList;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -48,6 +49,9 @@ import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * A preprocessor for annotation of the k nearest neighbors (and their
@@ -72,11 +76,15 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
   private static final Logging LOG = Logging.getLogger(MaterializeKNNPreprocessor.class);
 
   /**
-   * Flag to use bulk operations.
-   * 
-   * TODO: right now, bulk is not that good - so don't use
+   * Number of objects per bulk query, to report progress.
    */
-  private static final boolean usebulk = false;
+  private static final int BULK_BLOCKSIZE = 1 << 14;
+
+  /**
+   * Flag to use bulk operations, which allows linear scans and R*-trees to
+   * answer the queries in parallel.
+   */
+  protected final boolean bulk;
 
   /**
    * KNNQuery instance to use.
@@ -96,7 +104,20 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    * @param k query k
    */
   public MaterializeKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k) {
+    this(relation, distanceFunction, k, false);
+  }
+
+  /**
+   * Constructor with preprocessing step.
+   * 
+   * @param relation Relation to preprocess
+   * @param distanceFunction the distance function to use
+   * @param k query k
+   * @param bulk Use bulk queries
+   */
+  public MaterializeKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, boolean bulk) {
     super(relation, distanceFunction, k);
+    this.bulk = bulk;
     this.knnQuery = relation.getDatabase().getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE);
   }
 
@@ -114,24 +135,28 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     }
     Duration duration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
     FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
-    // Try bulk
-    List<? extends KNNList> kNNList = null;
-    if(usebulk) {
-      kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
-      if(kNNList != null) {
-        int i = 0;
-        for(DBIDIter id = ids.iter(); id.valid(); id.advance(), i++) {
-          storage.put(id, kNNList.get(i));
+    final int size = ids.size();
+    int done = 0;
+    if(bulk) {
+      // Query in blocks, to report progress.
+      while(done < size) {
+        final int end = Math.min(done + BULK_BLOCKSIZE, size);
+        List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(ids.slice(done, end), k);
+        if(kNNList == null) {
+          break; // Not supported, use single queries.
+        }
+        DBIDArrayIter iter = ids.iter().seek(done);
+        for(int i = 0; i < kNNList.size(); i++, iter.advance()) {
+          storage.put(iter, kNNList.get(i));
           getLogger().incrementProcessed(progress);
         }
+        done = end;
       }
     }
-    else {
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        KNNList knn = knnQuery.getKNNForDBID(iter, k);
-        storage.put(iter, knn);
-        getLogger().incrementProcessed(progress);
-      }
+    for(DBIDArrayIter iter = ids.iter().seek(done); iter.valid(); iter.advance()) {
+      KNNList knn = knnQuery.getKNNForDBID(iter, k);
+      storage.put(iter, knn);
+      getLogger().incrementProcessed(progress);
     }
     getLogger().ensureCompleted(progress);
     if(duration != null) {
@@ -379,6 +404,19 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    * @param <O> The object type
    */
   public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Flag to use bulk queries, which can be answered in parallel.
+     * <p>
+     * Key: {@code -materialize.bulk}
+     * </p>
+     */
+    public static final OptionID BULK_ID = new OptionID("materialize.bulk", "Materialize the neighbors with bulk queries, which can be answered in parallel by some indexes.");
+
+    /**
+     * Use bulk queries.
+     */
+    protected boolean bulk;
+
     /**
      * Index factory.
      * 
@@ -386,12 +424,24 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
      * @param distanceFunction distance function
      */
     public Factory(int k, DistanceFunction<? super O> distanceFunction) {
+      this(k, distanceFunction, false);
+    }
+
+    /**
+     * Index factory.
+     * 
+     * @param k k parameter
+     * @param distanceFunction distance function
+     * @param bulk Use bulk queries
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, boolean bulk) {
       super(k, distanceFunction);
+      this.bulk = bulk;
     }
 
     @Override
     public MaterializeKNNPreprocessor<O> instantiate(Relation<O> relation) {
-      MaterializeKNNPreprocessor<O> instance = new MaterializeKNNPreprocessor<>(relation, distanceFunction, k);
+      MaterializeKNNPreprocessor<O> instance = new MaterializeKNNPreprocessor<>(relation, distanceFunction, k, bulk);
       return instance;
     }
 
@@ -403,9 +453,23 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
      * @apiviz.exclude
      */
     public static class Parameterizer<O> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      /**
+       * Use bulk queries.
+       */
+      protected boolean bulk;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        Flag bulkF = new Flag(BULK_ID);
+        if(config.grab(bulkF)) {
+          bulk = bulkF.isTrue();
+        }
+      }
+
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(k, distanceFunction);
+        return new Factory<>(k, distanceFunction, bulk);
       }
     }
   }
@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.index.projected;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.projection.Projection;
@@ -288,7 +289,22 @@ public class ProjectedIndex<O, I> implements KNNIndex<O>, RKNNIndex<O>, RangeInd
 
     @Override
     public List<? extends KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
-      return inner.getKNNForBulkDBIDs(ids, k);
+      if(norefine) {
+        return inner.getKNNForBulkDBIDs(ids, k);
+      }
+      List<? extends KNNList> ilists = inner.getKNNForBulkDBIDs(ids, (int) Math.ceil(k * kmulti));
+      List<KNNList> result = new ArrayList<>(ilists.size());
+      DBIDIter id = ids.iter();
+      for(KNNList ilist : ilists) {
+        KNNHeap heap = DBIDUtil.newHeap(k);
+        for(DoubleDBIDListIter iter = ilist.iter(); iter.valid(); iter.advance()) {
+          heap.insert(distq.distance(id, iter), iter);
+          countRefinement();
+        }
+        result.add(heap.toKNNList());
+        id.advance();
+      }
+      return result;
     }
 
     @Override
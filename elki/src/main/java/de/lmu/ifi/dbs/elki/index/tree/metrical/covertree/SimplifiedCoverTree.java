@@ -0,0 +1,653 @@
+package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleObjPair;
+
+/**
+ * Simplified cover tree data structure (in-memory), for arbitrary metric
+ * distance functions.
+ * 
+ * The tree is bulk-loaded top-down: at each node, the objects not covered at
+ * the current scale are greedily partitioned into covering subtrees. Every
+ * node stores its routing object, the maximum distance of all its descendants
+ * and the distance to its parent, which allows pruning with the triangle
+ * inequality during kNN and range queries. Small subtrees are truncated into
+ * lists of leaf objects.
+ * 
+ * Reference:
+ * <p>
+ * M. R. Izbicki, C. R. Shelton<br />
+ * Faster Cover Trees<br />
+ * Proc. 32nd Int. Conf. on Machine Learning (ICML 2015)
+ * </p>
+ * 
+ * @author agent
+ * 
+ * @apiviz.has CoverTreeKNNQuery
+ * @apiviz.has CoverTreeRangeQuery
+ * 
+ * @param <O> Object type
+ */
+@Reference(authors = "M. R. Izbicki, C. R. Shelton", title = "Faster Cover Trees", booktitle = "Proc. 32nd Int. Conf. on Machine Learning (ICML 2015)")
+public class SimplifiedCoverTree<O> extends AbstractIndex<O> implements RangeIndex<O>, KNNIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(SimplifiedCoverTree.class);
+
+  /**
+   * Distance query.
+   */
+  private DistanceQuery<O> distanceQuery;
+
+  /**
+   * Expansion rate of the tree.
+   */
+  private double expansion;
+
+  /**
+   * Logarithm of the expansion rate.
+   */
+  private double invLogExpansion;
+
+  /**
+   * Maximum size of a subtree to truncate into a leaf list.
+   */
+  private int truncate;
+
+  /**
+   * Root node.
+   */
+  private Node root = null;
+
+  /**
+   * Counter for distance computations.
+   */
+  private final Counter distcalc;
+
+  /**
+   * Constructor.
+   * 
+   * @param relation Data relation
+   * @param distance Distance query
+   * @param expansion Expansion rate
+   * @param truncate Truncate subtrees with at most this number of objects
+   */
+  public SimplifiedCoverTree(Relation<O> relation, DistanceQuery<O> distance, double expansion, int truncate) {
+    super(relation);
+    this.distanceQuery = distance;
+    this.expansion = expansion;
+    this.invLogExpansion = 1. / Math.log(expansion);
+    this.truncate = truncate;
+    this.distcalc = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".distancecalcs") : null;
+    if(!distance.getDistanceFunction().isMetric()) {
+      LOG.warning("Cover trees assume metric distance functions.\n" //
+          + distance.getDistanceFunction().getClass() + " does not report itself as metric.\n" //
+          + "The cover tree will run, but may yield approximate results.");
+    }
+  }
+
+  /**
+   * Node object.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  private static final class Node {
+    /**
+     * Routing object.
+     */
+    DBID id;
+
+    /**
+     * Maximum distance of any descendant to the routing object.
+     */
+    double maxDist;
+
+    /**
+     * Distance to the routing object of the parent.
+     */
+    double parentDist;
+
+    /**
+     * Child subtrees.
+     */
+    ArrayList<Node> children = new ArrayList<>();
+
+    /**
+     * Leaf objects, with their distance to the routing object.
+     */
+    ModifiableDoubleDBIDList singletons = DBIDUtil.newDistanceDBIDList();
+
+    /**
+     * Constructor.
+     * 
+     * @param id Routing object
+     * @param maxDist Maximum distance of any descendant
+     * @param parentDist Distance to the parent routing object
+     */
+    Node(DBIDRef id, double maxDist, double parentDist) {
+      this.id = DBIDUtil.deref(id);
+      this.maxDist = maxDist;
+      this.parentDist = parentDist;
+    }
+  }
+
+  @Override
+  public void initialize() {
+    DBIDIter it = relation.iterDBIDs();
+    if(!it.valid()) {
+      return;
+    }
+    DBID first = DBIDUtil.deref(it);
+    ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(relation.size() - 1);
+    for(it.advance(); it.valid(); it.advance()) {
+      elems.add(distance(first, it), it);
+    }
+    root = bulkConstruct(first, 0., Integer.MAX_VALUE, elems);
+  }
+
+  /**
+   * Bulk-load a subtree.
+   * 
+   * @param cur Routing object
+   * @param parentDist Distance to the parent routing object
+   * @param maxScale Maximum scale of the subtree
+   * @param elems Objects to add, with their distance to the routing object
+   * @return Subtree
+   */
+  protected Node bulkConstruct(DBIDRef cur, double parentDist, int maxScale, ModifiableDoubleDBIDList elems) {
+    double max = maxDistance(elems);
+    final Node node = new Node(cur, max, parentDist);
+    int scale = maxScale;
+    while(elems.size() > truncate && max > 0) {
+      scale = Math.min(distToScale(max) - 1, scale - 1);
+      final double fmax = scaleToDist(scale);
+      // Split into objects covered by the routing object, and the others.
+      ModifiableDoubleDBIDList covered = DBIDUtil.newDistanceDBIDList();
+      ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
+      for(DoubleDBIDListIter it = elems.iter(); it.valid(); it.advance()) {
+        (it.doubleValue() <= fmax ? covered : candidates).add(it.doubleValue(), it);
+      }
+      // Greedily cover the remaining objects at this scale.
+      while(candidates.size() > 0) {
+        DoubleDBIDListIter it = candidates.iter();
+        final DBID t = DBIDUtil.deref(it);
+        final double tdist = it.doubleValue();
+        ModifiableDoubleDBIDList tcover = DBIDUtil.newDistanceDBIDList();
+        ModifiableDoubleDBIDList rest = DBIDUtil.newDistanceDBIDList();
+        for(it.advance(); it.valid(); it.advance()) {
+          final double d = distance(t, it);
+          if(d <= fmax) {
+            tcover.add(d, it);
+          }
+          else {
+            rest.add(it.doubleValue(), it);
+          }
+        }
+        if(tcover.size() == 0) {
+          node.singletons.add(tdist, t);
+        }
+        else {
+          node.children.add(bulkConstruct(t, tdist, scale, tcover));
+        }
+        candidates = rest;
+      }
+      elems = covered;
+      max = maxDistance(elems);
+    }
+    for(DoubleDBIDListIter it = elems.iter(); it.valid(); it.advance()) {
+      node.singletons.add(it.doubleValue(), it);
+    }
+    return node;
+  }
+
+  /**
+   * Find the maximum distance in a list.
+   * 
+   * @param elems Objects with distances
+   * @return Maximum distance
+   */
+  private static double maxDistance(DoubleDBIDList elems) {
+    double max = 0;
+    for(DoubleDBIDListIter it = elems.iter(); it.valid(); it.advance()) {
+      max = max > it.doubleValue() ? max : it.doubleValue();
+    }
+    return max;
+  }
+
+  /**
+   * Convert a distance to an upper bound on the scale.
+   * 
+   * @param d Distance
+   * @return Scale
+   */
+  protected final int distToScale(double d) {
+    return (int) Math.ceil(Math.log(d) * invLogExpansion);
+  }
+
+  /**
+   * Convert a scale into a distance.
+   * 
+   * @param s Scale
+   * @return Distance
+   */
+  protected final double scaleToDist(int s) {
+    return Math.pow(expansion, s);
+  }
+
+  /**
+   * Compute a distance (and count).
+   * 
+   * @param a First object
+   * @param b Second object
+   * @return Distance
+   */
+  protected double distance(DBIDRef a, DBIDRef b) {
+    if(distcalc != null) {
+      distcalc.increment();
+    }
+    return distanceQuery.distance(a, b);
+  }
+
+  /**
+   * Compute a distance (and count).
+   * 
+   * @param a First object
+   * @param b Second object
+   * @return Distance
+   */
+  protected double distance(O a, DBIDRef b) {
+    if(distcalc != null) {
+      distcalc.increment();
+    }
+    return distanceQuery.distance(a, b);
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> distanceFunction = (DistanceFunction<? super O>) distanceQuery.getDistanceFunction();
+    if(!this.getDistanceFunction().equals(distanceFunction)) {
+      if(LOG.isDebugging()) {
+        LOG.debug("Distance function not supported by index - or 'equals' not implemented right!");
+      }
+      return null;
+    }
+    return new CoverTreeKNNQuery(distanceQuery);
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> distanceFunction = (DistanceFunction<? super O>) distanceQuery.getDistanceFunction();
+    if(!this.getDistanceFunction().equals(distanceFunction)) {
+      if(LOG.isDebugging()) {
+        LOG.debug("Distance function not supported by index - or 'equals' not implemented right!");
+      }
+      return null;
+    }
+    return new CoverTreeRangeQuery(distanceQuery);
+  }
+
+  /**
+   * Distance function.
+   * 
+   * @return Distance function
+   */
+  private DistanceFunction<? super O> getDistanceFunction() {
+    return distanceQuery.getDistanceFunction();
+  }
+
+  @Override
+  public String getLongName() {
+    return "Simplified cover tree";
+  }
+
+  @Override
+  public String getShortName() {
+    return "cover-tree";
+  }
+
+  @Override
+  public void logStatistics() {
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+    if(root != null) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", countNodes(root)));
+    }
+  }
+
+  /**
+   * Count the number of nodes in a subtree.
+   * 
+   * @param node Subtree root
+   * @return Number of nodes
+   */
+  private static long countNodes(Node node) {
+    long c = 1;
+    for(Node child : node.children) {
+      c += countNodes(child);
+    }
+    return c;
+  }
+
+  /**
+   * kNN query for the cover tree.
+   * 
+   * @author agent
+   */
+  public class CoverTreeKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Constructor.
+     * 
+     * @param distanceQuery Distance query
+     */
+    public CoverTreeKNNQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      if(root == null) {
+        return knns.toKNNList();
+      }
+      // Candidate nodes, by lower bound, with the distance to the routing object.
+      DoubleObjectMinHeap<DoubleObjPair<Node>> pq = new DoubleObjectMinHeap<>();
+      double d = distance(obj, root.id);
+      knns.insert(d, root.id);
+      pq.add(Math.max(0., d - root.maxDist), new DoubleObjPair<>(d, root));
+      double bound = knns.size() >= k ? knns.getKNNDistance() : Double.POSITIVE_INFINITY;
+      while(!pq.isEmpty() && pq.peekKey() <= bound) {
+        final double rd = pq.peekValue().first;
+        final Node cur = pq.peekValue().second;
+        pq.poll();
+        // Leaf objects: |d(q,r) - d(r,s)| is a lower bound for d(q,s).
+        for(DoubleDBIDListIter it = cur.singletons.iter(); it.valid(); it.advance()) {
+          if(Math.abs(rd - it.doubleValue()) <= bound) {
+            final double dist = distance(obj, it);
+            if(dist <= bound) {
+              knns.insert(dist, it);
+              bound = knns.size() >= k ? knns.getKNNDistance() : bound;
+            }
+          }
+        }
+        for(Node child : cur.children) {
+          if(Math.abs(rd - child.parentDist) - child.maxDist > bound) {
+            continue;
+          }
+          final double cd = distance(obj, child.id);
+          if(cd <= bound) {
+            knns.insert(cd, child.id);
+            bound = knns.size() >= k ? knns.getKNNDistance() : bound;
+          }
+          final double lb = Math.max(0., cd - child.maxDist);
+          if(lb <= bound) {
+            pq.add(lb, new DoubleObjPair<>(cd, child));
+          }
+        }
+      }
+      return knns.toKNNList();
+    }
+  }
+
+  /**
+   * Range query for the cover tree.
+   * 
+   * @author agent
+   */
+  public class CoverTreeRangeQuery extends AbstractDistanceRangeQuery<O> {
+    /**
+     * Constructor.
+     * 
+     * @param distanceQuery Distance query
+     */
+    public CoverTreeRangeQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public DoubleDBIDList getRangeForObject(O obj, double range) {
+      ModifiableDoubleDBIDList result = DBIDUtil.newDistanceDBIDList();
+      if(root != null) {
+        final double d = distance(obj, root.id);
+        if(d <= range) {
+          result.add(d, root.id);
+        }
+        if(d - root.maxDist <= range) {
+          rangeSearch(obj, root, d, range, result);
+        }
+      }
+      result.sort();
+      return result;
+    }
+
+    /**
+     * Recursive range search.
+     * 
+     * @param obj Query object
+     * @param cur Current node
+     * @param rd Distance of the query to the routing object
+     * @param range Query radius
+     * @param result Result list
+     */
+    private void rangeSearch(O obj, Node cur, double rd, double range, ModifiableDoubleDBIDList result) {
+      for(DoubleDBIDListIter it = cur.singletons.iter(); it.valid(); it.advance()) {
+        if(Math.abs(rd - it.doubleValue()) <= range) {
+          final double dist = distance(obj, it);
+          if(dist <= range) {
+            result.add(dist, it);
+          }
+        }
+      }
+      for(Node child : cur.children) {
+        if(Math.abs(rd - child.parentDist) - child.maxDist > range) {
+          continue;
+        }
+        final double cd = distance(obj, child.id);
+        if(cd <= range) {
+          result.add(cd, child.id);
+        }
+        if(cd - child.maxDist <= range) {
+          rangeSearch(obj, child, cd, range, result);
+        }
+      }
+    }
+  }
+
+  /**
+   * Index factory.
+   * 
+   * @author agent
+   * 
+   * @apiviz.stereotype factory
+   * @apiviz.has SimplifiedCoverTree
+   * 
+   * @param <O> Object type
+   */
+  @Alias({ "covertree" })
+  public static class Factory<O> implements IndexFactory<O, SimplifiedCoverTree<O>> {
+    /**
+     * Distance function to use.
+     */
+    DistanceFunction<? super O> distance;
+
+    /**
+     * Expansion rate of the tree.
+     */
+    double expansion;
+
+    /**
+     * Maximum size of a subtree to truncate into a leaf list.
+     */
+    int truncate;
+
+    /**
+     * Constructor.
+     * 
+     * @param distance Distance function
+     * @param expansion Expansion rate
+     * @param truncate Truncate subtrees with at most this number of objects
+     */
+    public Factory(DistanceFunction<? super O> distance, double expansion, int truncate) {
+      super();
+      this.distance = distance;
+      this.expansion = expansion;
+      this.truncate = truncate;
+    }
+
+    @Override
+    public SimplifiedCoverTree<O> instantiate(Relation<O> relation) {
+      return new SimplifiedCoverTree<>(relation, distance.instantiate(relation), expansion, truncate);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distance.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     * 
+     * @author agent
+     * 
+     * @apiviz.exclude
+     * 
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Parameter for the distance function.
+       * <p>
+       * Key: {@code -covertree.distance}
+       * </p>
+       */
+      public static final OptionID DISTANCE_ID = new OptionID("covertree.distance", "Distance function to build the index for.");
+
+      /**
+       * Expansion rate of the tree.
+       * <p>
+       * Key: {@code -covertree.expansionrate}
+       * </p>
+       */
+      public static final OptionID EXPANSION_ID = new OptionID("covertree.expansionrate", "Expansion rate of the tree (Default: 1.3).");
+
+      /**
+       * Truncate branches when they have at most this number of instances.
+       * <p>
+       * Key: {@code -covertree.truncate}
+       * </p>
+       */
+      public static final OptionID TRUNCATE_ID = new OptionID("covertree.truncate", "Truncate tree when branches have at most this number of instances.");
+
+      /**
+       * Distance function to use.
+       */
+      DistanceFunction<? super O> distance;
+
+      /**
+       * Expansion rate of the tree.
+       */
+      double expansion;
+
+      /**
+       * Maximum size of a subtree to truncate into a leaf list.
+       */
+      int truncate;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<DistanceFunction<? super O>> distanceP = new ObjectParameter<>(DISTANCE_ID, DistanceFunction.class, EuclideanDistanceFunction.class);
+        if(config.grab(distanceP)) {
+          distance = distanceP.instantiateClass(config);
+        }
+
+        DoubleParameter expansionP = new DoubleParameter(EXPANSION_ID, 1.3)//
+        .addConstraint(CommonConstraints.GREATER_THAN_ONE_DOUBLE);
+        if(config.grab(expansionP)) {
+          expansion = expansionP.doubleValue();
+        }
+
+        IntParameter truncateP = new IntParameter(TRUNCATE_ID, 10)//
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(truncateP)) {
+          truncate = truncateP.intValue();
+        }
+      }
+
+      @Override
+      protected SimplifiedCoverTree.Factory<O> makeInstance() {
+        return new SimplifiedCoverTree.Factory<>(distance, expansion, truncate);
+      }
+    }
+  }
+}
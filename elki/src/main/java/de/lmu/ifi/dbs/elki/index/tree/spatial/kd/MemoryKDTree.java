@@ -0,0 +1,745 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.WeightedLPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Static in-memory k-d-tree with leaf buckets, for low-dimensional data.
+ * 
+ * In contrast to {@link MinimalisticMemoryKDTree}, the coordinates are copied
+ * into a single array in tree order, so that each leaf bucket is stored
+ * contiguously and can be scanned without accessing the relation. The tree is
+ * built with the sliding midpoint rule, and queries use incremental distance
+ * computation to the cells, which allows exact kNN and range queries for all
+ * unweighted Lp norms.
+ * 
+ * @author agent
+ * 
+ * @apiviz.has KDTreeKNNQuery
+ * @apiviz.has KDTreeRangeQuery
+ * 
+ * @param <O> Vector type
+ */
+@Reference(authors = "S. Maneewongvatana, D. M. Mount", title = "It's okay to be skinny, if your friends are fat", booktitle = "Center for Geometric Computing 4th Annual Workshop on Computational Geometry, 1999")
+public class MemoryKDTree<O extends NumberVector> extends AbstractIndex<O> implements KNNIndex<O>, RangeIndex<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(MemoryKDTree.class);
+
+  /**
+   * Maximum number of objects in a leaf.
+   */
+  private int leafsize;
+
+  /**
+   * The number of dimensions.
+   */
+  private int dims = -1;
+
+  /**
+   * Object ids, in tree order.
+   */
+  private ArrayModifiableDBIDs ids;
+
+  /**
+   * Coordinates, in tree order (row major).
+   */
+  private double[] coords;
+
+  /**
+   * Splitting dimension of each node, -1 for leaves.
+   */
+  private int[] splitdim;
+
+  /**
+   * Splitting value of each node.
+   */
+  private double[] splitval;
+
+  /**
+   * Children of each node.
+   */
+  private int[] leftchild, rightchild;
+
+  /**
+   * Range of objects in each node.
+   */
+  private int[] begin, end;
+
+  /**
+   * Counter for distance computations.
+   */
+  private final Counter distcalc;
+
+  /**
+   * Constructor.
+   * 
+   * @param relation Relation to index
+   * @param leafsize Maximum number of objects in a leaf
+   */
+  public MemoryKDTree(Relation<O> relation, int leafsize) {
+    super(relation);
+    this.leafsize = leafsize;
+    this.distcalc = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".distancecalcs") : null;
+  }
+
+  @Override
+  public void initialize() {
+    dims = RelationUtil.dimensionality(relation);
+    ids = DBIDUtil.newArray(relation.getDBIDs());
+    final int size = ids.size();
+    coords = new double[size * dims];
+    int off = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      O vec = relation.get(it);
+      for(int d = 0; d < dims; d++) {
+        coords[off++] = vec.doubleValue(d);
+      }
+    }
+    Builder b = new Builder();
+    b.build(0, size);
+    splitdim = b.splitdim.toArray();
+    splitval = b.splitval.toArray();
+    leftchild = b.left.toArray();
+    rightchild = b.right.toArray();
+    begin = b.begin.toArray();
+    end = b.end.toArray();
+  }
+
+  /**
+   * Helper class to build the tree.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  private class Builder {
+    /**
+     * Node data, see the fields of the tree.
+     */
+    TIntArrayList splitdim = new TIntArrayList(), left = new TIntArrayList(), right = new TIntArrayList(), begin = new TIntArrayList(), end = new TIntArrayList();
+
+    /**
+     * Splitting values.
+     */
+    TDoubleArrayList splitval = new TDoubleArrayList();
+
+    /**
+     * Bounding box of the current node.
+     */
+    double[] min = new double[dims], max = new double[dims];
+
+    /**
+     * Build a subtree.
+     * 
+     * @param l Begin of range
+     * @param r End of range (exclusive)
+     * @return Node number
+     */
+    int build(int l, int r) {
+      final int node = splitdim.size();
+      splitdim.add(-1);
+      splitval.add(Double.NaN);
+      left.add(-1);
+      right.add(-1);
+      begin.add(l);
+      end.add(r);
+      if(r - l <= leafsize) {
+        return node;
+      }
+      // Split the dimension of largest extent at the midpoint.
+      computeBounds(l, r);
+      int sdim = 0;
+      double extent = max[0] - min[0];
+      for(int d = 1; d < dims; d++) {
+        if(max[d] - min[d] > extent) {
+          sdim = d;
+          extent = max[d] - min[d];
+        }
+      }
+      if(!(extent > 0)) {
+        return node; // All duplicates, cannot split.
+      }
+      double split = (min[sdim] + max[sdim]) * .5;
+      int m = partition(l, r, sdim, split);
+      // Sliding midpoint: move the split to the nearest point.
+      if(m == l) {
+        split = min[sdim];
+        swap(l, argExtreme(l, r, sdim, false));
+        m = l + 1;
+      }
+      else if(m == r) {
+        split = max[sdim];
+        swap(r - 1, argExtreme(l, r, sdim, true));
+        m = r - 1;
+      }
+      splitdim.set(node, sdim);
+      splitval.set(node, split);
+      int lc = build(l, m);
+      left.set(node, lc);
+      int rc = build(m, r);
+      right.set(node, rc);
+      return node;
+    }
+
+    /**
+     * Compute the bounding box of a range of objects.
+     * 
+     * @param l Begin of range
+     * @param r End of range (exclusive)
+     */
+    private void computeBounds(int l, int r) {
+      System.arraycopy(coords, l * dims, min, 0, dims);
+      System.arraycopy(coords, l * dims, max, 0, dims);
+      for(int i = l + 1, off = (l + 1) * dims; i < r; i++) {
+        for(int d = 0; d < dims; d++, off++) {
+          final double v = coords[off];
+          min[d] = v < min[d] ? v : min[d];
+          max[d] = v > max[d] ? v : max[d];
+        }
+      }
+    }
+
+    /**
+     * Partition objects by a splitting value.
+     * 
+     * @param l Begin of range
+     * @param r End of range (exclusive)
+     * @param sdim Splitting dimension
+     * @param split Splitting value
+     * @return First object with a value of at least split
+     */
+    private int partition(int l, int r, int sdim, double split) {
+      int i = l, j = r - 1;
+      while(i <= j) {
+        if(coords[i * dims + sdim] < split) {
+          ++i;
+        }
+        else if(coords[j * dims + sdim] >= split) {
+          --j;
+        }
+        else {
+          swap(i++, j--);
+        }
+      }
+      return i;
+    }
+
+    /**
+     * Find the object with the minimum or maximum value.
+     * 
+     * @param l Begin of range
+     * @param r End of range (exclusive)
+     * @param sdim Dimension
+     * @param findmax Find the maximum instead of the minimum
+     * @return Position
+     */
+    private int argExtreme(int l, int r, int sdim, boolean findmax) {
+      int best = l;
+      for(int i = l + 1; i < r; i++) {
+        final double v = coords[i * dims + sdim], b = coords[best * dims + sdim];
+        if(findmax ? v > b : v < b) {
+          best = i;
+        }
+      }
+      return best;
+    }
+
+    /**
+     * Swap two objects.
+     * 
+     * @param a First position
+     * @param b Second position
+     */
+    private void swap(int a, int b) {
+      if(a == b) {
+        return;
+      }
+      ids.swap(a, b);
+      for(int i = a * dims, j = b * dims, e = i + dims; i < e; i++, j++) {
+        final double t = coords[i];
+        coords[i] = coords[j];
+        coords[j] = t;
+      }
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "kd-tree";
+  }
+
+  @Override
+  public String getShortName() {
+    return "kd-tree";
+  }
+
+  @Override
+  public void logStatistics() {
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+  }
+
+  /**
+   * Get the exponent of a supported distance function.
+   * 
+   * @param df Distance function
+   * @return Exponent, or {@code NaN} if not supported
+   */
+  private static double getExponent(DistanceFunction<?> df) {
+    if(df instanceof LPNormDistanceFunction && !(df instanceof WeightedLPNormDistanceFunction)) {
+      return ((LPNormDistanceFunction) df).getP();
+    }
+    if(df instanceof SquaredEuclideanDistanceFunction) {
+      return 2.;
+    }
+    return Double.NaN;
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
+    final double p = getExponent(df);
+    if(p > 0) {
+      return new KDTreeKNNQuery(distanceQuery, p, df instanceof SquaredEuclideanDistanceFunction);
+    }
+    return null;
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
+    final double p = getExponent(df);
+    if(p > 0) {
+      return new KDTreeRangeQuery(distanceQuery, p, df instanceof SquaredEuclideanDistanceFunction);
+    }
+    return null;
+  }
+
+  /**
+   * Search state shared by kNN and range queries.
+   * 
+   * Distances are computed in a reduced form, without the final root, i.e.
+   * \sum_i |x_i-y_i|^p (or the maximum, for p=infinity).
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  private class Search {
+    /**
+     * Exponent.
+     */
+    final double p;
+
+    /**
+     * Flags for special cases.
+     */
+    final boolean maximum, manhattan, euclidean, squared;
+
+    /**
+     * Query coordinates.
+     */
+    final double[] query = new double[dims];
+
+    /**
+     * Distance of the query to the current cell, per dimension.
+     */
+    final double[] offsets = new double[dims];
+
+    /**
+     * Iterator for result construction.
+     */
+    final DBIDArrayIter iter = ids.iter();
+
+    /**
+     * Constructor.
+     * 
+     * @param p Exponent
+     * @param squared Squared Euclidean distance
+     * @param obj Query object
+     */
+    Search(double p, boolean squared, O obj) {
+      this.p = p;
+      this.maximum = p == Double.POSITIVE_INFINITY;
+      this.manhattan = p == 1.;
+      this.euclidean = p == 2.;
+      this.squared = squared;
+      for(int d = 0; d < dims; d++) {
+        query[d] = obj.doubleValue(d);
+      }
+    }
+
+    /**
+     * Reduced contribution of a single dimension.
+     * 
+     * @param delta Difference
+     * @return Reduced value
+     */
+    double reduce1(double delta) {
+      delta = Math.abs(delta);
+      return (maximum || manhattan) ? delta : euclidean ? delta * delta : Math.pow(delta, p);
+    }
+
+    /**
+     * Convert a distance into reduced form.
+     * 
+     * @param dist Distance
+     * @return Reduced distance
+     */
+    double reduce(double dist) {
+      return (maximum || manhattan || squared) ? dist : euclidean ? dist * dist : Math.pow(dist, p);
+    }
+
+    /**
+     * Convert a reduced distance into the actual distance.
+     * 
+     * @param rdist Reduced distance
+     * @return Distance
+     */
+    double expand(double rdist) {
+      return (maximum || manhattan || squared) ? rdist : euclidean ? Math.sqrt(rdist) : Math.pow(rdist, 1. / p);
+    }
+
+    /**
+     * Reduced distance of the query to an object.
+     * 
+     * @param i Object position
+     * @param bound Early termination bound
+     * @return Reduced distance (may be larger than the bound)
+     */
+    double reducedDistance(int i, double bound) {
+      if(distcalc != null) {
+        distcalc.increment();
+      }
+      double agg = 0.;
+      for(int d = 0, off = i * dims; d < dims; d++, off++) {
+        final double v = reduce1(coords[off] - query[d]);
+        agg = maximum ? (v > agg ? v : agg) : agg + v;
+        if(agg > bound) {
+          break;
+        }
+      }
+      return agg;
+    }
+
+    /**
+     * Reduced distance of the query to a cell, after replacing the offset in
+     * one dimension.
+     * 
+     * @param rdist Reduced distance of the cell
+     * @param d Dimension
+     * @param newoff New offset in this dimension
+     * @return Reduced distance of the new cell
+     */
+    double updateCellDistance(double rdist, int d, double newoff) {
+      if(!maximum) {
+        return rdist - reduce1(offsets[d]) + reduce1(newoff);
+      }
+      double agg = 0.;
+      for(int i = 0; i < dims; i++) {
+        final double v = (i == d) ? newoff : offsets[i];
+        agg = v > agg ? v : agg;
+      }
+      return agg;
+    }
+  }
+
+  /**
+   * kNN query for the k-d-tree.
+   * 
+   * @author agent
+   */
+  public class KDTreeKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Exponent of the norm.
+     */
+    private double p;
+
+    /**
+     * Squared Euclidean distance.
+     */
+    private boolean squared;
+
+    /**
+     * Constructor.
+     * 
+     * @param distanceQuery Distance query
+     * @param p Exponent of the norm
+     * @param squared Squared Euclidean distance
+     */
+    public KDTreeKNNQuery(DistanceQuery<O> distanceQuery, double p, boolean squared) {
+      super(distanceQuery);
+      this.p = p;
+      this.squared = squared;
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      Search s = new Search(p, squared, obj);
+      kdKNNSearch(s, 0, 0., knns, Double.POSITIVE_INFINITY);
+      return knns.toKNNList();
+    }
+
+    /**
+     * Perform a kNN search on the kd-tree.
+     * 
+     * @param s Search state
+     * @param node Current node
+     * @param rdist Reduced distance to the current cell
+     * @param knns kNN heap
+     * @param bound Reduced distance bound
+     * @return New reduced distance bound
+     */
+    private double kdKNNSearch(Search s, int node, double rdist, KNNHeap knns, double bound) {
+      final int sdim = splitdim[node];
+      if(sdim < 0) {
+        for(int i = begin[node], e = end[node]; i < e; i++) {
+          final double rd = s.reducedDistance(i, bound);
+          if(rd <= bound) {
+            s.iter.seek(i);
+            knns.insert(s.expand(rd), s.iter);
+            if(knns.size() >= knns.getK()) {
+              bound = s.reduce(knns.getKNNDistance());
+            }
+          }
+        }
+        return bound;
+      }
+      final double delta = s.query[sdim] - splitval[node];
+      final int near = delta < 0 ? leftchild[node] : rightchild[node];
+      final int far = delta < 0 ? rightchild[node] : leftchild[node];
+      bound = kdKNNSearch(s, near, rdist, knns, bound);
+      final double farrdist = s.updateCellDistance(rdist, sdim, Math.abs(delta));
+      if(farrdist <= bound) {
+        final double old = s.offsets[sdim];
+        s.offsets[sdim] = Math.abs(delta);
+        bound = kdKNNSearch(s, far, farrdist, knns, bound);
+        s.offsets[sdim] = old;
+      }
+      return bound;
+    }
+  }
+
+  /**
+   * Range query for the k-d-tree.
+   * 
+   * @author agent
+   */
+  public class KDTreeRangeQuery extends AbstractDistanceRangeQuery<O> {
+    /**
+     * Exponent of the norm.
+     */
+    private double p;
+
+    /**
+     * Squared Euclidean distance.
+     */
+    private boolean squared;
+
+    /**
+     * Constructor.
+     * 
+     * @param distanceQuery Distance query
+     * @param p Exponent of the norm
+     * @param squared Squared Euclidean distance
+     */
+    public KDTreeRangeQuery(DistanceQuery<O> distanceQuery, double p, boolean squared) {
+      super(distanceQuery);
+      this.p = p;
+      this.squared = squared;
+    }
+
+    @Override
+    public DoubleDBIDList getRangeForObject(O obj, double range) {
+      final ModifiableDoubleDBIDList res = DBIDUtil.newDistanceDBIDList();
+      Search s = new Search(p, squared, obj);
+      kdRangeSearch(s, 0, 0., res, range, s.reduce(range));
+      res.sort();
+      return res;
+    }
+
+    /**
+     * Perform a range search on the kd-tree.
+     * 
+     * @param s Search state
+     * @param node Current node
+     * @param rdist Reduced distance to the current cell
+     * @param res Result list
+     * @param range Query radius
+     * @param bound Reduced query radius
+     */
+    private void kdRangeSearch(Search s, int node, double rdist, ModifiableDoubleDBIDList res, double range, double bound) {
+      final int sdim = splitdim[node];
+      if(sdim < 0) {
+        for(int i = begin[node], e = end[node]; i < e; i++) {
+          final double rd = s.reducedDistance(i, bound);
+          if(rd <= bound) {
+            final double dist = s.expand(rd);
+            // Double check after rounding.
+            if(dist <= range) {
+              s.iter.seek(i);
+              res.add(dist, s.iter);
+            }
+          }
+        }
+        return;
+      }
+      final double delta = s.query[sdim] - splitval[node];
+      final int near = delta < 0 ? leftchild[node] : rightchild[node];
+      final int far = delta < 0 ? rightchild[node] : leftchild[node];
+      kdRangeSearch(s, near, rdist, res, range, bound);
+      final double farrdist = s.updateCellDistance(rdist, sdim, Math.abs(delta));
+      if(farrdist <= bound) {
+        final double old = s.offsets[sdim];
+        s.offsets[sdim] = Math.abs(delta);
+        kdRangeSearch(s, far, farrdist, res, range, bound);
+        s.offsets[sdim] = old;
+      }
+    }
+  }
+
+  /**
+   * Factory class
+   * 
+   * @author agent
+   * 
+   * @apiviz.stereotype factory
+   * @apiviz.has MemoryKDTree
+   * 
+   * @param <O> Vector type
+   */
+  @Alias({ "kdtree" })
+  public static class Factory<O extends NumberVector> implements IndexFactory<O, MemoryKDTree<O>> {
+    /**
+     * Maximum number of objects in a leaf.
+     */
+    private int leafsize;
+
+    /**
+     * Constructor.
+     * 
+     * @param leafsize Maximum number of objects in a leaf
+     */
+    public Factory(int leafsize) {
+      super();
+      this.leafsize = leafsize;
+    }
+
+    @Override
+    public MemoryKDTree<O> instantiate(Relation<O> relation) {
+      return new MemoryKDTree<>(relation, leafsize);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     * 
+     * @author agent
+     * 
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O extends NumberVector> extends AbstractParameterizer {
+      /**
+       * Maximum number of objects in a leaf.
+       * <p>
+       * Key: {@code -kd.leafsize}
+       * </p>
+       */
+      public static final OptionID LEAFSIZE_ID = new OptionID("kd.leafsize", "Maximum number of objects in a leaf of the k-d-tree.");
+
+      /**
+       * Maximum number of objects in a leaf.
+       */
+      protected int leafsize;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        IntParameter leafsizeP = new IntParameter(LEAFSIZE_ID, 16);
+        leafsizeP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(leafsizeP)) {
+          leafsize = leafsizeP.intValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(leafsize);
+      }
+    }
+  }
+}
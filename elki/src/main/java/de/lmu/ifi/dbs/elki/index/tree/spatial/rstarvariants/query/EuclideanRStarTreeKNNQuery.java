@@ -145,6 +145,9 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
     if(k < 1) {
       throw new IllegalArgumentException("At least one enumeration has to be requested!");
     }
+    if(ids.size() >= MIN_BATCH << 1) {
+      return parallelKNN(ids, k);
+    }
 
     // While this works, it seems to be slow at least for large sets!
     // TODO: use a DataStore instead of a map.
@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -33,6 +34,7 @@ import java.util.Map.Entry;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -51,6 +53,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
@@ -75,6 +78,12 @@ title = "Ranking in spatial databases", //
 booktitle = "Advances in Spatial Databases - 4th Symposium, SSD'95", //
 url = "http://dx.doi.org/10.1007/3-540-60159-7_6")
 public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<O> {
+  /**
+   * Minimum number of queries per thread in bulk mode; smaller batches are
+   * processed with a single batch traversal of the tree.
+   */
+  protected static final int MIN_BATCH = 64;
+
   /**
    * The index to use
    */
@@ -283,6 +292,10 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
       throw new IllegalArgumentException("At least one enumeration has to be requested!");
     }
 
+    if(ids.size() >= MIN_BATCH << 1) {
+      return parallelKNN(ids, k);
+    }
+
     // While this works, it seems to be slow at least for large sets!
     // TODO: use a DataStore instead of a map.
     final Map<DBID, KNNHeap> knnLists = new HashMap<>(ids.size());
@@ -301,4 +314,26 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
     }
     return result;
   }
+
+  /**
+   * Answer a large batch of queries, partitioned across all available cores.
+   * Each thread performs independent best-first searches for its queries.
+   * 
+   * @param ids Query IDs
+   * @param k Number of neighbors
+   * @return kNN lists, in the order of the query IDs
+   */
+  protected List<KNNList> parallelKNN(final ArrayDBIDs ids, final int k) {
+    final KNNList[] result = new KNNList[ids.size()];
+    ParallelExecutor.runPartitions(ids.size(), MIN_BATCH, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        DBIDArrayIter iter = ids.iter();
+        for(iter.seek(start); iter.getOffset() < end; iter.advance()) {
+          result[iter.getOffset()] = getKNNForDBID(iter, k);
+        }
+      }
+    });
+    return Arrays.asList(result);
+  }
 }
\ No newline at end of file
@@ -26,6 +26,8 @@ package de.lmu.ifi.dbs.elki.math.geometry;
 import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.math.linearalgebra.Matrix;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
 /**
@@ -188,6 +190,151 @@ public class PrimsMinimumSpanningTree {
     }
   }
 
+  /**
+   * Run Prim's algorithm on a dense graph, updating the candidate edges on all
+   * available CPUs.
+   *
+   * The adapter must be thread-safe. Ties are resolved as in the serial
+   * version, so the edges are the same as with
+   * {@link #processDense(Object, Adapter, Collector)}.
+   *
+   * @param data Data set
+   * @param adapter Thread-safe adapter instance
+   * @param collector Edge collector
+   */
+  public static <T> void processDenseParallel(T data, Adapter<T> adapter, Collector collector) {
+    // Number of nodes
+    final int n = adapter.size(data);
+    ParallelUpdate<T> update = new ParallelUpdate<>(data, adapter, n);
+    // Stay connected for the whole search, so the worker threads are kept
+    // alive between the (very short) update steps.
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      // Search
+      for(int i = n - 2; i >= 0; i--) {
+        update.newbesti = -1;
+        update.newbestd = Double.POSITIVE_INFINITY;
+        ParallelExecutor.runPartitions(n, ParallelUpdate.MIN_PARTITION, update);
+        final int newbesti = update.newbesti;
+        assert (newbesti >= 0);
+        // Flag
+        update.connected[newbesti] = 1;
+        // Store edge
+        collector.addEdge(update.newbestd, update.src[newbesti], newbesti);
+        // Continue
+        update.current = newbesti;
+      }
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Update the candidate edges from the current node, for a partition of the
+   * nodes.
+   *
+   * @author agent
+   *
+   * @param <T> Data type
+   */
+  private static class ParallelUpdate<T> implements ParallelExecutor.PartitionTask {
+    /**
+     * Minimum number of nodes per thread.
+     */
+    private static final int MIN_PARTITION = 1024;
+
+    /**
+     * Data set
+     */
+    private final T data;
+
+    /**
+     * Adapter instance
+     */
+    private final Adapter<T> adapter;
+
+    /**
+     * Best distance for each node
+     */
+    private final double[] best;
+
+    /**
+     * Best previous node
+     */
+    private final int[] src;
+
+    /**
+     * Nodes already handled
+     */
+    private final byte[] connected;
+
+    /**
+     * Node added last
+     */
+    private int current;
+
+    /**
+     * Best node to add next
+     */
+    private int newbesti;
+
+    /**
+     * Distance of the best node to add next.
+     */
+    private double newbestd;
+
+    /**
+     * Constructor.
+     *
+     * @param data Data set
+     * @param adapter Adapter instance
+     * @param n Number of nodes
+     */
+    ParallelUpdate(T data, Adapter<T> adapter, int n) {
+      this.data = data;
+      this.adapter = adapter;
+      this.best = new double[n];
+      Arrays.fill(best, Double.POSITIVE_INFINITY);
+      this.src = new int[n];
+      this.connected = new byte[n];
+      // We always start at "random" node 0
+      this.current = 0;
+      connected[0] = 1;
+      best[0] = 0;
+    }
+
+    @Override
+    public void process(int start, int end) {
+      int lbesti = -1;
+      double lbestd = Double.POSITIVE_INFINITY;
+      for(int j = start; j < end; ++j) {
+        if(connected[j] == 1) {
+          continue;
+        }
+        final double dist = adapter.distance(data, current, j);
+        if(dist < best[j]) {
+          best[j] = dist;
+          src[j] = current;
+        }
+        if(best[j] < lbestd) {
+          lbestd = best[j];
+          lbesti = j;
+        }
+      }
+      if(lbesti >= 0) {
+        synchronized(this) {
+          // On ties, prefer the smaller index, as the serial version does.
+          if(lbestd < newbestd || (lbestd == newbestd && lbesti < newbesti)) {
+            newbestd = lbestd;
+            newbesti = lbesti;
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Prune the minimum spanning tree, removing all edges to nodes that have a
    * degree below {@code minDegree}.
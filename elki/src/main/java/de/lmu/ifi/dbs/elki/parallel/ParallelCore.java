@@ -24,14 +24,18 @@ package de.lmu.ifi.dbs.elki.parallel;
  */
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
+ * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor},
+ * and a {@link ForkJoinPool} for work stealing execution.
  * 
  * TODO: make configurable how many threads are used.
  * 
@@ -53,6 +57,12 @@ public class ParallelCore {
    */
   ThreadPoolExecutor executor;
 
+  /**
+   * Fork/join pool, for work stealing. Created lazily, volatile for the
+   * double-checked locking in {@link #invoke}.
+   */
+  volatile ForkJoinPool forkjoin;
+
   /**
    * Number of connected submitters.
    */
@@ -100,6 +110,40 @@ public class ParallelCore {
     return executor.submit(task);
   }
 
+  /**
+   * Test whether the current thread is a worker of a parallel core, or of a
+   * fork/join pool. Nested parallel sections should then run in the calling
+   * thread: waiting for tasks queued behind the caller in the bounded pool
+   * could deadlock.
+   * 
+   * @return {@code true} when called from a worker thread
+   */
+  public static boolean inWorkerThread() {
+    return Thread.currentThread() instanceof WorkerThread || ForkJoinTask.inForkJoinPool();
+  }
+
+  /**
+   * Run a fork/join task in the work stealing pool, and wait for completion.
+   * 
+   * Fork/join worker threads terminate by themselves when idle, so no explicit
+   * shutdown is needed.
+   * 
+   * @param task Task to run
+   * @return Task result
+   */
+  public <T> T invoke(ForkJoinTask<T> task) {
+    ForkJoinPool pool = forkjoin;
+    if(pool == null) {
+      synchronized(this) {
+        pool = forkjoin;
+        if(pool == null) {
+          forkjoin = pool = new ForkJoinPool(processors);
+        }
+      }
+    }
+    return pool.invoke(task);
+  }
+
   /**
    * Connect to the executor.
    */
@@ -107,7 +151,7 @@ public class ParallelCore {
     if(executor == null) {
       synchronized(this) {
         if(executor == null) {
-          executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+          executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
           executor.allowCoreThreadTimeOut(true);
         }
       }
@@ -131,4 +175,42 @@ public class ParallelCore {
       }
     }
   }
+
+  /**
+   * Worker thread of the executor, to detect nested parallel sections.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  private static class WorkerThread extends Thread {
+    /**
+     * Constructor.
+     * 
+     * @param r Runnable
+     * @param name Thread name
+     */
+    WorkerThread(Runnable r, String name) {
+      super(r, name);
+    }
+  }
+
+  /**
+   * Thread factory for the executor.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  private static class WorkerThreadFactory implements ThreadFactory {
+    /**
+     * Thread counter, for naming.
+     */
+    private final AtomicInteger count = new AtomicInteger(0);
+
+    @Override
+    public Thread newThread(Runnable r) {
+      return new WorkerThread(r, "elki-worker-" + count.incrementAndGet());
+    }
+  }
 }
@@ -29,6 +29,8 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
@@ -41,14 +43,68 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
 /**
  * Class to run processors in parallel, on all available cores.
  * 
+ * Two strategies are available: {@link Strategy#BLOCKS} cuts the data into a
+ * fixed number of equal blocks, which works well when every object costs about
+ * the same. {@link Strategy#WORK_STEALING} recursively splits the range on a
+ * fork/join pool, so idle workers can steal work from busy ones when the cost
+ * per object is skewed (e.g. kNN queries in regions of different density).
+ * 
  * TODO: add progress
  * 
  * @author Erich Schubert
  * 
  * @apiviz.has BlockArrayRunner
+ * @apiviz.has RangeTask
+ * @apiviz.has WorkQueue
  * @apiviz.uses ParallelCore
  */
 public class ParallelExecutor {
+  /**
+   * Execution strategies.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static enum Strategy {
+    /**
+     * Fixed number of equally sized blocks on a thread pool.
+     */
+    BLOCKS,
+    /**
+     * Recursive splitting with work stealing on a fork/join pool.
+     */
+    WORK_STEALING,
+  }
+
+  /**
+   * Minimum number of objects processed by a single fork/join leaf.
+   */
+  private static final int MIN_CHUNK = 16;
+
+  /**
+   * Strategy used by {@link #run}.
+   */
+  private static volatile Strategy strategy = Strategy.BLOCKS;
+
+  /**
+   * Get the execution strategy used by {@link #run}.
+   * 
+   * @return Strategy
+   */
+  public static Strategy getStrategy() {
+    return strategy;
+  }
+
+  /**
+   * Set the execution strategy used by {@link #run}.
+   * 
+   * @param strategy Strategy
+   */
+  public static void setStrategy(Strategy strategy) {
+    ParallelExecutor.strategy = strategy;
+  }
+
   /**
    * Run a task on all available CPUs.
    * 
@@ -56,15 +112,214 @@ public class ParallelExecutor {
    * @param procs Processors to run
    */
   public static final void run(DBIDs ids, Processor... procs) {
-    // TODO: try different strategies anyway!
+    run(ids, strategy, procs);
+  }
+
+  /**
+   * Run a task on all available CPUs, using the given strategy.
+   * 
+   * @param ids IDs to process
+   * @param strategy Execution strategy
+   * @param procs Processors to run
+   */
+  public static final void run(DBIDs ids, Strategy strategy, Processor... procs) {
     ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    switch(strategy){
+    case WORK_STEALING:
+      runWorkStealing(aids, procs);
+      break;
+    case BLOCKS:
+    default:
+      runBlocks(aids, procs);
+    }
+  }
+
+  /**
+   * Process contiguous partitions of the positions {@code 0..size-1} on all
+   * available CPUs, for example the queries of a bulk query batch.
+   * 
+   * Small inputs, single-core systems, and nested calls from a worker thread
+   * are processed in the calling thread.
+   * 
+   * @param size Number of positions
+   * @param minsize Minimum number of positions per partition
+   * @param task Task to process a single partition
+   */
+  public static final void runPartitions(int size, int minsize, final PartitionTask task) {
+    ParallelCore core = ParallelCore.getCore();
+    if(size < minsize << 1 || ParallelCore.ALL_PROCESSORS <= 1 || ParallelCore.inWorkerThread()) {
+      task.process(0, size);
+      return;
+    }
+    try {
+      core.connect();
+      // A few more partitions than threads, to reduce the effects of skew.
+      final int numparts = Math.max(1, Math.min(size / minsize, core.getParallelism() << 2));
+      final int blocksize = (size + (numparts - 1)) / numparts;
+      List<Future<Void>> parts = new ArrayList<>(numparts);
+      for(int start = 0; start < size; start += blocksize) {
+        final int s = start, e = Math.min(start + blocksize, size);
+        parts.add(core.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            task.process(s, e);
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> fut : parts) {
+        fut.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Task processing a contiguous partition of positions.
+   * 
+   * @author Erich Schubert
+   */
+  public static interface PartitionTask {
+    /**
+     * Process the positions {@code start} (inclusive) to {@code end}
+     * (exclusive).
+     * 
+     * @param start Start position
+     * @param end End position
+     */
+    void process(int start, int end);
+  }
+
+  /**
+   * Process the positions {@code 0..size-1} on all available CPUs, with dynamic
+   * scheduling: every worker repeatedly takes the next position from a shared
+   * {@link WorkQueue}. This is preferable to {@link #runPartitions} when the
+   * cost of single positions is very skewed, and there are only few of them
+   * (e.g. the top-level branches of a depth-first search).
+   * 
+   * Small inputs, single-core systems, and nested calls from a worker thread
+   * are processed in the calling thread.
+   * 
+   * @param size Number of positions
+   * @param task Task to run in every worker
+   */
+  public static final void runQueue(int size, final QueueTask task) {
+    final WorkQueue queue = new WorkQueue(size);
+    if(size < 2 || ParallelCore.ALL_PROCESSORS <= 1 || ParallelCore.inWorkerThread()) {
+      task.process(queue);
+      return;
+    }
+    ParallelCore core = ParallelCore.getCore();
+    try {
+      core.connect();
+      final int numworkers = Math.min(size, core.getParallelism());
+      List<Future<Void>> parts = new ArrayList<>(numworkers);
+      for(int i = 0; i < numworkers; i++) {
+        parts.add(core.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            task.process(queue);
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> fut : parts) {
+        fut.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Task run by every worker of {@link #runQueue}.
+   * 
+   * @author agent
+   * 
+   * @apiviz.uses WorkQueue
+   */
+  public static interface QueueTask {
+    /**
+     * Process positions taken from the queue, until it is exhausted.
+     * 
+     * Per-worker state (buffers, partial results) can be set up before the
+     * first call to {@link WorkQueue#next}.
+     * 
+     * @param queue Shared work queue
+     */
+    void process(WorkQueue queue);
+  }
+
+  /**
+   * Shared queue of the positions {@code 0..size-1}, in ascending order.
+   * 
+   * @author agent
+   */
+  public static final class WorkQueue {
+    /**
+     * Next position to hand out.
+     */
+    private final AtomicInteger next = new AtomicInteger(0);
+
+    /**
+     * Number of positions.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     * 
+     * @param size Number of positions
+     */
+    WorkQueue(int size) {
+      this.size = size;
+    }
+
+    /**
+     * Take the next position.
+     * 
+     * @return Next position, or -1 when the queue is exhausted.
+     */
+    public int next() {
+      final int i = next.getAndIncrement();
+      return i < size ? i : -1;
+    }
+  }
+
+  /**
+   * Run by cutting the data into a fixed number of blocks.
+   * 
+   * @param aids IDs to process
+   * @param procs Processors to run
+   */
+  private static void runBlocks(ArrayDBIDs aids, Processor... procs) {
+    if(ParallelCore.inWorkerThread()) {
+      // Nested call: waiting for the pool from within could deadlock.
+      new BlockArrayRunner(aids, 0, aids.size(), procs).call();
+      return;
+    }
     ParallelCore core = ParallelCore.getCore();
     try {
       final int size = aids.size();
       core.connect();
       int numparts = core.getParallelism();
       // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * numparts - 1 : numparts;
+      numparts = (numparts > 1 && size > numparts * numparts * 16) ? numparts * numparts - 1 : numparts;
 
       final int blocksize = (size + (numparts - 1)) / numparts;
       List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
@@ -90,6 +345,34 @@ public class ParallelExecutor {
     }
   }
 
+  /**
+   * Run by recursive splitting on the fork/join pool.
+   * 
+   * @param aids IDs to process
+   * @param procs Processors to run
+   */
+  private static void runWorkStealing(ArrayDBIDs aids, Processor... procs) {
+    final int size = aids.size();
+    if(size == 0) {
+      return;
+    }
+    ParallelCore core = ParallelCore.getCore();
+    WorkerStates states = new WorkerStates(procs);
+    try {
+      core.connect();
+      // Leaves become smaller when there are more threads to balance between.
+      final int leaf = Math.max(MIN_CHUNK, size / (core.getParallelism() << 6));
+      core.invoke(new RangeTask(aids, 0, size, leaf, states, null));
+    }
+    catch(RuntimeException e) {
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+    states.cleanup();
+  }
+
   /**
    * Run for an array part, without step size.
    * 
@@ -148,7 +431,7 @@ public class ParallelExecutor {
 
       DBIDArrayIter iter = ids.iter();
       iter.seek(start);
-      for(int c = end - start; iter.valid() && c >= 0; iter.advance(), c--) {
+      for(int c = end - start; iter.valid() && c > 0; iter.advance(), c--) {
         for(int i = 0; i < instances.length; i++) {
           instances[i].map(iter);
         }
@@ -170,4 +453,184 @@ public class ParallelExecutor {
       return inst;
     }
   }
+
+  /**
+   * Fork/join task processing a range of an array, splitting off halves for
+   * other workers to steal while the pool appears to be starving.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.uses WorkerStates
+   */
+  protected static class RangeTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Array IDs to process
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Range to process.
+     */
+    private final int start, end;
+
+    /**
+     * Minimum leaf size.
+     */
+    private final int leaf;
+
+    /**
+     * Per-thread processor instances.
+     */
+    private final WorkerStates states;
+
+    /**
+     * Next task forked by the same parent, for joining.
+     */
+    private final RangeTask next;
+
+    /**
+     * Constructor.
+     * 
+     * @param ids IDs to process
+     * @param start Starting position
+     * @param end End position (exclusive)
+     * @param leaf Minimum leaf size
+     * @param states Per-thread processor instances
+     * @param next Next sibling task
+     */
+    protected RangeTask(ArrayDBIDs ids, int start, int end, int leaf, WorkerStates states, RangeTask next) {
+      super();
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.leaf = leaf;
+      this.states = states;
+      this.next = next;
+    }
+
+    @Override
+    protected void compute() {
+      int l = start, h = end;
+      RangeTask forked = null;
+      // Only split while other workers have little queued work, so that the
+      // number of tasks adapts to the actual load imbalance.
+      while(h - l > leaf && getSurplusQueuedTaskCount() <= 3) {
+        final int mid = (l + h) >>> 1;
+        forked = new RangeTask(ids, mid, h, leaf, states, forked);
+        forked.fork();
+        h = mid;
+      }
+      Processor.Instance[] instances = states.get().instances;
+      DBIDArrayIter iter = ids.iter();
+      for(iter.seek(l); iter.getOffset() < h; iter.advance()) {
+        for(int i = 0; i < instances.length; i++) {
+          instances[i].map(iter);
+        }
+      }
+      for(RangeTask t = forked; t != null; t = t.next) {
+        t.join();
+      }
+    }
+  }
+
+  /**
+   * Thread-local processor instances for the work stealing strategy, so that
+   * each worker thread instantiates the processors only once.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.has WorkerState
+   */
+  protected static class WorkerStates extends ThreadLocal<WorkerState> {
+    /**
+     * The processor masters that own the instances.
+     */
+    private final Processor[] procs;
+
+    /**
+     * All states created, for cleanup.
+     */
+    private final List<WorkerState> all = new ArrayList<>();
+
+    /**
+     * Constructor.
+     * 
+     * @param procs Processors to run
+     */
+    protected WorkerStates(Processor[] procs) {
+      super();
+      this.procs = procs;
+    }
+
+    @Override
+    protected WorkerState initialValue() {
+      WorkerState state = new WorkerState(procs);
+      synchronized(all) {
+        all.add(state);
+      }
+      return state;
+    }
+
+    /**
+     * Invoke the cleanup of all instances.
+     */
+    protected void cleanup() {
+      synchronized(all) {
+        for(WorkerState state : all) {
+          for(int i = 0; i < procs.length; i++) {
+            procs[i].cleanup(state.instances[i]);
+          }
+        }
+        all.clear();
+      }
+    }
+  }
+
+  /**
+   * Processor instances and shared variables of a single worker thread.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.uses Processor
+   */
+  protected static class WorkerState implements Executor {
+    /**
+     * Processor instances.
+     */
+    private final Processor.Instance[] instances;
+
+    /**
+     * Variables map.
+     */
+    private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
+
+    /**
+     * Constructor.
+     * 
+     * @param procs Processors to instantiate
+     */
+    protected WorkerState(Processor[] procs) {
+      super();
+      instances = new Processor.Instance[procs.length];
+      for(int i = 0; i < procs.length; i++) {
+        instances[i] = procs[i].instantiate(this);
+      }
+    }
+
+    @Override
+    public <I extends Instance<?>> I getInstance(SharedVariable<I> parent) {
+      @SuppressWarnings("unchecked")
+      I inst = (I) variables.get(parent);
+      if(inst == null) {
+        inst = parent.instantiate();
+        variables.put(parent, inst);
+      }
+      return inst;
+    }
+  }
 }
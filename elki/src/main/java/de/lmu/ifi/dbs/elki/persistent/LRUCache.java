@@ -23,22 +23,41 @@ package de.lmu.ifi.dbs.elki.persistent;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
- * An LRU cache, based on <code>LinkedHashMap</code>.<br>
- * This cache has a fixed maximum number of objects (<code>cacheSize</code>). If
- * the cache is full and another object is added, the LRU (least recently used)
- * object is dropped.
+ * A concurrent page cache with a fixed maximum number of pages.
+ * 
+ * The cache is split into independently locked segments, so that concurrent
+ * readers (e.g. parallel kNN queries on a paged index) do not serialize on a
+ * single lock. Within each segment, the scan resistant 2Q policy is used:
+ * pages read only once stay in a small FIFO queue, and only pages referenced
+ * again (detected using a queue of recently evicted page ids) enter the main
+ * LRU queue. A single scan over the index thus does not flush the frequently
+ * used pages, such as the upper levels of a tree.
+ * 
+ * Pages are read from the file without holding the segment lock. A page read
+ * while the same segment was written to is read again, so that a concurrent
+ * write (and write-back on eviction) does not leave a stale copy in the cache.
+ * 
+ * Reference:
+ * <p>
+ * T. Johnson, D. Shasha<br />
+ * 2Q: A Low Overhead High Performance Buffer Management Replacement Algorithm
+ * <br />
+ * Proc. 20th Int. Conf. on Very Large Data Bases (VLDB)
+ * </p>
  * 
  * @author Elke Achtert
+ * @author Erich Schubert
  * 
  * @apiviz.uses PageFile
  * 
@@ -61,9 +80,9 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
   protected int cacheSize;
 
   /**
-   * The map holding the objects of this cache.
+   * The cache segments.
    */
-  private LinkedHashMap<Integer, P> map;
+  private Segment<P>[] segments;
 
   /**
    * The underlying file of this cache. If an object is dropped it is written to
@@ -71,6 +90,11 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
    */
   protected PageFile<P> file;
 
+  /**
+   * Cache statistics.
+   */
+  private Counter hits, misses, evictions;
+
   /**
    * Initializes this cache with the specified parameters.
    * 
@@ -81,50 +105,96 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
   public LRUCache(int cacheSizeBytes, PageFile<P> file) {
     this.file = file;
     this.cacheSizeBytes = cacheSizeBytes;
+    if(LOG.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      hits = new AtomicLongCounter(prefix + ".hits");
+      misses = new AtomicLongCounter(prefix + ".misses");
+      evictions = new AtomicLongCounter(prefix + ".evictions");
+    }
+  }
+
+  /**
+   * Get the segment responsible for a page.
+   * 
+   * @param pageID Page id
+   * @return Segment
+   */
+  private Segment<P> segment(int pageID) {
+    // Spread consecutive page ids across segments.
+    final int h = pageID * 0x9E3779B9;
+    return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
   }
 
   /**
-   * Retrieves a page from the cache. The retrieved page becomes the MRU (most
-   * recently used) page.
+   * Retrieves a page from the cache, or from the underlying file.
    * 
    * @param pageID the id of the page to be returned
    * @return the page associated to the id or null if no value with this key
    *         exists in the cache
    */
   @Override
-  public synchronized P readPage(int pageID) {
+  public P readPage(int pageID) {
     countRead();
-    P page = map.get(pageID);
-    if(page != null) {
-      if(LOG.isDebuggingFine()) {
-        LOG.debugFine("Read from cache: " + pageID);
+    final Segment<P> seg = segment(pageID);
+    int version;
+    synchronized(seg) {
+      P page = seg.get(pageID);
+      if(page != null) {
+        if(hits != null) {
+          hits.increment();
+        }
+        return page;
       }
+      version = seg.version;
     }
-    else {
-      if(LOG.isDebuggingFine()) {
-        LOG.debugFine("Read from backing: " + pageID);
+    if(misses != null) {
+      misses.increment();
+    }
+    while(true) {
+      // Do not block the segment during I/O.
+      P page;
+      synchronized(file) {
+        page = file.readPage(pageID);
+      }
+      synchronized(seg) {
+        // Another thread may have loaded the page concurrently.
+        P existing = seg.get(pageID);
+        if(existing != null) {
+          return existing;
+        }
+        // Unless the segment was written to meanwhile, our copy is current.
+        if(seg.version == version) {
+          seg.put(pageID, page);
+          return page;
+        }
+        // A concurrent write may have been written back already: read again.
+        version = seg.version;
       }
-      page = file.readPage(pageID);
-      map.put(pageID, page);
     }
-    return page;
   }
 
   @Override
-  public synchronized void writePage(int pageID, P page) {
+  public void writePage(int pageID, P page) {
     countWrite();
     page.setDirty(true);
-    map.put(pageID, page);
-    if(LOG.isDebuggingFine()) {
-      LOG.debugFine("Write to cache: " + pageID);
+    final Segment<P> seg = segment(pageID);
+    synchronized(seg) {
+      seg.version++;
+      seg.put(pageID, page);
     }
   }
 
   @Override
   public void deletePage(int pageID) {
     countWrite();
-    map.remove(pageID);
-    file.deletePage(pageID);
+    final Segment<P> seg = segment(pageID);
+    synchronized(seg) {
+      seg.version++;
+      seg.remove(pageID);
+    }
+    synchronized(file) {
+      file.deletePage(pageID);
+    }
   }
 
   /**
@@ -136,15 +206,18 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
     if(LOG.isDebuggingFine()) {
       LOG.debugFine("Write to backing:" + page.getPageID());
     }
-    if (page.isDirty()) {
-      file.writePage(page);
+    if(page.isDirty()) {
+      synchronized(file) {
+        file.writePage(page);
+      }
     }
   }
 
   @Override
   public int setPageID(P page) {
-    int pageID = file.setPageID(page);
-    return pageID;
+    synchronized(file) {
+      return file.setPageID(page);
+    }
   }
 
   @Override
@@ -166,31 +239,22 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
   public boolean initialize(PageHeader header) {
     boolean created = file.initialize(header);
     // Compute the actual cache size.
-    this.cacheSize = cacheSizeBytes / header.getPageSize();
-
-    if(this.cacheSize <= 0) {
+    final int cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
       throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
     }
-
+    // Use a power of two number of segments, with at least 16 pages each.
+    int nseg = Integer.highestOneBit(Math.max(1, Math.min(ParallelCore.ALL_PROCESSORS << 2, cacheSize >> 4)));
+    @SuppressWarnings("unchecked")
+    final Segment<P>[] segs = (Segment<P>[]) new Segment<?>[nseg];
+    for(int i = 0; i < nseg; i++) {
+      segs[i] = new Segment<>(this);
+    }
+    segments = segs;
+    setCacheSize(cacheSize);
     if(LOG.isDebugging()) {
-      LOG.debug("LRU cache size is " + cacheSize + " pages.");
+      LOG.debug("LRU cache size is " + cacheSize + " pages in " + nseg + " segments.");
     }
-
-    float hashTableLoadFactor = 0.75f;
-    int hashTableCapacity = (int) Math.ceil(cacheSize / hashTableLoadFactor) + 1;
-
-    this.map = new LinkedHashMap<Integer, P>(hashTableCapacity, hashTableLoadFactor, true) {
-      private static final long serialVersionUID = 1L;
-
-      @Override
-      protected boolean removeEldestEntry(Map.Entry<Integer, P> eldest) {
-        if(size() > LRUCache.this.cacheSize) {
-          expirePage(eldest.getValue());
-          return true;
-        }
-        return false;
-      }
-    };
     return created;
   }
 
@@ -204,10 +268,11 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
    * Flushes this caches by writing any entry to the underlying file.
    */
   public void flush() {
-    for(P object : map.values()) {
-      expirePage(object);
+    for(Segment<P> seg : segments) {
+      synchronized(seg) {
+        seg.flush();
+      }
     }
-    map.clear();
   }
 
   /**
@@ -217,7 +282,14 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
    */
   @Override
   public String toString() {
-    return map.toString();
+    StringBuilder buf = new StringBuilder();
+    buf.append("LRUCache[");
+    for(int i = 0; i < segments.length; i++) {
+      synchronized(segments[i]) {
+        buf.append(i > 0 ? ", " : "").append(segments[i].in.keySet()).append(segments[i].main.keySet());
+      }
+    }
+    return buf.append(']').toString();
   }
 
   /**
@@ -225,7 +297,13 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
    */
   @Override
   public void clear() {
-    map.clear();
+    for(Segment<P> seg : segments) {
+      synchronized(seg) {
+        seg.in.clear();
+        seg.main.clear();
+        seg.ghost.clear();
+      }
+    }
   }
 
   /**
@@ -235,24 +313,22 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
    */
   public void setCacheSize(int cacheSize) {
     this.cacheSize = cacheSize;
-
-    long toDelete = map.size() - this.cacheSize;
-    if(toDelete <= 0) {
-      return;
-    }
-
-    List<Integer> keys = new ArrayList<>(map.keySet());
-    Collections.reverse(keys);
-
-    for(Integer id : keys) {
-      P page = map.remove(id);
-      file.writePage(page);
+    final int nseg = segments.length;
+    for(int i = 0; i < nseg; i++) {
+      synchronized(segments[i]) {
+        segments[i].setCapacity(cacheSize / nseg + (i < cacheSize % nseg ? 1 : 0));
+      }
     }
   }
 
   @Override
   public void logStatistics() {
     super.logStatistics();
+    if(hits != null) {
+      LOG.statistics(hits);
+      LOG.statistics(misses);
+      LOG.statistics(evictions);
+    }
     file.logStatistics();
   }
 
@@ -260,4 +336,182 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
   protected Logging getLogger() {
     return LOG;
   }
+
+  /**
+   * Cache segment, managed by the 2Q policy. Synchronize on the segment when
+   * accessing it.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <P> Page type
+   */
+  private static class Segment<P extends Page> {
+    /**
+     * Cache owning this segment, for writing back pages.
+     */
+    final LRUCache<P> cache;
+
+    /**
+     * Pages seen once, in FIFO order (A1in).
+     */
+    final LinkedHashMap<Integer, P> in = new LinkedHashMap<>();
+
+    /**
+     * Pages referenced repeatedly, in LRU order (Am).
+     */
+    final LinkedHashMap<Integer, P> main = new LinkedHashMap<>(16, .75f, true);
+
+    /**
+     * Ids of pages recently evicted from the FIFO queue (A1out).
+     */
+    final LinkedHashMap<Integer, Boolean> ghost = new LinkedHashMap<>();
+
+    /**
+     * Capacity of the segment, of the FIFO queue, and of the ghost queue.
+     */
+    int capacity, incap, ghostcap;
+
+    /**
+     * Number of writes to this segment, to detect pages that became stale
+     * while being read from the file.
+     */
+    int version;
+
+    /**
+     * Constructor.
+     * 
+     * @param cache Cache owning this segment
+     */
+    Segment(LRUCache<P> cache) {
+      this.cache = cache;
+    }
+
+    /**
+     * Set the segment capacity, evicting pages if necessary.
+     * 
+     * @param capacity Number of pages
+     */
+    void setCapacity(int capacity) {
+      this.capacity = capacity;
+      // Very small segments degenerate to plain LRU.
+      this.incap = capacity >= 4 ? capacity >> 2 : 0;
+      this.ghostcap = capacity >> 1;
+      evict();
+      while(ghost.size() > ghostcap) {
+        removeEldest(ghost);
+      }
+    }
+
+    /**
+     * Get a page, and update its recency.
+     * 
+     * @param pageID Page id
+     * @return Page, or {@code null}
+     */
+    P get(int pageID) {
+      P page = main.get(pageID);
+      return page != null ? page : in.get(pageID);
+    }
+
+    /**
+     * Insert or replace a page.
+     * 
+     * @param pageID Page id
+     * @param page Page
+     */
+    void put(int pageID, P page) {
+      final Integer key = pageID;
+      if(main.containsKey(key)) {
+        main.put(key, page);
+        return;
+      }
+      if(in.containsKey(key)) {
+        in.put(key, page);
+        return;
+      }
+      // Recently evicted from the FIFO: promote to the main queue.
+      if(incap == 0 || ghost.remove(key) != null) {
+        main.put(key, page);
+      }
+      else {
+        in.put(key, page);
+      }
+      evict();
+    }
+
+    /**
+     * Remove a page without writing it.
+     * 
+     * @param pageID Page id
+     */
+    void remove(int pageID) {
+      final Integer key = pageID;
+      if(main.remove(key) == null) {
+        in.remove(key);
+      }
+      ghost.remove(key);
+    }
+
+    /**
+     * Evict pages until the segment is within its capacity.
+     */
+    private void evict() {
+      while(in.size() + main.size() > capacity) {
+        if(in.size() > incap || main.isEmpty()) {
+          Map.Entry<Integer, P> e = removeEldest(in);
+          ghost.put(e.getKey(), Boolean.TRUE);
+          if(ghost.size() > ghostcap) {
+            removeEldest(ghost);
+          }
+          expire(e.getValue());
+        }
+        else {
+          expire(removeEldest(main).getValue());
+        }
+      }
+    }
+
+    /**
+     * Expire a page evicted from the cache.
+     * 
+     * @param page Page
+     */
+    private void expire(P page) {
+      if(cache.evictions != null) {
+        cache.evictions.increment();
+      }
+      cache.expirePage(page);
+    }
+
+    /**
+     * Write all pages, and empty the segment.
+     */
+    void flush() {
+      for(P page : in.values()) {
+        cache.expirePage(page);
+      }
+      for(P page : main.values()) {
+        cache.expirePage(page);
+      }
+      in.clear();
+      main.clear();
+    }
+  }
+
+  /**
+   * Remove the eldest entry of a linked hash map.
+   * 
+   * @param map Map
+   * @param <K> Key type
+   * @param <V> Value type
+   * @return Removed entry
+   */
+  private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+    Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+    Map.Entry<K, V> e = it.next();
+    it.remove();
+    return e;
+  }
 }
@@ -0,0 +1,351 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import de.lmu.ifi.dbs.elki.data.MappedDoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Read-only file of dense double vectors of a fixed dimensionality, accessed
+ * via memory mapping.
+ * 
+ * The file consists of a small header (magic, dimensionality, number of
+ * vectors), followed by the vectors in row-major order. Opening a file only
+ * maps it into the address space; residency is managed by the operating
+ * system page cache, so the file may be much larger than the Java heap.
+ * 
+ * Because a single {@link MappedByteBuffer} is limited to 2 GB, the file is
+ * mapped in segments of whole records.
+ * 
+ * Files are written by {@link #write}, from any bundle stream, e.g. a
+ * {@link de.lmu.ifi.dbs.elki.datasource.bundle.BundleReader}.
+ * 
+ * @author agent
+ * 
+ * @apiviz.has MappedDoubleVector
+ */
+public class MappedVectorFile {
+  /**
+   * Random magic number.
+   */
+  public static final int MAGIC = 0x3e4d5646;
+
+  /**
+   * Header size: magic, dimensionality, size, padding.
+   */
+  private static final int HEADER_SIZE = 4 * ByteArrayUtil.SIZE_INT;
+
+  /**
+   * Maximum size of a single mapped segment.
+   */
+  private static final int SEGMENT_SIZE = 1 << 30;
+
+  /**
+   * Write buffer size.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * File name.
+   */
+  private final File filename;
+
+  /**
+   * Input file.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Number of vectors.
+   */
+  private final int size;
+
+  /**
+   * Number of vectors per segment.
+   */
+  private final int perseg;
+
+  /**
+   * Mapped segments.
+   */
+  private final MappedByteBuffer[] segments;
+
+  /**
+   * Open an existing file.
+   * 
+   * @param filename File name
+   * @throws IOException on IO errors, or invalid files
+   */
+  public MappedVectorFile(File filename) throws IOException {
+    super();
+    this.filename = filename;
+    this.file = new RandomAccessFile(filename, "r");
+    if(file.readInt() != MAGIC) {
+      file.close();
+      throw new IOException("File does not contain mapped vectors: " + filename);
+    }
+    this.dim = file.readInt();
+    this.size = file.readInt();
+    final long recsize = dim * (long) ByteArrayUtil.SIZE_DOUBLE;
+    if(dim <= 0 || size < 0 || recsize > SEGMENT_SIZE || file.length() != HEADER_SIZE + recsize * size) {
+      file.close();
+      throw new IOException("File size and header do not agree: " + filename);
+    }
+    this.perseg = (int) (SEGMENT_SIZE / recsize);
+    final int numseg = (size + perseg - 1) / perseg;
+    this.segments = new MappedByteBuffer[numseg];
+    final FileChannel channel = file.getChannel();
+    for(int i = 0; i < numseg; i++) {
+      final int num = Math.min(perseg, size - i * perseg);
+      segments[i] = channel.map(MapMode.READ_ONLY, HEADER_SIZE + i * (long) perseg * recsize, num * recsize);
+    }
+  }
+
+  /**
+   * Get the dimensionality of the vectors.
+   * 
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Get the number of vectors.
+   * 
+   * @return Number of vectors
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the file name.
+   * 
+   * @return File name
+   */
+  public File getFilename() {
+    return filename;
+  }
+
+  /**
+   * Get a vector view. This does not copy any data.
+   * 
+   * @param i Vector number
+   * @return Vector, backed by the mapped file
+   */
+  public MappedDoubleVector get(int i) {
+    if(i < 0 || i >= size) {
+      throw new ArrayIndexOutOfBoundsException(i);
+    }
+    final int seg = i / perseg;
+    return new MappedDoubleVector(segments[seg], (i - seg * perseg) * dim * ByteArrayUtil.SIZE_DOUBLE, dim);
+  }
+
+  /**
+   * Get a list view of all vectors in the file.
+   * 
+   * @return List view
+   */
+  public VectorList asList() {
+    return new VectorList();
+  }
+
+  /**
+   * Close the file. The mapped segments remain valid, and can still be
+   * accessed; they will be released by the garbage collector, once no vector
+   * references them anymore.
+   * 
+   * @throws IOException on IO errors
+   */
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /**
+   * Write the first fixed-dimensional dense number vector column of a bundle
+   * stream to a file. Other columns are not stored.
+   * 
+   * @param source Bundle stream source
+   * @param filename Output file
+   * @throws IOException on IO errors
+   */
+  public static void write(BundleStreamSource source, File filename) throws IOException {
+    FileOutputStream out = new FileOutputStream(filename);
+    FileChannel channel = out.getChannel();
+    try {
+      writeVectors(source, channel);
+    }
+    finally {
+      channel.close();
+      out.close();
+    }
+  }
+
+  /**
+   * Write the vectors and the header to the output channel.
+   * 
+   * @param source Bundle stream source
+   * @param channel Output channel
+   * @throws IOException on IO errors
+   */
+  private static void writeVectors(BundleStreamSource source, FileChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // Reserve space for the header.
+    channel.write(ByteBuffer.allocate(HEADER_SIZE));
+    int col = -1, dim = -1, size = 0;
+    loop: while(true) {
+      BundleStreamSource.Event ev = source.nextEvent();
+      switch(ev){
+      case META_CHANGED:
+        if(col < 0) {
+          BundleMeta meta = source.getMeta();
+          for(int i = 0; i < meta.size(); i++) {
+            dim = fixedDimensionality(meta.get(i));
+            if(dim > 0) {
+              col = i;
+              break;
+            }
+          }
+        }
+        break; // switch
+      case NEXT_OBJECT:
+        if(col < 0) {
+          throw new AbortException("Input does not contain dense number vectors of a fixed dimensionality.");
+        }
+        NumberVector vec = (NumberVector) source.data(col);
+        if(vec.getDimensionality() != dim) {
+          throw new AbortException("Vector dimensionality does not match: " + vec.getDimensionality() + " != " + dim);
+        }
+        // The header stores the size as int. Abort before it overflows; the
+        // header is then never written, so the file is not accepted later.
+        if(size == Integer.MAX_VALUE) {
+          throw new AbortException("Too many vectors for a mapped vector file: more than " + Integer.MAX_VALUE);
+        }
+        for(int d = 0; d < dim; d++) {
+          if(buffer.remaining() < ByteArrayUtil.SIZE_DOUBLE) {
+            flush(buffer, channel);
+          }
+          buffer.putDouble(vec.doubleValue(d));
+        }
+        ++size;
+        break; // switch
+      case END_OF_STREAM:
+        break loop;
+      default:
+        throw new AbortException("Unknown bundle stream event: " + ev);
+      }
+    }
+    flush(buffer, channel);
+    if(col < 0) {
+      throw new AbortException("Input does not contain dense number vectors of a fixed dimensionality.");
+    }
+    // Write the header.
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).putInt(dim).putInt(size).putInt(0).flip();
+    channel.write(header, 0);
+  }
+
+  /**
+   * Get the dimensionality of a dense number vector field. Sparse vectors are
+   * not supported, as they would be expanded to all dimensions.
+   * 
+   * @param type Type information
+   * @return Dimensionality, or -1 if the type is not supported.
+   */
+  private static int fixedDimensionality(SimpleTypeInformation<?> type) {
+    if(!(type instanceof VectorFieldTypeInformation) || !NumberVector.class.isAssignableFrom(type.getRestrictionClass()) //
+        || SparseNumberVector.class.isAssignableFrom(type.getRestrictionClass())) {
+      return -1;
+    }
+    VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+    return (vtype.mindim() == vtype.maxdim()) ? vtype.mindim() : -1;
+  }
+
+  /**
+   * Flush the write buffer.
+   * 
+   * @param buffer Buffer
+   * @param channel Output channel
+   * @throws IOException on IO errors
+   */
+  private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+    buffer.flip();
+    while(buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * List view of the vectors in a file.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  public class VectorList extends AbstractList<MappedDoubleVector> implements RandomAccess {
+    @Override
+    public MappedDoubleVector get(int index) {
+      return MappedVectorFile.this.get(index);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Get the underlying file.
+     * 
+     * @return File
+     */
+    public MappedVectorFile getFile() {
+      return MappedVectorFile.this;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package de.lmu.ifi.dbs.elki.utilities.datastructures.hash;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Hash set to keep a unique copy of each string, similar to {@link Unique}.
+ * 
+ * In contrast to {@link Unique}, strings can be looked up by a range of a
+ * character sequence, so that no string object needs to be created when the
+ * value is already known. This is used by parsers to share a single instance
+ * of repeated labels.
+ * 
+ * @author agent
+ */
+public class StringInterner {
+  /**
+   * Hash table, using linear probing.
+   */
+  private String[] table;
+
+  /**
+   * Number of entries.
+   */
+  private int size = 0;
+
+  /**
+   * Constructor with default size.
+   */
+  public StringInterner() {
+    this(64);
+  }
+
+  /**
+   * Constructor with desired initial size.
+   * 
+   * @param initialCapacity desired initial size.
+   */
+  public StringInterner(int initialCapacity) {
+    super();
+    this.table = new String[Integer.highestOneBit(Math.max(initialCapacity, 4) - 1) << 1];
+  }
+
+  /**
+   * Get the unique string for a range of a character sequence, adding it if
+   * not yet present.
+   * 
+   * @param seq Character sequence
+   * @param start Begin of range
+   * @param end End of range (exclusive)
+   * @return Existing string if already present, or the new string.
+   */
+  public String addOrGet(CharSequence seq, int start, int end) {
+    // Same as String.hashCode()
+    int hash = 0;
+    for(int i = start; i < end; i++) {
+      hash = 31 * hash + seq.charAt(i);
+    }
+    final int mask = table.length - 1;
+    int pos = mix(hash) & mask;
+    for(String cur = table[pos]; cur != null; cur = table[pos]) {
+      if(cur.hashCode() == hash && matches(cur, seq, start, end)) {
+        return cur;
+      }
+      pos = (pos + 1) & mask;
+    }
+    String str = seq.subSequence(start, end).toString();
+    table[pos] = str;
+    if(++size << 1 > table.length) {
+      rehash(table.length << 1);
+    }
+    return str;
+  }
+
+  /**
+   * Get the unique copy of a string, adding it if not yet present.
+   * 
+   * @param str String
+   * @return Existing string if already present, or the string itself.
+   */
+  public String addOrGet(String str) {
+    return addOrGet(str, 0, str.length());
+  }
+
+  /**
+   * Compare a string to a range of a character sequence.
+   * 
+   * @param str String
+   * @param seq Character sequence
+   * @param start Begin of range
+   * @param end End of range (exclusive)
+   * @return {@code true} when equal
+   */
+  private static boolean matches(String str, CharSequence seq, int start, int end) {
+    if(str.length() != end - start) {
+      return false;
+    }
+    for(int i = 0, j = start; j < end; i++, j++) {
+      if(str.charAt(i) != seq.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Spread the bits of the string hash code, which is weak in the low bits.
+   * 
+   * @param hash Hash code
+   * @return Mixed hash code
+   */
+  private static int mix(int hash) {
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    return hash ^ (hash >>> 7) ^ (hash >>> 4);
+  }
+
+  /**
+   * Resize the hash table.
+   * 
+   * @param newCapacity New capacity, must be a power of two
+   */
+  private void rehash(int newCapacity) {
+    final String[] old = table;
+    final int mask = newCapacity - 1;
+    table = new String[newCapacity];
+    for(String str : old) {
+      if(str == null) {
+        continue;
+      }
+      int pos = mix(str.hashCode()) & mask;
+      while(table[pos] != null) {
+        pos = (pos + 1) & mask;
+      }
+      table[pos] = str;
+    }
+  }
+
+  /**
+   * Get the number of unique strings.
+   * 
+   * @return Size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Remove all strings.
+   */
+  public void clear() {
+    Arrays.fill(table, null);
+    size = 0;
+  }
+}
@@ -0,0 +1,149 @@
+package de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Lock-free union-find (disjoint set) structure over the integers
+ * {@code 0..size-1}, which can be used concurrently from multiple threads.
+ * 
+ * Finding uses path halving via compare-and-set, and union always links the
+ * larger root below the smaller root. The representative of each set therefore
+ * is its smallest element, independent of the order in which the unions were
+ * performed - which keeps parallel algorithms deterministic.
+ * 
+ * Reference:
+ * <p>
+ * R. J. Anderson and H. Woll<br />
+ * Wait-free parallel algorithms for the union-find problem<br />
+ * In: Proc. 23rd Annual ACM Symposium on Theory of Computing (STOC '91)
+ * </p>
+ * 
+ * @author agent
+ */
+@Reference(authors = "R. J. Anderson and H. Woll", //
+title = "Wait-free parallel algorithms for the union-find problem", //
+booktitle = "Proc. 23rd Annual ACM Symposium on Theory of Computing (STOC '91)", //
+url = "http://dx.doi.org/10.1145/103418.103458")
+public class ConcurrentUnionFind {
+  /**
+   * Parent pointers, roots point to themselves.
+   */
+  private final AtomicIntegerArray parent;
+
+  /**
+   * Constructor.
+   * 
+   * @param size Number of elements, each in its own set initially.
+   */
+  public ConcurrentUnionFind(int size) {
+    super();
+    parent = new AtomicIntegerArray(size);
+    for(int i = 0; i < size; i++) {
+      parent.lazySet(i, i);
+    }
+  }
+
+  /**
+   * Number of elements.
+   * 
+   * @return Size
+   */
+  public int size() {
+    return parent.length();
+  }
+
+  /**
+   * Find the representative of an element.
+   * 
+   * @param i Element
+   * @return Representative (the smallest element of the set, once all unions
+   *         have completed)
+   */
+  public int find(int i) {
+    int p = parent.get(i);
+    while(p != i) {
+      final int gp = parent.get(p);
+      if(gp != p) {
+        // Path halving; failing is harmless, someone else shortened it.
+        parent.compareAndSet(i, p, gp);
+      }
+      i = gp;
+      p = parent.get(i);
+    }
+    return i;
+  }
+
+  /**
+   * Join the sets of two elements.
+   * 
+   * @param a First element
+   * @param b Second element
+   * @return {@code true} when two different sets were merged
+   */
+  public boolean union(int a, int b) {
+    while(true) {
+      a = find(a);
+      b = find(b);
+      if(a == b) {
+        return false;
+      }
+      // Link the larger root below the smaller root.
+      if(a < b) {
+        final int t = a;
+        a = b;
+        b = t;
+      }
+      if(parent.compareAndSet(a, a, b)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Test whether two elements are in the same set.
+   * 
+   * Note: the result is only reliable if there are no concurrent unions.
+   * 
+   * @param a First element
+   * @param b Second element
+   * @return {@code true} when both are in the same set
+   */
+  public boolean isConnected(int a, int b) {
+    return find(a) == find(b);
+  }
+
+  /**
+   * Test whether an element is the representative of its set.
+   * 
+   * @param i Element
+   * @return {@code true} for roots
+   */
+  public boolean isRoot(int i) {
+    return parent.get(i) == i;
+  }
+}
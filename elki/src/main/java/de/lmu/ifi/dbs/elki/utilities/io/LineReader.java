@@ -113,6 +113,43 @@ public class LineReader implements AutoCloseable {
     }
   }
 
+  /**
+   * Read a line into the given buffer.
+   * 
+   * This version copies whole runs of characters at once, instead of
+   * appending them one at a time.
+   * 
+   * @param buf Buffer.
+   * @return {@code true} if some characters have been read.
+   */
+  public boolean readLine(StringBuilder buf) throws IOException {
+    boolean success = false;
+    while(true) {
+      // Process buffer:
+      int begin = pos;
+      while(pos < end) {
+        success = true;
+        final char c = buffer[pos++];
+        if(c == '\n') {
+          buf.append(buffer, begin, pos - 1 - begin);
+          return success;
+        }
+        if(c == '\r') {
+          buf.append(buffer, begin, pos - 1 - begin);
+          begin = pos;
+        }
+      }
+      buf.append(buffer, begin, pos - begin);
+      // Refill buffer:
+      assert (pos >= end) : "Buffer wasn't empty when refilling!";
+      end = in.read(buffer, 0, buffer.length);
+      pos = 0;
+      if(end < 0) { // End of stream.
+        return success;
+      }
+    }
+  }
+
   @Override
   public void close() throws IOException {
     if(in != null) {
@@ -28,11 +28,16 @@ import java.util.regex.Pattern;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.utilities.FormatUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.hash.StringInterner;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.Iter;
 
 /**
  * String tokenizer.
  * 
+ * For the default column separator (whitespace, comma or semicolon), a
+ * hand-coded scanner is used instead of regular expression matching, which is
+ * substantially faster.
+ * 
  * @author Erich Schubert
  */
 public class Tokenizer implements Iter {
@@ -51,6 +56,12 @@ public class Tokenizer implements Iter {
    */
   private char[] quoteChars = QUOTE_CHAR.toCharArray();
 
+  /**
+   * Default separator pattern, handled without regular expressions. This is
+   * the same as {@code AbstractParser.DEFAULT_SEPARATOR}.
+   */
+  private static final String DEFAULT_SEPARATOR = "\\s*[,;\\s]\\s*";
+
   /**
    * Constructor.
    * 
@@ -59,15 +70,20 @@ public class Tokenizer implements Iter {
    */
   public Tokenizer(Pattern colSep, String quoteChars) {
     super();
-    this.matcher = colSep.matcher("Dummy text");
+    this.matcher = DEFAULT_SEPARATOR.equals(colSep.pattern()) && colSep.flags() == 0 ? null : colSep.matcher("Dummy text");
     this.quoteChars = quoteChars != null ? quoteChars.toCharArray() : new char[0];
   }
 
   /**
-   * Regular expression match helper.
+   * Regular expression match helper, {@code null} for the default separator.
    */
   private Matcher matcher;
 
+  /**
+   * Position of the last separator found.
+   */
+  private int sepstart, sepend;
+
   /**
    * Data currently processed.
    */
@@ -98,7 +114,10 @@ public class Tokenizer implements Iter {
   public void initialize(CharSequence input, int begin, int end) {
     this.input = input;
     this.send = end;
-    this.matcher.reset(input).region(begin, end);
+    if(matcher != null) {
+      this.matcher.reset(input).region(begin, end);
+    }
+    this.sepend = begin;
     this.index = begin;
     advance();
   }
@@ -111,14 +130,14 @@ public class Tokenizer implements Iter {
   @Override
   public Tokenizer advance() {
     char inquote = isQuote(index);
-    while(matcher.find()) {
+    while(nextSeparator()) {
       // Quoted code path vs. regular code path
       if(inquote != 0) {
         // Matching closing quote found?
-        if(matcher.start() > index + 1 && input.charAt(matcher.start() - 1) == inquote) {
+        if(sepstart > index + 1 && input.charAt(sepstart - 1) == inquote) {
           this.start = index + 1;
-          this.end = matcher.start() - 1;
-          this.index = matcher.end();
+          this.end = sepstart - 1;
+          this.index = sepend;
           this.quoted = true;
           return this;
         }
@@ -126,8 +145,8 @@ public class Tokenizer implements Iter {
       }
       else {
         this.start = index;
-        this.end = matcher.start();
-        this.index = matcher.end();
+        this.end = sepstart;
+        this.index = sepend;
         this.quoted = false;
         return this;
       }
@@ -151,6 +170,54 @@ public class Tokenizer implements Iter {
     return this;
   }
 
+  /**
+   * Find the next separator.
+   * 
+   * @return {@code false} when no further separator was found.
+   */
+  private boolean nextSeparator() {
+    if(matcher != null) {
+      if(!matcher.find()) {
+        return false;
+      }
+      sepstart = matcher.start();
+      sepend = matcher.end();
+      return true;
+    }
+    // Equivalent to the pattern: \s*[,;\s]\s*
+    final CharSequence input = this.input;
+    for(int i = sepend; i < send; i++) {
+      final char c = input.charAt(i);
+      if(c == ',' || c == ';' || isWhitespace(c)) {
+        int j = i;
+        while(j < send && isWhitespace(input.charAt(j))) {
+          ++j;
+        }
+        if(j < send && (input.charAt(j) == ',' || input.charAt(j) == ';')) {
+          ++j;
+        }
+        while(j < send && isWhitespace(input.charAt(j))) {
+          ++j;
+        }
+        sepstart = i;
+        sepend = j;
+        return true;
+      }
+    }
+    sepend = send;
+    return false;
+  }
+
+  /**
+   * Test for whitespace, as in the regular expression class {@code \s}.
+   * 
+   * @param c Character
+   * @return {@code true} for whitespace
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+  }
+
   /**
    * Get the current part as substring
    * 
@@ -170,22 +237,49 @@ public class Tokenizer implements Iter {
   public String getStrippedSubstring() {
     // TODO: detect Java <6 and make sure we only return the substring?
     // With java 7, String.substring will arraycopy the characters.
-    int sstart = start, send = end;
-    while(sstart < send) {
-      char c = input.charAt(sstart);
-      if(c != ' ' || c != '\n' || c != '\r' || c != '\t') {
-        break;
-      }
+    final int sstart = strippedStart(), send = strippedEnd(sstart);
+    return (sstart < send) ? input.subSequence(sstart, send).toString() : "";
+  }
+
+  /**
+   * Get the current part as substring, with leading and trailing whitespace
+   * removed, and shared with previous occurrences of the same string.
+   * 
+   * If the string was seen before, no new string object is created.
+   * 
+   * @param unique Strings seen before
+   * @return Current value as substring.
+   */
+  public String getStrippedSubstring(StringInterner unique) {
+    final int sstart = strippedStart(), send = strippedEnd(sstart);
+    return (sstart < send) ? unique.addOrGet(input, sstart, send) : "";
+  }
+
+  /**
+   * Start of the current token, without leading whitespace.
+   * 
+   * @return Start position
+   */
+  private int strippedStart() {
+    int sstart = start;
+    while(sstart < end && isWhitespace(input.charAt(sstart))) {
       ++sstart;
     }
-    while(--send >= sstart) {
-      char c = input.charAt(send);
-      if(c != ' ' || c != '\n' || c != '\r' || c != '\t') {
-        break;
-      }
+    return sstart;
+  }
+
+  /**
+   * End of the current token, without trailing whitespace.
+   * 
+   * @param sstart Start position
+   * @return End position
+   */
+  private int strippedEnd(int sstart) {
+    int send = end;
+    while(send > sstart && isWhitespace(input.charAt(send - 1))) {
+      --send;
     }
-    ++send;
-    return (sstart < send) ? input.subSequence(sstart, send).toString() : "";
+    return send;
   }
 
   /**
@@ -273,6 +367,8 @@ public class Tokenizer implements Iter {
    */
   public void cleanup() {
     input = null;
-    matcher.reset("");
+    if(matcher != null) {
+      matcher.reset("");
+    }
   }
 }
@@ -31,12 +31,14 @@ import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.result.BasicResult;
 import de.lmu.ifi.dbs.elki.result.HierarchicalResult;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 
@@ -65,23 +67,62 @@ public class AlgorithmStep implements WorkflowStep {
    */
   private BasicResult result = null;
 
+  /**
+   * Strategy for parallel execution, {@code null} to keep the current one.
+   */
+  private ParallelExecutor.Strategy strategy;
+
   /**
    * Constructor.
    * 
    * @param algorithms
    */
   public AlgorithmStep(List<Algorithm> algorithms) {
+    this(algorithms, null);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param algorithms Algorithms to run
+   * @param strategy Strategy for parallel execution while running the
+   *        algorithms, {@code null} to keep the current one.
+   */
+  public AlgorithmStep(List<Algorithm> algorithms, ParallelExecutor.Strategy strategy) {
     super();
     this.algorithms = algorithms;
+    this.strategy = strategy;
   }
 
   /**
    * Run algorithms.
    * 
+   * The parallel execution strategy is only changed while the algorithms run,
+   * and restored afterwards.
+   * 
    * @param database Database
    * @return Algorithm result
    */
   public HierarchicalResult runAlgorithms(Database database) {
+    final ParallelExecutor.Strategy prev = ParallelExecutor.getStrategy();
+    if (strategy != null) {
+      ParallelExecutor.setStrategy(strategy);
+    }
+    try {
+      return runAlgorithmsInternal(database);
+    }
+    finally {
+      ParallelExecutor.setStrategy(prev);
+    }
+  }
+
+  /**
+   * Run algorithms, with the parallel execution strategy already set.
+   * 
+   * @param database Database
+   * @return Algorithm result
+   */
+  private HierarchicalResult runAlgorithmsInternal(Database database) {
     result = new BasicResult("Algorithm Step", "main");
     result.addChildResult(database);
     if (LOG.isStatistics() && database.getIndexes().size() > 0) {
@@ -132,6 +173,11 @@ public class AlgorithmStep implements WorkflowStep {
      */
     protected boolean time = false;
 
+    /**
+     * Strategy for parallel execution
+     */
+    protected ParallelExecutor.Strategy parallel = ParallelExecutor.Strategy.BLOCKS;
+
     /**
      * Holds the algorithm to run.
      */
@@ -153,6 +199,14 @@ public class AlgorithmStep implements WorkflowStep {
      */
     public static final OptionID ALGORITHM_ID = new OptionID("algorithm", "Algorithm to run.");
 
+    /**
+     * Parameter to choose the strategy of parallel algorithms.
+     * <p>
+     * Key: {@code -parallel.strategy}
+     * </p>
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("parallel.strategy", "Execution strategy of parallel algorithms: fixed blocks, or work stealing for skewed workloads.");
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -161,6 +215,10 @@ public class AlgorithmStep implements WorkflowStep {
       if (config.grab(timeF)) {
         time = timeF.getValue();
       }
+      final EnumParameter<ParallelExecutor.Strategy> parallelP = new EnumParameter<>(PARALLEL_ID, ParallelExecutor.Strategy.class, ParallelExecutor.Strategy.BLOCKS);
+      if (config.grab(parallelP)) {
+        parallel = parallelP.getValue();
+      }
       // parameter algorithm
       final ObjectListParameter<Algorithm> ALGORITHM_PARAM = new ObjectListParameter<>(ALGORITHM_ID, Algorithm.class);
       if (config.grab(ALGORITHM_PARAM)) {
@@ -173,7 +231,7 @@ public class AlgorithmStep implements WorkflowStep {
       if (time) {
         LoggingConfiguration.setStatistics();
       }
-      return new AlgorithmStep(algorithms);
+      return new AlgorithmStep(algorithms, parallel);
     }
   }
 }
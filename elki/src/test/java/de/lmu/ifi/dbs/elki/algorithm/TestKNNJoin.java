@@ -121,6 +121,39 @@ public class TestKNNJoin implements JUnit4Test {
     }
   }
 
+  /**
+   * Test the blocked Euclidean join, used when there is no index.
+   */
+  @Test
+  public void testKNNJoinBlocked() {
+    ListParameterization inputparams = new ListParameterization();
+    inputparams.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    List<Class<?>> filters = Arrays.asList(new Class<?>[] { FixedDBIDsFilter.class });
+    inputparams.addParameter(FileBasedDatabaseConnection.Parameterizer.FILTERS_ID, filters);
+    inputparams.addParameter(FixedDBIDsFilter.Parameterizer.IDSTART_ID, 1);
+
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, inputparams);
+    inputparams.failOnErrors();
+
+    db.initialize();
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(relation, EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = QueryUtil.getLinearScanKNNQuery(dq);
+
+    KNNJoin<DoubleVector, ?, ?> knnjoin = new KNNJoin<DoubleVector, RStarTreeNode, SpatialEntry>(EuclideanDistanceFunction.STATIC, 2);
+    DataStore<KNNList> result = knnjoin.run(db);
+
+    MeanVariance meansize = new MeanVariance();
+    for(DBIDIter id = relation.getDBIDs().iter(); id.valid(); id.advance()) {
+      KNNList knnlist = result.get(id);
+      meansize.put(knnlist.size());
+      // Must be identical to the linear scan, not just approximately.
+      org.junit.Assert.assertEquals("kNN distance differs from linear scan.", knnq.getKNNForDBID(id, 2).getKNNDistance(), knnlist.getKNNDistance(), 0.);
+    }
+    org.junit.Assert.assertEquals("Euclidean mean 2NN set size", mean2nnEuclid, meansize.getMean(), 0.00001);
+    org.junit.Assert.assertEquals("Euclidean variance 2NN", var2nnEuclid, meansize.getSampleVariance(), 0.00001);
+  }
+
   /**
    * Test {@link RStarTree} using a file based database connection.
    * 
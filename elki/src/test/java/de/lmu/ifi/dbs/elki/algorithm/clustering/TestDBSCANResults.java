@@ -140,4 +140,53 @@ public class TestDBSCANResults extends AbstractSimpleAlgorithmTest implements JU
     testClusterSizes(result, new int[] { 11, 200, 203, 224 });
     testFMeasure(db, result, 0.954382);
   }
-}
\ No newline at end of file
+
+  /**
+   * Run the parallel GDBSCAN variant with fixed parameters and compare the
+   * result to a golden standard.
+   * 
+   * @throws ParameterException
+   */
+  @Test
+  public void testParallelGDBSCANResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+    params.addFlag(GeneralizedDBSCAN.Parameterizer.PARALLEL_ID);
+    GeneralizedDBSCAN dbscan = ClassGenericsUtil.parameterizeOrAbort(GeneralizedDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    // run DBSCAN on database
+    Clustering<Model> result = dbscan.run(db);
+
+    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+    testFMeasure(db, result, 0.996413);
+  }
+
+  /**
+   * Run the parallel GDBSCAN variant with fixed parameters and compare the
+   * result to a golden standard.
+   * 
+   * @throws ParameterException
+   */
+  @Test
+  public void testParallelGDBSCANOnSingleLinkDataset() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+    params.addFlag(GeneralizedDBSCAN.Parameterizer.PARALLEL_ID);
+    GeneralizedDBSCAN dbscan = ClassGenericsUtil.parameterizeOrAbort(GeneralizedDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    // run DBSCAN on database
+    Clustering<Model> result = dbscan.run(db);
+    testClusterSizes(result, new int[] { 11, 200, 203, 224 });
+    testFMeasure(db, result, 0.954382);
+  }
+}
@@ -0,0 +1,102 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full grid-based DBSCAN run, and compares the result with a
+ * clustering derived from the data set labels, and with regular DBSCAN.
+ * 
+ * @author agent
+ */
+public class TestGridDBSCAN extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * Run grid-based DBSCAN with fixed parameters and compare the result to a
+   * golden standard.
+   */
+  @Test
+  public void testGridDBSCANResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+    GridDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(GridDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    Clustering<Model> result = dbscan.run(db);
+    testFMeasure(db, result, 0.996413);
+    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+  }
+
+  /**
+   * Compare grid-based DBSCAN to regular DBSCAN, object by object.
+   */
+  @Test
+  public void testGridDBSCANOnSingleLinkDataset() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+    GridDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(GridDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    Clustering<Model> result = dbscan.run(db);
+    testFMeasure(db, result, 0.954382);
+    testClusterSizes(result, new int[] { 11, 200, 203, 224 });
+
+    ListParameterization params2 = new ListParameterization();
+    params2.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+    params2.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+    DBSCAN<DoubleVector> ref = ClassGenericsUtil.parameterizeOrAbort(DBSCAN.class, params2);
+    List<Cluster<Model>> exp = ref.run(db).getToplevelClusters();
+    List<Cluster<Model>> got = result.getToplevelClusters();
+    assertEquals("Number of clusters differs.", exp.size(), got.size());
+    for(int i = 0; i < exp.size(); i++) {
+      assertEquals("Noise flag differs.", exp.get(i).isNoise(), got.get(i).isNoise());
+      assertEquals("Cluster size differs.", exp.get(i).size(), got.get(i).size());
+      assertTrue("Cluster members differ.", DBIDUtil.intersectionSize(exp.get(i).getIDs(), got.get(i).getIDs()) == exp.get(i).size());
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.workflow.AlgorithmStep;
+
+/**
+ * Perform agglomerative hierarchical clustering, using Anderberg's algorithm.
+ *
+ * @author agent
+ */
+public class TestAnderbergHierarchicalClustering extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard.
+   */
+  @Test
+  public void testWard() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.OUTPUTMODE_ID, ExtractFlatClusteringFromHierarchy.OutputMode.STRICT_PARTITIONS);
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.MINCLUSTERS_ID, 3);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, AnderbergHierarchicalClustering.class);
+    ExtractFlatClusteringFromHierarchy c = ClassGenericsUtil.parameterizeOrAbort(ExtractFlatClusteringFromHierarchy.class, params);
+    testParameterizationOk(params);
+
+    // run clustering algorithm on database
+    Result result = c.run(db);
+    Clustering<?> clustering = findSingleClustering(result);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard.
+   */
+  @Test
+  public void testCentroid() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.OUTPUTMODE_ID, ExtractFlatClusteringFromHierarchy.OutputMode.STRICT_PARTITIONS);
+    params.addParameter(ExtractFlatClusteringFromHierarchy.Parameterizer.MINCLUSTERS_ID, 3);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, AnderbergHierarchicalClustering.class);
+    params.addParameter(NaiveAgglomerativeHierarchicalClustering.Parameterizer.LINKAGE_ID, CentroidLinkageMethod.class);
+    ExtractFlatClusteringFromHierarchy c = ClassGenericsUtil.parameterizeOrAbort(ExtractFlatClusteringFromHierarchy.class, params);
+    testParameterizationOk(params);
+
+    // run clustering algorithm on database
+    Result result = c.run(db);
+    Clustering<?> clustering = findSingleClustering(result);
+    testFMeasure(db, clustering, 0.9131815901979985);
+    testClusterSizes(clustering, new int[] { 2, 2, 3, 3, 3, 9, 190, 205, 227 });
+  }
+
+  /**
+   * Compare the pointer hierarchy to the naive algorithm, for every linkage.
+   */
+  @Test
+  public void testSameAsNaive() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Class<?>[] linkages = { SingleLinkageMethod.class, CompleteLinkageMethod.class, GroupAverageLinkageMethod.class, WeightedAverageLinkageMethod.class, WardLinkageMethod.class, CentroidLinkageMethod.class, MedianLinkageMethod.class };
+    for(Class<?> linkage : linkages) {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(NaiveAgglomerativeHierarchicalClustering.Parameterizer.LINKAGE_ID, linkage);
+      NaiveAgglomerativeHierarchicalClustering<?> naive = ClassGenericsUtil.parameterizeOrAbort(NaiveAgglomerativeHierarchicalClustering.class, params);
+      testParameterizationOk(params);
+      params = new ListParameterization();
+      params.addParameter(NaiveAgglomerativeHierarchicalClustering.Parameterizer.LINKAGE_ID, linkage);
+      AnderbergHierarchicalClustering<?> anderberg = ClassGenericsUtil.parameterizeOrAbort(AnderbergHierarchicalClustering.class, params);
+      testParameterizationOk(params);
+
+      assertSameHierarchy(linkage.getSimpleName(), naive.run(db), anderberg.run(db));
+    }
+  }
+
+  /**
+   * Assert that two pointer hierarchies are the same.
+   *
+   * @param msg Message prefix
+   * @param expected Expected hierarchy
+   * @param actual Actual hierarchy
+   */
+  protected static void assertSameHierarchy(String msg, PointerHierarchyRepresentationResult expected, PointerHierarchyRepresentationResult actual) {
+    DBIDVar p1 = DBIDUtil.newVar(), p2 = DBIDUtil.newVar();
+    for(DBIDIter it = expected.getDBIDs().iter(); it.valid(); it.advance()) {
+      expected.getParentStore().assignVar(it, p1);
+      actual.getParentStore().assignVar(it, p2);
+      assertTrue(msg + ": parent differs", DBIDUtil.equal(p1, p2));
+      assertEquals(msg + ": distance differs", expected.getParentDistanceStore().doubleValue(it), actual.getParentDistanceStore().doubleValue(it), 1e-10);
+    }
+  }
+}
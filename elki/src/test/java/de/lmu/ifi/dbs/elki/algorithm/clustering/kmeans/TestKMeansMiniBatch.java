@@ -0,0 +1,123 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Vector;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.ParameterException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Regression test for mini-batch k-means.
+ * 
+ * @author agent
+ */
+public class TestKMeansMiniBatch extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * Run KMeans with fixed parameters and compare the result to a golden
+   * standard.
+   * 
+   * @throws ParameterException
+   */
+  @Test
+  public void testKMeansMiniBatch() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 2);
+    params.addParameter(KMeansMiniBatch.Parameterizer.BATCHSIZE_ID, 100);
+    params.addParameter(KMeansMiniBatch.Parameterizer.RANDOM_ID, 0);
+    AbstractKMeans<DoubleVector, ?> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansMiniBatch.class, params);
+    testParameterizationOk(params);
+
+    // run KMeans on database
+    Clustering<?> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Process the data as a stream, in a single pass, and compare the means to
+   * the batch result.
+   * 
+   * @throws ParameterException
+   */
+  @Test
+  public void testKMeansMiniBatchStream() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 3);
+    params.addParameter(KMeansMiniBatch.Parameterizer.BATCHSIZE_ID, 100);
+    params.addParameter(KMeansMiniBatch.Parameterizer.RANDOM_ID, 0);
+    KMeansMiniBatch<DoubleVector> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansMiniBatch.class, params);
+    testParameterizationOk(params);
+    Clustering<KMeansModel> result = kmeans.run(db);
+
+    // The file is sorted by cluster, so shuffle the stream.
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(rel.getDBIDs());
+    DBIDUtil.randomShuffle(ids, new Random(0L));
+    List<DoubleVector> data = new ArrayList<>(ids.size());
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      data.add(rel.get(it));
+    }
+    BundleStreamSource source = MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), data).asStream();
+    List<Vector> means = kmeans.run(source);
+    assertEquals("Number of means", 5, means.size());
+    for(Cluster<KMeansModel> c : result.getAllClusters()) {
+      double mindist = Double.POSITIVE_INFINITY;
+      for(Vector m : means) {
+        mindist = Math.min(mindist, m.minus(c.getModel().getMean()).euclideanLength());
+      }
+      assertTrue("Streaming mean too far from batch mean: " + mindist, mindist < 3.);
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.AbstractKMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHamerly;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Verify that the parallel bounded k-means variants produce exactly the same
+ * result as their serial counterparts.
+ * 
+ * @author agent
+ */
+public class TestParallelBoundedKMeans extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * Compare {@link ParallelElkanKMeans} to {@link KMeansElkan}.
+   */
+  @Test
+  public void testElkanIdenticalToSerial() {
+    testIdenticalToSerial(KMeansElkan.class, ParallelElkanKMeans.class);
+  }
+
+  /**
+   * Compare {@link ParallelHamerlyKMeans} to {@link KMeansHamerly}.
+   */
+  @Test
+  public void testHamerlyIdenticalToSerial() {
+    testIdenticalToSerial(KMeansHamerly.class, ParallelHamerlyKMeans.class);
+  }
+
+  /**
+   * Compare a parallel variant to the serial version, on a data set large
+   * enough to be split into multiple partitions. The results must be
+   * identical.
+   * 
+   * @param serialc Serial k-means class
+   * @param parallelc Parallel k-means class
+   */
+  private void testIdenticalToSerial(Class<?> serialc, Class<?> parallelc) {
+    Random r = new Random(0L);
+    double[][] data = new double[20000][4];
+    for(int i = 0; i < data.length; i++) {
+      final int c = r.nextInt(10);
+      for(int d = 0; d < data[i].length; d++) {
+        data[i][d] = c * (d + 1) + r.nextGaussian() * 3;
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+
+    AbstractKMeans<DoubleVector, KMeansModel> serial = makeKMeans(serialc);
+    AbstractKMeans<DoubleVector, KMeansModel> parallel = makeKMeans(parallelc);
+    List<Cluster<KMeansModel>> c1 = serial.run(db).getToplevelClusters();
+    List<Cluster<KMeansModel>> c2 = parallel.run(db).getToplevelClusters();
+    assertEquals("Number of clusters", c1.size(), c2.size());
+    for(int i = 0; i < c1.size(); i++) {
+      assertEquals("Cluster size", c1.get(i).size(), c2.get(i).size());
+      assertArrayEquals("Cluster mean", c1.get(i).getModel().getMean().getArrayRef(), c2.get(i).getModel().getMean().getArrayRef(), 0.);
+      assertEquals("Variance sum", c1.get(i).getModel().getVarianceContribution(), c2.get(i).getModel().getVarianceContribution(), 0.);
+    }
+  }
+
+  /**
+   * Parameterize a k-means variant with fixed parameters.
+   * 
+   * @param cls k-means class
+   * @return Algorithm instance
+   */
+  private AbstractKMeans<DoubleVector, KMeansModel> makeKMeans(Class<?> cls) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 10);
+    params.addParameter(KMeans.SEED_ID, 0);
+    AbstractKMeans<DoubleVector, KMeansModel> kmeans = ClassGenericsUtil.parameterizeOrAbort(cls, params);
+    testParameterizationOk(params);
+    return kmeans;
+  }
+}
@@ -0,0 +1,114 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full kNN graph OPTICS run, and compares the result with a
+ * clustering derived from the data set labels.
+ * 
+ * @author agent
+ */
+public class TestOPTICSKNNResults extends AbstractSimpleAlgorithmTest implements JUnit4Test {
+  /**
+   * With enough neighbors, the result must be the same as regular OPTICS.
+   */
+  @Test
+  public void testOPTICSKNNExact() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(OPTICSKNN.Parameterizer.MINPTS_ID, 18);
+    params.addParameter(OPTICSKNN.Parameterizer.K_ID, 710);
+    params.addParameter(OPTICSXi.Parameterizer.XI_ID, 0.038);
+    params.addParameter(OPTICSXi.Parameterizer.XIALG_ID, OPTICSKNN.class);
+    OPTICSXi opticsxi = ClassGenericsUtil.parameterizeOrAbort(OPTICSXi.class, params);
+    testParameterizationOk(params);
+
+    Clustering<?> clustering = opticsxi.run(db);
+    testFMeasure(db, clustering, 0.877117490049);
+    testClusterSizes(clustering, new int[] { 109, 121, 209, 271 });
+  }
+
+  /**
+   * Approximation using few neighbors and a bounded heap.
+   */
+  @Test
+  public void testOPTICSKNNApproximate() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(OPTICSKNN.Parameterizer.MINPTS_ID, 18);
+    params.addParameter(OPTICSKNN.Parameterizer.K_ID, 36);
+    params.addParameter(OPTICSKNN.Parameterizer.HEAPSIZE_ID, 50);
+    params.addParameter(OPTICSXi.Parameterizer.XI_ID, 0.038);
+    params.addParameter(OPTICSXi.Parameterizer.XIALG_ID, OPTICSKNN.class);
+    OPTICSXi opticsxi = ClassGenericsUtil.parameterizeOrAbort(OPTICSXi.class, params);
+    testParameterizationOk(params);
+
+    Clustering<?> clustering = opticsxi.run(db);
+    testFMeasure(db, clustering, 0.8193777829179437);
+    testClusterSizes(clustering, new int[] { 2, 34, 109, 121, 209, 235 });
+  }
+
+  /**
+   * Stop the algorithm early, via the listener.
+   */
+  @Test
+  public void testOPTICSKNNAnytime() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(OPTICSKNN.Parameterizer.MINPTS_ID, 18);
+    OPTICSKNN<DoubleVector> optics = ClassGenericsUtil.parameterizeOrAbort(OPTICSKNN.class, params);
+    testParameterizationOk(params);
+
+    final int[] calls = new int[1];
+    ClusterOrder order = optics.run(db, rel, new OPTICSKNN.Listener() {
+      @Override
+      public boolean clusterOrderExtended(ClusterOrder order) {
+        ++calls[0];
+        return order.size() < 300;
+      }
+    }, 100);
+    assertEquals("Partial cluster order has the wrong size.", 300, order.size());
+    assertEquals("Listener not called as expected.", 4, calls[0]);
+  }
+}
@@ -0,0 +1,153 @@
+package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.BitVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.MultipleObjectsBundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+import de.lmu.ifi.dbs.elki.utilities.BitsUtil;
+
+/**
+ * Abstract base class for frequent itemset mining tests, which verifies the
+ * results against a brute-force enumeration of all itemsets on a small
+ * transaction database.
+ * 
+ * @author agent
+ */
+public abstract class AbstractFrequentItemsetAlgorithmTest {
+  /**
+   * Number of items in the test data.
+   */
+  protected static final int DIM = 10;
+
+  /**
+   * Generate random transactions, where the item frequency decreases with the
+   * item number, and groups of items are correlated.
+   * 
+   * @param size Number of transactions
+   * @param seed Random seed
+   * @return Transactions
+   */
+  protected List<BitVector> makeRandomTransactions(int size, long seed) {
+    Random r = new Random(seed);
+    List<BitVector> data = new ArrayList<>(size);
+    for(int j = 0; j < size; j++) {
+      long[] bits = BitsUtil.zero(DIM);
+      int g = r.nextInt(4);
+      for(int i = 0; i < DIM; i++) {
+        double p = 0.6 / (1 + i * .3) * ((i % 4 == g) ? 2.5 : 1.);
+        if(r.nextDouble() < p) {
+          BitsUtil.setI(bits, i);
+        }
+      }
+      data.add(new BitVector(bits, DIM));
+    }
+    return data;
+  }
+
+  /**
+   * Generate nested transactions {0}, {0,1}, ..., {0,...,DIM-1}, such that the
+   * FP-tree degenerates to a single path.
+   * 
+   * @param reps Number of repetitions of each transaction
+   * @return Transactions
+   */
+  protected List<BitVector> makeNestedTransactions(int reps) {
+    List<BitVector> data = new ArrayList<>(reps * DIM);
+    long[] bits = BitsUtil.zero(DIM);
+    for(int i = 0; i < DIM; i++) {
+      BitsUtil.setI(bits, i);
+      for(int j = 0; j < reps; j++) {
+        data.add(new BitVector(bits.clone(), DIM));
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Build a database from transactions.
+   * 
+   * @param data Transactions
+   * @return Database
+   */
+  protected Database makeDatabase(List<BitVector> data) {
+    VectorFieldTypeInformation<BitVector> type = new VectorFieldTypeInformation<>(BitVector.FACTORY, DIM);
+    Database db = new StaticArrayDatabase(new MultipleObjectsBundleDatabaseConnection(MultipleObjectsBundle.makeSimple(type, data)), null);
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Run an algorithm, and compare the result to a brute-force enumeration of
+   * all itemsets: every frequent itemset of the permitted length must be
+   * found once, with the correct support, and no other itemset.
+   * 
+   * @param algorithm Algorithm to test
+   * @param data Transactions
+   * @param minsupp Absolute minimum support
+   * @param minlength Minimum itemset length
+   * @param maxlength Maximum itemset length
+   */
+  protected void testBruteForce(AbstractFrequentItemsetAlgorithm algorithm, List<BitVector> data, int minsupp, int minlength, int maxlength) {
+    FrequentItemsetsResult res = algorithm.run(makeDatabase(data));
+    // Support of every found itemset, indexed by the item bitmask.
+    int[] found = new int[1 << DIM];
+    for(Itemset itemset : res.getItemsets()) {
+      long[] items = itemset.getItems();
+      final int mask = (int) items[0];
+      assertTrue("Itemset reported twice: " + itemset, found[mask] == 0);
+      found[mask] = itemset.getSupport();
+    }
+    int expected = 0;
+    for(int mask = 1; mask < found.length; mask++) {
+      final int len = Integer.bitCount(mask);
+      final long[] items = new long[] { mask };
+      int support = 0;
+      for(BitVector bv : data) {
+        if(bv.contains(items)) {
+          support++;
+        }
+      }
+      if(support >= minsupp && len >= minlength && len <= maxlength) {
+        assertEquals("Support of itemset " + Integer.toBinaryString(mask) + " is wrong.", support, found[mask]);
+        expected++;
+      }
+      else {
+        assertEquals("Itemset " + Integer.toBinaryString(mask) + " should not be reported.", 0, found[mask]);
+      }
+    }
+    assertEquals("Number of itemsets does not match.", expected, res.getItemsets().size());
+  }
+}
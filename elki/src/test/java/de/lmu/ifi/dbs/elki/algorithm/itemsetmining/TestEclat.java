@@ -0,0 +1,82 @@
+package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.BitVector;
+
+/**
+ * Regression test for {@link Eclat}, comparing the result to a brute-force
+ * enumeration of all itemsets.
+ * 
+ * @author agent
+ */
+public class TestEclat extends AbstractFrequentItemsetAlgorithmTest implements JUnit4Test {
+  /**
+   * Test the sparse variant on random transactions.
+   */
+  @Test
+  public void testRandom() {
+    testRandom(false);
+  }
+
+  /**
+   * Test the diffset variant on random transactions.
+   */
+  @Test
+  public void testRandomDiffsets() {
+    testRandom(true);
+  }
+
+  /**
+   * Test on nested transactions, with deep branches.
+   */
+  @Test
+  public void testNested() {
+    List<BitVector> data = makeNestedTransactions(3);
+    for(boolean diffsets : new boolean[] { false, true }) {
+      testBruteForce(new Eclat(4, 0, 0), data, 4, 1, DIM);
+      testBruteForce(new Eclat(4, 2, 3), data, 4, 2, 3);
+      testBruteForce(new Eclat(1, 4, 4), data, 1, 4, 4);
+    }
+  }
+
+  /**
+   * Test on random transactions, with different length constraints.
+   * 
+   * @param diffsets Use diffsets
+   */
+  private void testRandom(boolean diffsets) {
+    List<BitVector> data = makeRandomTransactions(200, 0L);
+    testBruteForce(new Eclat(5, 0, 0), data, 5, 1, DIM);
+    testBruteForce(new Eclat(5, 1, 1), data, 5, 1, 1);
+    testBruteForce(new Eclat(5, 2, 4), data, 5, 2, 4);
+    testBruteForce(new Eclat(5, 3, 3), data, 5, 3, 3);
+    testBruteForce(new Eclat(.2, 2, 0), data, 40, 2, DIM);
+  }
+}
@@ -0,0 +1,64 @@
+package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.BitVector;
+
+/**
+ * Regression test for {@link FPGrowth}, comparing the result to a brute-force
+ * enumeration of all itemsets.
+ * 
+ * @author agent
+ */
+public class TestFPGrowth extends AbstractFrequentItemsetAlgorithmTest implements JUnit4Test {
+  /**
+   * Test on random transactions, with different length constraints.
+   */
+  @Test
+  public void testRandom() {
+    List<BitVector> data = makeRandomTransactions(200, 0L);
+    testBruteForce(new FPGrowth(5, 0, 0), data, 5, 1, DIM);
+    testBruteForce(new FPGrowth(5, 1, 1), data, 5, 1, 1);
+    testBruteForce(new FPGrowth(5, 2, 4), data, 5, 2, 4);
+    testBruteForce(new FPGrowth(5, 3, 3), data, 5, 3, 3);
+    testBruteForce(new FPGrowth(.2, 2, 0), data, 40, 2, DIM);
+  }
+
+  /**
+   * Test on nested transactions, where the tree consists of a single path.
+   */
+  @Test
+  public void testSinglePath() {
+    List<BitVector> data = makeNestedTransactions(3);
+    testBruteForce(new FPGrowth(4, 0, 0), data, 4, 1, DIM);
+    testBruteForce(new FPGrowth(4, 2, 3), data, 4, 2, 3);
+    testBruteForce(new FPGrowth(10, 3, 0), data, 10, 3, DIM);
+    testBruteForce(new FPGrowth(1, 4, 4), data, 1, 4, 4);
+  }
+}
@@ -0,0 +1,93 @@
+package de.lmu.ifi.dbs.elki.database;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.PackedDoubleVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test that loads a data file into a packed relation, and compares it to
+ * the regular materialized relation.
+ * 
+ * @author agent
+ */
+public class TestPackedVectorRelation implements JUnit4Test {
+  public static final String filename = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testPackedRelation() {
+    Relation<? extends NumberVector> rel = loadRelation(false);
+    Relation<? extends NumberVector> prel = loadRelation(true);
+    assertTrue("Packed storage not used.", prel instanceof PackedDoubleVectorRelation);
+    assertEquals("Sizes differ.", rel.size(), prel.size());
+
+    KNNQuery<? extends NumberVector> knnq = rel.getDatabase().getKNNQuery(rel.getDatabase().getDistanceQuery(rel, EuclideanDistanceFunction.STATIC), 10);
+    KNNQuery<? extends NumberVector> pknnq = prel.getDatabase().getKNNQuery(prel.getDatabase().getDistanceQuery(prel, EuclideanDistanceFunction.STATIC), 10);
+    for(DBIDIter it = rel.iterDBIDs(), pit = prel.iterDBIDs(); it.valid(); it.advance(), pit.advance()) {
+      NumberVector v = rel.get(it), pv = prel.get(pit);
+      assertEquals("Dimensionality differs.", v.getDimensionality(), pv.getDimensionality());
+      for(int d = 0; d < v.getDimensionality(); d++) {
+        assertEquals("Values differ.", v.doubleValue(d), pv.doubleValue(d), 0.);
+      }
+      KNNList knn = knnq.getKNNForDBID(it, 10), pknn = pknnq.getKNNForDBID(pit, 10);
+      assertEquals("kNN sizes differ.", knn.size(), pknn.size());
+      for(DoubleDBIDListIter ki = knn.iter(), pki = pknn.iter(); ki.valid(); ki.advance(), pki.advance()) {
+        assertEquals("kNN distances differ.", ki.doubleValue(), pki.doubleValue(), 1e-15);
+      }
+    }
+  }
+
+  /**
+   * Load the data set.
+   * 
+   * @param packed Use packed storage
+   * @return Vector relation
+   */
+  private Relation<? extends NumberVector> loadRelation(boolean packed) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, filename);
+    if(packed) {
+      params.addFlag(StaticArrayDatabase.Parameterizer.PACKED_ID);
+    }
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+}
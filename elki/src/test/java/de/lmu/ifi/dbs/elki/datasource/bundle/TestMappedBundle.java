@@ -0,0 +1,164 @@
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.MappedDoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test random access to a memory-mapped bundle.
+ * 
+ * @author agent
+ */
+public class TestMappedBundle implements JUnit4Test {
+  File file = new File("MappedBundleTestFile.test.dat");
+
+  File indexfile = new File("MappedBundleTestFile.test.idx");
+
+  /**
+   * Input data file.
+   */
+  public static final String filename = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  /**
+   * Check that we don't overwrite any file.
+   * 
+   * @throws Exception on errors.
+   */
+  @Before
+  public void safetyCheck() throws Exception {
+    if(file.exists() || indexfile.exists()) {
+      Assert.fail("Could not run test - test file already exists.");
+    }
+  }
+
+  /**
+   * Clean up afterwards
+   * 
+   * @throws Exception on errors.
+   */
+  @After
+  public void cleanup() throws Exception {
+    for(File f : new File[] { file, indexfile }) {
+      if(f.exists() && !f.delete()) {
+        Assert.fail("Error cleaning up: can't remove test file.");
+      }
+    }
+  }
+
+  @Test
+  public void testMappedBundle() throws IOException {
+    MultipleObjectsBundle bundle = writeBundle();
+    FileInputStream fis = new FileInputStream(file);
+    FileChannel input = fis.getChannel();
+    MappedBundle mapped = new MappedBundle(input);
+    input.close();
+    fis.close();
+    compare(bundle, mapped);
+  }
+
+  @Test
+  public void testPersistentIndex() throws IOException {
+    MultipleObjectsBundle bundle = writeBundle();
+    // First pass creates the index, second pass maps it.
+    for(int pass = 0; pass < 2; pass++) {
+      FileInputStream fis = new FileInputStream(file);
+      FileChannel input = fis.getChannel();
+      RandomAccessFile index = new RandomAccessFile(indexfile, "rw");
+      MappedBundle mapped = new MappedBundle(input, index.getChannel());
+      Assert.assertTrue("Index was not written.", indexfile.length() > 0);
+      index.close();
+      input.close();
+      fis.close();
+      compare(bundle, mapped);
+    }
+  }
+
+  /**
+   * Load the test data, and write it to the test file.
+   * 
+   * @return Bundle
+   * @throws IOException on errors
+   */
+  private MultipleObjectsBundle writeBundle() throws IOException {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, filename);
+    FileBasedDatabaseConnection dbc = ClassGenericsUtil.parameterizeOrAbort(FileBasedDatabaseConnection.class, params);
+    MultipleObjectsBundle bundle = dbc.loadData();
+
+    FileOutputStream fos = new FileOutputStream(file);
+    FileChannel channel = fos.getChannel();
+    new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+    channel.close();
+    fos.close();
+    return bundle;
+  }
+
+  /**
+   * Compare the mapped bundle to the original data.
+   * 
+   * @param bundle Original bundle
+   * @param mapped Mapped bundle
+   */
+  private void compare(MultipleObjectsBundle bundle, MappedBundle mapped) {
+    Assert.assertEquals("Number of columns does not match.", bundle.metaLength(), mapped.metaLength());
+    Assert.assertEquals("Number of objects does not match.", bundle.dataLength(), mapped.dataLength());
+    boolean sawvector = false;
+    // Access in reverse order, to test random access.
+    for(int j = bundle.dataLength() - 1; j >= 0; j--) {
+      for(int i = 0; i < bundle.metaLength(); i++) {
+        Object o1 = bundle.data(j, i), o2 = mapped.data(j, i);
+        if(o1 instanceof NumberVector) {
+          Assert.assertTrue("Vectors were not mapped.", o2 instanceof MappedDoubleVector);
+          NumberVector v1 = (NumberVector) o1, v2 = (NumberVector) o2;
+          Assert.assertEquals("Dimensionality does not match.", v1.getDimensionality(), v2.getDimensionality());
+          for(int d = 0; d < v1.getDimensionality(); d++) {
+            Assert.assertEquals("Value does not match.", v1.doubleValue(d), v2.doubleValue(d), 0.);
+          }
+          sawvector = true;
+        }
+        else {
+          Assert.assertEquals("Object does not match.", o1.toString(), o2.toString());
+        }
+      }
+    }
+    Assert.assertTrue("No vectors in test data?", sawvector);
+  }
+}
@@ -0,0 +1,100 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Test the parallel parser, by comparing it to the serial parser.
+ * 
+ * @author agent
+ */
+public class TestParallelNumberVectorLabelParser implements JUnit4Test {
+  /** Test data set to use. */
+  public static String DATA = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testSmallBlocks() throws IOException {
+    byte[] data = readFile(DATA);
+    Pattern colsep = Pattern.compile(AbstractParser.DEFAULT_SEPARATOR);
+    Pattern comment = Pattern.compile(AbstractParser.COMMENT_PATTERN);
+    NumberVectorLabelParser<DoubleVector> serial = new NumberVectorLabelParser<>(colsep, AbstractParser.QUOTE_CHARS, comment, null, DoubleVector.FACTORY);
+    MultipleObjectsBundle expect = serial.parse(new ByteArrayInputStream(data));
+    // Use tiny blocks, and blocks smaller than a line.
+    for(int blocksize : new int[] { 8, 100, 1000, 1 << 20 }) {
+      ParallelNumberVectorLabelParser<DoubleVector> parallel = new ParallelNumberVectorLabelParser<>(colsep, AbstractParser.QUOTE_CHARS, comment, null, DoubleVector.FACTORY, blocksize);
+      MultipleObjectsBundle bundle = parallel.parse(new ByteArrayInputStream(data));
+      assertEquals("Number of columns differs.", expect.metaLength(), bundle.metaLength());
+      assertEquals("Number of objects differs.", expect.dataLength(), bundle.dataLength());
+      for(int j = 0; j < expect.metaLength(); j++) {
+        assertEquals("Column type differs.", expect.meta(j).toString(), bundle.meta(j).toString());
+      }
+      for(int i = 0; i < expect.dataLength(); i++) {
+        NumberVector v1 = (NumberVector) expect.data(i, 0);
+        NumberVector v2 = (NumberVector) bundle.data(i, 0);
+        assertEquals("Dimensionality differs.", v1.getDimensionality(), v2.getDimensionality());
+        for(int d = 0; d < v1.getDimensionality(); d++) {
+          assertEquals("Value differs.", v1.doubleValue(d), v2.doubleValue(d), 0.);
+        }
+        assertEquals("Label differs.", expect.data(i, 1).toString(), bundle.data(i, 1).toString());
+      }
+    }
+  }
+
+  /**
+   * Read a file into memory.
+   * 
+   * @param fname File name
+   * @return Contents
+   * @throws IOException on read errors
+   */
+  private static byte[] readFile(String fname) throws IOException {
+    InputStream in = new FileInputStream(fname);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      for(int r = in.read(buf); r >= 0; r = in.read(buf)) {
+        out.write(buf, 0, r);
+      }
+      return out.toByteArray();
+    }
+    finally {
+      in.close();
+    }
+  }
+}
@@ -32,6 +32,7 @@ import java.util.regex.Pattern;
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.hash.StringInterner;
 import de.lmu.ifi.dbs.elki.utilities.io.Tokenizer;
 
 /**
@@ -92,6 +93,40 @@ public class TestTokenizer implements JUnit4Test {
     tokenizerTest(expect);
   }
 
+  @Test
+  public void testDefaultSeparator() {
+    // The default pattern is not evaluated as regular expression.
+    Tokenizer fast = new Tokenizer(Pattern.compile(AbstractParser.DEFAULT_SEPARATOR), "\"'");
+    Tokenizer regex = new Tokenizer(Pattern.compile("(?:" + AbstractParser.DEFAULT_SEPARATOR + ")"), "\"'");
+    final String[] inputs = { "1,2;3 4", "1 , 2 ;3\t\t4", "a,,b;;c", " 1 2 ", "'a b', \"c;d\" e", "1,\t;2", ",", "x" };
+    for(String input : inputs) {
+      fast.initialize(input, 0, input.length());
+      regex.initialize(input, 0, input.length());
+      for(; regex.valid(); regex.advance(), fast.advance()) {
+        assertTrue("Tokenizer stopped early on: " + input, fast.valid());
+        assertEquals("Tokens differ on: " + input, regex.getSubstring(), fast.getSubstring());
+        assertEquals("Quoting differs on: " + input, regex.isQuoted(), fast.isQuoted());
+      }
+      assertTrue("Spurious data after expected end on: " + input, !fast.valid());
+    }
+  }
+
+  @Test
+  public void testInterned() {
+    final String input = "abc def abc ' def '";
+    StringInterner unique = new StringInterner();
+    t.initialize(input, 0, input.length());
+    String s1 = t.getStrippedSubstring(unique);
+    String s2 = t.advance().getStrippedSubstring(unique);
+    String s3 = t.advance().getStrippedSubstring(unique);
+    String s4 = t.advance().getStrippedSubstring(unique);
+    assertEquals("abc", s1);
+    assertEquals("def", s2);
+    assertTrue("Strings not shared.", s1 == s3);
+    assertTrue("Strings not shared.", s2 == s4);
+    assertEquals("Wrong number of unique strings.", 2, unique.size());
+  }
+
   private void tokenizerTest(Object[] expect) {
     for(int i = 0; i < expect.length; i++, t.advance()) {
       assertTrue("Tokenizer stopped early.", t.valid());
@@ -25,11 +25,16 @@ package de.lmu.ifi.dbs.elki.index;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.JUnit4Test;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
@@ -145,6 +150,7 @@ public abstract class AbstractTestIndexStructures implements JUnit4Test {
         DoubleVector c2 = new DoubleVector(shouldc[i]);
         assertEquals("Expected vector doesn't match: " + c.toString(), 0.0, dist.distance(c, c2), 1e-15);
       }
+      testBulkKNN(knnq, rep);
     }
     if(expectRangeQuery != null) {
       // Do a range query
@@ -223,4 +229,22 @@ public abstract class AbstractTestIndexStructures implements JUnit4Test {
       }
     }
   }
+
+  /**
+   * Verify that bulk kNN queries agree with single queries.
+   * 
+   * @param knnq kNN query
+   * @param rep Relation
+   */
+  protected void testBulkKNN(KNNQuery<DoubleVector> knnq, Relation<DoubleVector> rep) {
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(DBIDUtil.ensureArray(rep.getDBIDs()), k);
+    assertEquals("Bulk result size does not match!", rep.size(), bulk.size());
+    int i = 0;
+    for(DBIDIter iter = rep.iterDBIDs(); iter.valid(); iter.advance(), i++) {
+      KNNList single = knnq.getKNNForDBID(iter, k);
+      KNNList other = bulk.get(i);
+      assertEquals("Bulk kNN size does not match.", single.size(), other.size());
+      assertEquals("Bulk kNN distance does not match.", single.getKNNDistance(), other.getKNNDistance(), 1e-15);
+    }
+  }
 }
@@ -0,0 +1,117 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the precomputed distance matrix.
+ * 
+ * @author agent
+ */
+public class TestPrecomputedDistanceMatrix implements JUnit4Test {
+  /**
+   * Data set to use.
+   */
+  String dataset = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  /**
+   * Test the on-heap double precision matrix.
+   */
+  @Test
+  public void testDouble() {
+    testMatrix(new ListParameterization(), 0.);
+  }
+
+  /**
+   * Test the on-heap single precision matrix.
+   */
+  @Test
+  public void testFloat() {
+    ListParameterization params = new ListParameterization();
+    params.addFlag(PrecomputedDistanceMatrix.Factory.Parameterizer.FLOAT_ID);
+    testMatrix(params, 1e-6);
+  }
+
+  /**
+   * Test the memory-mapped matrix, with both precisions.
+   * 
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testMapped() throws IOException {
+    File file = File.createTempFile("elki-unittest-matrix", ".bin");
+    file.deleteOnExit();
+    ListParameterization params = new ListParameterization();
+    params.addParameter(PrecomputedDistanceMatrix.Factory.Parameterizer.FILE_ID, file);
+    testMatrix(params, 0.);
+    params = new ListParameterization();
+    params.addParameter(PrecomputedDistanceMatrix.Factory.Parameterizer.FILE_ID, file);
+    params.addFlag(PrecomputedDistanceMatrix.Factory.Parameterizer.FLOAT_ID);
+    testMatrix(params, 1e-6);
+  }
+
+  /**
+   * Compare all distances in the matrix to the distance function.
+   * 
+   * @param params Parameters for the matrix
+   * @param tol Relative tolerance
+   */
+  protected void testMatrix(ListParameterization params, double tol) {
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, PrecomputedDistanceMatrix.Factory.class);
+    params.addParameter(PrecomputedDistanceMatrix.Factory.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    assertTrue("Distance matrix not used.", dq.getClass().getEnclosingClass() == PrecomputedDistanceMatrix.class);
+
+    for(DBIDIter ix = rel.iterDBIDs(); ix.valid(); ix.advance()) {
+      for(DBIDIter iy = rel.iterDBIDs(); iy.valid(); iy.advance()) {
+        final double expected = EuclideanDistanceFunction.STATIC.distance(rel.get(ix), rel.get(iy));
+        assertEquals("Distance does not match.", expected, dq.distance(ix, iy), expected * tol);
+      }
+    }
+  }
+}
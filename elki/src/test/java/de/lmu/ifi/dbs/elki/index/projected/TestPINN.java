@@ -0,0 +1,106 @@
+package de.lmu.ifi.dbs.elki.index.projected;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the {@link PINN} projected index.
+ * 
+ * The index is approximate, so we only verify that bulk queries return the
+ * same (refined) results as single queries.
+ * 
+ * @author agent
+ */
+public class TestPINN implements JUnit4Test {
+  /**
+   * Data set to use.
+   */
+  String dataset = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  /**
+   * Number of neighbors to query.
+   */
+  int k = 10;
+
+  /**
+   * Compare bulk and single kNN queries on a {@link ProjectedIndex}.
+   */
+  @Test
+  public void testBulkKNN() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, PINN.class);
+    params.addParameter(ProjectedIndex.Factory.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    params.addParameter(PINN.Parameterizer.T_ID, 2);
+    params.addParameter(PINN.Parameterizer.RANDOM_ID, 0L);
+
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
+    assertTrue("Returned knn query is not of expected class: got " + knnq.getClass(), knnq instanceof ProjectedIndex.ProjectedKNNQuery);
+
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(DBIDUtil.ensureArray(rel.getDBIDs()), k);
+    assertEquals("Bulk result size does not match!", rel.size(), bulk.size());
+    int i = 0;
+    for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance(), i++) {
+      KNNList single = knnq.getKNNForDBID(iter, k);
+      KNNList other = bulk.get(i);
+      assertEquals("Bulk kNN size does not match.", single.size(), other.size());
+      DoubleDBIDListIter s = single.iter(), o = other.iter();
+      for(; s.valid(); s.advance(), o.advance()) {
+        assertEquals("Bulk kNN distance does not match.", s.doubleValue(), o.doubleValue(), 1e-15);
+        // Distances are refined, so they must be exact distances.
+        assertEquals("Distance is not refined.", dist.distance(iter, o), o.doubleValue(), 1e-15);
+      }
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractTestIndexStructures;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the simplified cover tree.
+ * 
+ * @author agent
+ */
+public class TestSimplifiedCoverTree extends AbstractTestIndexStructures {
+  /**
+   * Test {@link SimplifiedCoverTree}.
+   */
+  @Test
+  public void testCoverTree() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, SimplifiedCoverTree.Factory.class);
+    spatparams.addParameter(SimplifiedCoverTree.Factory.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+    testExactEuclidean(spatparams, SimplifiedCoverTree.CoverTreeKNNQuery.class, SimplifiedCoverTree.CoverTreeRangeQuery.class);
+  }
+
+  /**
+   * Test {@link SimplifiedCoverTree} without truncation.
+   */
+  @Test
+  public void testCoverTreeNoTruncate() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, SimplifiedCoverTree.Factory.class);
+    spatparams.addParameter(SimplifiedCoverTree.Factory.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+    spatparams.addParameter(SimplifiedCoverTree.Factory.Parameterizer.TRUNCATE_ID, 1);
+    testExactEuclidean(spatparams, SimplifiedCoverTree.CoverTreeKNNQuery.class, SimplifiedCoverTree.CoverTreeRangeQuery.class);
+  }
+}
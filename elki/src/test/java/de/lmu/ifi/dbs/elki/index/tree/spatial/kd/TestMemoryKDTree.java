@@ -0,0 +1,116 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractTestIndexStructures;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the in-memory k-d-tree.
+ * 
+ * @author agent
+ */
+public class TestMemoryKDTree extends AbstractTestIndexStructures {
+  /**
+   * Test {@link MemoryKDTree} using a file based database connection.
+   */
+  @Test
+  public void testMemoryKDTree() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MemoryKDTree.Factory.class);
+    spatparams.addParameter(MemoryKDTree.Factory.Parameterizer.LEAFSIZE_ID, 4);
+    testExactEuclidean(spatparams, MemoryKDTree.KDTreeKNNQuery.class, MemoryKDTree.KDTreeRangeQuery.class);
+  }
+
+  /**
+   * Compare against a linear scan, for various Lp norms.
+   */
+  @Test
+  public void testLPNorms() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, "data/testdata/unittests/hierarchical-3d2d1d.csv");
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MemoryKDTree.Factory.class);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+    final int k = 10;
+    Random rnd = new Random(0L);
+    List<DistanceQuery<DoubleVector>> dqs = new ArrayList<>();
+    dqs.add(db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC));
+    dqs.add(db.getDistanceQuery(rel, ManhattanDistanceFunction.STATIC));
+    dqs.add(db.getDistanceQuery(rel, MaximumDistanceFunction.STATIC));
+    dqs.add(db.getDistanceQuery(rel, SquaredEuclideanDistanceFunction.STATIC));
+    dqs.add(db.getDistanceQuery(rel, new LPNormDistanceFunction(3.)));
+    dqs.add(db.getDistanceQuery(rel, new LPNormDistanceFunction(.5)));
+    for(DistanceQuery<DoubleVector> dq : dqs) {
+      KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, k);
+      RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dq);
+      assertEquals(MemoryKDTree.KDTreeKNNQuery.class, knnq.getClass());
+      assertEquals(MemoryKDTree.KDTreeRangeQuery.class, rangeq.getClass());
+      LinearScanDistanceKNNQuery<DoubleVector> knnref = new LinearScanDistanceKNNQuery<>(dq);
+      LinearScanDistanceRangeQuery<DoubleVector> rangeref = new LinearScanDistanceRangeQuery<>(dq);
+      for(int i = 0; i < 20; i++) {
+        DoubleVector q = new DoubleVector(new double[] { rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble() });
+        KNNList knn = knnq.getKNNForObject(q, k), knnexp = knnref.getKNNForObject(q, k);
+        assertEquals("kNN size does not match.", knnexp.size(), knn.size());
+        DoubleDBIDListIter it = knn.iter(), it2 = knnexp.iter();
+        for(; it.valid(); it.advance(), it2.advance()) {
+          assertEquals("kNN distance does not match.", it2.doubleValue(), it.doubleValue(), 1e-12);
+        }
+        final double r = knnexp.getKNNDistance() * 1.5;
+        DoubleDBIDList range = rangeq.getRangeForObject(q, r), rangeexp = rangeref.getRangeForObject(q, r);
+        assertEquals("Range query size does not match.", rangeexp.size(), range.size());
+      }
+    }
+  }
+}
@@ -26,6 +26,10 @@ package de.lmu.ifi.dbs.elki.math.geometry;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import gnu.trove.list.array.TDoubleArrayList;
+
+import java.util.Random;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.JUnit4Test;
@@ -73,4 +77,63 @@ public class TestPrimsMinimumSpanningTree implements JUnit4Test {
   }
   // We could also check that every even flag is set. But as we checked the
   // length and found all edges, all must have been used...
+
+  @Test
+  public void testParallel() {
+    // Large enough to be split into multiple partitions.
+    final int size = 5000;
+    final Random r = new Random(0L);
+    final double[][] data = new double[size][2];
+    for(int i = 0; i < size; i++) {
+      data[i][0] = r.nextDouble();
+      data[i][1] = r.nextDouble();
+    }
+    PrimsMinimumSpanningTree.Adapter<double[][]> adapter = new PrimsMinimumSpanningTree.Adapter<double[][]>() {
+      @Override
+      public double distance(double[][] data, int i, int j) {
+        final double dx = data[i][0] - data[j][0], dy = data[i][1] - data[j][1];
+        return Math.sqrt(dx * dx + dy * dy);
+      }
+
+      @Override
+      public int size(double[][] data) {
+        return data.length;
+      }
+    };
+    final TDoubleArrayList serial = new TDoubleArrayList(), parallel = new TDoubleArrayList();
+    PrimsMinimumSpanningTree.processDense(data, adapter, new EdgeCollector(serial));
+    PrimsMinimumSpanningTree.processDenseParallel(data, adapter, new EdgeCollector(parallel));
+    assertEquals("Graph size does not match expected size.", (size - 1) * 3, parallel.size());
+    for(int i = 0; i < serial.size(); i++) {
+      assertEquals("Edge does not match.", serial.get(i), parallel.get(i), 0.);
+    }
+  }
+
+  /**
+   * Collect edges into a list, for comparison.
+   * 
+   * @author Erich Schubert
+   */
+  private static class EdgeCollector implements PrimsMinimumSpanningTree.Collector {
+    /**
+     * Output list.
+     */
+    private TDoubleArrayList edges;
+
+    /**
+     * Constructor.
+     * 
+     * @param edges Output list
+     */
+    EdgeCollector(TDoubleArrayList edges) {
+      this.edges = edges;
+    }
+
+    @Override
+    public void addEdge(double length, int i, int j) {
+      edges.add(length);
+      edges.add(i);
+      edges.add(j);
+    }
+  }
 }
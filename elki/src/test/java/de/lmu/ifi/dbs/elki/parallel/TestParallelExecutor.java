@@ -0,0 +1,127 @@
+package de.lmu.ifi.dbs.elki.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Test that the parallel executors process every object exactly once.
+ * 
+ * @author agent
+ */
+public class TestParallelExecutor implements JUnit4Test {
+  @Test
+  public void testBlocks() {
+    testStrategy(ParallelExecutor.Strategy.BLOCKS);
+  }
+
+  @Test
+  public void testWorkStealing() {
+    testStrategy(ParallelExecutor.Strategy.WORK_STEALING);
+  }
+
+  /**
+   * Nested parallel sections must not deadlock in the bounded pool.
+   */
+  @Test(timeout = 10000)
+  public void testNestedPartitions() {
+    final int size = 1000;
+    final AtomicInteger count = new AtomicInteger(0);
+    ParallelExecutor.runPartitions(size, 1, new ParallelExecutor.PartitionTask() {
+      @Override
+      public void process(int start, int end) {
+        for(int i = start; i < end; i++) {
+          ParallelExecutor.runPartitions(size, 1, new ParallelExecutor.PartitionTask() {
+            @Override
+            public void process(int start, int end) {
+              count.addAndGet(end - start);
+            }
+          });
+        }
+      }
+    });
+    assertEquals("Not all positions processed.", size * size, count.get());
+  }
+
+  private void testStrategy(ParallelExecutor.Strategy strategy) {
+    for(int size : new int[] { 0, 1, 7, 1000, 12345 }) {
+      DBIDRange ids = DBIDUtil.generateStaticDBIDRange(size);
+      CountingProcessor proc = new CountingProcessor(ids);
+      ParallelExecutor.run(ids, strategy, proc);
+      for(int i = 0; i < size; i++) {
+        assertEquals("Object not processed exactly once.", 1, proc.counts.get(i));
+      }
+      assertEquals("Cleanup not invoked for all instances.", size, proc.total);
+    }
+  }
+
+  /**
+   * Processor counting how often each object was mapped.
+   * 
+   * @author agent
+   */
+  private static class CountingProcessor implements Processor {
+    DBIDRange ids;
+
+    AtomicIntegerArray counts;
+
+    int total = 0;
+
+    CountingProcessor(DBIDRange ids) {
+      this.ids = ids;
+      this.counts = new AtomicIntegerArray(ids.size());
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new CountingInstance();
+    }
+
+    @Override
+    public synchronized void cleanup(Instance inst) {
+      total += ((CountingInstance) inst).seen;
+    }
+
+    private class CountingInstance implements Instance {
+      int seen = 0;
+
+      @Override
+      public void map(DBIDRef id) {
+        counts.incrementAndGet(ids.getOffset(id));
+        seen++;
+      }
+    }
+  }
+}
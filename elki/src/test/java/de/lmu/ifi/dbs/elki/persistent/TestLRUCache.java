@@ -0,0 +1,244 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+
+/**
+ * Test the concurrent page cache.
+ * 
+ * @author agent
+ */
+public class TestLRUCache implements JUnit4Test {
+  /**
+   * Page size.
+   */
+  private static final int PAGESIZE = 100;
+
+  /**
+   * Build a cache on a memory page file, with the given pages.
+   * 
+   * @param pages Number of pages to write
+   * @param cachepages Cache size in pages
+   * @return Cache
+   */
+  private static LRUCache<TestPage> makeCache(int pages, int cachepages) {
+    MemoryPageFile<TestPage> file = new MemoryPageFile<>(PAGESIZE);
+    LRUCache<TestPage> cache = new LRUCache<>(cachepages * PAGESIZE, file);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    for(int i = 0; i < pages; i++) {
+      cache.writePage(new TestPage(i));
+    }
+    cache.flush();
+    return cache;
+  }
+
+  @Test
+  public void testWriteBack() {
+    MemoryPageFile<TestPage> file = new MemoryPageFile<>(PAGESIZE);
+    LRUCache<TestPage> cache = new LRUCache<>(10 * PAGESIZE, file);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    for(int i = 0; i < 100; i++) {
+      assertEquals("Page ids not assigned in order.", i, cache.writePage(new TestPage(i)));
+    }
+    // Evicted pages must have been written to the file.
+    for(int i = 0; i < 100; i++) {
+      TestPage page = cache.readPage(i);
+      assertEquals("Wrong page.", i, page.value);
+      assertSame("Page not returned by file.", page, file.readPage(i));
+    }
+    cache.flush();
+    for(int i = 0; i < 100; i++) {
+      assertFalse("Dirty page after flush.", file.readPage(i).isDirty());
+    }
+  }
+
+  @Test
+  public void testScanResistance() {
+    final int[] reads = new int[1];
+    MemoryPageFile<TestPage> file = new MemoryPageFile<TestPage>(PAGESIZE) {
+      @Override
+      public synchronized TestPage readPage(int pageID) {
+        ++reads[0];
+        return super.readPage(pageID);
+      }
+    };
+    // Small enough to use a single segment.
+    LRUCache<TestPage> cache = new LRUCache<>(16 * PAGESIZE, file);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    for(int i = 0; i < 1000; i++) {
+      cache.writePage(new TestPage(i));
+    }
+    cache.flush();
+    // Reference a working set again after it was evicted.
+    for(int i = 0; i < 4; i++) {
+      cache.readPage(i);
+    }
+    for(int i = 100; i < 116; i++) {
+      cache.readPage(i);
+    }
+    for(int i = 0; i < 4; i++) {
+      cache.readPage(i);
+    }
+    // A scan over all pages must not flush the working set.
+    for(int i = 200; i < 1000; i++) {
+      cache.readPage(i);
+    }
+    reads[0] = 0;
+    for(int i = 0; i < 4; i++) {
+      assertEquals("Wrong page.", i, cache.readPage(i).value);
+    }
+    // With a plain LRU cache, all would be read again.
+    assertEquals("Working set was evicted by a scan.", 0, reads[0]);
+  }
+
+  @Test
+  public void testWriteDuringRead() {
+    final LRUCache<?>[] holder = new LRUCache<?>[1];
+    MemoryPageFile<TestPage> file = new MemoryPageFile<TestPage>(PAGESIZE) {
+      boolean interfere = true;
+
+      @Override
+      public synchronized TestPage readPage(int pageID) {
+        TestPage page = super.readPage(pageID);
+        if(interfere && pageID == 0) {
+          interfere = false;
+          // Simulate another thread writing the page, and the cache writing it
+          // back, while this (now stale) copy is being read.
+          @SuppressWarnings("unchecked")
+          LRUCache<TestPage> cache = (LRUCache<TestPage>) holder[0];
+          TestPage update = new TestPage(42);
+          update.setPageID(0);
+          cache.writePage(0, update);
+          cache.flush();
+        }
+        return page;
+      }
+    };
+    LRUCache<TestPage> cache = new LRUCache<>(16 * PAGESIZE, file);
+    holder[0] = cache;
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    cache.writePage(new TestPage(0));
+    cache.flush();
+    cache.readPage(0);
+    assertEquals("Stale page in cache.", 42, cache.readPage(0).value);
+  }
+
+  @Test
+  public void testConcurrentReads() throws Exception {
+    final LRUCache<TestPage> cache = makeCache(1000, 200);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for(int t = 0; t < 4; t++) {
+        final int seed = t;
+        results.add(pool.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            for(int i = 0; i < 20000; i++) {
+              int id = (i * 31 + seed * 7) % ((i & 1) == 0 ? 1000 : 100);
+              if(cache.readPage(id).value != id) {
+                return false;
+              }
+            }
+            return true;
+          }
+        }));
+      }
+      for(Future<Boolean> f : results) {
+        assertTrue("Wrong page returned.", f.get());
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Trivial page for testing.
+   * 
+   * @author agent
+   * 
+   * @apiviz.exclude
+   */
+  private static class TestPage implements Page {
+    /**
+     * Page id.
+     */
+    int id = -1;
+
+    /**
+     * Payload.
+     */
+    int value;
+
+    /**
+     * Dirty flag.
+     */
+    boolean dirty;
+
+    /**
+     * Constructor.
+     * 
+     * @param value Payload
+     */
+    TestPage(int value) {
+      this.value = value;
+    }
+
+    @Override
+    public int getPageID() {
+      return id;
+    }
+
+    @Override
+    public void setPageID(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean isDirty() {
+      return dirty;
+    }
+
+    @Override
+    public void setDirty(boolean dirty) {
+      this.dirty = dirty;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.MappedVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.MappedVectorDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test to write a data set to a memory-mapped vector file, and load it again.
+ * 
+ * @author agent
+ */
+public class TestMappedVectorFile implements JUnit4Test {
+  File file = new File("MappedVectorFileTestFile.test.dat");
+
+  /**
+   * Input data file.
+   */
+  public static final String filename = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  /**
+   * Check that we don't overwrite any file.
+   * 
+   * @throws Exception on errors.
+   */
+  @Before
+  public void safetyCheck() throws Exception {
+    if(file.exists()) {
+      Assert.fail("Could not run test - test file already exists.");
+    }
+  }
+
+  /**
+   * Clean up afterwards
+   * 
+   * @throws Exception on errors.
+   */
+  @After
+  public void cleanup() throws Exception {
+    if(file != null && file.exists()) {
+      if(!file.delete()) {
+        Assert.fail("Error cleaning up: can't remove test file.");
+      }
+    }
+  }
+
+  @Test
+  public void testMappedVectorFile() throws IOException {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, filename);
+    FileBasedDatabaseConnection dbc = ClassGenericsUtil.parameterizeOrAbort(FileBasedDatabaseConnection.class, params);
+    MultipleObjectsBundle bundle = dbc.loadData();
+    MappedVectorFile.write(bundle.asStream(), file);
+
+    ListParameterization params2 = new ListParameterization();
+    params2.addParameter(StaticArrayDatabase.Parameterizer.DATABASE_CONNECTION_ID, MappedVectorDatabaseConnection.class);
+    params2.addParameter(MappedVectorDatabaseConnection.Parameterizer.INPUT_ID, file);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params2);
+    db.initialize();
+    Relation<? extends NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Assert.assertTrue("Relation is not memory-mapped.", rel instanceof MappedVectorRelation);
+    Assert.assertEquals("Size does not match.", bundle.dataLength(), rel.size());
+
+    int col = -1;
+    for(int i = 0; i < bundle.metaLength(); i++) {
+      if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(bundle.meta(i))) {
+        col = i;
+        break;
+      }
+    }
+    int j = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), j++) {
+      NumberVector v1 = (NumberVector) bundle.data(j, col), v2 = rel.get(it);
+      Assert.assertEquals("Dimensionality does not match.", v1.getDimensionality(), v2.getDimensionality());
+      for(int d = 0; d < v1.getDimensionality(); d++) {
+        Assert.assertEquals("Value does not match.", v1.doubleValue(d), v2.doubleValue(d), 0.);
+      }
+    }
+    ((MappedVectorRelation) rel).getFile().close();
+  }
+}
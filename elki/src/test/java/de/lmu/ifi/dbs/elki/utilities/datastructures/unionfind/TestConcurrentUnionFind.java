@@ -0,0 +1,92 @@
+package de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2014
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.JUnit4Test;
+
+/**
+ * Unit test for the concurrent union-find structure.
+ * 
+ * @author agent
+ */
+public class TestConcurrentUnionFind implements JUnit4Test {
+  @Test
+  public void testBasic() {
+    ConcurrentUnionFind uf = new ConcurrentUnionFind(10);
+    assertTrue(uf.union(3, 7));
+    assertTrue(uf.union(7, 5));
+    assertFalse(uf.union(5, 3));
+    assertTrue(uf.union(9, 8));
+    assertTrue(uf.isConnected(3, 5));
+    assertFalse(uf.isConnected(3, 8));
+    // The smallest element is the representative.
+    assertEquals(3, uf.find(7));
+    assertEquals(8, uf.find(9));
+    assertTrue(uf.isRoot(0));
+    assertFalse(uf.isRoot(5));
+  }
+
+  @Test
+  public void testConcurrent() throws InterruptedException {
+    final int size = 100000, edges = 60000, threads = 4;
+    final int[] a = new int[edges], b = new int[edges];
+    Random r = new Random(0L);
+    for(int i = 0; i < edges; i++) {
+      a[i] = r.nextInt(size);
+      b[i] = r.nextInt(size);
+    }
+    ConcurrentUnionFind serial = new ConcurrentUnionFind(size);
+    for(int i = 0; i < edges; i++) {
+      serial.union(a[i], b[i]);
+    }
+    final ConcurrentUnionFind uf = new ConcurrentUnionFind(size);
+    Thread[] workers = new Thread[threads];
+    for(int t = 0; t < threads; t++) {
+      final int off = t;
+      workers[t] = new Thread() {
+        @Override
+        public void run() {
+          for(int i = off; i < edges; i += threads) {
+            uf.union(a[i], b[i]);
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for(Thread t : workers) {
+      t.join();
+    }
+    for(int i = 0; i < size; i++) {
+      assertEquals("Different representative.", serial.find(i), uf.find(i));
+    }
+  }
+}